@@ -1881,6 +1881,22 @@ void VoltDBEngine::dispatchValidatePartitioningTask(ReferenceSerializeInputBE &t
     }
 }
 
+void VoltDBEngine::collectTableModificationCounts(ReferenceSerializeInputBE &taskInfo) {
+    const int32_t numTables = taskInfo.readInt();
+    m_resultOutput.writeInt(static_cast<int32_t>(sizeof(int64_t) * numTables));
+
+    for (int ii = 0; ii < numTables; ii++) {
+        const CatalogId tableId = static_cast<int32_t>(taskInfo.readLong());
+        std::map<CatalogId, Table*>::iterator table = m_tables.find(tableId);
+        if (table == m_tables.end()) {
+            throwFatalException("Unknown table id %d", tableId);
+        }
+        // Tables that don't count their changes are always different
+        PersistentTable *persistentTable = dynamic_cast<PersistentTable*>(table->second);
+        m_resultOutput.writeLong(persistentTable == NULL ? -1 : persistentTable->modificationCount());
+    }
+}
+
 void VoltDBEngine::collectDRTupleStreamStateInfo() {
     std::size_t size = 3 * sizeof(int64_t) + 4 /*drVersion*/ + 1 /*hasReplicatedStream*/;
     if (m_executorContext->drReplicatedStream()) {
@@ -1931,6 +1947,9 @@ void VoltDBEngine::executeTask(TaskType taskType, ReferenceSerializeInputBE &tas
     case TASK_TYPE_GET_DR_TUPLESTREAM_STATE:
         collectDRTupleStreamStateInfo();
         break;
+    case TASK_TYPE_GET_TABLE_MODIFICATION_COUNTS:
+        collectTableModificationCounts(taskInfo);
+        break;
     case TASK_TYPE_SET_DR_SEQUENCE_NUMBERS: {
         int64_t partitionSequenceNumber = taskInfo.readLong();
         int64_t mpSequenceNumber = taskInfo.readLong();
@@ -421,6 +421,8 @@ class __attribute__((visibility("default"))) VoltDBEngine {
          */
         void dispatchValidatePartitioningTask(ReferenceSerializeInputBE &taskInfo);
 
+        void collectTableModificationCounts(ReferenceSerializeInputBE &taskInfo);
+
         void collectDRTupleStreamStateInfo();
 
         void setCurrentUndoQuantum(voltdb::UndoQuantum* undoQuantum);
@@ -122,6 +122,7 @@ PersistentTable::PersistentTable(int partitionColumn, const char * signature, bo
     m_stats(this),
     m_failedCompactionCount(0),
     m_invisibleTuplesPendingDeleteCount(0),
+    m_modificationCount(0),
     m_surgeon(*this),
     m_isMaterialized(isMaterialized),
     m_drEnabled(drEnabled),
@@ -409,6 +410,8 @@ void PersistentTable::truncateTable(VoltDBEngine* engine, bool fallible) {
     PersistentTable * emptyTable = tcd->getPersistentTable();
     assert(emptyTable);
     assert(emptyTable->views().size() == 0);
+    // The new table carries on counting so it doesn't look unchanged to the next snapshot
+    emptyTable->m_modificationCount = m_modificationCount + 1;
     if (m_tableStreamer != NULL && m_tableStreamer->hasStreamType(TABLE_STREAM_ELASTIC_INDEX)) {
         // There is an Elastic Index work going on and it should continue access the old table.
         // Add one reference count to keep the original table.
@@ -540,6 +543,7 @@ void PersistentTable::insertTupleCommon(TableTuple &source, TableTuple &target,
         }
 
     }
+    ++m_modificationCount;
 
     // Write to DR stream before everything else to ensure nothing gets left in
     // the index if the append fails.
@@ -685,6 +689,8 @@ void PersistentTable::updateTupleWithSpecificIndexes(TableTuple &targetTupleToUp
         }
     }
 
+    ++m_modificationCount;
+
     // Write to the DR stream before doing anything else to ensure we don't
     // leave a half updated tuple behind in case this throws.
     ExecutorContext *ec = ExecutorContext::getExecutorContext();
@@ -881,6 +887,7 @@ void PersistentTable::deleteTuple(TableTuple &target, bool fallible) {
 
     // The tempTuple is forever!
     assert(&target != &m_tempTuple);
+    ++m_modificationCount;
 
     // Write to the DR stream before doing anything else to ensure nothing will
     // be left forgotten in case this throws.
@@ -1021,6 +1028,8 @@ void PersistentTable::deleteTupleForUndo(char* tupleData, bool skipLookup) {
     // Make sure that they are not trying to delete the same tuple twice
     assert(target.isActive());
 
+    // Undo doesn't need to count, but rebalance deletes through here too
+    ++m_modificationCount;
     deleteFromAllIndexes(&target);
     deleteTupleFinalize(target); // also frees object columns
 }
@@ -423,6 +423,15 @@ public:
         return m_data.size();
     }
 
+    /**
+     * The number of inserts, updates and deletes applied to the table, including
+     * ones that were later rolled back. A snapshot can skip the table if the count
+     * is the same as when the previous snapshot was taken.
+     */
+    int64_t modificationCount() const {
+        return m_modificationCount;
+    }
+
     // This is a testability feature not intended for use in product logic.
     int visibleTupleCount() const { return m_tupleCount - m_invisibleTuplesPendingDeleteCount; }
 
@@ -689,6 +698,8 @@ private:
     // This is a testability feature not intended for use in product logic.
     int m_invisibleTuplesPendingDeleteCount;
 
+    int64_t m_modificationCount;
+
     // Surgeon passed to classes requiring "deep" access to avoid excessive friendship.
     PersistentTableSurgeon m_surgeon;
 
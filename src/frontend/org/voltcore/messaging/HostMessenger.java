@@ -116,6 +116,7 @@ public class HostMessenger implements SocketJoiner.JoinHandler, InterfaceToMesse
 
         private static final String ACCEPTOR = "acceptor";
         private static final String NETWORK_THREADS = "networkThreads";
+        private static final String NETWORK_REACTORS = "networkReactors";
         private static final String BACKWARDS_TIME_FORGIVENESS_WINDOW = "backwardstimeforgivenesswindow";
         private static final String DEAD_HOST_TIMEOUT = "deadhosttimeout";
         private static final String INTERNAL_PORT = "internalport";
@@ -134,6 +135,7 @@ public class HostMessenger implements SocketJoiner.JoinHandler, InterfaceToMesse
         public VoltMessageFactory factory = new VoltMessageFactory();
         public int networkThreads =  Math.max(2, CoreUtils.availableProcessors() / 4);
         public Queue<String> coreBindIds;
+        public boolean networkReactors = false;
         public JoinAcceptor acceptor = null;
 
         public Config(String coordIp, int coordPort) {
@@ -201,6 +203,10 @@ public class HostMessenger implements SocketJoiner.JoinHandler, InterfaceToMesse
                     this.networkThreads = networkThreadConfig;
                     m_networkLog.info("Overridden network thread count: " + this.networkThreads);
                 }
+                if (Boolean.getBoolean(NETWORK_REACTORS)) {
+                    this.networkReactors = true;
+                    m_networkLog.info("Network threads run as per core reactors");
+                }
 
             } catch (Exception e) {
                 m_networkLog.error("Error setting network thread count", e);
@@ -220,6 +226,7 @@ public class HostMessenger implements SocketJoiner.JoinHandler, InterfaceToMesse
                 js.key(DEAD_HOST_TIMEOUT).value(deadHostTimeout);
                 js.key(BACKWARDS_TIME_FORGIVENESS_WINDOW).value(backwardsTimeForgivenessWindow);
                 js.key(NETWORK_THREADS).value(networkThreads);
+                js.key(NETWORK_REACTORS).value(networkReactors);
                 js.key(ACCEPTOR).value(acceptor);
                 js.endObject();
 
@@ -341,7 +348,8 @@ public class HostMessenger implements SocketJoiner.JoinHandler, InterfaceToMesse
     public HostMessenger(Config config, HostWatcher hostWatcher) {
         m_config = config;
         m_hostWatcher = hostWatcher;
-        m_network = new VoltNetworkPool(m_config.networkThreads, 0, m_config.coreBindIds, "Server");
+        m_network = new VoltNetworkPool(m_config.networkThreads, 0, m_config.coreBindIds, "Server",
+                m_config.networkReactors);
         m_acceptor = config.acceptor;
         m_joiner = new SocketJoiner(
                 m_config.internalInterface,
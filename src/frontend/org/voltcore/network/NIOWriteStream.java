@@ -24,6 +24,7 @@ import java.nio.channels.SelectionKey;
 import java.util.ArrayDeque;
 
 import org.voltcore.logging.VoltLogger;
+import org.voltcore.utils.DBBPool.BBContainer;
 import org.voltcore.utils.DeferredSerialization;
 import org.voltcore.utils.EstTime;
 
@@ -76,6 +77,21 @@ public class NIOWriteStream extends NIOWriteStreamBase implements WriteStream {
      */
     private long m_lastPendingWriteTime = -1;
 
+    /**
+     * Small writes are held back to be coalesced with later ones until either this many bytes
+     * are pending or the oldest held write has waited COALESCE_WINDOW_MICROS. Both must be
+     * positive to enable coalescing, it trades a little latency for fewer, larger syscalls.
+     */
+    static final int COALESCE_BYTES = Integer.getInteger("NETWORK_WRITE_COALESCE_BYTES", 0);
+    static final long COALESCE_WINDOW_MICROS = Long.getLong("NETWORK_WRITE_COALESCE_MICROS", 0);
+    private int m_coalesceBytes = COALESCE_BYTES;
+    private long m_coalesceWindowNanos = COALESCE_WINDOW_MICROS * 1000;
+
+    /**
+     * Time the oldest write being held back for coalescing was first deferred, -1 if none is
+     */
+    private long m_coalesceStartNanos = -1;
+
     NIOWriteStream(VoltPort port) {
         this(port, null, null, null);
     }
@@ -282,6 +298,44 @@ public class NIOWriteStream extends NIOWriteStreamBase implements WriteStream {
         }
     }
 
+    /**
+     * Decide whether the pending writes should be held back to coalesce with later ones.
+     * Only called from the network thread with the stream locked.
+     * @return 0 to write now, otherwise the System.nanoTime() at which to write anyway
+     */
+    long coalesceDeadline(final long nowNanos) {
+        if (m_coalesceBytes <= 0 || m_coalesceWindowNanos <= 0 || m_currentWriteBuffer != null) {
+            return 0;
+        }
+        if (m_coalesceStartNanos == -1) {
+            m_coalesceStartNanos = nowNanos;
+        }
+        final long deadline = m_coalesceStartNanos + m_coalesceWindowNanos;
+        if (deadline - nowNanos <= 0 || pendingBytes() >= m_coalesceBytes) {
+            m_coalesceStartNanos = -1;
+            return 0;
+        }
+        return deadline;
+    }
+
+    /**
+     * Override the coalescing thresholds from the system properties, for tests
+     */
+    synchronized void setCoalescing(int bytes, long windowMicros) {
+        m_coalesceBytes = bytes;
+        m_coalesceWindowNanos = windowMicros * 1000;
+        m_coalesceStartNanos = -1;
+    }
+
+    private int pendingBytes() {
+        int pending = 0;
+        for (BBContainer c : m_queuedBuffers) {
+            //Buffers are not flipped after being written to in swap and serialize
+            pending += c.b().position();
+        }
+        return pending;
+    }
+
     @Override
     public synchronized int calculatePendingWriteDelta(final long now) {
         if (m_lastPendingWriteTime == -1) {
@@ -312,10 +366,9 @@ public class NIOWriteStream extends NIOWriteStreamBase implements WriteStream {
     }
 
     /**
-     * Does the work of queueing addititional buffers that have been serialized
-     * and choosing between gathering and regular writes to the channel. Also splits up very large
-     * writes of HeapByteBuffers into many smaller writes so Java doesn't allocate a monster DirectByteBuffer
-     * that will never be freed
+     * Does the work of writing the buffers that have been serialized to the channel, several
+     * pool buffers at a time with gathering writes. Messages are always serialized into pool
+     * buffers first so Java never has to copy a large HeapByteBuffer into a temporary DirectByteBuffer
      * @param channel
      * @return
      * @throws IOException
@@ -333,29 +386,16 @@ public class NIOWriteStream extends NIOWriteStreamBase implements WriteStream {
                     return bytesWritten;
                 }
 
-                ByteBuffer buffer = null;
-                if (m_currentWriteBuffer == null) {
-                    m_currentWriteBuffer = m_queuedBuffers.poll();
-                    buffer = m_currentWriteBuffer.b();
-                    buffer.flip();
-                } else {
-                    buffer = m_currentWriteBuffer.b();
-                }
-
-                rc = channel.write(buffer);
+                rc = gatheringWrite(channel);
+                bytesWritten += rc;
 
-                //Discard the buffer back to a pool if no data remains
-                if (buffer.hasRemaining()) {
+                //A short write leaves data in the current buffer, the socket is full
+                if (m_currentWriteBuffer != null) {
                     if (!m_hadBackPressure) {
                         backpressureStarted();
                     }
-                } else {
-                    m_currentWriteBuffer.discard();
-                    m_currentWriteBuffer = null;
-                    m_messagesWritten++;
+                    break;
                 }
-                bytesWritten += rc;
-
             } while (rc > 0);
         } finally {
             //We might fail after writing few bytes. make sure the ones that are written accounted for.
@@ -49,6 +49,14 @@ public abstract class NIOWriteStreamBase {
 
     protected long m_bytesWritten = 0;
     protected long m_messagesWritten = 0;
+    protected long m_writeSyscalls = 0;
+
+    /**
+     * Most pending buffers handed to the channel in one gathering write
+     */
+    static final int MAX_GATHERING_WRITE_BUFFERS = Integer.getInteger("NETWORK_MAX_GATHERING_WRITE_BUFFERS", 16);
+    private final ByteBuffer m_gatheredBuffers[] = new ByteBuffer[MAX_GATHERING_WRITE_BUFFERS];
+    private final BBContainer m_gatheredContainers[] = new BBContainer[MAX_GATHERING_WRITE_BUFFERS];
 
     /*
      * Used to provide incremental reads of the amount of
@@ -58,7 +66,12 @@ public abstract class NIOWriteStreamBase {
      */
     private long m_lastBytesWritten = 0;
     private long m_lastMessagesWritten = 0;
+    private long m_lastWriteSyscalls = 0;
 
+    /**
+     * @return bytes written, messages written and the number of writes issued to the channel,
+     * the latter gives the average bytes per syscall
+     */
     long[] getBytesAndMessagesWritten(boolean interval) {
         if (interval) {
             final long bytesWrittenThisTime = m_bytesWritten - m_lastBytesWritten;
@@ -66,9 +79,12 @@ public abstract class NIOWriteStreamBase {
 
             final long messagesWrittenThisTime = m_messagesWritten - m_lastMessagesWritten;
             m_lastMessagesWritten = m_messagesWritten;
-            return new long[] { bytesWrittenThisTime, messagesWrittenThisTime };
+
+            final long writeSyscallsThisTime = m_writeSyscalls - m_lastWriteSyscalls;
+            m_lastWriteSyscalls = m_writeSyscalls;
+            return new long[] { bytesWrittenThisTime, messagesWrittenThisTime, writeSyscallsThisTime };
         } else {
-            return new long[] {m_bytesWritten, m_messagesWritten};
+            return new long[] {m_bytesWritten, m_messagesWritten, m_writeSyscalls};
         }
     }
 
@@ -87,6 +103,60 @@ public abstract class NIOWriteStreamBase {
 
     abstract int drainTo (final GatheringByteChannel channel) throws IOException;
 
+    /**
+     * Hand the partially written buffer and as many queued buffers as allowed to the channel
+     * in a single gathering write. Fully written buffers go back to the pool. If the write
+     * was short the first buffer with data left becomes m_currentWriteBuffer, and buffers
+     * the write never reached go back to the front of the queue.
+     * @return bytes written
+     */
+    protected final long gatheringWrite(final GatheringByteChannel channel) throws IOException {
+        int count = 0;
+        if (m_currentWriteBuffer != null) {
+            m_gatheredContainers[count] = m_currentWriteBuffer;
+            m_gatheredBuffers[count++] = m_currentWriteBuffer.b();
+            m_currentWriteBuffer = null;
+        }
+        while (count < m_gatheredBuffers.length && !m_queuedBuffers.isEmpty()) {
+            final BBContainer c = m_queuedBuffers.poll();
+            //Buffers are not flipped after being written to in swap and serialize
+            c.b().flip();
+            m_gatheredContainers[count] = c;
+            m_gatheredBuffers[count++] = c.b();
+        }
+        if (count == 0) {
+            return 0;
+        }
+
+        long rc = 0;
+        try {
+            m_writeSyscalls++;
+            rc = count == 1 ? channel.write(m_gatheredBuffers[0]) : channel.write(m_gatheredBuffers, 0, count);
+        } finally {
+            int ii = 0;
+            for (; ii < count && !m_gatheredBuffers[ii].hasRemaining(); ii++) {
+                m_gatheredContainers[ii].discard();
+                m_messagesWritten++;
+            }
+            if (ii < count) {
+                m_currentWriteBuffer = m_gatheredContainers[ii];
+            }
+            //Put back the rest unflipped, in order, so swap and serialize can keep appending to the last one
+            for (int jj = count - 1; jj > ii; jj--) {
+                final ByteBuffer b = m_gatheredBuffers[jj];
+                assert(b.position() == 0);
+                b.position(b.limit());
+                b.limit(b.capacity());
+                m_queuedBuffers.offerFirst(m_gatheredContainers[jj]);
+            }
+            for (int jj = 0; jj < count; jj++) {
+                m_gatheredBuffers[jj] = null;
+                m_gatheredContainers[jj] = null;
+            }
+        }
+        return rc;
+    }
+
     protected abstract ArrayDeque<DeferredSerialization> getQueuedWrites();
 
     /**
@@ -72,6 +72,7 @@ import java.nio.channels.ClosedChannelException;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
 import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -81,6 +82,7 @@ import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.Future;
 import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import jsr166y.ThreadLocalRandom;
@@ -104,6 +106,12 @@ class VoltNetwork implements Runnable, IOStatsIntf
     final NetworkDBBPool m_pool = new NetworkDBBPool();
     private final String m_coreBindId;
     final String networkThreadName;
+    private final int m_networkId;
+    // In reactor mode the thread is pinned, reads are bounded per port and per network stats are reported
+    private final boolean m_reactor;
+    private final int m_maxReadPerPort;
+    // Ports holding back small writes to coalesce them, in deadline order because the window is fixed
+    private final ArrayDeque<VoltPort> m_deferredWrites = new ArrayDeque<VoltPort>();
 
     private final NinjaKeySet m_ninjaSelectedKeys;
 
@@ -120,10 +128,22 @@ class VoltNetwork implements Runnable, IOStatsIntf
      * and runOnce should be called periodically
      **/
     VoltNetwork(int networkId, String coreBindId, String networkName) {
+        this(networkId, coreBindId, networkName, false, Integer.MAX_VALUE);
+    }
+
+    /**
+     * In reactor mode the network thread is bound to coreBindId, reads at most
+     * maxReadPerPort bytes from a port each time it is selected so one busy connection
+     * can't starve the others, and reports its totals as a separate IO stats row.
+     */
+    VoltNetwork(int networkId, String coreBindId, String networkName, boolean reactor, int maxReadPerPort) {
         m_thread = new Thread(this, "Volt " + networkName + " Network - " + networkId);
         networkThreadName = new String("Volt " + networkName + " Network - " + networkId);
         m_thread.setDaemon(true);
         m_coreBindId = coreBindId;
+        m_networkId = networkId;
+        m_reactor = reactor;
+        m_maxReadPerPort = maxReadPerPort;
         try {
             m_selector = Selector.open();
         } catch (IOException ex) {
@@ -137,6 +157,9 @@ class VoltNetwork implements Runnable, IOStatsIntf
         m_thread = null;
         m_selector = s;
         m_coreBindId = null;
+        m_networkId = 0;
+        m_reactor = false;
+        m_maxReadPerPort = Integer.MAX_VALUE;
         networkThreadName = new String("Test Selector Thread");
         m_ninjaSelectedKeys = NinjaKeySet.instrumentSelector(m_selector);
     }
@@ -285,10 +308,8 @@ class VoltNetwork implements Runnable, IOStatsIntf
     @Override
     public void run() {
         final ThreadLocalRandom r = ThreadLocalRandom.current();
-        if (m_coreBindId != null) {
-            // Remove Affinity for now to make this dependency dissapear from the client.
-            // Goal is to remove client dependency on this class in the medium term.
-            //PosixJNAAffinity.INSTANCE.setAffinity(m_coreBindId);
+        if (m_coreBindId != null && m_reactor) {
+            bindToCore(m_coreBindId);
         }
         try {
             while (m_shouldStop == false) {
@@ -296,7 +317,9 @@ class VoltNetwork implements Runnable, IOStatsIntf
                     while (m_shouldStop == false) {
                         LatencyWatchdog.pet();
 
-                        final int readyKeys = m_selector.select();
+                        final VoltPort nextDeferredWrite = m_deferredWrites.peek();
+                        final int readyKeys = nextDeferredWrite == null ?
+                                m_selector.select() : selectUntil(nextDeferredWrite.m_writeDeadlineNanos);
 
                         /*
                          * Run the task queue immediately after selection to catch
@@ -315,9 +338,11 @@ class VoltNetwork implements Runnable, IOStatsIntf
                             }
                         }
 
+                        flushDeferredWrites();
+
                         /*
                          * Poll the task queue again in case new tasks were created
-                         * by invoking callbacks.
+                         * by invoking callbacks or flushing deferred writes.
                          */
                         task = null;
                         while ((task = m_tasks.poll()) != null) {
@@ -341,6 +366,58 @@ class VoltNetwork implements Runnable, IOStatsIntf
         }
     }
 
+    /*
+     * The selector only has millisecond timeouts so coalescing windows are rounded up to that
+     */
+    private int selectUntil(long deadlineNanos) throws IOException {
+        final long waitNanos = deadlineNanos - System.nanoTime();
+        if (waitNanos <= 0) {
+            return m_selector.selectNow();
+        }
+        return m_selector.select(Math.max(1, TimeUnit.NANOSECONDS.toMillis(waitNanos + 999999)));
+    }
+
+    /**
+     * Hold back a port's writes until the deadline, see {@link NIOWriteStream#coalesceDeadline(long)}
+     */
+    void deferWrite(VoltPort port, long deadlineNanos) {
+        if (!port.m_writeDeferred) {
+            port.m_writeDeferred = true;
+            port.m_writeDeadlineNanos = deadlineNanos;
+            m_deferredWrites.offer(port);
+        }
+    }
+
+    private void flushDeferredWrites() {
+        if (m_deferredWrites.isEmpty()) {
+            return;
+        }
+        final long nowNanos = System.nanoTime();
+        VoltPort port;
+        while ((port = m_deferredWrites.peek()) != null && port.m_writeDeadlineNanos - nowNanos <= 0) {
+            m_deferredWrites.poll();
+            port.m_writeDeferred = false;
+            if (m_ports.contains(port)) {
+                // queues a task that drains the port's writes
+                port.enableWriteSelection();
+            }
+        }
+    }
+
+    /*
+     * The client doesn't ship the affinity library, look it up reflectively so only
+     * the server, which is the only user of reactor mode, depends on it.
+     */
+    private void bindToCore(String coreBindId) {
+        try {
+            final Class<?> affinity = Class.forName("vanilla.java.affinity.impl.PosixJNAAffinity");
+            final Object instance = affinity.getField("INSTANCE").get(null);
+            affinity.getMethod("setAffinity", String.class).invoke(instance, coreBindId);
+        } catch (Throwable t) {
+            networkLog.warn("Unable to bind " + networkThreadName + " to core " + coreBindId, t);
+        }
+    }
+
     private void p_shutdown() {
         Set<SelectionKey> keys = m_selector.keys();
 
@@ -488,6 +565,7 @@ class VoltNetwork implements Runnable, IOStatsIntf
         long totalMessagesRead = 0;
         long totalWritten = 0;
         long totalMessagesWritten = 0;
+        long totalWriteSyscalls = 0;
         for (VoltPort p : m_ports) {
             final long read = p.readStream().getBytesRead(interval);
             final long writeInfo[] = p.writeStream().getBytesAndMessagesWritten(interval);
@@ -496,6 +574,7 @@ class VoltNetwork implements Runnable, IOStatsIntf
             totalMessagesRead += messagesRead;
             totalWritten += writeInfo[0];
             totalMessagesWritten += writeInfo[1];
+            totalWriteSyscalls += writeInfo[2];
             retval.put(
                     p.connectionId(),
                     Pair.of(
@@ -504,7 +583,8 @@ class VoltNetwork implements Runnable, IOStatsIntf
                                     read,
                                     messagesRead,
                                     writeInfo[0],
-                                    writeInfo[1] }));
+                                    writeInfo[1],
+                                    writeInfo[2] }));
         }
         retval.put(
                 -1L,
@@ -514,7 +594,20 @@ class VoltNetwork implements Runnable, IOStatsIntf
                                 totalRead,
                                 totalMessagesRead,
                                 totalWritten,
-                                totalMessagesWritten }));
+                                totalMessagesWritten,
+                                totalWriteSyscalls }));
+        if (m_reactor) {
+            retval.put(
+                    reactorStatsId(m_networkId),
+                    Pair.of(
+                            networkThreadName,
+                            new long[] {
+                                    totalRead,
+                                    totalMessagesRead,
+                                    totalWritten,
+                                    totalMessagesWritten,
+                                    totalWriteSyscalls }));
+        }
         return retval;
     }
 
@@ -535,6 +628,17 @@ class VoltNetwork implements Runnable, IOStatsIntf
         return ft;
     }
 
+    /**
+     * Reactor rows use negative ids below the GLOBAL row's -1 so they can't collide with connection ids
+     */
+    static long reactorStatsId(int networkId) {
+        return -2L - networkId;
+    }
+
+    int maxReadPerPort() {
+        return m_maxReadPerPort;
+    }
+
     Long getThreadId() {
         return m_thread.getId();
     }
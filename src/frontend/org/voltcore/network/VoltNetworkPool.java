@@ -43,6 +43,12 @@ public class VoltNetworkPool {
 
     private static final VoltLogger m_logger = new VoltLogger(VoltNetworkPool.class.getName());
 
+    /**
+     * Bytes a reactor reads from one connection before moving on to the next ready connection.
+     * Data left in the socket keeps the connection selected for the next pass.
+     */
+    static final int REACTOR_MAX_READ_PER_PORT = Integer.getInteger("NETWORK_REACTOR_MAX_READ_PER_PORT", 256 * 1024);
+
     private final VoltNetwork m_networks[];
     private final AtomicLong m_nextNetwork = new AtomicLong();
     public final String m_poolName;
@@ -52,6 +58,16 @@ public class VoltNetworkPool {
     }
 
     public VoltNetworkPool(int numThreads, int startThreadId, Queue<String> coreBindIds, String poolName) {
+        this(numThreads, startThreadId, coreBindIds, poolName, false);
+    }
+
+    /**
+     * @param reactors if true each network is a reactor: pinned to its entry in coreBindIds when there
+     * is one, bounded to {@link #REACTOR_MAX_READ_PER_PORT} bytes per connection per selection and
+     * reporting its own totals in the IO stats as a row with the network thread's name.
+     */
+    public VoltNetworkPool(int numThreads, int startThreadId, Queue<String> coreBindIds, String poolName,
+            boolean reactors) {
         m_poolName = poolName;
         if (numThreads < 1) {
             throw new IllegalArgumentException("Must specify a positive number of threads");
@@ -60,18 +76,25 @@ public class VoltNetworkPool {
             m_networks = new VoltNetwork[numThreads];
             for (int ii = 0; ii < numThreads; ii++) {
                 // Adding startThreadId avoids unnecessary polling for non-Server VoltNetworkPools
-                m_networks[ii] = new VoltNetwork(ii+startThreadId, null, poolName);
+                m_networks[ii] = newNetwork(ii+startThreadId, null, poolName, reactors);
             }
         } else {
             final int coreBindIdsSize = coreBindIds.size();
             m_networks = new VoltNetwork[coreBindIdsSize];
             for (int ii = 0; ii < coreBindIdsSize; ii++) {
                 // Adding startThreadId avoids unnecessary polling for non-Server VoltNetworkPools
-                m_networks[ii] = new VoltNetwork(ii+startThreadId, coreBindIds.poll(), poolName);
+                m_networks[ii] = newNetwork(ii+startThreadId, coreBindIds.poll(), poolName, reactors);
             }
         }
     }
 
+    private static VoltNetwork newNetwork(int networkId, String coreBindId, String poolName, boolean reactor) {
+        if (reactor) {
+            return new VoltNetwork(networkId, coreBindId, poolName, true, REACTOR_MAX_READ_PER_PORT);
+        }
+        return new VoltNetwork(networkId, coreBindId, poolName);
+    }
+
     public void start() {
         for (VoltNetwork vn : m_networks) {
             vn.start();
@@ -74,6 +74,10 @@ public class VoltPort implements Connection
     private long m_messagesRead = 0;
     private long m_lastMessagesRead = 0;
 
+    /** Set while the network holds this port's writes back to coalesce them, network thread only */
+    boolean m_writeDeferred = false;
+    long m_writeDeadlineNanos;
+
     /*
      * This variable will be changed to the actual hostname some time later. It
      * is not guaranteed on how long it will take to do the reverse DNS lookup.
@@ -164,7 +168,7 @@ public class VoltPort implements Connection
              * Have the read stream fill from the network
              */
             if (readyForRead()) {
-                final int maxRead = m_handler.getMaxRead();
+                final int maxRead = Math.min(m_handler.getMaxRead(), m_network.maxReadPerPort());
                 if (maxRead > 0) {
                     fillReadStream( maxRead);
                     ByteBuffer message;
@@ -240,10 +244,17 @@ public class VoltPort implements Connection
          */
         synchronized (m_writeStream) {
             /*
-             * If there is something to write always give it a whirl.
+             * If there is something to write always give it a whirl,
+             * unless it is small enough to wait for more to coalesce with.
              */
             if (!m_writeStream.isEmpty())
             {
+                final long coalesceDeadline = m_isShuttingDown ? 0 : m_writeStream.coalesceDeadline(System.nanoTime());
+                if (coalesceDeadline != 0) {
+                    disableWriteSelection();
+                    m_network.deferWrite(this, coalesceDeadline);
+                    return;
+                }
                 m_writeStream.drainTo(m_channel);
             }
 
@@ -261,7 +272,7 @@ public class VoltPort implements Connection
         }
     }
 
-    private void enableWriteSelection() {
+    void enableWriteSelection() {
         setInterests(SelectionKey.OP_WRITE, 0);
     }
 
@@ -77,6 +77,7 @@ import org.voltdb.catalog.Procedure;
 import org.voltdb.catalog.SnapshotSchedule;
 import org.voltdb.client.ClientAuthScheme;
 import org.voltdb.client.ClientResponse;
+import org.voltdb.client.ProcedureBatch;
 import org.voltdb.common.Constants;
 import org.voltdb.dtxn.InitiatorStats.InvocationInfo;
 import org.voltdb.iv2.Cartographer;
@@ -698,8 +699,8 @@ public class ClientInterface implements SnapshotDaemon.DaemonInitiator {
             InputHandler handler = new ClientInputHandler(username, m_isAdmin);
 
             byte buildString[] = VoltDB.instance().getBuildString().getBytes(Charsets.UTF_8);
-            responseBuffer = ByteBuffer.allocate(34 + buildString.length);
-            responseBuffer.putInt(30 + buildString.length);//message length
+            responseBuffer = ByteBuffer.allocate(35 + buildString.length);
+            responseBuffer.putInt(31 + buildString.length);//message length
             responseBuffer.put((byte)0);//version
 
             //Send positive response
@@ -709,7 +710,8 @@ public class ClientInterface implements SnapshotDaemon.DaemonInitiator {
             responseBuffer.putLong(VoltDB.instance().getHostMessenger().getInstanceId().getTimestamp());
             responseBuffer.putInt(VoltDB.instance().getHostMessenger().getInstanceId().getCoord());
             responseBuffer.putInt(buildString.length);
-            responseBuffer.put(buildString).flip();
+            responseBuffer.put(buildString);
+            responseBuffer.put(Constants.SERVER_CAPABILITY_BATCH_INVOCATIONS).flip();
             socket.write(responseBuffer);
             return handler;
         }
@@ -759,6 +761,10 @@ public class ClientInterface implements SnapshotDaemon.DaemonInitiator {
         @Override
         public void handleMessage(ByteBuffer message, Connection c) {
             try {
+                if (message.get(message.position()) == ProcedureBatch.BATCH_FRAME_VERSION) {
+                    handleBatchMessage(message, c);
+                    return;
+                }
                 final ClientResponseImpl error = handleRead(message, this, c);
                 if (error != null) {
                     ByteBuffer buf = ByteBuffer.allocate(error.getSerializedSize() + 4);
@@ -771,6 +777,27 @@ public class ClientInterface implements SnapshotDaemon.DaemonInitiator {
             }
         }
 
+        /*
+         * Any responses generated inline for the invocations of a batch message
+         * (auth, permission and admission failures) are coalesced into a single write.
+         */
+        private void handleBatchMessage(ByteBuffer message, Connection c) throws IOException {
+            final List<ClientResponseImpl> errors = handleBatchRead(message, this, c);
+            if (!errors.isEmpty()) {
+                int errorBytes = 0;
+                for (ClientResponseImpl error : errors) {
+                    errorBytes += error.getSerializedSize() + 4;
+                }
+                ByteBuffer buf = ByteBuffer.allocate(errorBytes);
+                for (ClientResponseImpl error : errors) {
+                    buf.putInt(error.getSerializedSize());
+                    error.flattenToBuffer(buf);
+                }
+                buf.flip();
+                c.writeStream().enqueue(buf);
+            }
+        }
+
         @Override
         public void started(final Connection c) {
             m_connection = c;
@@ -1337,6 +1364,41 @@ public class ClientInterface implements SnapshotDaemon.DaemonInitiator {
                 new VoltTable[0], realReason, handle);
     }
 
+    /**
+     * A batch message from the client carries several length prefixed invocations.
+     * Each one is dispatched in order exactly as if it had arrived in its own message.
+     * @return the responses generated inline for the invocations that failed before
+     *         being initiated, in the order of the invocations
+     * @throws IOException if the message is malformed
+     */
+    final List<ClientResponseImpl> handleBatchRead(ByteBuffer message, ClientInputHandler handler, Connection ccxn)
+            throws IOException {
+        if (message.remaining() < 5 || message.get() != ProcedureBatch.BATCH_FRAME_VERSION) {
+            throw new IOException("Batch message is missing its header");
+        }
+        final int count = message.getInt();
+        if (count < 0) {
+            throw new IOException("Batch message has a negative invocation count " + count);
+        }
+        final List<ClientResponseImpl> errors = new ArrayList<ClientResponseImpl>();
+        for (int ii = 0; ii < count; ii++) {
+            final int length = message.remaining() < 4 ? -1 : message.getInt();
+            if (length < 0 || length > message.remaining()) {
+                throw new IOException("Invocation " + ii + " of " + count + " in batch message has length " +
+                        length + " but only " + message.remaining() + " bytes remain");
+            }
+            final ByteBuffer invocation = message.slice();
+            invocation.limit(length);
+            message.position(message.position() + length);
+
+            final ClientResponseImpl error = handleRead(invocation, handler, ccxn);
+            if (error != null) {
+                errors.add(error);
+            }
+        }
+        return errors;
+    }
+
     /**
      *
      * @param port
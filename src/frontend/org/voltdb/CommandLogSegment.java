@@ -0,0 +1,329 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+import org.voltcore.logging.VoltLogger;
+import org.voltcore.utils.InstanceId;
+import org.voltdb.messaging.Iv2InitiateTaskMessage;
+import org.voltdb.messaging.VoltDbMessageFactory;
+
+/**
+ * On disk format of the segments written by {@link GroupCommitCommandLog}.
+ *
+ * A segment starts with a header naming the cluster instance that wrote it and the
+ * per-partition txnIds of the snapshot the log follows, so replay can tell which snapshots
+ * it can be applied on top of. Records follow as a 4 byte length, a CRC32 of the record
+ * body and the body. A record that is cut short or doesn't match its CRC marks the end
+ * of the log, it was being written when the node died and was never made durable.
+ */
+class CommandLogSegment {
+    private static final VoltLogger LOG = new VoltLogger("LOGGING");
+
+    static final int MAGIC = 0x56434c47;
+    static final int VERSION = 1;
+    static final String PREFIX = "commandlog_";
+    static final String EXTENSION = ".vcl";
+
+    static final byte INITIATE_RECORD = 1;
+    static final byte FAULT_RECORD = 2;
+
+    // length and CRC that precede every record body
+    static final int RECORD_HEADER_SIZE = 4 + 4;
+    // type, spHandle and the involved partition count
+    static final int INITIATE_HEADER_SIZE = 1 + 8 + 4;
+
+    final long m_id;
+    final File m_file;
+    final InstanceId m_instanceId;
+    final long m_mpTxnId;
+    final Map<Integer, Long> m_partitionTxnIds;
+
+    private CommandLogSegment(long id, File file, InstanceId instanceId, long mpTxnId,
+            Map<Integer, Long> partitionTxnIds) {
+        m_id = id;
+        m_file = file;
+        m_instanceId = instanceId;
+        m_mpTxnId = mpTxnId;
+        m_partitionTxnIds = partitionTxnIds;
+    }
+
+    static File segmentFile(File dir, long id) {
+        return new File(dir, PREFIX + id + EXTENSION);
+    }
+
+    static long segmentId(File file) {
+        final String name = file.getName();
+        return Long.parseLong(name.substring(PREFIX.length(), name.length() - EXTENSION.length()));
+    }
+
+    /**
+     * @return the segment files in the directory, oldest first
+     */
+    static List<File> listSegmentFiles(File dir) {
+        final File files[] = dir.listFiles(new FileFilter() {
+            @Override
+            public boolean accept(File f) {
+                final String name = f.getName();
+                if (!f.isFile() || !name.startsWith(PREFIX) || !name.endsWith(EXTENSION)) {
+                    return false;
+                }
+                try {
+                    segmentId(f);
+                    return true;
+                } catch (NumberFormatException e) {
+                    return false;
+                }
+            }
+        });
+        if (files == null) {
+            return Collections.emptyList();
+        }
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File o1, File o2) {
+                return Long.compare(segmentId(o1), segmentId(o2));
+            }
+        });
+        return Arrays.asList(files);
+    }
+
+    static ByteBuffer serializeHeader(long id, InstanceId instanceId, long mpTxnId,
+            Map<Integer, Long> partitionTxnIds) {
+        ByteBuffer buf = ByteBuffer.allocate(4 + 4 + 8 + 4 + 8 + 8 + 4 + partitionTxnIds.size() * (4 + 8));
+        buf.putInt(MAGIC);
+        buf.putInt(VERSION);
+        buf.putLong(id);
+        buf.putInt(instanceId.getCoord());
+        buf.putLong(instanceId.getTimestamp());
+        buf.putLong(mpTxnId);
+        buf.putInt(partitionTxnIds.size());
+        for (Map.Entry<Integer, Long> e : partitionTxnIds.entrySet()) {
+            buf.putInt(e.getKey());
+            buf.putLong(e.getValue());
+        }
+        buf.flip();
+        return buf;
+    }
+
+    private static CommandLogSegment deserializeHeader(File file, ByteBuffer buf) throws IOException {
+        if (buf.remaining() < 4 + 4 || buf.getInt() != MAGIC) {
+            throw new IOException("Command log segment " + file + " has an invalid header");
+        }
+        final int version = buf.getInt();
+        if (version != VERSION) {
+            throw new IOException("Command log segment " + file + " has unsupported version " + version);
+        }
+        final long id = buf.getLong();
+        final InstanceId instanceId = new InstanceId(buf.getInt(), buf.getLong());
+        final long mpTxnId = buf.getLong();
+        final int partitionCount = buf.getInt();
+        final Map<Integer, Long> partitionTxnIds = new TreeMap<Integer, Long>();
+        for (int i = 0; i < partitionCount; i++) {
+            partitionTxnIds.put(buf.getInt(), buf.getLong());
+        }
+        return new CommandLogSegment(id, file, instanceId, mpTxnId, Collections.unmodifiableMap(partitionTxnIds));
+    }
+
+    /**
+     * Size of the record for an initiate task, including the record header.
+     */
+    static int initiateRecordSize(Iv2InitiateTaskMessage message, int[] involvedPartitions) {
+        return RECORD_HEADER_SIZE + INITIATE_HEADER_SIZE +
+                (involvedPartitions == null ? 0 : involvedPartitions.length * 4) +
+                message.getSerializedSize();
+    }
+
+    /**
+     * Serialize an initiate task record into buf, which must have initiateRecordSize() bytes remaining.
+     */
+    static void writeInitiateRecord(ByteBuffer buf, Iv2InitiateTaskMessage message, long spHandle,
+            int[] involvedPartitions, int recordSize, CRC32 crc) throws IOException {
+        final int start = buf.position();
+        buf.putInt(recordSize - RECORD_HEADER_SIZE);
+        buf.putInt(0);
+        buf.put(INITIATE_RECORD);
+        buf.putLong(spHandle);
+        if (involvedPartitions == null) {
+            buf.putInt(-1);
+        } else {
+            buf.putInt(involvedPartitions.length);
+            for (int partition : involvedPartitions) {
+                buf.putInt(partition);
+            }
+        }
+        // flattenToBuffer() expects a buffer sized exactly to the message
+        final int oldLimit = buf.limit();
+        buf.limit(start + recordSize);
+        final ByteBuffer slice = buf.slice();
+        message.flattenToBuffer(slice);
+        buf.position(buf.limit());
+        buf.limit(oldLimit);
+        finishRecord(buf, start, crc);
+    }
+
+    static ByteBuffer serializeFaultRecord(long writerHSId, long[] survivorHSIds, int partitionId,
+            long spHandle, CRC32 crc) {
+        ByteBuffer buf = ByteBuffer.allocate(RECORD_HEADER_SIZE + 1 + 8 + 4 + 8 + 4 + survivorHSIds.length * 8);
+        buf.putInt(buf.capacity() - RECORD_HEADER_SIZE);
+        buf.putInt(0);
+        buf.put(FAULT_RECORD);
+        buf.putLong(writerHSId);
+        buf.putInt(partitionId);
+        buf.putLong(spHandle);
+        buf.putInt(survivorHSIds.length);
+        for (long hsId : survivorHSIds) {
+            buf.putLong(hsId);
+        }
+        finishRecord(buf, 0, crc);
+        buf.flip();
+        return buf;
+    }
+
+    private static void finishRecord(ByteBuffer buf, int start, CRC32 crc) {
+        final ByteBuffer body = buf.duplicate();
+        body.limit(buf.position());
+        body.position(start + RECORD_HEADER_SIZE);
+        crc.reset();
+        crc.update(body);
+        buf.putInt(start + 4, (int)crc.getValue());
+    }
+
+    /**
+     * A command logged initiate task read back from a segment.
+     */
+    static class InitiateRecord {
+        final long m_spHandle;
+        final int[] m_involvedPartitions;
+        final Iv2InitiateTaskMessage m_message;
+
+        InitiateRecord(long spHandle, int[] involvedPartitions, Iv2InitiateTaskMessage message) {
+            m_spHandle = spHandle;
+            m_involvedPartitions = involvedPartitions;
+            m_message = message;
+        }
+
+        boolean isMultiPartition() {
+            return m_involvedPartitions != null || !m_message.isSinglePartition();
+        }
+    }
+
+    /**
+     * Read the header of a segment without mapping the rest of it.
+     */
+    static CommandLogSegment readHeader(File file) throws IOException {
+        final Reader reader = new Reader(file);
+        try {
+            return reader.m_segment;
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Reads the initiate task records of a segment in the order they were logged.
+     */
+    static class Reader implements Closeable {
+        private final FileChannel m_channel;
+        private final MappedByteBuffer m_buf;
+        private final CRC32 m_crc = new CRC32();
+        private final VoltDbMessageFactory m_factory = new VoltDbMessageFactory();
+        final CommandLogSegment m_segment;
+
+        Reader(File file) throws IOException {
+            m_channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+            try {
+                m_buf = m_channel.map(MapMode.READ_ONLY, 0, m_channel.size());
+                m_segment = deserializeHeader(file, m_buf);
+            } catch (IOException e) {
+                m_channel.close();
+                throw e;
+            } catch (RuntimeException e) {
+                m_channel.close();
+                throw new IOException("Command log segment " + file + " has a truncated header", e);
+            }
+        }
+
+        /**
+         * @return the next initiate task, or null at the end of the segment
+         */
+        InitiateRecord next() throws IOException {
+            while (m_buf.remaining() >= RECORD_HEADER_SIZE) {
+                final int length = m_buf.getInt();
+                final int expectedCrc = m_buf.getInt();
+                if (length <= 0 || length > m_buf.remaining()) {
+                    return truncated();
+                }
+                final ByteBuffer body = m_buf.slice();
+                body.limit(length);
+                m_crc.reset();
+                m_crc.update(body.duplicate());
+                if ((int)m_crc.getValue() != expectedCrc) {
+                    return truncated();
+                }
+                m_buf.position(m_buf.position() + length);
+
+                if (body.get() != INITIATE_RECORD) {
+                    // fault records only matter to the live cluster
+                    continue;
+                }
+                final long spHandle = body.getLong();
+                final int partitionCount = body.getInt();
+                int[] involvedPartitions = null;
+                if (partitionCount >= 0) {
+                    involvedPartitions = new int[partitionCount];
+                    for (int i = 0; i < partitionCount; i++) {
+                        involvedPartitions[i] = body.getInt();
+                    }
+                }
+                final Iv2InitiateTaskMessage message =
+                        (Iv2InitiateTaskMessage)m_factory.createMessageFromBuffer(body.slice(), -1);
+                return new InitiateRecord(spHandle, involvedPartitions, message);
+            }
+            return null;
+        }
+
+        private InitiateRecord truncated() {
+            LOG.warn("Command log segment " + m_segment.m_file + " ends with a partially written record at offset " +
+                     m_buf.position() + ", ignoring the rest of the segment");
+            m_buf.position(m_buf.limit());
+            return null;
+        }
+
+        @Override
+        public void close() throws IOException {
+            m_channel.close();
+        }
+    }
+}
@@ -31,7 +31,12 @@ public class CommandLogStats extends StatsSource {
         OUTSTANDING_TXNS,
         IN_USE_SEGMENT_COUNT,
         SEGMENT_COUNT,
-        FSYNC_INTERVAL
+        FSYNC_INTERVAL,
+        TXNS_LOGGED,
+        BYTES_LOGGED,
+        FSYNC_COUNT,
+        AVG_FSYNC_LATENCY_MICROS,
+        AVG_COMMIT_LATENCY_MICROS
     };
 
     public CommandLogStats(CommandLog commandLog) {
@@ -47,6 +52,11 @@ public class CommandLogStats extends StatsSource {
         columns.add(new VoltTable.ColumnInfo(StatName.IN_USE_SEGMENT_COUNT.name(), VoltType.INTEGER));
         columns.add(new VoltTable.ColumnInfo(StatName.SEGMENT_COUNT.name(), VoltType.INTEGER));
         columns.add(new VoltTable.ColumnInfo(StatName.FSYNC_INTERVAL.name(), VoltType.INTEGER));
+        columns.add(new VoltTable.ColumnInfo(StatName.TXNS_LOGGED.name(), VoltType.BIGINT));
+        columns.add(new VoltTable.ColumnInfo(StatName.BYTES_LOGGED.name(), VoltType.BIGINT));
+        columns.add(new VoltTable.ColumnInfo(StatName.FSYNC_COUNT.name(), VoltType.BIGINT));
+        columns.add(new VoltTable.ColumnInfo(StatName.AVG_FSYNC_LATENCY_MICROS.name(), VoltType.BIGINT));
+        columns.add(new VoltTable.ColumnInfo(StatName.AVG_COMMIT_LATENCY_MICROS.name(), VoltType.BIGINT));
     }
 
     @Override
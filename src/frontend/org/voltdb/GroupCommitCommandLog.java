@@ -0,0 +1,646 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+import org.apache.zookeeper_voltpatches.CreateMode;
+import org.apache.zookeeper_voltpatches.ZooDefs.Ids;
+import org.voltcore.logging.VoltLogger;
+import org.voltcore.utils.CoreUtils;
+import org.voltcore.utils.DBBPool;
+import org.voltcore.utils.DBBPool.BBContainer;
+import org.voltcore.utils.InstanceId;
+import org.voltdb.iv2.TransactionTask;
+import org.voltdb.iv2.TxnEgo;
+import org.voltdb.messaging.Iv2InitiateTaskMessage;
+
+import com.google_voltpatches.common.util.concurrent.Futures;
+import com.google_voltpatches.common.util.concurrent.ListenableFuture;
+import com.google_voltpatches.common.util.concurrent.SettableFuture;
+
+/**
+ * Command log for builds without the enterprise command log.
+ *
+ * Initiate tasks are handed to a single writer thread that serializes them into a
+ * direct staging buffer and appends them to the current segment file, see
+ * {@link CommandLogSegment} for the format. Transactions are made durable in groups:
+ * <ul>
+ * <li>Synchronous logging fsyncs as soon as the writer runs out of queued tasks, or
+ * after COMMAND_LOG_SYNC_WINDOW_MICROS to let more tasks join the group. Tasks are
+ * only released for execution, through their durability listener, once the fsync is done.</li>
+ * <li>Asynchronous logging writes tasks through to the file as they arrive and fsyncs
+ * every fsync interval. Callers only wait when too many bytes are outstanding.</li>
+ * </ul>
+ * Either mode also commits once the configured number of transactions or
+ * COMMAND_LOG_BATCH_BYTES have been written since the last fsync.
+ *
+ * Segments roll over at COMMAND_LOG_SEGMENT_SIZE_MB and are deleted once a truncation
+ * snapshot covers everything logged in them. A truncation snapshot is requested when
+ * the segments on disk exceed the configured log size.
+ *
+ * The community edition only accepts the create start action on the command line, so
+ * segments are recovered by starting an initialized root with "voltdb start". Segments
+ * in the command log directory make the node non-bare, so the start probes to the
+ * recover action and {@link GroupCommitCommandLogReinitiator} replays them. Create
+ * refuses to run over leftover segments unless --force is given, see
+ * {@link #leftoverSegmentsError(File)}.
+ */
+public class GroupCommitCommandLog implements CommandLog, SnapshotCompletionInterest {
+    private static final VoltLogger LOG = new VoltLogger("LOGGING");
+
+    static final long SEGMENT_SIZE = Integer.getInteger("COMMAND_LOG_SEGMENT_SIZE_MB", 64) * 1024L * 1024L;
+    static final int BATCH_BYTES = Integer.getInteger("COMMAND_LOG_BATCH_BYTES", 1024 * 1024);
+    static final long SYNC_WINDOW_NANOS =
+            TimeUnit.MICROSECONDS.toNanos(Integer.getInteger("COMMAND_LOG_SYNC_WINDOW_MICROS", 0));
+    // async logging makes callers wait on a future past this many outstanding bytes
+    static final long ASYNC_BACKPRESSURE_BYTES = Long.getLong("COMMAND_LOG_ASYNC_BACKPRESSURE_BYTES", 32 * 1024 * 1024);
+    // most queued entries the writer takes at once
+    private static final int MAX_DRAIN = 1024;
+
+    private static final ListenableFuture<Object> DURABLE = Futures.immediateFuture(null);
+
+    private static class Entry {
+        enum Type { INITIATE, FAULT, LAST_DURABLE_UNIQUE_ID, ROLL, SHUTDOWN }
+
+        final Type m_type;
+        Iv2InitiateTaskMessage m_message;
+        long m_spHandle;
+        int[] m_involvedPartitions;
+        DurabilityListener m_listener;
+        TransactionTask m_task;
+        int m_size;
+        long m_enqueueNanos;
+        SettableFuture<Object> m_future;
+        long m_uniqueId;
+        ByteBuffer m_faultRecord;
+
+        Entry(Type type) {
+            m_type = type;
+        }
+    }
+
+    /**
+     * A segment on disk and the newest transactions logged in it, so it can be deleted
+     * once a truncation snapshot includes all of them.
+     */
+    private static class SegmentInfo {
+        final long m_id;
+        final File m_file;
+        long m_bytes;
+        final Map<Integer, Long> m_maxSpHandles = new HashMap<Integer, Long>();
+        long m_maxMpTxnId = Long.MIN_VALUE;
+
+        SegmentInfo(long id, File file) {
+            m_id = id;
+            m_file = file;
+        }
+
+        boolean isCoveredBy(long mpTxnId, Map<Integer, Long> partitionTxnIds) {
+            if (m_maxMpTxnId > mpTxnId) {
+                return false;
+            }
+            for (Map.Entry<Integer, Long> e : m_maxSpHandles.entrySet()) {
+                final Long snapshotTxnId = partitionTxnIds.get(e.getKey());
+                if (snapshotTxnId == null || snapshotTxnId < e.getValue()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private final boolean m_synchronous;
+    private final long m_fsyncIntervalNanos;
+    private final int m_maxTxnsBeforeFsync;
+    private final long m_asyncBackpressureBytes;
+    private final File m_logPath;
+
+    private final LinkedBlockingQueue<Entry> m_pending = new LinkedBlockingQueue<Entry>();
+    private final Thread m_writer;
+    private volatile boolean m_initialized = false;
+    private long m_logSizeBytes = Long.MAX_VALUE;
+
+    // header values for new segments, the snapshot the log follows
+    private volatile InstanceId m_instanceId;
+    private volatile long m_baseMpTxnId = Long.MIN_VALUE;
+    private volatile Map<Integer, Long> m_basePartitionTxnIds = Collections.emptyMap();
+
+    // segments on disk, oldest first, the last one is being written
+    private final ArrayDeque<SegmentInfo> m_segments = new ArrayDeque<SegmentInfo>();
+    private final AtomicBoolean m_truncationRequested = new AtomicBoolean(false);
+
+    // owned by the writer thread
+    private FileChannel m_channel;
+    private SegmentInfo m_currentSegment;
+    private long m_nextSegmentId = 0;
+    private BBContainer m_staging;
+    private final CRC32 m_crc = new CRC32();
+    private final List<Entry> m_unsynced = new ArrayList<Entry>();
+    private final Set<DurabilityListener> m_touchedListeners =
+            Collections.newSetFromMap(new IdentityHashMap<DurabilityListener, Boolean>());
+    private long m_windowStartNanos;
+    private int m_txnsSinceSync = 0;
+    private long m_bytesSinceSync = 0;
+    private long m_lastSyncNanos = System.nanoTime();
+
+    // statistics
+    private final AtomicLong m_outstandingBytes = new AtomicLong();
+    private final AtomicLong m_outstandingTxns = new AtomicLong();
+    private volatile long m_txnsLogged = 0;
+    private volatile long m_bytesLogged = 0;
+    private volatile long m_fsyncs = 0;
+    private volatile long m_fsyncNanos = 0;
+    private volatile long m_commitLatencyNanos = 0;
+    private volatile long m_fsyncIntervalMs = 0;
+
+    public GroupCommitCommandLog(boolean synchronous, int fsyncIntervalMs, int maxTxnsBeforeFsync,
+            String logPath, String internalSnapshotPath) {
+        this(synchronous, fsyncIntervalMs, maxTxnsBeforeFsync, logPath, ASYNC_BACKPRESSURE_BYTES);
+    }
+
+    GroupCommitCommandLog(boolean synchronous, int fsyncIntervalMs, int maxTxnsBeforeFsync,
+            String logPath, long asyncBackpressureBytes) {
+        m_synchronous = synchronous;
+        m_fsyncIntervalNanos = TimeUnit.MILLISECONDS.toNanos(fsyncIntervalMs);
+        m_maxTxnsBeforeFsync = maxTxnsBeforeFsync;
+        m_asyncBackpressureBytes = asyncBackpressureBytes;
+        m_logPath = new File(logPath);
+        m_writer = CoreUtils.getThreadFactory(null, "Command log writer", CoreUtils.SMALL_STACK_SIZE, false, null)
+                .newThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        runWriter();
+                    }
+                });
+        m_writer.start();
+    }
+
+    @Override
+    public void init(int logSize, long txnId, int partitionCount, String coreBinding,
+            Map<Integer, Long> perPartitionTxnId) {
+        m_logSizeBytes = logSize * 1024L * 1024L;
+        m_instanceId = VoltDB.instance().getHostMessenger().getInstanceId();
+        m_baseMpTxnId = txnId;
+        m_basePartitionTxnIds = perPartitionTxnId == null ? Collections.<Integer, Long>emptyMap() :
+                Collections.unmodifiableMap(new TreeMap<Integer, Long>(perPartitionTxnId));
+        try {
+            if (!m_logPath.exists() && !m_logPath.mkdirs()) {
+                throw new IOException("Unable to create command log directory " + m_logPath);
+            }
+            // Anything left over has been replayed and covered by the truncation snapshot
+            // taken at the end of recovery, or create --force was asked to overwrite it
+            for (File f : CommandLogSegment.listSegmentFiles(m_logPath)) {
+                m_nextSegmentId = Math.max(m_nextSegmentId, CommandLogSegment.segmentId(f) + 1);
+                if (!f.delete()) {
+                    LOG.warn("Unable to delete old command log segment " + f);
+                }
+            }
+            m_staging = DBBPool.allocateDirect(BATCH_BYTES);
+            openSegment();
+        } catch (IOException e) {
+            VoltDB.crashLocalVoltDB("Unable to initialize the command log in " + m_logPath, true, e);
+        }
+        VoltDB.instance().getSnapshotCompletionMonitor().addInterest(this);
+        LOG.info("Command logging to " + m_logPath + (m_synchronous ? ", synchronous" : ", asynchronous") +
+                 " with fsync interval " + TimeUnit.NANOSECONDS.toMillis(m_fsyncIntervalNanos) + "ms");
+        m_initialized = true;
+    }
+
+    /**
+     * @return an error if the directory holds segments of a previous database session,
+     * which a create without --force must not overwrite, null otherwise
+     */
+    static String leftoverSegmentsError(File logPath) {
+        if (CommandLogSegment.listSegmentFiles(logPath).isEmpty()) {
+            return null;
+        }
+        return "Command log segments from a previous database session exist in " + logPath.getAbsolutePath() +
+               "\nUse the start command on the initialized root to recover the previous database" +
+               " or use create --force to start a new database session overwriting them.";
+    }
+
+    @Override
+    public void initForRejoin(int logSize, long txnId, int partitionCount, boolean isRejoin,
+            String coreBinding, Map<Integer, Long> perPartitionTxnId) {
+        init(logSize, txnId, partitionCount, coreBinding, perPartitionTxnId);
+    }
+
+    @Override
+    public boolean needsInitialization() {
+        return !m_initialized;
+    }
+
+    @Override
+    public ListenableFuture<Object> log(Iv2InitiateTaskMessage message, long spHandle,
+            int[] involvedPartitions, DurabilityListener listener, TransactionTask durabilityHandle) {
+        final Entry e = new Entry(Entry.Type.INITIATE);
+        e.m_message = message;
+        e.m_spHandle = spHandle;
+        e.m_involvedPartitions = involvedPartitions;
+        e.m_listener = listener;
+        e.m_task = durabilityHandle;
+        e.m_size = CommandLogSegment.initiateRecordSize(message, involvedPartitions);
+        e.m_enqueueNanos = System.nanoTime();
+        m_outstandingTxns.incrementAndGet();
+        final long outstanding = m_outstandingBytes.addAndGet(e.m_size);
+        if (!m_synchronous && outstanding > m_asyncBackpressureBytes) {
+            e.m_future = SettableFuture.create();
+        }
+        m_pending.offer(e);
+
+        if (m_synchronous) {
+            // the durability listener offers the task once it is durable
+            return null;
+        }
+        return e.m_future == null ? DURABLE : e.m_future;
+    }
+
+    @Override
+    public void shutdown() throws InterruptedException {
+        m_pending.offer(new Entry(Entry.Type.SHUTDOWN));
+        m_writer.join();
+        if (m_initialized) {
+            VoltDB.instance().getSnapshotCompletionMonitor().removeInterest(this);
+        }
+    }
+
+    @Override
+    public void logIv2Fault(long writerHSId, Set<Long> survivorHSId, int partitionId, long spHandle) {
+        final long survivors[] = new long[survivorHSId.size()];
+        int i = 0;
+        for (long hsId : survivorHSId) {
+            survivors[i++] = hsId;
+        }
+        final Entry e = new Entry(Entry.Type.FAULT);
+        e.m_faultRecord = CommandLogSegment.serializeFaultRecord(writerHSId, survivors, partitionId, spHandle,
+                new CRC32());
+        m_pending.offer(e);
+    }
+
+    @Override
+    public void initializeLastDurableUniqueId(DurabilityListener listener, long uniqueId) {
+        final Entry e = new Entry(Entry.Type.LAST_DURABLE_UNIQUE_ID);
+        e.m_listener = listener;
+        e.m_uniqueId = uniqueId;
+        m_pending.offer(e);
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return true;
+    }
+
+    @Override
+    public void requestTruncationSnapshot(final boolean queueIfPending) {
+        if (!m_truncationRequested.compareAndSet(false, true) && !queueIfPending) {
+            return;
+        }
+        // start a new segment so everything logged so far can go once the snapshot is done
+        m_pending.offer(new Entry(Entry.Type.ROLL));
+        VoltDB.instance().scheduleWork(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    VoltDB.instance().getHostMessenger().getZK().create(
+                            VoltZK.request_truncation_snapshot_node, null,
+                            Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT_SEQUENTIAL);
+                } catch (Exception e) {
+                    LOG.warn("Unable to request a command log truncation snapshot", e);
+                    m_truncationRequested.set(false);
+                }
+            }
+        }, 0, 0, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public CountDownLatch snapshotCompleted(SnapshotCompletionEvent event) {
+        if (event.truncationSnapshot && event.didSucceed) {
+            m_baseMpTxnId = event.multipartTxnId;
+            m_basePartitionTxnIds = Collections.unmodifiableMap(new TreeMap<Integer, Long>(event.partitionTxnIds));
+            synchronized (m_segments) {
+                final Iterator<SegmentInfo> iter = m_segments.iterator();
+                while (iter.hasNext()) {
+                    final SegmentInfo segment = iter.next();
+                    if (segment == m_segments.peekLast() ||
+                        !segment.isCoveredBy(event.multipartTxnId, event.partitionTxnIds)) {
+                        break;
+                    }
+                    iter.remove();
+                    if (!segment.m_file.delete()) {
+                        LOG.warn("Unable to delete truncated command log segment " + segment.m_file);
+                    }
+                }
+            }
+            m_truncationRequested.set(false);
+        }
+        return new CountDownLatch(0);
+    }
+
+    @Override
+    public void populateCommandLogStats(Map<String, Integer> columnNameToIndex, Object[] rowValues) {
+        int inUseSegments;
+        synchronized (m_segments) {
+            inUseSegments = m_segments.size();
+        }
+        final long fsyncs = m_fsyncs;
+        final long txnsLogged = m_txnsLogged;
+        final int maxSegments = (int)Math.min(Integer.MAX_VALUE, (m_logSizeBytes + SEGMENT_SIZE - 1) / SEGMENT_SIZE);
+        rowValues[columnNameToIndex.get(CommandLogStats.StatName.OUTSTANDING_BYTES.name())] = m_outstandingBytes.get();
+        rowValues[columnNameToIndex.get(CommandLogStats.StatName.OUTSTANDING_TXNS.name())] = m_outstandingTxns.get();
+        rowValues[columnNameToIndex.get(CommandLogStats.StatName.IN_USE_SEGMENT_COUNT.name())] = inUseSegments;
+        rowValues[columnNameToIndex.get(CommandLogStats.StatName.SEGMENT_COUNT.name())] = Math.max(inUseSegments, maxSegments);
+        rowValues[columnNameToIndex.get(CommandLogStats.StatName.FSYNC_INTERVAL.name())] = (int)m_fsyncIntervalMs;
+        rowValues[columnNameToIndex.get(CommandLogStats.StatName.TXNS_LOGGED.name())] = txnsLogged;
+        rowValues[columnNameToIndex.get(CommandLogStats.StatName.BYTES_LOGGED.name())] = m_bytesLogged;
+        rowValues[columnNameToIndex.get(CommandLogStats.StatName.FSYNC_COUNT.name())] = fsyncs;
+        rowValues[columnNameToIndex.get(CommandLogStats.StatName.AVG_FSYNC_LATENCY_MICROS.name())] =
+                fsyncs == 0 ? 0L : TimeUnit.NANOSECONDS.toMicros(m_fsyncNanos / fsyncs);
+        rowValues[columnNameToIndex.get(CommandLogStats.StatName.AVG_COMMIT_LATENCY_MICROS.name())] =
+                txnsLogged == 0 ? 0L : TimeUnit.NANOSECONDS.toMicros(m_commitLatencyNanos / txnsLogged);
+    }
+
+    @Override
+    public boolean isSynchronous() {
+        return m_synchronous;
+    }
+
+    @Override
+    public boolean canOfferTask() {
+        return !m_synchronous;
+    }
+
+    @Override
+    public void registerDurabilityListener(DurabilityListener durabilityListener) {
+        // listeners are notified as the tasks they logged become durable
+    }
+
+    private void runWriter() {
+        final List<Entry> batch = new ArrayList<Entry>();
+        boolean shutdown = false;
+        try {
+            while (!shutdown) {
+                Entry e;
+                if (m_unsynced.isEmpty() && m_touchedListeners.isEmpty()) {
+                    e = m_pending.take();
+                } else {
+                    final long windowNanos = m_synchronous ? SYNC_WINDOW_NANOS : m_fsyncIntervalNanos;
+                    e = m_pending.poll(m_windowStartNanos + windowNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+                }
+                if (e != null) {
+                    batch.add(e);
+                    m_pending.drainTo(batch, MAX_DRAIN);
+                    for (Entry entry : batch) {
+                        shutdown |= process(entry);
+                    }
+                    batch.clear();
+                }
+                if (!m_synchronous) {
+                    // async logging hands data to the OS as soon as the queue is drained
+                    flushStaging();
+                }
+                if (shutdown || shouldSync()) {
+                    sync();
+                }
+            }
+            closeSegment();
+        } catch (InterruptedException e) {
+            // shutting down
+        } catch (Throwable t) {
+            VoltDB.crashLocalVoltDB("Unable to write to the command log in " + m_logPath, true, t);
+        } finally {
+            if (m_staging != null) {
+                m_staging.discard();
+                m_staging = null;
+            }
+        }
+    }
+
+    /**
+     * @return true if the writer should shut down
+     */
+    private boolean process(Entry e) throws IOException {
+        switch (e.m_type) {
+        case INITIATE:
+            if (m_initialized) {
+                writeInitiate(e);
+            }
+            // tasks logged before initialization are being replayed from an older log
+            e.m_listener.addTransaction(e.m_task);
+            m_touchedListeners.add(e.m_listener);
+            if (m_unsynced.isEmpty()) {
+                m_windowStartNanos = System.nanoTime();
+            }
+            m_unsynced.add(e);
+            m_txnsSinceSync++;
+            m_bytesSinceSync += e.m_size;
+            return false;
+        case FAULT:
+            if (m_initialized) {
+                write(e.m_faultRecord);
+            }
+            return false;
+        case LAST_DURABLE_UNIQUE_ID:
+            e.m_listener.initializeLastDurableUniqueId(e.m_uniqueId);
+            if (m_touchedListeners.isEmpty() && m_unsynced.isEmpty()) {
+                m_windowStartNanos = System.nanoTime();
+            }
+            m_touchedListeners.add(e.m_listener);
+            return false;
+        case ROLL:
+            if (m_initialized && m_currentSegment.m_bytes > 0) {
+                sync();
+                rollSegment();
+            }
+            return false;
+        case SHUTDOWN:
+            return true;
+        default:
+            throw new IllegalStateException("Unknown command log entry " + e.m_type);
+        }
+    }
+
+    private void writeInitiate(Entry e) throws IOException {
+        ByteBuffer buf = m_staging.b();
+        if (buf.remaining() < e.m_size) {
+            flushStaging();
+        }
+        if (buf.remaining() >= e.m_size) {
+            CommandLogSegment.writeInitiateRecord(buf, e.m_message, e.m_spHandle, e.m_involvedPartitions, e.m_size, m_crc);
+        } else {
+            // bigger than the staging buffer, serialize it on its own
+            final BBContainer cont = DBBPool.allocateDirect(e.m_size);
+            try {
+                CommandLogSegment.writeInitiateRecord(cont.b(), e.m_message, e.m_spHandle, e.m_involvedPartitions,
+                        e.m_size, m_crc);
+                cont.b().flip();
+                write(cont.b());
+            } finally {
+                cont.discard();
+            }
+        }
+
+        final int partition = TxnEgo.getPartitionId(e.m_spHandle);
+        final Long maxSpHandle = m_currentSegment.m_maxSpHandles.get(partition);
+        if (maxSpHandle == null || maxSpHandle < e.m_spHandle) {
+            m_currentSegment.m_maxSpHandles.put(partition, e.m_spHandle);
+        }
+        if (e.m_involvedPartitions != null || !e.m_message.isSinglePartition()) {
+            m_currentSegment.m_maxMpTxnId = Math.max(m_currentSegment.m_maxMpTxnId, e.m_message.getTxnId());
+        }
+        m_currentSegment.m_bytes += e.m_size;
+        m_bytesLogged += e.m_size;
+        if (m_currentSegment.m_bytes >= SEGMENT_SIZE) {
+            sync();
+            rollSegment();
+        }
+    }
+
+    private void write(ByteBuffer buf) throws IOException {
+        while (buf.hasRemaining()) {
+            m_channel.write(buf);
+        }
+    }
+
+    private void flushStaging() throws IOException {
+        if (m_staging == null) {
+            return;
+        }
+        final ByteBuffer buf = m_staging.b();
+        if (buf.position() > 0) {
+            buf.flip();
+            write(buf);
+            buf.clear();
+        }
+        // async callers waiting on backpressure only need the data handed to the file
+        for (Entry e : m_unsynced) {
+            if (e.m_future != null && !e.m_future.isDone()) {
+                e.m_future.set(null);
+            }
+        }
+    }
+
+    private boolean shouldSync() {
+        if (m_unsynced.isEmpty() && m_touchedListeners.isEmpty()) {
+            return false;
+        }
+        if (m_txnsSinceSync >= m_maxTxnsBeforeFsync || m_bytesSinceSync >= BATCH_BYTES) {
+            return true;
+        }
+        final long windowNanos = m_synchronous ? SYNC_WINDOW_NANOS : m_fsyncIntervalNanos;
+        return System.nanoTime() - m_windowStartNanos >= windowNanos;
+    }
+
+    /**
+     * Make everything written so far durable and notify the durability listeners
+     */
+    private void sync() throws IOException {
+        flushStaging();
+        final long start = System.nanoTime();
+        if (m_initialized && m_txnsSinceSync > 0) {
+            m_channel.force(false);
+            final long end = System.nanoTime();
+            m_fsyncNanos += end - start;
+            m_fsyncs++;
+            m_fsyncIntervalMs = TimeUnit.NANOSECONDS.toMillis(end - m_lastSyncNanos);
+            m_lastSyncNanos = end;
+        }
+
+        final long now = System.nanoTime();
+        long latencyNanos = 0;
+        long bytes = 0;
+        for (Entry e : m_unsynced) {
+            latencyNanos += now - e.m_enqueueNanos;
+            bytes += e.m_size;
+        }
+        m_commitLatencyNanos += latencyNanos;
+        m_txnsLogged += m_unsynced.size();
+        m_outstandingBytes.addAndGet(-bytes);
+        m_outstandingTxns.addAndGet(-m_unsynced.size());
+        m_unsynced.clear();
+        m_txnsSinceSync = 0;
+        m_bytesSinceSync = 0;
+
+        for (DurabilityListener listener : m_touchedListeners) {
+            final CompletionChecks checks = listener.startNewTaskList(listener.getNumberOfTasks());
+            listener.processDurabilityChecks(checks);
+        }
+        m_touchedListeners.clear();
+
+        if (m_initialized && onDiskBytes() > m_logSizeBytes) {
+            requestTruncationSnapshot(false);
+        }
+    }
+
+    private long onDiskBytes() {
+        long bytes = 0;
+        synchronized (m_segments) {
+            for (SegmentInfo segment : m_segments) {
+                bytes += segment.m_bytes;
+            }
+        }
+        return bytes;
+    }
+
+    private void openSegment() throws IOException {
+        final long id = m_nextSegmentId++;
+        final File file = CommandLogSegment.segmentFile(m_logPath, id);
+        m_channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        write(CommandLogSegment.serializeHeader(id, m_instanceId, m_baseMpTxnId, m_basePartitionTxnIds));
+        m_channel.force(true);
+        m_currentSegment = new SegmentInfo(id, file);
+        synchronized (m_segments) {
+            m_segments.add(m_currentSegment);
+        }
+    }
+
+    private void closeSegment() throws IOException {
+        if (m_channel != null) {
+            flushStaging();
+            m_channel.force(false);
+            m_channel.close();
+            m_channel = null;
+        }
+    }
+
+    private void rollSegment() throws IOException {
+        closeSegment();
+        openSegment();
+    }
+}
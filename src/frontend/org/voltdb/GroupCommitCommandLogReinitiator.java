@@ -0,0 +1,313 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Semaphore;
+
+import org.voltcore.logging.VoltLogger;
+import org.voltcore.messaging.HostMessenger;
+import org.voltcore.utils.CoreUtils;
+import org.voltcore.utils.InstanceId;
+import org.voltdb.client.ClientResponse;
+import org.voltdb.dtxn.TransactionCreator;
+import org.voltdb.iv2.LeaderCache;
+import org.voltdb.iv2.MpInitiator;
+import org.voltdb.iv2.TxnEgo;
+import org.voltdb.messaging.Iv2InitiateTaskMessage;
+
+/**
+ * Replays the segments written by {@link GroupCommitCommandLog}.
+ *
+ * Every node replays the single partition transactions of the partitions it is the
+ * master of, along with a sentinel for each multi-partition transaction in their streams,
+ * and then sends them an end of log. The node with the MPI initiates the multi-partition
+ * transactions found in its segments in unique ID order. Transactions already included
+ * in the restored snapshot are skipped.
+ *
+ * Only recover start actions replay. In the community edition that is what
+ * "voltdb start" probes to when the command log directory holds segments.
+ */
+public class GroupCommitCommandLogReinitiator implements CommandLogReinitiator {
+    private static final VoltLogger LOG = new VoltLogger("LOGGING");
+
+    // most replayed transactions a replay thread has waiting for a response
+    static final int MAX_OUTSTANDING_TXNS = Integer.getInteger("COMMAND_LOG_REPLAY_MAX_OUTSTANDING", 5000);
+
+    private final int m_hostId;
+    private final HostMessenger m_messenger;
+    private final List<File> m_segmentFiles;
+    private final CommandLogSegment m_oldestSegment;
+    private final SimpleClientResponseAdapter m_adapter =
+            new SimpleClientResponseAdapter(ClientInterface.CL_REPLAY_BASE_CID, "CommandLogReplayAdapter");
+
+    private Callback m_callback;
+    private TransactionCreator m_initiator;
+    private boolean m_isMPINode = false;
+    private long m_snapshotMpTxnId = Long.MIN_VALUE;
+    private Map<Integer, Long> m_snapshotPartitionTxnIds = Collections.emptyMap();
+    private volatile boolean m_replayedTxns = false;
+
+    public GroupCommitCommandLogReinitiator(int hostId, StartAction action, HostMessenger messenger, String clPath) {
+        m_hostId = hostId;
+        m_messenger = messenger;
+        List<File> segmentFiles = Collections.emptyList();
+        CommandLogSegment oldestSegment = null;
+        if (action.doesRecover()) {
+            segmentFiles = CommandLogSegment.listSegmentFiles(new File(clPath));
+            // a segment without a complete header was being created when the node died
+            while (!segmentFiles.isEmpty() && oldestSegment == null) {
+                try {
+                    oldestSegment = CommandLogSegment.readHeader(segmentFiles.get(0));
+                } catch (IOException e) {
+                    LOG.warn("Skipping unreadable command log segment " + segmentFiles.get(0), e);
+                    segmentFiles = segmentFiles.subList(1, segmentFiles.size());
+                }
+            }
+        }
+        m_segmentFiles = segmentFiles;
+        m_oldestSegment = oldestSegment;
+    }
+
+    @Override
+    public void setSnapshotTxnId(RestoreAgent.SnapshotInfo info) {
+        if (info != null) {
+            m_snapshotMpTxnId = info.txnId;
+            m_snapshotPartitionTxnIds = new TreeMap<Integer, Long>(info.partitionToTxnId);
+        }
+    }
+
+    @Override
+    public void setCallback(Callback callback) {
+        m_callback = callback;
+    }
+
+    @Override
+    public void setInitiator(TransactionCreator initiator) {
+        m_initiator = initiator;
+        m_initiator.bindAdapter(m_adapter);
+    }
+
+    @Override
+    public void initPartitionTracking() {}
+
+    @Override
+    public void generateReplayPlan(long snapshotTimeStamp, long snapshotTxnId,
+            int newPartitionCount, boolean isMPINode) {
+        m_isMPINode = isMPINode;
+    }
+
+    @Override
+    public void replay() {
+        final Thread replayThread = CoreUtils.getThreadFactory("Command log replay").newThread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    doReplay();
+                } catch (Throwable t) {
+                    VoltDB.crashGlobalVoltDB("Failed to replay the command log", true, t);
+                }
+                if (m_callback != null) {
+                    m_callback.onReplayCompletion();
+                }
+            }
+        });
+        replayThread.start();
+    }
+
+    private void doReplay() throws Exception {
+        final Set<Integer> localMasters = new HashSet<Integer>();
+        final LeaderCache masters = new LeaderCache(m_messenger.getZK(), VoltZK.iv2masters);
+        masters.start(true);
+        try {
+            for (Map.Entry<Integer, Long> e : masters.pointInTimeCache().entrySet()) {
+                if (e.getKey() != MpInitiator.MP_INIT_PID && CoreUtils.getHostIdFromHSId(e.getValue()) == m_hostId) {
+                    localMasters.add(e.getKey());
+                }
+            }
+        } finally {
+            masters.shutdown();
+        }
+
+        Thread mpThread = null;
+        if (m_isMPINode) {
+            mpThread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        replayMultiPartition();
+                    } catch (Throwable t) {
+                        VoltDB.crashGlobalVoltDB("Failed to replay multi-partition transactions", true, t);
+                    }
+                }
+            }, "Command log MP replay");
+            mpThread.start();
+        }
+
+        final Semaphore outstanding = new Semaphore(MAX_OUTSTANDING_TXNS);
+        long txns = 0;
+        for (File file : m_segmentFiles) {
+            final CommandLogSegment.Reader reader = openSegment(file);
+            if (reader == null) {
+                continue;
+            }
+            try {
+                CommandLogSegment.InitiateRecord record;
+                while ((record = reader.next()) != null) {
+                    final int partition = TxnEgo.getPartitionId(record.m_spHandle);
+                    if (!localMasters.contains(partition) || isInSnapshot(partition, record.m_spHandle)) {
+                        continue;
+                    }
+                    if (record.isMultiPartition()) {
+                        m_initiator.sendSentinel(record.m_message.getUniqueId(), partition);
+                    } else {
+                        initiate(record.m_message, true, partition, outstanding);
+                        txns++;
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        }
+        for (int partition : localMasters) {
+            m_initiator.sendEOLMessage(partition);
+        }
+        outstanding.acquire(MAX_OUTSTANDING_TXNS);
+        if (mpThread != null) {
+            mpThread.join();
+        }
+        LOG.info("Replayed " + txns + " single partition transactions from the command log for partitions " +
+                 localMasters);
+    }
+
+    private void replayMultiPartition() throws Exception {
+        // the same transaction is logged by every partition it involves
+        final TreeMap<Long, Iv2InitiateTaskMessage> mps = new TreeMap<Long, Iv2InitiateTaskMessage>();
+        for (File file : m_segmentFiles) {
+            final CommandLogSegment.Reader reader = openSegment(file);
+            if (reader == null) {
+                continue;
+            }
+            try {
+                CommandLogSegment.InitiateRecord record;
+                while ((record = reader.next()) != null) {
+                    if (record.isMultiPartition() && record.m_message.getTxnId() > m_snapshotMpTxnId) {
+                        mps.put(record.m_message.getUniqueId(), record.m_message);
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        }
+
+        final Semaphore outstanding = new Semaphore(MAX_OUTSTANDING_TXNS);
+        for (Iv2InitiateTaskMessage message : mps.values()) {
+            initiate(message, false, MpInitiator.MP_INIT_PID, outstanding);
+        }
+        outstanding.acquire(MAX_OUTSTANDING_TXNS);
+        m_initiator.sendEOLMessage(MpInitiator.MP_INIT_PID);
+        LOG.info("Replayed " + mps.size() + " multi-partition transactions from the command log");
+    }
+
+    private CommandLogSegment.Reader openSegment(File file) {
+        try {
+            return new CommandLogSegment.Reader(file);
+        } catch (IOException e) {
+            LOG.warn("Skipping unreadable command log segment " + file, e);
+            return null;
+        }
+    }
+
+    private boolean isInSnapshot(int partition, long spHandle) {
+        final Long snapshotTxnId = m_snapshotPartitionTxnIds.get(partition);
+        return snapshotTxnId != null && spHandle <= snapshotTxnId;
+    }
+
+    private void initiate(Iv2InitiateTaskMessage message, boolean isSinglePartition, int partition,
+            final Semaphore outstanding) throws InterruptedException, IOException {
+        final StoredProcedureInvocation invocation = message.getStoredProcedureInvocation();
+        outstanding.acquire();
+        invocation.setClientHandle(m_adapter.registerCallback(new SimpleClientResponseAdapter.Callback() {
+            @Override
+            public void handleResponse(ClientResponse response) {
+                if (response.getStatus() != ClientResponse.SUCCESS &&
+                    response.getStatus() != ClientResponse.USER_ABORT) {
+                    LOG.warn("Replayed procedure " + invocation.getProcName() + " failed: " +
+                             response.getStatusString());
+                }
+                outstanding.release();
+            }
+        }));
+        m_replayedTxns = true;
+        if (!m_initiator.createTransaction(m_adapter.connectionId(), message.getTxnId(), message.getUniqueId(),
+                invocation, message.isReadOnly(), isSinglePartition, false, partition,
+                invocation.getSerializedSize(), System.nanoTime())) {
+            throw new IOException("Unable to initiate replayed procedure " + invocation.getProcName());
+        }
+    }
+
+    @Override
+    public boolean hasReplayedSegments() {
+        return !m_segmentFiles.isEmpty();
+    }
+
+    @Override
+    public boolean hasReplayedTxns() {
+        return m_replayedTxns;
+    }
+
+    @Override
+    public Long getMaxLastSeenTxn() {
+        return m_oldestSegment == null ? null : m_oldestSegment.m_mpTxnId;
+    }
+
+    @Override
+    public Map<Integer, Long> getMaxLastSeenTxnByPartition() {
+        if (m_oldestSegment == null || m_oldestSegment.m_partitionTxnIds.isEmpty()) {
+            return null;
+        }
+        return m_oldestSegment.m_partitionTxnIds;
+    }
+
+    @Override
+    public InstanceId getInstanceId() {
+        return m_oldestSegment == null ? null : m_oldestSegment.m_instanceId;
+    }
+
+    @Override
+    public void returnAllSegments() {
+        // covered by the truncation snapshot taken at the end of replay
+        for (File file : m_segmentFiles) {
+            if (file.exists() && !file.delete()) {
+                LOG.warn("Unable to delete replayed command log segment " + file);
+            }
+        }
+    }
+
+    @Override
+    public boolean checkAndBalancePartitions() {
+        return true;
+    }
+}
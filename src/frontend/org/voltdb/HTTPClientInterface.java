@@ -18,6 +18,8 @@
 package org.voltdb;
 
 import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -35,6 +37,8 @@ import org.ietf.jgss.GSSException;
 import org.ietf.jgss.GSSManager;
 import org.ietf.jgss.GSSName;
 import org.ietf.jgss.Oid;
+import org.json_voltpatches.JSONException;
+import org.json_voltpatches.JSONWriter;
 import org.voltcore.logging.Level;
 import org.voltcore.logging.VoltLogger;
 import org.voltcore.utils.EstTime;
@@ -43,6 +47,7 @@ import org.voltdb.AuthSystem.AuthUser;
 import org.voltdb.VoltDB.Configuration;
 import org.voltdb.client.ClientAuthScheme;
 import org.voltdb.client.ClientResponse;
+import org.voltdb.client.HTTPResponseDecoder;
 import org.voltdb.client.ProcedureCallback;
 import org.voltdb.security.AuthenticationRequest;
 import org.voltdb.utils.Base64;
@@ -70,7 +75,7 @@ public class HTTPClientInterface {
     final boolean m_spnegoEnabled;
     final String m_servicePrincipal;
 
-    final String m_timeoutResponse;
+    final ClientResponseImpl m_timeoutResponse;
 
     private final Supplier<InternalConnectionHandler> m_invocationHandler =
             Suppliers.memoize(new Supplier<InternalConnectionHandler>() {
@@ -119,14 +124,9 @@ public class HTTPClientInterface {
                 }
                 return;
             }
-            ClientResponseImpl rimpl = (ClientResponseImpl) clientResponse;
-            String msg = rimpl.toJSONString();
-
-            // handle jsonp pattern
-            // http://en.wikipedia.org/wiki/JSON#The_Basic_Idea:_Retrieving_JSON_via_Script_Tags
-            msg = asJsonp(m_jsonp, msg);
-
-            m_continuation.setAttribute("result", msg);
+            // the response is encoded by the jetty thread that resumes the request,
+            // straight into the response, keeping the client interface threads free
+            m_continuation.setAttribute("result", new PendingResponse(m_jsonp, (ClientResponseImpl) clientResponse));
             try {
                 m_continuation.resume();
             } catch (IllegalStateException e) {
@@ -146,16 +146,73 @@ public class HTTPClientInterface {
         @Override
         public void onTimeout(Continuation continuation) {
             if (m_complete.compareAndSet(false, true)) {
-                m_continuation.setAttribute("result", m_timeoutResponse);
+                m_continuation.setAttribute("result", new PendingResponse(m_jsonp, m_timeoutResponse));
                 m_continuation.resume();
             }
         }
     }
 
+    /**
+     * A procedure response waiting to be written by the request's resumed continuation
+     */
+    static class PendingResponse {
+        final String m_jsonp;
+        final ClientResponseImpl m_response;
+
+        PendingResponse(String jsonp, ClientResponseImpl response) {
+            m_jsonp = jsonp;
+            m_response = response;
+        }
+
+        /**
+         * Write the response in the format the request accepts
+         */
+        void write(Request request, HttpServletResponse response) throws IOException {
+            if (acceptsBinary(request)) {
+                writeBinary(response);
+            } else {
+                write(response.getWriter());
+            }
+        }
+
+        /**
+         * Write the response in the wire format of the client protocol, the result tables are
+         * copied into the body as they are
+         */
+        void writeBinary(HttpServletResponse response) throws IOException {
+            final ByteBuffer buf = ByteBuffer.allocate(m_response.getSerializedSize());
+            m_response.flattenToBuffer(buf);
+            response.setContentType(HTTPResponseDecoder.BINARY_CONTENT_TYPE);
+            response.setContentLength(buf.capacity());
+            response.getOutputStream().write(buf.array());
+        }
+
+        /**
+         * Write the response as JSON, or as a jsonp call, a row at a time. The writer is
+         * expected to buffer, jetty's flushes to the connection as its buffer fills up.
+         */
+        void write(Writer writer) throws IOException {
+            // handle jsonp pattern
+            // http://en.wikipedia.org/wiki/JSON#The_Basic_Idea:_Retrieving_JSON_via_Script_Tags
+            if (m_jsonp != null) {
+                writer.write(m_jsonp);
+                writer.write("( ");
+            }
+            try {
+                m_response.toJSONWriter(new JSONWriter(writer));
+            } catch (JSONException e) {
+                Throwables.propagateIfInstanceOf(e.getCause(), IOException.class);
+                throw new IOException("Failed to serialize the response to JSON", e);
+            }
+            if (m_jsonp != null) {
+                writer.write(" )");
+            }
+        }
+    }
+
     public HTTPClientInterface() {
-        final ClientResponseImpl r = new ClientResponseImpl(ClientResponse.CONNECTION_TIMEOUT,
+        m_timeoutResponse = new ClientResponseImpl(ClientResponse.CONNECTION_TIMEOUT,
                 new VoltTable[0], "Request Timeout");
-        m_timeoutResponse = r.toJSONString();
         m_servicePrincipal = getAuthSystem().getServicePrincipal();
         m_spnegoEnabled = m_servicePrincipal != null && !m_servicePrincipal.isEmpty();
     }
@@ -163,6 +220,15 @@ public class HTTPClientInterface {
     public void stop() {
     }
 
+    /**
+     * @return whether the client asked for procedure responses in the binary format
+     * of {@link HTTPResponseDecoder} rather than JSON
+     */
+    static boolean acceptsBinary(Request request) {
+        final String accept = request.getHeader(HttpHeader.ACCEPT.asString());
+        return accept != null && accept.contains(HTTPResponseDecoder.BINARY_CONTENT_TYPE);
+    }
+
     public final static String asJsonp(String jsonp, String msg) {
         if (jsonp == null) return msg;
         StringBuilder sb = new StringBuilder(jsonp.length() + msg.length() + 8);
@@ -212,11 +278,11 @@ public class HTTPClientInterface {
         }
 
         final Continuation continuation = ContinuationSupport.getContinuation(request);
-        String result = (String)continuation.getAttribute("result");
+        PendingResponse result = (PendingResponse)continuation.getAttribute("result");
         if (result != null) {
             try {
                 response.setStatus(HttpServletResponse.SC_OK);
-                response.getWriter().print(result);
+                result.write(request, response);
                 request.setHandled(true);
             } catch (IllegalStateException | IOException e){
                // Thrown when we shut down the server via the JSON/HTTP (web studio) API
@@ -17,6 +17,8 @@
 
 package org.voltdb;
 
+import java.util.List;
+
 import org.voltdb.client.ProcedureCallback;
 import org.voltdb.importer.AbstractImporter;
 import org.voltdb.importer.ImporterServerAdapter;
@@ -48,7 +50,15 @@ public class ImporterServerAdapterImpl implements ImporterServerAdapter {
     @Override
     public boolean callProcedure(AbstractImporter importer, ProcedureCallback procCallback, String proc, Object... fieldList) {
         return getInternalConnectionHandler()
-                .callProcedure(importer, m_statsCollector, procCallback, proc, fieldList);
+                .callProcedure(importer, m_statsCollector.forStream(importer.getStreamName()),
+                               procCallback, proc, fieldList);
+    }
+
+    @Override
+    public boolean[] callProcedures(AbstractImporter importer, List<ProcedureCallback> callbacks, String proc, List<Object[]> rows) {
+        return getInternalConnectionHandler()
+                .callProcedures(importer, m_statsCollector.forStream(importer.getStreamName()),
+                                callbacks, proc, rows);
     }
 
     private InternalConnectionHandler getInternalConnectionHandler() {
@@ -64,4 +74,19 @@ public class ImporterServerAdapterImpl implements ImporterServerAdapter {
     public void reportQueued(String importerName, String procName) {
         m_statsCollector.reportQueued(importerName, procName);
     }
+
+    @Override
+    public void reportFailure(String importerName, String streamName, String procName, boolean decrementPending) {
+        m_statsCollector.reportFailure(importerName, streamName, procName, decrementPending);
+    }
+
+    @Override
+    public void reportQueued(String importerName, String streamName, String procName) {
+        m_statsCollector.reportQueued(importerName, streamName, procName);
+    }
+
+    @Override
+    public void reportLag(String importerName, String streamName, String procName, long lag) {
+        m_statsCollector.reportLag(importerName, streamName, procName, lag);
+    }
 }
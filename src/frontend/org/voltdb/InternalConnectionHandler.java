@@ -17,17 +17,27 @@
 
 package org.voltdb;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
 import org.voltcore.logging.Level;
 import org.voltcore.logging.VoltLogger;
+import org.voltcore.utils.CoreUtils;
 import org.voltdb.AuthSystem.AuthUser;
+import org.voltdb.catalog.Column;
 import org.voltdb.catalog.Procedure;
 import org.voltdb.catalog.Table;
 import org.voltdb.client.BatchTimeoutOverrideType;
 import org.voltdb.client.ClientResponse;
 import org.voltdb.client.ProcedureCallback;
+import org.voltdb.common.Permission;
+import org.voltdb.utils.CatalogUtil;
 import org.voltdb.utils.MiscUtils;
 
 /**
@@ -46,6 +56,9 @@ public class InternalConnectionHandler {
     private final AtomicInteger m_backpressureIndication = new AtomicInteger(0);
     private final InternalClientResponseAdapter m_adapter;
     private final ClientInterfaceHandleManager m_cihm;
+    // Inserts the rows of a failed partition batch one at a time, off the response threads
+    private final ExecutorService m_rowRetryExecutor =
+            CoreUtils.getCachedSingleThreadExecutor("Internal Batch Row Retry", 15000);
 
     public InternalConnectionHandler(InternalClientResponseAdapter adapter, ClientInterfaceHandleManager cihm) {
         m_adapter = adapter;
@@ -193,6 +206,229 @@ public class InternalConnectionHandler {
         return true;
     }
 
+    /**
+     * Calls the procedure once for each of the given rows, like calling
+     * {@link #callProcedure(InternalConnectionContext, InternalConnectionStatsCollector, ProcedureCallback, String, Object...)}
+     * for each of them. When the procedure is the default insert procedure of a partitioned table,
+     * the rows are grouped by partition and each group is loaded with one @LoadSinglepartitionTable.
+     * The callback of each row gets the response of its group. If a group fails, its rows are
+     * inserted one at a time, so that every row still gets a response of its own.
+     *
+     * @return for each row, true if it was queued; the callback of a row that was not queued is not called
+     */
+    public boolean[] callProcedures(InternalConnectionContext caller, InternalConnectionStatsCollector statsCollector,
+            List<ProcedureCallback> procCallbacks, String proc, List<Object[]> rows) {
+        final boolean[] queued = new boolean[rows.size()];
+        final CatalogContext catalogContext = getCatalogContext();
+        final Table table = rows.size() > 1 ? getBatchInsertTable(catalogContext, proc) : null;
+        if (table == null) {
+            for (int i = 0; i < rows.size(); i++) {
+                queued[i] = callProcedure(caller, statsCollector, procCallbacks.get(i), proc, rows.get(i));
+            }
+            return queued;
+        }
+
+        final List<Column> columns = CatalogUtil.getSortedCatalogItems(table.getColumns(), "index");
+        final VoltType[] columnTypes = new VoltType[columns.size()];
+        for (int i = 0; i < columnTypes.length; i++) {
+            columnTypes[i] = VoltType.get((byte) columns.get(i).getType());
+        }
+        final int partitionIndex = table.getPartitioncolumn().getIndex();
+
+        final Map<Integer, PartitionBatch> batches = new HashMap<>();
+        final List<Integer> singles = new ArrayList<>();
+        for (int i = 0; i < rows.size(); i++) {
+            final Object[] row = rows.get(i);
+            if (row == null || row.length != columnTypes.length) {
+                singles.add(i);
+                continue;
+            }
+            try {
+                final Object[] converted = new Object[row.length];
+                for (int col = 0; col < row.length; col++) {
+                    converted[col] = ParameterConverter.tryToMakeCompatible(columnTypes[col].classFromType(), row[col]);
+                }
+                final int partition = TheHashinator.getPartitionForParameter(
+                        columnTypes[partitionIndex], converted[partitionIndex]);
+                PartitionBatch batch = batches.get(partition);
+                if (batch == null) {
+                    batch = new PartitionBatch(partition, CatalogUtil.getVoltTable(table), converted[partitionIndex]);
+                    batches.put(partition, batch);
+                }
+                batch.m_table.addRow(converted);
+                batch.m_indexes.add(i);
+            } catch (Exception e) {
+                // let the procedure report why the row can't be inserted
+                singles.add(i);
+            }
+        }
+
+        //Indicate backpressure or not.
+        boolean b = hasBackPressure();
+        caller.setBackPressure(b);
+        if (b) {
+            applyBackPressure();
+        }
+
+        for (PartitionBatch batch : batches.values()) {
+            if (batch.m_indexes.size() == 1) {
+                singles.add(batch.m_indexes.get(0));
+                continue;
+            }
+            final List<Object[]> batchRows = new ArrayList<>(batch.m_indexes.size());
+            final List<ProcedureCallback> batchCallbacks = new ArrayList<>(batch.m_indexes.size());
+            for (int i : batch.m_indexes) {
+                batchRows.add(rows.get(i));
+                batchCallbacks.add(procCallbacks.get(i));
+            }
+            final boolean batchQueued = loadPartitionBatch(caller, statsCollector, proc, table, batch,
+                    new PartitionBatchCallback(caller, statsCollector, proc, batchRows, batchCallbacks));
+            for (int i : batch.m_indexes) {
+                queued[i] = batchQueued;
+            }
+        }
+        for (int i : singles) {
+            queued[i] = callProcedure(caller, statsCollector, procCallbacks.get(i), proc, rows.get(i));
+        }
+        return queued;
+    }
+
+    /**
+     * Returns the partitioned table if the procedure is its default insert procedure, or null
+     * if rows for the procedure can't be loaded with @LoadSinglepartitionTable.
+     */
+    private static Table getBatchInsertTable(CatalogContext catalogContext, String proc) {
+        final Procedure catProc = InvocationDispatcher.getProcedureFromName(proc, catalogContext);
+        if (catProc == null || !catProc.getDefaultproc() || !catProc.getSinglepartition()
+                || !proc.toLowerCase().endsWith(".insert")) {
+            return null;
+        }
+        final Table table = catProc.getPartitiontable();
+        if (table == null || table.getPartitioncolumn() == null
+                || CatalogUtil.isTableExportOnly(catalogContext.database, table)) {
+            return null;
+        }
+        // the batch runs as a system procedure, so only batch what the importer may insert itself
+        if (!catalogContext.authSystem.getImporterUser().hasPermission(Permission.DEFAULTPROC)) {
+            return null;
+        }
+        return table;
+    }
+
+    private boolean loadPartitionBatch(InternalConnectionContext caller, InternalConnectionStatsCollector statsCollector,
+            String proc, Table table, PartitionBatch batch, ProcedureCallback cb) {
+        final String loadProc = "@LoadSinglepartitionTable";
+        final Procedure catProc = InvocationDispatcher.getProcedureFromName(loadProc, getCatalogContext());
+        if (catProc == null) {
+            m_failedCount.incrementAndGet();
+            return false;
+        }
+
+        StoredProcedureInvocation task = new StoredProcedureInvocation();
+        task.setProcName(loadProc);
+        task.setParams(VoltType.valueToBytes(batch.m_partitionValue), table.getTypeName(), (byte) 0, batch.m_table);
+        try {
+            task = MiscUtils.roundTripForCL(task);
+            task.setClientHandle(m_adapter.connectionId());
+        } catch (Exception e) {
+            String fmt = "Cannot invoke procedure %s from streaming interface %s. failed to create task.";
+            m_logger.rateLimitedLog(SUPPRESS_INTERVAL, Level.ERROR, null, fmt, proc, caller);
+            m_failedCount.incrementAndGet();
+            return false;
+        }
+
+        InternalAdapterTaskAttributes kattrs = new InternalAdapterTaskAttributes(caller,  m_adapter.connectionId());
+
+        final AuthUser user = getCatalogContext().authSystem.getInternalAdminUser();
+
+        // completions are reported for each row by the batch callback
+        if (!m_adapter.createTransaction(kattrs, loadProc, catProc, cb, null, task, user, batch.m_partition, System.nanoTime())) {
+            m_failedCount.incrementAndGet();
+            return false;
+        }
+        m_submitSuccessCount.incrementAndGet();
+        return true;
+    }
+
+    private static class PartitionBatch {
+        final int m_partition;
+        final VoltTable m_table;
+        final Object m_partitionValue;
+        final List<Integer> m_indexes = new ArrayList<>();
+
+        PartitionBatch(int partition, VoltTable table, Object partitionValue) {
+            m_partition = partition;
+            m_table = table;
+            m_partitionValue = partitionValue;
+        }
+    }
+
+    /**
+     * Hands the response of a partition batch to the callbacks of its rows. The rows of a batch
+     * that failed are inserted again one at a time.
+     */
+    private class PartitionBatchCallback implements ProcedureCallback {
+        private final InternalConnectionContext m_caller;
+        private final InternalConnectionStatsCollector m_statsCollector;
+        private final String m_proc;
+        private final List<Object[]> m_rows;
+        private final List<ProcedureCallback> m_callbacks;
+
+        PartitionBatchCallback(InternalConnectionContext caller, InternalConnectionStatsCollector statsCollector,
+                String proc, List<Object[]> rows, List<ProcedureCallback> callbacks) {
+            m_caller = caller;
+            m_statsCollector = statsCollector;
+            m_proc = proc;
+            m_rows = rows;
+            m_callbacks = callbacks;
+        }
+
+        @Override
+        public void clientCallback(ClientResponse response) throws Exception {
+            if (response.getStatus() == ClientResponse.SUCCESS || response.getStatus() == ClientResponse.RESPONSE_UNKNOWN) {
+                // an unknown response is retried as a batch, like a single invocation would be
+                for (int i = 0; i < m_rows.size(); i++) {
+                    completeRow(m_callbacks.get(i), response);
+                }
+                return;
+            }
+            try {
+                m_rowRetryExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        for (int i = 0; i < m_rows.size(); i++) {
+                            if (!callProcedure(m_caller, m_statsCollector, m_callbacks.get(i), m_proc, m_rows.get(i))) {
+                                completeRow(m_callbacks.get(i), failedRowResponse());
+                            }
+                        }
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                for (int i = 0; i < m_rows.size(); i++) {
+                    completeRow(m_callbacks.get(i), failedRowResponse());
+                }
+            }
+        }
+
+        private ClientResponse failedRowResponse() {
+            return new ClientResponseImpl(ClientResponse.UNEXPECTED_FAILURE, new VoltTable[0],
+                    "Failed to insert the row again after its partition batch failed.");
+        }
+
+        private void completeRow(ProcedureCallback cb, ClientResponse response) {
+            if (cb != null) {
+                try {
+                    cb.clientCallback(response);
+                } catch (Exception e) {
+                    m_logger.error("failed to process response " + response.getStatusString(), e);
+                }
+            }
+            if (m_statsCollector != null) {
+                m_statsCollector.reportCompletion(m_caller.getName(), m_proc, response);
+            }
+        }
+    }
+
     private boolean hasBackPressure() {
         final boolean b = m_adapter.hasBackPressure();
         int prev = m_backpressureIndication.get();
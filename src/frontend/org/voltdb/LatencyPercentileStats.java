@@ -0,0 +1,241 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.HdrHistogram_voltpatches.AbstractHistogram;
+import org.HdrHistogram_voltpatches.Histogram;
+import org.HdrHistogram_voltpatches.HistogramIterationValue;
+import org.HdrHistogram_voltpatches.Recorder;
+import org.voltcore.utils.CompressionStrategySnappy;
+import org.voltdb.VoltTable.ColumnInfo;
+
+/**
+ * Latency distributions of the procedures and statements a site runs and of the time
+ * tasks wait in its queue, in microseconds.
+ *
+ * Every distribution records into an HdrHistogram recorder, which neither locks nor
+ * allocates once its histograms have grown to the range of the recorded values. The stats
+ * thread swaps out what was recorded since it last polled. Each row carries its histogram so
+ * the @Statistics LATENCYPERCENTILES rows of all the sites in the cluster are merged without
+ * losing precision before the percentiles are computed.
+ */
+public class LatencyPercentileStats extends SiteStatsSource {
+    // 1% precision, the histograms grow with the largest value recorded
+    public static final int SIGNIFICANT_DIGITS = 2;
+
+    public static enum Type {
+        PROCEDURE,  // time spent running a procedure on the site
+        STATEMENT,  // time the EE took for a batch of a single named statement
+        BATCH,      // time the EE took for the other batches of a procedure
+        QUEUE       // time a task waited in the site's queue
+    }
+
+    public static final class Distribution {
+        final Type m_type;
+        final String m_name;
+        private final Recorder m_recorder = new Recorder(SIGNIFICANT_DIGITS);
+
+        // only touched by the stats thread
+        private Histogram m_interval = null;
+        private final Histogram m_total = new Histogram(SIGNIFICANT_DIGITS);
+        private final Histogram m_sinceLastInterval = new Histogram(SIGNIFICANT_DIGITS);
+
+        Distribution(Type type, String name) {
+            m_type = type;
+            m_name = name;
+        }
+
+        public void recordNanos(long nanos) {
+            m_recorder.recordValue(Math.max(0, nanos) / 1000);
+        }
+
+        Histogram poll(boolean interval) {
+            m_interval = m_recorder.getIntervalHistogram(m_interval);
+            m_total.add(m_interval);
+            m_sinceLastInterval.add(m_interval);
+            if (!interval) {
+                return m_total;
+            }
+            final Histogram result = m_sinceLastInterval.copy();
+            m_sinceLastInterval.reset();
+            return result;
+        }
+    }
+
+    private final ConcurrentHashMap<String, Distribution> m_distributions =
+            new ConcurrentHashMap<String, Distribution>();
+
+    // rows of the poll in progress
+    private final ArrayList<Object[]> m_rows = new ArrayList<Object[]>();
+
+    public LatencyPercentileStats(long siteId) {
+        super(siteId, false);
+    }
+
+    /**
+     * Look up the distribution to record into. Callers keep the distribution, this isn't meant
+     * to be called every time something is recorded.
+     */
+    public Distribution distribution(Type type, String name) {
+        final String key = type.name() + " " + name;
+        Distribution distribution = m_distributions.get(key);
+        if (distribution == null) {
+            distribution = new Distribution(type, name);
+            final Distribution existing = m_distributions.putIfAbsent(key, distribution);
+            if (existing != null) {
+                distribution = existing;
+            }
+        }
+        return distribution;
+    }
+
+    /**
+     * Drop the distributions of procedures and statements on catalog update so that dropped
+     * procedures don't linger. The procedures of the new catalog look theirs up again.
+     */
+    public void clearProcedures() {
+        final Iterator<Distribution> iter = m_distributions.values().iterator();
+        while (iter.hasNext()) {
+            if (iter.next().m_type != Type.QUEUE) {
+                iter.remove();
+            }
+        }
+    }
+
+    /**
+     * Drop every distribution when the initiator shuts down
+     */
+    public void clear() {
+        m_distributions.clear();
+    }
+
+    @Override
+    protected void populateColumnSchema(ArrayList<ColumnInfo> columns) {
+        super.populateColumnSchema(columns);
+        populatePercentileColumns(columns);
+    }
+
+    private static void populatePercentileColumns(ArrayList<ColumnInfo> columns) {
+        columns.add(new ColumnInfo("TYPE", VoltType.STRING));
+        columns.add(new ColumnInfo("NAME", VoltType.STRING));
+        columns.add(new ColumnInfo("COUNT", VoltType.BIGINT));
+        columns.add(new ColumnInfo("P50", VoltType.BIGINT));
+        columns.add(new ColumnInfo("P95", VoltType.BIGINT));
+        columns.add(new ColumnInfo("P99", VoltType.BIGINT));
+        columns.add(new ColumnInfo("P999", VoltType.BIGINT));
+        columns.add(new ColumnInfo("MAX", VoltType.BIGINT));
+        columns.add(new ColumnInfo("HISTOGRAM", VoltType.VARBINARY));
+    }
+
+    private static Object[] percentileValues(Type type, String name, AbstractHistogram histogram) {
+        return new Object[] {
+                type.name(),
+                name,
+                histogram.getTotalCount(),
+                histogram.getValueAtPercentile(50.0),
+                histogram.getValueAtPercentile(95.0),
+                histogram.getValueAtPercentile(99.0),
+                histogram.getValueAtPercentile(99.9),
+                histogram.getMaxValue(),
+                histogram.toCompressedBytes(CompressionStrategySnappy.INSTANCE)
+        };
+    }
+
+    @Override
+    protected synchronized Iterator<Object> getStatsRowKeyIterator(boolean interval) {
+        m_rows.clear();
+        for (Distribution distribution : m_distributions.values()) {
+            final Histogram histogram = distribution.poll(interval);
+            if (histogram.getTotalCount() > 0) {
+                m_rows.add(percentileValues(distribution.m_type, distribution.m_name, histogram));
+            }
+        }
+        final Iterator<Object[]> rows = m_rows.iterator();
+        return new Iterator<Object>() {
+            @Override
+            public boolean hasNext() {
+                return rows.hasNext();
+            }
+
+            @Override
+            public Object next() {
+                return rows.next();
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    @Override
+    protected void updateStatsRow(Object rowKey, Object[] rowValues) {
+        final Object values[] = (Object[])rowKey;
+        final int first = columnNameToIndex.get("TYPE");
+        System.arraycopy(values, 0, rowValues, first, values.length);
+        super.updateStatsRow(rowKey, rowValues);
+    }
+
+    /**
+     * Merge the rows of every site on every host into one row per distribution
+     */
+    public static VoltTable aggregate(VoltTable siteStats) {
+        final ArrayList<ColumnInfo> columns = new ArrayList<ColumnInfo>();
+        columns.add(new ColumnInfo("TIMESTAMP", VoltType.BIGINT));
+        populatePercentileColumns(columns);
+        final VoltTable result = new VoltTable(columns.toArray(new ColumnInfo[columns.size()]));
+
+        long timestamp = 0;
+        final TreeMap<String, Histogram> merged = new TreeMap<String, Histogram>();
+        siteStats.resetRowPosition();
+        while (siteStats.advanceRow()) {
+            timestamp = Math.max(timestamp, siteStats.getLong("TIMESTAMP"));
+            final String key = siteStats.getString("TYPE") + " " + siteStats.getString("NAME");
+            Histogram histogram = merged.get(key);
+            if (histogram == null) {
+                histogram = new Histogram(SIGNIFICANT_DIGITS);
+                merged.put(key, histogram);
+            }
+            final Histogram decoded = AbstractHistogram.fromCompressedBytes(siteStats.getVarbinary("HISTOGRAM"),
+                                                                            CompressionStrategySnappy.INSTANCE);
+            // decoded histograms don't know their max value, which add() relies on
+            for (HistogramIterationValue value : decoded.recordedValues()) {
+                histogram.recordValueWithCount(value.getValueIteratedTo(), value.getCountAtValueIteratedTo());
+            }
+        }
+
+        for (Map.Entry<String, Histogram> e : merged.entrySet()) {
+            final int split = e.getKey().indexOf(' ');
+            final Object values[] = percentileValues(Type.valueOf(e.getKey().substring(0, split)),
+                                                     e.getKey().substring(split + 1),
+                                                     e.getValue());
+            final Object row[] = new Object[values.length + 1];
+            row[0] = timestamp;
+            System.arraycopy(values, 0, row, 1, values.length);
+            result.addRow(row);
+        }
+        return result;
+    }
+}
@@ -513,7 +513,7 @@ public class ParameterSet implements JSONString {
         return value;
     }
 
-    static private OneParamInfo readOneParameter(ByteBuffer in)
+    static OneParamInfo readOneParameter(ByteBuffer in)
             throws IOException {
         Object value;
         int len;
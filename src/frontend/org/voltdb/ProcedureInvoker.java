@@ -0,0 +1,311 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.voltdb.common.Constants;
+
+/**
+ * Calls the run() method of a Java stored procedure with parameters decoded
+ * straight from the serialized parameter set of the invocation.
+ *
+ * ParameterSet deserializes every parameter into a boxed value, ParameterConverter
+ * boxes the converted value again and Method.invoke unboxes it. Here integer and
+ * float parameters whose wire type already fits the declared type of run() are read
+ * into primitive slots, and a method handle bound to the procedure reads its
+ * arguments from those slots. All other parameters go through the same
+ * deserialization and conversion as before, so the accepted values and the
+ * conversion errors are unchanged.
+ *
+ * One invoker belongs to one ProcedureRunner and is only used from its site thread.
+ */
+final class ProcedureInvoker {
+
+    /**
+     * Thrown when a parameter can't be converted to the type run() declares.
+     * The cause is the exception ParameterConverter threw.
+     */
+    static class ParameterConversionException extends Exception {
+        private static final long serialVersionUID = 1L;
+        final int m_index;
+
+        ParameterConversionException(int index, Exception cause) {
+            super(cause);
+            m_index = index;
+        }
+    }
+
+    private static final byte NULL = VoltType.NULL.getValue();
+    private static final byte TINYINT = VoltType.TINYINT.getValue();
+    private static final byte SMALLINT = VoltType.SMALLINT.getValue();
+    private static final byte INTEGER = VoltType.INTEGER.getValue();
+    private static final byte BIGINT = VoltType.BIGINT.getValue();
+    private static final byte FLOAT = VoltType.FLOAT.getValue();
+    private static final byte STRING = VoltType.STRING.getValue();
+
+    private final Class<?>[] m_paramTypes;
+    // one slot per parameter, only the array matching the parameter type is used
+    private final long[] m_longs;
+    private final double[] m_doubles;
+    private final Object[] m_refs;
+    // () -> Object, reads the slots and calls run() on the procedure
+    private final MethodHandle m_handle;
+    private int m_serializedSize = 0;
+
+    /**
+     * @return an invoker for the given run() method, or null if this class isn't
+     * allowed to call it. Callers then fall back to Method.invoke.
+     */
+    static ProcedureInvoker create(Method run, Object procedure) {
+        try {
+            return new ProcedureInvoker(run, procedure);
+        }
+        catch (IllegalAccessException e) {
+            return null;
+        }
+    }
+
+    private ProcedureInvoker(Method run, Object procedure) throws IllegalAccessException {
+        m_paramTypes = run.getParameterTypes();
+        final int count = m_paramTypes.length;
+        m_longs = new long[count];
+        m_doubles = new double[count];
+        m_refs = new Object[count];
+
+        MethodHandle handle = MethodHandles.lookup().unreflect(run);
+        if (!Modifier.isStatic(run.getModifiers())) {
+            handle = handle.bindTo(procedure);
+        }
+        // Fold the slot readers in from the left. Each fold supplies the current
+        // first argument, so after the loop the handle takes no arguments.
+        for (int i = 0; i < count; i++) {
+            final Class<?> type = m_paramTypes[i];
+            final MethodHandle slot;
+            if (isLongSlot(type)) {
+                slot = MethodHandles.insertArguments(
+                        MethodHandles.arrayElementGetter(long[].class), 0, m_longs, i);
+            }
+            else if (type == double.class) {
+                slot = MethodHandles.insertArguments(
+                        MethodHandles.arrayElementGetter(double[].class), 0, m_doubles, i);
+            }
+            else {
+                slot = MethodHandles.insertArguments(
+                        MethodHandles.arrayElementGetter(Object[].class), 0, m_refs, i);
+            }
+            handle = MethodHandles.foldArguments(handle,
+                    MethodHandles.explicitCastArguments(slot, MethodType.methodType(type)));
+        }
+        m_handle = handle.asType(MethodType.methodType(Object.class));
+    }
+
+    private static boolean isLongSlot(Class<?> type) {
+        return type == long.class || type == int.class || type == short.class || type == byte.class;
+    }
+
+    /**
+     * Decode a serialized parameter set into the argument slots.
+     *
+     * @return the number of parameters in the set. If it is not the number run()
+     * takes, no parameter is decoded.
+     * @throws ParameterConversionException if a parameter can't be converted
+     * @throws IOException or a RuntimeException if the parameter set is malformed
+     */
+    int decode(ByteBuffer in) throws ParameterConversionException, IOException {
+        final int startPos = in.position();
+        final short count = in.getShort();
+        if (count < 0) {
+            throw new IllegalArgumentException("Invalid parameter length " + count + " for ParameterSet." );
+        }
+        if (count != m_paramTypes.length) {
+            return count;
+        }
+        for (int i = 0; i < count; i++) {
+            if (!decodeExact(i, in)) {
+                decodeConverted(i, in);
+            }
+        }
+        m_serializedSize = in.position() - startPos;
+        return count;
+    }
+
+    /**
+     * Read parameter i without boxing when the wire type already fits the
+     * declared type. The results match what ParameterConverter returns for
+     * the same values.
+     * @return false, with the buffer unchanged, if the parameter needs conversion
+     */
+    private boolean decodeExact(int i, ByteBuffer in) {
+        final Class<?> type = m_paramTypes[i];
+        final int pos = in.position();
+        final byte wireType = in.get();
+        if (wireType == NULL) {
+            if (type == long.class) {
+                m_longs[i] = VoltType.NULL_BIGINT;
+            }
+            else if (type == int.class) {
+                m_longs[i] = VoltType.NULL_INTEGER;
+            }
+            else if (type == short.class) {
+                m_longs[i] = VoltType.NULL_SMALLINT;
+            }
+            else if (type == byte.class) {
+                m_longs[i] = VoltType.NULL_TINYINT;
+            }
+            else if (type == double.class) {
+                m_doubles[i] = VoltType.NULL_FLOAT;
+            }
+            else {
+                m_refs[i] = null;
+            }
+            return true;
+        }
+        if (type == long.class) {
+            if (wireType == BIGINT) {
+                m_longs[i] = in.getLong();
+                return true;
+            }
+            if (wireType == INTEGER) {
+                final int value = in.getInt();
+                m_longs[i] = (value == VoltType.NULL_INTEGER) ? VoltType.NULL_BIGINT : value;
+                return true;
+            }
+            if (wireType == SMALLINT) {
+                final short value = in.getShort();
+                m_longs[i] = (value == VoltType.NULL_SMALLINT) ? VoltType.NULL_BIGINT : value;
+                return true;
+            }
+            if (wireType == TINYINT) {
+                final byte value = in.get();
+                m_longs[i] = (value == VoltType.NULL_TINYINT) ? VoltType.NULL_BIGINT : value;
+                return true;
+            }
+        }
+        else if (type == int.class) {
+            if (wireType == INTEGER) {
+                m_longs[i] = in.getInt();
+                return true;
+            }
+            if (wireType == SMALLINT) {
+                final short value = in.getShort();
+                m_longs[i] = (value == VoltType.NULL_SMALLINT) ? VoltType.NULL_INTEGER : value;
+                return true;
+            }
+            if (wireType == TINYINT) {
+                final byte value = in.get();
+                m_longs[i] = (value == VoltType.NULL_TINYINT) ? VoltType.NULL_INTEGER : value;
+                return true;
+            }
+        }
+        else if (type == short.class) {
+            if (wireType == SMALLINT) {
+                m_longs[i] = in.getShort();
+                return true;
+            }
+            if (wireType == TINYINT) {
+                final byte value = in.get();
+                m_longs[i] = (value == VoltType.NULL_TINYINT) ? VoltType.NULL_SMALLINT : value;
+                return true;
+            }
+        }
+        else if (type == byte.class) {
+            if (wireType == TINYINT) {
+                m_longs[i] = in.get();
+                return true;
+            }
+        }
+        else if (type == double.class) {
+            if (wireType == FLOAT) {
+                m_doubles[i] = in.getDouble();
+                return true;
+            }
+        }
+        else if (type == String.class) {
+            if (wireType == STRING) {
+                final int len = in.getInt();
+                if (len == VoltType.NULL_STRING_LENGTH) {
+                    m_refs[i] = null;
+                    return true;
+                }
+                final byte[] encoded = new byte[len];
+                in.get(encoded);
+                final String value = new String(encoded, Constants.UTF8ENCODING);
+                m_refs[i] = value.equals(Constants.CSV_NULL) ? null : value;
+                return true;
+            }
+        }
+        in.position(pos);
+        return false;
+    }
+
+    private void decodeConverted(int i, ByteBuffer in) throws ParameterConversionException, IOException {
+        final Class<?> type = m_paramTypes[i];
+        final Object value = ParameterSet.readOneParameter(in).value;
+        final Object converted;
+        try {
+            converted = ParameterConverter.tryToMakeCompatible(type, value);
+            assert(ParameterConverter.verifyParameterConversion(converted, type));
+        }
+        catch (Exception e) {
+            throw new ParameterConversionException(i, e);
+        }
+        if (isLongSlot(type)) {
+            m_longs[i] = ((Number) converted).longValue();
+        }
+        else if (type == double.class) {
+            m_doubles[i] = (Double) converted;
+        }
+        else {
+            m_refs[i] = converted;
+        }
+    }
+
+    /**
+     * @return the serialized size of the last decoded parameter set
+     */
+    int getSerializedSize() {
+        return m_serializedSize;
+    }
+
+    /**
+     * Call run() with the last decoded parameters.
+     * @throws InvocationTargetException wrapping anything run() throws,
+     * like Method.invoke does
+     */
+    Object invoke() throws InvocationTargetException {
+        try {
+            return (Object) m_handle.invokeExact();
+        }
+        catch (Throwable t) {
+            throw new InvocationTargetException(t);
+        }
+        finally {
+            // don't keep parameters of a finished call reachable
+            Arrays.fill(m_refs, null);
+        }
+    }
+}
@@ -27,6 +27,7 @@ import java.lang.reflect.Modifier;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -104,6 +105,8 @@ public class ProcedureRunner {
     protected final VoltProcedure m_procedure;
     protected Method m_procMethod;
     protected Class<?>[] m_paramTypes;
+    // calls run() with parameters decoded from the serialized invocation, null if not possible
+    private ProcedureInvoker m_invoker = null;
 
     // per txn state (are reset after call)
     //
@@ -126,6 +129,10 @@ public class ProcedureRunner {
     // per procedure state and catalog info
     //
     protected ProcedureStatsCollector m_statsCollector;
+    // EE time of the batches of one statement by statement, and of all the other batches
+    protected final IdentityHashMap<SQLStmt, LatencyPercentileStats.Distribution> m_stmtLatencies =
+            new IdentityHashMap<SQLStmt, LatencyPercentileStats.Distribution>();
+    protected LatencyPercentileStats.Distribution m_batchLatency;
     protected final Procedure m_catProc;
     protected final boolean m_isSysProc;
     protected final boolean m_isSinglePartition;
@@ -209,10 +216,13 @@ public class ProcedureRunner {
 
         m_procedure.init(this);
 
+        final LatencyPercentileStats latencyStats = m_site.getLatencyStats();
+        m_batchLatency = latencyStats.distribution(LatencyPercentileStats.Type.BATCH, m_procedureName);
         m_statsCollector = new ProcedureStatsCollector(
                 m_site.getCorrespondingSiteId(),
                 m_site.getCorrespondingPartitionId(),
-                m_catProc);
+                m_catProc,
+                latencyStats.distribution(LatencyPercentileStats.Type.PROCEDURE, m_procedureName));
         VoltDB.instance().getStatsAgent().registerStatsSource(
                 StatsSelector.PROCEDURE,
                 site.getCorrespondingSiteId(),
@@ -250,8 +260,30 @@ public class ProcedureRunner {
         return m_cachedRNG;
     }
 
-    @SuppressWarnings("finally")
     public ClientResponseImpl call(Object... paramListIn) {
+        return coreCall(paramListIn, null);
+    }
+
+    /**
+     * @return true if Java invocations of this procedure can be passed to
+     * {@link #callWithSerializedParams(ByteBuffer)} instead of being deserialized first
+     */
+    public boolean acceptsSerializedParams() {
+        return m_invoker != null;
+    }
+
+    /**
+     * Run the procedure with its parameters still in serialized form. Integer
+     * and float parameters are decoded into the typed arguments of run()
+     * without boxing them. Only valid if {@link #acceptsSerializedParams()}.
+     */
+    public ClientResponseImpl callWithSerializedParams(ByteBuffer serializedParams) {
+        assert(m_invoker != null);
+        return coreCall(null, serializedParams);
+    }
+
+    @SuppressWarnings("finally")
+    private ClientResponseImpl coreCall(Object[] paramListIn, ByteBuffer serializedParams) {
         // verify per-txn state has been reset
         assert(m_statusCode == ClientResponse.SUCCESS);
         assert(m_statusString == null);
@@ -283,8 +315,14 @@ public class ProcedureRunner {
 
             VoltTable[] results = null;
 
+            if (serializedParams != null) {
+                ClientResponseImpl decodeError = decodeSerializedParams(serializedParams);
+                if (decodeError != null) {
+                    return decodeError;
+                }
+            }
             // inject sysproc execution context as the first parameter.
-            if (isSystemProcedure()) {
+            else if (isSystemProcedure()) {
                 final Object[] combinedParams = new Object[paramList.length + 1];
                 combinedParams[0] = m_systemProcedureContext;
                 for (int i=0; i < paramList.length; ++i) {
@@ -294,25 +332,19 @@ public class ProcedureRunner {
                 paramList = combinedParams;
             }
 
-            if (paramList.length != m_paramTypes.length) {
-                m_statsCollector.endProcedure(false, true, null, null);
-                String msg = "PROCEDURE " + m_procedureName + " EXPECTS " + String.valueOf(m_paramTypes.length) +
-                    " PARAMS, BUT RECEIVED " + String.valueOf(paramList.length);
-                m_statusCode = ClientResponse.GRACEFUL_FAILURE;
-                return getErrorResponse(m_statusCode, msg, null);
-            }
+            if (paramList != null) {
+                if (paramList.length != m_paramTypes.length) {
+                    return getParamCountErrorResponse(paramList.length);
+                }
 
-            for (int i = 0; i < m_paramTypes.length; i++) {
-                try {
-                    paramList[i] = ParameterConverter.tryToMakeCompatible(m_paramTypes[i], paramList[i]);
-                    // check the result type in an assert
-                    assert(ParameterConverter.verifyParameterConversion(paramList[i], m_paramTypes[i]));
-                } catch (Exception e) {
-                    m_statsCollector.endProcedure(false, true, null, null);
-                    String msg = "PROCEDURE " + m_procedureName + " TYPE ERROR FOR PARAMETER " + i +
-                            ": " + e.toString();
-                    m_statusCode = ClientResponse.GRACEFUL_FAILURE;
-                    return getErrorResponse(m_statusCode, msg, null);
+                for (int i = 0; i < m_paramTypes.length; i++) {
+                    try {
+                        paramList[i] = ParameterConverter.tryToMakeCompatible(m_paramTypes[i], paramList[i]);
+                        // check the result type in an assert
+                        assert(ParameterConverter.verifyParameterConversion(paramList[i], m_paramTypes[i]));
+                    } catch (Exception e) {
+                        return getParamTypeErrorResponse(i, e);
+                    }
                 }
             }
 
@@ -326,7 +358,8 @@ public class ProcedureRunner {
                             log.trace("invoking... procMethod=" + m_procMethod.getName() + ", class=" + m_procMethod.getDeclaringClass().getName());
                         }
                         try {
-                            Object rawResult = m_procMethod.invoke(m_procedure, paramList);
+                            Object rawResult = (serializedParams != null ?
+                                    m_invoker.invoke() : m_procMethod.invoke(m_procedure, paramList));
                             results = getResultsFromRawResults(rawResult);
                         }
                         catch (IllegalAccessException e) {
@@ -358,7 +391,7 @@ public class ProcedureRunner {
                         // a missing object that results in an error, throw the error and let the server deal with
                         // the condition as best as it can (usually a crashLocalVoltDB).
                         try {
-                            m_statsCollector.endProcedure(false, true, null, null);
+                            m_statsCollector.endProcedure(false, true, null, 0);
                         }
                         finally {
                             // Ensure that ex is always re-thrown even if endProcedure throws an exception.
@@ -394,9 +427,16 @@ public class ProcedureRunner {
             }
 
             // Record statistics for procedure call.
-            StoredProcedureInvocation invoc = (m_txnState != null ? m_txnState.getInvocation() : null);
-            ParameterSet paramSet = (invoc != null ? invoc.getParams() : null);
-            m_statsCollector.endProcedure(abort, error, results, paramSet);
+            long paramSetSize = 0;
+            if (serializedParams != null) {
+                paramSetSize = m_invoker.getSerializedSize();
+            }
+            else {
+                StoredProcedureInvocation invoc = (m_txnState != null ? m_txnState.getInvocation() : null);
+                ParameterSet paramSet = (invoc != null ? invoc.getParams() : null);
+                paramSetSize = (paramSet != null ? paramSet.getSerializedSize() : 0);
+            }
+            m_statsCollector.endProcedure(abort, error, results, paramSetSize);
 
             // don't leave empty handed
             if (results == null) {
@@ -455,6 +495,53 @@ public class ProcedureRunner {
         return retval;
     }
 
+    /**
+     * Decode serialized parameters for the invoker.
+     * @return an error response if the parameters don't match run(), null otherwise
+     */
+    private ClientResponseImpl decodeSerializedParams(ByteBuffer serializedParams) {
+        final int paramCount;
+        try {
+            paramCount = m_invoker.decode(serializedParams);
+        }
+        catch (ProcedureInvoker.ParameterConversionException e) {
+            return getParamTypeErrorResponse(e.m_index, (Exception) e.getCause());
+        }
+        catch (Exception e) {
+            // Parameters are lazily deserialized. We may not find out until now
+            // that the parameter set is corrupt
+            m_statsCollector.endProcedure(false, true, null, 0);
+            Writer result = new StringWriter();
+            PrintWriter pw = new PrintWriter(result);
+            e.printStackTrace(pw);
+            m_statusCode = ClientResponse.GRACEFUL_FAILURE;
+            return getErrorResponse(m_statusCode,
+                    "Exception while deserializing procedure params, procedure="
+                    + m_procedureName + "\n"
+                    + result.toString(), null);
+        }
+        if (paramCount != m_paramTypes.length) {
+            return getParamCountErrorResponse(paramCount);
+        }
+        return null;
+    }
+
+    private ClientResponseImpl getParamCountErrorResponse(int paramCount) {
+        m_statsCollector.endProcedure(false, true, null, 0);
+        String msg = "PROCEDURE " + m_procedureName + " EXPECTS " + String.valueOf(m_paramTypes.length) +
+            " PARAMS, BUT RECEIVED " + String.valueOf(paramCount);
+        m_statusCode = ClientResponse.GRACEFUL_FAILURE;
+        return getErrorResponse(m_statusCode, msg, null);
+    }
+
+    private ClientResponseImpl getParamTypeErrorResponse(int index, Exception e) {
+        m_statsCollector.endProcedure(false, true, null, 0);
+        String msg = "PROCEDURE " + m_procedureName + " TYPE ERROR FOR PARAMETER " + index +
+                ": " + e.toString();
+        m_statusCode = ClientResponse.GRACEFUL_FAILURE;
+        return getErrorResponse(m_statusCode, msg, null);
+    }
+
     /**
      * Check if the txn hashes to this partition. If not, it should be restarted.
      * @param txnState
@@ -1037,6 +1124,9 @@ public class ProcedureRunner {
             if (m_procMethod == null && m_language == Language.JAVA) {
                 throw new RuntimeException("No \"run\" method found in: " + m_procedure.getClass().getName());
             }
+            if (m_language == Language.JAVA && !isSystemProcedure()) {
+                m_invoker = ProcedureInvoker.create(m_procMethod, m_procedure);
+            }
             // iterate through the fields and deal with sql statements
             stmtMap = m_language.accept(sqlStatementsRetriever, this);
         }
@@ -1095,6 +1185,7 @@ public class ProcedureRunner {
             }
         }
 
+        final LatencyPercentileStats latencyStats = m_site.getLatencyStats();
         for (final Entry<String, SQLStmt> entry : stmtMap.entrySet()) {
             String name = entry.getKey();
             Statement s = m_catProc.getStatements().get(name);
@@ -1108,6 +1199,8 @@ public class ProcedureRunner {
 
                 // done in a static method in an abstract class so users don't call it
                 initSQLStmt(stmt, s);
+                m_stmtLatencies.put(stmt, latencyStats.distribution(
+                        LatencyPercentileStats.Type.STATEMENT, m_procedureName + "." + name));
                 //LOG.fine("Found statement " + name);
             }
         }
@@ -1621,6 +1714,7 @@ public class ProcedureRunner {
        }
 
        VoltTable[] results = null;
+       final long startTime = System.nanoTime();
        try {
            results = m_site.executePlanFragments(
                    batchSize,
@@ -1643,6 +1737,10 @@ public class ProcedureRunner {
            throw ex;
        }
 
+       final LatencyPercentileStats.Distribution latency =
+               batchSize == 1 ? m_stmtLatencies.get(batch.get(0).stmt) : null;
+       (latency != null ? latency : m_batchLatency).recordNanos(System.nanoTime() - startTime);
+
        return results;
     }
 }
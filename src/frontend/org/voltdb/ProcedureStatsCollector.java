@@ -71,6 +71,12 @@ class ProcedureStatsCollector extends SiteStatsSource {
      */
     private long m_currentStartTime = -1;
 
+    /**
+     * Time the procedure was last started, every invocation is recorded in the latency distribution
+     */
+    private long m_latencyStartTime = -1;
+    private final LatencyPercentileStats.Distribution m_latency;
+
     /**
      * Count of the number of aborts (user initiated or DB initiated)
      */
@@ -130,18 +136,21 @@ class ProcedureStatsCollector extends SiteStatsSource {
     /**
      * Constructor requires no args because it has access to the enclosing classes members.
      */
-    public ProcedureStatsCollector(long siteId, int partitionId, Procedure catProc) {
+    public ProcedureStatsCollector(long siteId, int partitionId, Procedure catProc,
+            LatencyPercentileStats.Distribution latency) {
         super(siteId, false);
         m_partitionId = partitionId;
         m_catProc = catProc;
+        m_latency = latency;
     }
 
     /**
      * Called when a procedure begins executing. Caches the time the procedure starts.
      */
     public final void beginProcedure() {
+        m_latencyStartTime = System.nanoTime();
         if (m_invocations % timeCollectionInterval == 0) {
-            m_currentStartTime = System.nanoTime();
+            m_currentStartTime = m_latencyStartTime;
         }
     }
 
@@ -153,11 +162,15 @@ class ProcedureStatsCollector extends SiteStatsSource {
             boolean aborted,
             boolean failed,
             VoltTable[] results,
-            ParameterSet parameterSet) {
+            long parameterSetSize) {
+        final long endTime = System.nanoTime();
+        if (m_latencyStartTime > 0) {
+            m_latency.recordNanos(endTime - m_latencyStartTime);
+            m_latencyStartTime = -1;
+        }
         if (m_currentStartTime > 0) {
             // This is a sampled invocation.
             // Update timings and size statistics.
-            final long endTime = System.nanoTime();
             final long delta = endTime - m_currentStartTime;
             if (delta < 0)
             {
@@ -191,8 +204,6 @@ class ProcedureStatsCollector extends SiteStatsSource {
                 m_maxResultSize = Math.max(resultSize, m_maxResultSize);
                 m_lastMinResultSize = Math.min(resultSize, m_lastMinResultSize);
                 m_lastMaxResultSize = Math.max(resultSize, m_lastMaxResultSize);
-                long parameterSetSize = (
-                        parameterSet != null ? parameterSet.getSerializedSize() : 0);
                 m_totalParameterSetSize += parameterSetSize;
                 m_minParameterSetSize = Math.min(parameterSetSize, m_minParameterSetSize);
                 m_maxParameterSetSize = Math.max(parameterSetSize, m_maxParameterSetSize);
@@ -406,6 +406,20 @@ public class RealVoltDB implements VoltDBInterface, RestoreAgent.Callback, HostM
         }
     }
 
+    /**
+     * The community command log deletes old segments when it starts, don't let create
+     * throw away what the start command would recover.
+     */
+    private void commandLogEmptyCheck() {
+        final org.voltdb.catalog.CommandLog logConfig = m_catalogContext.cluster.getLogconfig().get("log");
+        if (logConfig != null && logConfig.getEnabled()) {
+            String error = GroupCommitCommandLog.leftoverSegmentsError(new File(logConfig.getLogpath()));
+            if (error != null) {
+                VoltDB.crashLocalVoltDB(error);
+            }
+        }
+    }
+
     private final List<String> managedPathsWithFiles(DeploymentType deployment) {
         ImmutableList.Builder<String> nonEmptyPaths = ImmutableList.builder();
         PathsType paths = deployment.getPaths();
@@ -608,6 +622,9 @@ public class RealVoltDB implements VoltDBInterface, RestoreAgent.Callback, HostM
             if (config.m_isEnterprise && m_config.m_startAction.doesRequireEmptyDirectories() && !config.m_forceVoltdbCreate) {
                     managedPathsEmptyCheck();
             }
+            else if (!config.m_isEnterprise && m_config.m_startAction.doesRequireEmptyDirectories() && !config.m_forceVoltdbCreate) {
+                    commandLogEmptyCheck();
+            }
 
             if (!isRejoin && !m_joining) {
                 hostGroups = m_messenger.waitForGroupJoin(numberOfNodes);
@@ -901,7 +918,7 @@ public class RealVoltDB implements VoltDBInterface, RestoreAgent.Callback, HostM
                 VoltDB.crashLocalVoltDB(e.getMessage(), true, e);
             }
 
-            boolean usingCommandLog = m_config.m_isEnterprise &&
+            boolean usingCommandLog =
                     m_catalogContext.cluster.getLogconfig().get("log").getEnabled();
             String clSnapshotPath = null;
             if (m_catalogContext.cluster.getLogconfig().get("log").getEnabled()) {
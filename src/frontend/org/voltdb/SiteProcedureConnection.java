@@ -48,6 +48,11 @@ public interface SiteProcedureConnection {
      */
     public long getCorrespondingSiteId();
 
+    /**
+     * Get the latency distributions of the initiator this site belongs to
+     */
+    public LatencyPercentileStats getLatencyStats();
+
     /**
      * Get the partition id for the corresponding SiteProcedureConnection
      */
@@ -203,6 +208,7 @@ public interface SiteProcedureConnection {
     public TheHashinator getCurrentHashinator();
     public void updateHashinator(TheHashinator hashinator);
     public long[] validatePartitioning(long tableIds[], int hashinatorType, byte hashinatorConfig[]);
+    public long[] getTableModificationCounts(long tableIds[]);
     public void notifyOfSnapshotNonce(String nonce, long snapshotSpHandle);
     public long applyBinaryLog(long txnId, long spHandle, long uniqueId, int remoteClusterId, byte logData[]);
     public void setDRProtocolVersion(int drVersion);
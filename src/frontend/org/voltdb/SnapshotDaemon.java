@@ -274,6 +274,11 @@ public class SnapshotDaemon implements SnapshotCompletionInterest {
     }
 
     private static final long INITIATION_RESPONSE_TIMEOUT_MS = 20 * 60 * 1000;
+
+    // Auto snapshots link the files of tables unchanged since the previous one instead of rewriting them.
+    // Retention can still delete old snapshots, the linked files live on in the newer ones.
+    private static final boolean AUTO_SNAPSHOT_INCREMENTAL = Boolean.getBoolean("SNAPSHOT_AUTO_INCREMENTAL");
+
     // Tracks when the last @SnapshotSave call was issued.
     // Prevents two @SnapshotSave calls being issued back to back.
     // This is reset when a response is received for the initiation.
@@ -1349,6 +1354,9 @@ public class SnapshotDaemon implements SnapshotCompletionInterest {
             jsObj.put("path", m_path);
             jsObj.put("nonce", nonce);
             jsObj.put("perPartitionTxnIds", retrievePerPartitionTransactionIds());
+            if (AUTO_SNAPSHOT_INCREMENTAL) {
+                jsObj.put("incremental", true);
+            }
             m_snapshots.offer(new Snapshot(m_path, nonce, now));
             long handle = m_nextCallbackHandle++;
             m_procedureCallbacks.put(handle, new ProcedureCallback() {
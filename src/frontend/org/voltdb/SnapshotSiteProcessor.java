@@ -56,7 +56,7 @@ import org.voltdb.iv2.SnapshotTask;
 import org.voltdb.rejoin.StreamSnapshotDataTarget.StreamSnapshotTimeoutException;
 import org.voltdb.sysprocs.saverestore.SnapshotPredicates;
 import org.voltdb.utils.CatalogUtil;
-import org.voltdb.utils.CompressionService;
+import org.voltdb.utils.CompressionCodec;
 import org.voltdb.utils.MiscUtils;
 
 import com.google_voltpatches.common.collect.ImmutableMap;
@@ -142,7 +142,7 @@ public class SnapshotSiteProcessor {
      */
     public static final int m_snapshotBufferLength = (1024 * 1024 * 2) + Short.MAX_VALUE;
     public static final int m_snapshotBufferCompressedLen =
-        CompressionService.maxCompressedLength(m_snapshotBufferLength);
+        CompressionCodec.maxCompressedLengthOfAll(m_snapshotBufferLength);
 
     /**
      * Limit the number of buffers that are outstanding at any given time
@@ -195,6 +195,14 @@ public class SnapshotSiteProcessor {
 
     private final IdlePredicate m_idlePredicate;
 
+    /*
+     * Paces file based snapshot work to the configured write budget and latency target.
+     * m_pacedWorkScheduled keeps the site from queueing another delayed task for every
+     * buffer that comes back while it is waiting out the current delay.
+     */
+    private final SnapshotWriteThrottle m_throttle = new SnapshotWriteThrottle();
+    private volatile boolean m_pacedWorkScheduled = false;
+
     /*
      * Synchronization is handled by SnapshotSaveAPI.startSnapshotting
      * Store the export sequence numbers for every table and partition. This will
@@ -284,6 +292,7 @@ public class SnapshotSiteProcessor {
 
     private BBContainer createNewBuffer(final BBContainer origin, final boolean noSchedule)
     {
+        final long handedOutNanos = System.nanoTime();
         return new BBContainer(origin.b()) {
             @Override
             public void discard() {
@@ -291,6 +300,9 @@ public class SnapshotSiteProcessor {
                 origin.discard();
                 m_availableSnapshotBuffers.incrementAndGet();
 
+                final long now = System.nanoTime();
+                m_throttle.recordWriteLatency(now - handedOutNanos, now);
+
                 if (!noSchedule) {
                     rescheduleSnapshotWork();
                 }
@@ -371,6 +383,26 @@ public class SnapshotSiteProcessor {
         }
     }
 
+    private void schedulePacedSnapshotWork(long delayNanos) {
+        if (m_pacedWorkScheduled) {
+            return;
+        }
+        m_pacedWorkScheduled = true;
+        m_throttle.recordThrottled(delayNanos);
+        VoltDB.instance().schedulePriorityWork(
+                new Runnable() {
+                    @Override
+                    public void run()
+                    {
+                        m_pacedWorkScheduled = false;
+                        m_siteTaskerQueue.offer(new SnapshotTask());
+                    }
+                },
+                delayNanos,
+                0,
+                TimeUnit.NANOSECONDS);
+    }
+
     public void initiateSnapshots(
             SystemProcedureExecutionContext context,
             SnapshotFormat format,
@@ -381,6 +413,7 @@ public class SnapshotSiteProcessor {
         ExecutionSitesCurrentlySnapshotting.add(this);
         final long now = System.currentTimeMillis();
         m_quietUntil = now + 200;
+        m_throttle.start(format.isFileBased(), System.nanoTime());
         m_perSiteLastSnapshotSucceded = true;
         m_lastSnapshotTxnId = txnId;
         m_snapshotTableTasks = MiscUtils.sortedArrayListMultimap();
@@ -573,6 +606,16 @@ public class SnapshotSiteProcessor {
             final int tableId = taskEntry.getKey();
             final Collection<SnapshotTableTask> tableTasks = taskEntry.getValue();
 
+            if (!noSchedule) {
+                final long delay =
+                        m_throttle.delayNanos(ExecutionSitesCurrentlySnapshotting.size(), System.nanoTime());
+                if (delay > 0) {
+                    // Over the write budget, come back once the last block has been paid for
+                    schedulePacedSnapshotWork(delay);
+                    break;
+                }
+            }
+
             final List<BBContainer> outputBuffers = getOutputBuffers(tableTasks, noSchedule);
             if (outputBuffers == null) {
                 // Not enough buffers available
@@ -584,8 +627,11 @@ public class SnapshotSiteProcessor {
 
 
             // Stream more and add a listener to handle any failures
+            final TableStreamer streamer = m_streamers.get(tableId);
+            final long bytesBefore = streamer.getBytesSerialized();
             Pair<ListenableFuture, Boolean> streamResult =
-                    m_streamers.get(tableId).streamMore(context, outputBuffers, null);
+                    streamer.streamMore(context, outputBuffers, null);
+            m_throttle.recordWork(streamer.getBytesSerialized() - bytesBefore, System.nanoTime());
             if (streamResult.getFirst() != null) {
                 final ListenableFuture writeFutures = streamResult.getFirst();
                 writeFutures.addListener(new Runnable() {
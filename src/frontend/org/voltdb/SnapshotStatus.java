@@ -116,6 +116,8 @@ public class SnapshotStatus extends StatsSource {
         columns.add(new ColumnInfo("THROUGHPUT", VoltType.FLOAT));
         columns.add(new ColumnInfo("RESULT", VoltType.STRING));
         columns.add(new ColumnInfo("TYPE", VoltType.STRING));
+        columns.add(new ColumnInfo("WRITE_RATE", VoltType.FLOAT));
+        columns.add(new ColumnInfo("THROTTLED_TIME", VoltType.BIGINT));
     }
 
     @SuppressWarnings("unchecked")
@@ -132,6 +134,13 @@ public class SnapshotStatus extends StatsSource {
                 (s.timeFinished - timeStarted) / 1000.0;
             throughput = (s.bytesWritten / (1024.0 * 1024.0)) / duration;
         }
+        // The rate the sites are serializing at, which is paced by the write budget, is
+        // available while the snapshot is still running
+        final long elapsed = (s.timeFinished != 0 ? s.timeFinished : System.currentTimeMillis()) - timeStarted;
+        double writeRate = 0;
+        if (elapsed > 0) {
+            writeRate = (s.getBytesSerialized() / (1024.0 * 1024.0)) / (elapsed / 1000.0);
+        }
 
         rowValues[columnNameToIndex.get("TABLE")] = t.name;
         rowValues[columnNameToIndex.get("PATH")] = s.path;
@@ -145,6 +154,8 @@ public class SnapshotStatus extends StatsSource {
         rowValues[columnNameToIndex.get("THROUGHPUT")] = throughput;
         rowValues[columnNameToIndex.get("RESULT")] = t.error == null ? "SUCCESS" : "FAILURE";
         rowValues[columnNameToIndex.get("TYPE")] = getSnapshotType(s.path);
+        rowValues[columnNameToIndex.get("WRITE_RATE")] = writeRate;
+        rowValues[columnNameToIndex.get("THROTTLED_TIME")] = s.getThrottledMillis();
         super.updateStatsRow(rowKey, rowValues);
     }
 
@@ -0,0 +1,170 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Paces the file based snapshot work of one site so that snapshots don't saturate the disk
+ * transactions are logging and writing to.
+ *
+ * The host wide budget is split evenly between the sites that are still snapshotting. Every
+ * block a site serializes pushes back the time it can serialize the next one by the time the
+ * block takes at the site's rate. If a target write latency is configured the rate is also adjusted
+ * from the time buffers spend being written, halving it when the smoothed latency is above the
+ * target and growing it back by a tenth of the site's share of the budget when it is below.
+ *
+ * Both are off by default, in which case nothing is paced beyond the existing quiet period.
+ */
+public class SnapshotWriteThrottle {
+    // host wide budget for file based snapshots, 0 for no limit
+    static final long BUDGET_BYTES_PER_SECOND =
+            Integer.getInteger("SNAPSHOT_WRITE_BUDGET_MEGABYTES", 0) * 1024L * 1024L;
+    // write latency above which sites back off, 0 to only enforce the budget
+    static final long TARGET_LATENCY_NANOS =
+            TimeUnit.MILLISECONDS.toNanos(Integer.getInteger("SNAPSHOT_WRITE_TARGET_LATENCY_MILLIS", 0));
+
+    // the rate a site never backs off below, so a snapshot always makes progress
+    static final double MIN_BYTES_PER_SECOND = 256 * 1024;
+    static final double DECREASE_FACTOR = 0.5;
+    static final double INCREASE_FRACTION = 0.1;
+    static final double LATENCY_WEIGHT = 0.25;
+
+    /*
+     * Totals for every site on the host since startup. SnapshotRegistry subtracts the
+     * values seen when a snapshot starts to get the numbers for that snapshot.
+     */
+    private static final AtomicLong m_totalBytes = new AtomicLong();
+    private static final AtomicLong m_totalThrottledNanos = new AtomicLong();
+
+    private final long m_budget;
+    private final long m_targetLatencyNanos;
+
+    private boolean m_paced = false;
+    private int m_sites = 1;
+    private double m_rate = Double.POSITIVE_INFINITY;
+    private double m_latencyNanos = 0;
+    private long m_startNanos;
+    private long m_bytes;
+    private long m_nextWorkNanos;
+    private long m_lastDecreaseNanos;
+
+    public SnapshotWriteThrottle() {
+        this(BUDGET_BYTES_PER_SECOND, TARGET_LATENCY_NANOS);
+    }
+
+    SnapshotWriteThrottle(long budgetBytesPerSecond, long targetLatencyNanos) {
+        m_budget = budgetBytesPerSecond;
+        m_targetLatencyNanos = targetLatencyNanos;
+    }
+
+    public static long totalBytes() {
+        return m_totalBytes.get();
+    }
+
+    public static long totalThrottledMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(m_totalThrottledNanos.get());
+    }
+
+    /**
+     * Reset the controller for a new snapshot
+     * @param fileBased only file based snapshots are paced, streams to other nodes run at full speed
+     */
+    public synchronized void start(boolean fileBased, long nowNanos) {
+        m_paced = fileBased && (m_budget > 0 || m_targetLatencyNanos > 0);
+        m_sites = 1;
+        m_rate = ceiling();
+        m_latencyNanos = 0;
+        m_startNanos = nowNanos;
+        m_bytes = 0;
+        m_nextWorkNanos = nowNanos;
+        m_lastDecreaseNanos = nowNanos;
+    }
+
+    /**
+     * @param sites the number of sites on the host still snapshotting, which share the budget
+     * @return how long the site has to wait before it can serialize another block
+     */
+    public synchronized long delayNanos(int sites, long nowNanos) {
+        if (!m_paced) {
+            return 0;
+        }
+        m_sites = Math.max(1, sites);
+        m_rate = Math.min(m_rate, ceiling());
+        return Math.max(0, m_nextWorkNanos - nowNanos);
+    }
+
+    /**
+     * Account for a block the site serialized and handed to the targets
+     */
+    public synchronized void recordWork(long bytes, long nowNanos) {
+        m_totalBytes.addAndGet(bytes);
+        m_bytes += bytes;
+        if (m_paced && m_rate != Double.POSITIVE_INFINITY) {
+            m_nextWorkNanos = Math.max(m_nextWorkNanos, nowNanos) + (long)(bytes * 1e9 / m_rate);
+        }
+    }
+
+    public void recordThrottled(long nanos) {
+        m_totalThrottledNanos.addAndGet(nanos);
+    }
+
+    /**
+     * Feed back the time a buffer took from being handed out to being returned by its targets
+     */
+    public synchronized void recordWriteLatency(long latencyNanos, long nowNanos) {
+        if (!m_paced || m_targetLatencyNanos <= 0) {
+            return;
+        }
+        m_latencyNanos = m_latencyNanos == 0 ?
+                latencyNanos : (1 - LATENCY_WEIGHT) * m_latencyNanos + LATENCY_WEIGHT * latencyNanos;
+
+        if (m_latencyNanos > m_targetLatencyNanos) {
+            // only back off once per latency period, the buffers already out were paced at the old rate
+            if (nowNanos - m_lastDecreaseNanos < m_targetLatencyNanos) {
+                return;
+            }
+            m_lastDecreaseNanos = nowNanos;
+            m_rate = Math.max(MIN_BYTES_PER_SECOND, Math.min(m_rate, achievedRate(nowNanos)) * DECREASE_FACTOR);
+        } else if (m_rate != Double.POSITIVE_INFINITY) {
+            final double ceiling = ceiling();
+            if (ceiling == Double.POSITIVE_INFINITY) {
+                m_rate *= 1 + INCREASE_FRACTION;
+            } else {
+                m_rate = Math.min(ceiling, m_rate + ceiling * INCREASE_FRACTION);
+            }
+        }
+    }
+
+    public synchronized double rate() {
+        return m_rate;
+    }
+
+    private double achievedRate(long nowNanos) {
+        final long elapsed = nowNanos - m_startNanos;
+        if (elapsed <= 0 || m_bytes == 0) {
+            return Double.POSITIVE_INFINITY;
+        }
+        return m_bytes * 1e9 / elapsed;
+    }
+
+    private double ceiling() {
+        return m_budget > 0 ? (double)m_budget / m_sites : Double.POSITIVE_INFINITY;
+    }
+}
@@ -64,6 +64,10 @@ public class StatsAgent extends OpsAgent
             request.aggregateTables =
             aggregateProcedureOutputStats(request.aggregateTables);
             break;
+        case LATENCYPERCENTILES:
+            request.aggregateTables =
+            aggregateLatencyPercentileStats(request.aggregateTables);
+            break;
 
         default:
         }
@@ -180,6 +184,17 @@ public class StatsAgent extends OpsAgent
     }
 
 
+    /**
+     * Produce LATENCYPERCENTILES by merging the histograms of every site
+     */
+    private VoltTable[] aggregateLatencyPercentileStats(VoltTable[] baseStats)
+    {
+        if (baseStats == null || baseStats.length != 1) {
+            return baseStats;
+        }
+        return new VoltTable[] { LatencyPercentileStats.aggregate(baseStats[0]) };
+    }
+
     /**
      * Need to release references to catalog related stats sources
      * to avoid hoarding references to the catalog.
@@ -412,6 +427,9 @@ public class StatsAgent extends OpsAgent
         case LATENCY_HISTOGRAM:
             stats = collectStats(StatsSelector.LATENCY_HISTOGRAM, interval);
             break;
+        case LATENCYPERCENTILES:
+            stats = collectStats(StatsSelector.LATENCYPERCENTILES, interval);
+            break;
         case MANAGEMENT:
             stats = collectManagementStats(interval);
             break;
@@ -433,6 +451,12 @@ public class StatsAgent extends OpsAgent
         case COMMANDLOG:
             stats = collectStats(StatsSelector.COMMANDLOG, false);
             break;
+        case MPSCHEDULING:
+            stats = collectStats(StatsSelector.MPSCHEDULING, false);
+            break;
+        case REPAIRLOG:
+            stats = collectStats(StatsSelector.REPAIRLOG, false);
+            break;
         case IMPORTER:
             stats = collectStats(StatsSelector.IMPORTER, interval);
             break;
@@ -24,6 +24,7 @@ public enum StatsSelector {
     INITIATOR,        // invoked as @stat initiator
     LATENCY,          // invoked as @stat latency
     LATENCY_HISTOGRAM,
+    LATENCYPERCENTILES, // procedure, statement and site queue latency percentiles
     PARTITIONCOUNT,
     IOSTATS,
     MEMORY,           // info about node's memory usage
@@ -54,5 +55,7 @@ public enum StatsSelector {
     CPU,            // Return CPU Stats
 
     COMMANDLOG,     // return number of outstanding bytes and txns on this node
+    MPSCHEDULING,   // return MP read concurrency and MP write waits at the MPI
+    REPAIRLOG,      // return the size and age of the repair log of every initiator
     IMPORTER
 }
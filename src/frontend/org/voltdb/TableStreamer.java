@@ -51,6 +51,7 @@ public class TableStreamer {
     private final int m_tableId;
     private final TableStreamType m_type;
     private final ImmutableList<SnapshotTableTask> m_tableTasks;
+    private long m_bytesSerialized = 0;
 
     public TableStreamer(int tableId, TableStreamType type, List<SnapshotTableTask> tableTasks)
     {
@@ -88,6 +89,14 @@ public class TableStreamer {
         return true;
     }
 
+    /**
+     * @return the number of bytes of tuple data serialized for all the targets so far
+     */
+    public long getBytesSerialized()
+    {
+        return m_bytesSerialized;
+    }
+
     /**
      * Streams more tuples from the table.
      * @param context          Context
@@ -194,6 +203,7 @@ public class TableStreamer {
              * Finalize the buffer by setting position to 0 and limit to the last used byte
              */
             final ByteBuffer buf = container.b();
+            m_bytesSerialized += serialized[serializedIndex];
             buf.limit(serialized[serializedIndex++] + task.m_target.getHeaderSize());
             buf.position(0);
 
@@ -0,0 +1,143 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb.client;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.voltdb.client.Distributer.CallbackBookeeping;
+
+/**
+ * Table of outstanding callbacks for a single connection, keyed by client handle.
+ *
+ * Handles are handed out sequentially so the common case is a direct-mapped ring
+ * indexed by the low bits of the handle. Insert and remove are a single CAS on the
+ * slot and never box the handle or allocate a map node. If the slot is still held
+ * by an older invocation (a long running sysproc, or more calls outstanding than the
+ * ring has slots) the entry spills into an overflow map so correctness never depends
+ * on the ring size.
+ *
+ * Each handle is inserted exactly once and is only removed after it was inserted,
+ * which is what makes a failed CAS on a matching slot mean "somebody else won".
+ */
+class CallbackTable implements Iterable<CallbackBookeeping> {
+
+    static final int DEFAULT_CAPACITY = Integer.getInteger("CLIENT_CALLBACK_TABLE_SIZE", 4096);
+
+    private final AtomicReferenceArray<CallbackBookeeping> m_slots;
+    private final int m_mask;
+    private final ConcurrentHashMap<Long, CallbackBookeeping> m_overflow =
+            new ConcurrentHashMap<Long, CallbackBookeeping>();
+
+    CallbackTable() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    CallbackTable(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Callback table capacity must be positive: " + capacity);
+        }
+        // round up to a power of two so the slot is a mask of the handle
+        final int size = Integer.highestOneBit(capacity - 1) << 1;
+        m_slots = new AtomicReferenceArray<CallbackBookeeping>(Math.max(1, size));
+        m_mask = m_slots.length() - 1;
+    }
+
+    private int slot(long handle) {
+        return (int)(handle & m_mask);
+    }
+
+    void put(CallbackBookeeping cb) {
+        if (!m_slots.compareAndSet(slot(cb.handle), null, cb)) {
+            m_overflow.put(cb.handle, cb);
+        }
+    }
+
+    /**
+     * Remove and return the bookkeeping for the handle, or null if it was never
+     * inserted or another thread (response, timeout, connection loss) already took it.
+     */
+    CallbackBookeeping remove(long handle) {
+        final int slot = slot(handle);
+        final CallbackBookeeping cb = m_slots.get(slot);
+        if (cb != null && cb.handle == handle) {
+            return m_slots.compareAndSet(slot, cb, null) ? cb : null;
+        }
+        if (m_overflow.isEmpty()) {
+            return null;
+        }
+        return m_overflow.remove(handle);
+    }
+
+    boolean contains(long handle) {
+        final CallbackBookeeping cb = m_slots.get(slot(handle));
+        if (cb != null && cb.handle == handle) {
+            return true;
+        }
+        return m_overflow.containsKey(handle);
+    }
+
+    int capacity() {
+        return m_slots.length();
+    }
+
+    /**
+     * Weakly consistent iteration over the outstanding callbacks, use
+     * {@link #remove(long)} to claim an entry before acting on it.
+     */
+    @Override
+    public Iterator<CallbackBookeeping> iterator() {
+        return new Iterator<CallbackBookeeping>() {
+            private int m_nextSlot = 0;
+            private final Iterator<CallbackBookeeping> m_overflowIter = m_overflow.values().iterator();
+            private CallbackBookeeping m_next = advance();
+
+            private CallbackBookeeping advance() {
+                while (m_nextSlot < m_slots.length()) {
+                    final CallbackBookeeping cb = m_slots.get(m_nextSlot++);
+                    if (cb != null) {
+                        return cb;
+                    }
+                }
+                return m_overflowIter.hasNext() ? m_overflowIter.next() : null;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return m_next != null;
+            }
+
+            @Override
+            public CallbackBookeeping next() {
+                if (m_next == null) {
+                    throw new NoSuchElementException();
+                }
+                final CallbackBookeeping retval = m_next;
+                m_next = advance();
+                return retval;
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+}
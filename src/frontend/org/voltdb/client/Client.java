@@ -110,6 +110,23 @@ public interface Client {
     public boolean callProcedure(ProcedureCallback callback, String procName, Object... parameters)
     throws IOException, NoConnectionsException;
 
+    /**
+     * <p>Asynchronously invoke a group of procedures, each with its own callback. Invocations that are
+     * routed to the same server are sent as a single network message, which is considerably cheaper than
+     * sending them one at a time for high rates of small single partition procedures. Callbacks are invoked
+     * individually as responses arrive. If there is backpressure
+     * this call will block until the whole batch is queued. If configureBlocking(false) is invoked
+     * then it will return immediately. Check the return value to determine if queueing actually took place,
+     * either all of the invocations in the batch are queued or none are.</p>
+     *
+     * @param batch {@link ProcedureBatch} holding the invocations and their callbacks.
+     * @return <code>true</code> if the batch was queued and <code>false</code> otherwise.
+     * @throws NoConnectionsException if this {@link Client} instance is not connected to any servers.
+     * @throws IOException if there is a Java network or connection problem.
+     */
+    public boolean callProcedureBatch(ProcedureBatch batch)
+    throws IOException, NoConnectionsException;
+
     /**
      * <p>Synchronously invoke a procedure with timeout. Blocks until a result is available. A {@link ProcCallException}
      * is thrown if the response is anything other then success.</p>
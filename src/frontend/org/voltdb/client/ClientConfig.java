@@ -199,7 +199,8 @@ public class ClientConfig {
      *
      * <p>Default value is 2 minutes if not set. Value of 0 means forever.</p>
      *
-     * <p>Note that while specified in MS, this timeout is only accurate to within a second or so.</p>
+     * <p>Timeouts are checked every 10 milliseconds, so a call times out at most that long
+     * after the timeout expires.</p>
      *
      * @param ms Timeout value in milliseconds.
      */
@@ -22,6 +22,7 @@ import java.io.FileWriter;
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.net.UnknownHostException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.CopyOnWriteArrayList;
@@ -315,6 +316,75 @@ public final class ClientImpl implements Client, ReplicaProcCaller {
                 Distributer.USE_DEFAULT_CLIENT_TIMEOUT, TimeUnit.NANOSECONDS, parameters);
     }
 
+    /**
+     * Asynchronously invoke a batch of procedure calls.
+     * @param batch Invocations and the callbacks to invoke with their results.
+     * @return True if the batch was queued and false otherwise
+     */
+    @Override
+    public final boolean callProcedureBatch(ProcedureBatch batch)
+    throws IOException, NoConnectionsException {
+        if (m_isShutdown) {
+            return false;
+        }
+        if (batch.size() == 0) {
+            return true;
+        }
+
+        final List<ProcedureInvocation> invocations = new ArrayList<ProcedureInvocation>(batch.size());
+        final List<ProcedureCallback> callbacks = new ArrayList<ProcedureCallback>(batch.size());
+        for (int ii = 0; ii < batch.size(); ii++) {
+            ProcedureCallback callback = batch.m_callbacks.get(ii);
+            final Object[] parameters = batch.m_parameters.get(ii);
+            if (callback == null) {
+                callback = new NullCallback();
+            } else if (callback instanceof ProcedureArgumentCacher) {
+                ((ProcedureArgumentCacher) callback).setArgs(parameters);
+            }
+            callbacks.add(callback);
+            invocations.add(new ProcedureInvocation(m_handle.getAndIncrement(), batch.m_procNames.get(ii), parameters));
+        }
+
+        final long nowNanos = System.nanoTime();
+        final long timeoutNanos = Distributer.USE_DEFAULT_CLIENT_TIMEOUT;
+
+        //Blessed threads (the ones that invoke callbacks) are not subject to backpressure
+        boolean isBlessed = m_blessedThreadIds.contains(Thread.currentThread().getId());
+        if (m_blockingQueue) {
+            while (!m_distributer.queueBatch(invocations, callbacks, isBlessed, nowNanos, timeoutNanos)) {
+                /*
+                 * Wait on backpressure honoring the timeout settings
+                 */
+                final long delta = Math.max(1, System.nanoTime() - nowNanos);
+                final long timeout = m_distributer.getProcedureTimeoutNanos();
+                try {
+                    if (backpressureBarrier(nowNanos, timeout - delta)) {
+                        final ClientResponseImpl r = new ClientResponseImpl(
+                                ClientResponse.CONNECTION_TIMEOUT,
+                                ClientResponse.UNINITIALIZED_APP_STATUS_CODE,
+                                "",
+                                new VoltTable[0],
+                                String.format("No response received in the allotted time (set to %d ms).",
+                                        TimeUnit.NANOSECONDS.toMillis(timeout)));
+                        for (ProcedureCallback callback : callbacks) {
+                            try {
+                                callback.clientCallback(r);
+                            } catch (Throwable t) {
+                                m_distributer.uncaughtException(callback, r, t);
+                            }
+                        }
+                        return true;
+                    }
+                } catch (InterruptedException e) {
+                    throw new java.io.InterruptedIOException("Interrupted while invoking procedures asynchronously");
+                }
+            }
+            return true;
+        } else {
+            return m_distributer.queueBatch(invocations, callbacks, isBlessed, nowNanos, timeoutNanos);
+        }
+    }
+
     /**
      * Asynchronously invoke a procedure call with timeout.
      * @param callback TransactionCallback that will be invoked with procedure results.
@@ -185,7 +185,7 @@ public class ConnectionUtil {
             // TODO Can open() be asynchronous if configureBlocking(true)?
             throw new IOException("Failed to open host " + ReverseDNSCache.hostnameOrAddress(addr.getAddress()));
         }
-        final long retvals[] = new long[4];
+        final long retvals[] = new long[5];
         returnArray[1] = retvals;
         try {
             /*
@@ -306,6 +306,8 @@ public class ConnectionUtil {
             byte buildStringBytes[] = new byte[buildStringLength];
             loginResponse.get(buildStringBytes);
             returnArray[2] = new String(buildStringBytes, Constants.UTF8ENCODING);
+            // servers that predate the capabilities byte don't send it
+            retvals[4] = loginResponse.hasRemaining() ? loginResponse.get() : 0;
 
             aChannel.configureBlocking(false);
             aChannel.socket().setKeepAlive(true);
@@ -25,7 +25,7 @@ import java.nio.channels.SocketChannel;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.Iterator;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -64,6 +64,7 @@ import org.voltdb.common.Constants;
 
 import com.google_voltpatches.common.base.Throwables;
 import com.google_voltpatches.common.collect.ImmutableList;
+import com.google_voltpatches.common.collect.ImmutableMap;
 
 import jsr166y.ThreadLocalRandom;
 
@@ -87,13 +88,14 @@ class Distributer {
     private final CopyOnWriteArrayList<NodeConnection> m_connections =
             new CopyOnWriteArrayList<NodeConnection>();
 
-    private final ArrayList<ClientStatusListenerExt> m_listeners = new ArrayList<ClientStatusListenerExt>();
+    private final CopyOnWriteArrayList<ClientStatusListenerExt> m_listeners =
+            new CopyOnWriteArrayList<ClientStatusListenerExt>();
 
     //Selector and connection handling, does all work in blocking selection thread
     private final VoltNetworkPool m_network;
 
     // Temporary until a distribution/affinity algorithm is written
-    private int m_nextConnection = 0;
+    private final AtomicInteger m_nextConnection = new AtomicInteger(0);
 
     private final boolean m_useMultipleThreads;
     private final boolean m_useClientAffinity;
@@ -115,18 +117,70 @@ class Distributer {
         }
     }
 
-    private final Map<Integer, NodeConnection> m_partitionMasters = new HashMap<Integer, NodeConnection>();
-    private final Map<Integer, NodeConnection[]> m_partitionReplicas = new HashMap<Integer, NodeConnection[]>();
-    private final Map<Integer, NodeConnection> m_hostIdToConnection = new HashMap<Integer, NodeConnection>();
-    private final Map<String, Procedure> m_procedureInfo = new HashMap<String, Procedure>();
-    //This is the instance of the Hashinator we picked from TOPO used only for client affinity.
-    private HashinatorLite m_hashinator = null;
+    /**
+     * Immutable snapshot of everything needed to route an invocation. Writers (connection
+     * changes, topology and procedure updates) build a new instance while holding the
+     * Distributer monitor and publish it through the volatile m_routing, so queue()
+     * only pays for a volatile read instead of contending on the monitor.
+     */
+    private static final class RoutingTable {
+        final NodeConnection[] connections;
+        final Map<Integer, NodeConnection> partitionMasters;
+        final Map<Integer, NodeConnection[]> partitionReplicas;
+        final Map<Integer, NodeConnection> hostIdToConnection;
+        final Map<String, Procedure> procedureInfo;
+        //This is the instance of the Hashinator we picked from TOPO used only for client affinity.
+        final HashinatorLite hashinator;
+
+        static final RoutingTable EMPTY = new RoutingTable(new NodeConnection[0],
+                ImmutableMap.<Integer, NodeConnection>of(),
+                ImmutableMap.<Integer, NodeConnection[]>of(),
+                ImmutableMap.<Integer, NodeConnection>of(),
+                ImmutableMap.<String, Procedure>of(),
+                null);
+
+        private RoutingTable(NodeConnection[] connections,
+                Map<Integer, NodeConnection> partitionMasters,
+                Map<Integer, NodeConnection[]> partitionReplicas,
+                Map<Integer, NodeConnection> hostIdToConnection,
+                Map<String, Procedure> procedureInfo,
+                HashinatorLite hashinator) {
+            this.connections = connections;
+            this.partitionMasters = partitionMasters;
+            this.partitionReplicas = partitionReplicas;
+            this.hostIdToConnection = hostIdToConnection;
+            this.procedureInfo = procedureInfo;
+            this.hashinator = hashinator;
+        }
+
+        RoutingTable withConnections(List<NodeConnection> connections, Map<Integer, NodeConnection> hostIdToConnection) {
+            return new RoutingTable(connections.toArray(new NodeConnection[connections.size()]),
+                    partitionMasters, partitionReplicas,
+                    ImmutableMap.copyOf(hostIdToConnection), procedureInfo, hashinator);
+        }
+
+        RoutingTable withTopology(Map<Integer, NodeConnection> partitionMasters,
+                Map<Integer, NodeConnection[]> partitionReplicas,
+                HashinatorLite hashinator) {
+            return new RoutingTable(connections,
+                    ImmutableMap.copyOf(partitionMasters), ImmutableMap.copyOf(partitionReplicas),
+                    hostIdToConnection, procedureInfo, hashinator);
+        }
+
+        RoutingTable withProcedures(Map<String, Procedure> procedureInfo) {
+            return new RoutingTable(connections, partitionMasters, partitionReplicas,
+                    hostIdToConnection, ImmutableMap.copyOf(procedureInfo), hashinator);
+        }
+    }
+
+    private volatile RoutingTable m_routing = RoutingTable.EMPTY;
     //This is a global timeout that will be used if a per-procedure timeout is not provided with the procedure call.
     private final long m_procedureCallTimeoutNanos;
     private static final long MINIMUM_LONG_RUNNING_SYSTEM_CALL_TIMEOUT_MS = 30 * 60 * 1000; // 30 minutes
     private final long m_connectionResponseTimeoutNanos;
-    private final Map<Integer, ClientAffinityStats> m_clientAffinityStats =
-        new HashMap<Integer, ClientAffinityStats>();
+    // Striped by partition, each ClientAffinityStats is updated under its own monitor
+    private final ConcurrentMap<Integer, ClientAffinityStats> m_clientAffinityStats =
+        new ConcurrentHashMap<Integer, ClientAffinityStats>();
 
     public final RateLimiter m_rateLimiter = new RateLimiter();
 
@@ -136,6 +190,17 @@ class Distributer {
                 CoreUtils.getThreadFactory("VoltDB Client Reaper Thread"));
     ScheduledFuture<?> m_timeoutReaperHandle;
 
+    /*
+     * Procedure timeouts are tracked in timing wheels striped by handle so callers
+     * registering calls and network threads completing them rarely share a monitor.
+     * The reaper thread advances every wheel once per tick.
+     */
+    private static final long TIMEOUT_WHEEL_TICK_NANOS =
+            TimeUnit.MILLISECONDS.toNanos(Integer.getInteger("CLIENT_TIMEOUT_WHEEL_TICK_MS", 10));
+    private static final int TIMEOUT_WHEEL_STRIPES = 16;
+    private final TimeoutWheel m_timeoutWheels[] = new TimeoutWheel[TIMEOUT_WHEEL_STRIPES];
+    ScheduledFuture<?> m_timeoutWheelHandle;
+
     /**
      * Server's instances id. Unique for the cluster
      */
@@ -287,34 +352,43 @@ class Distributer {
                     if ((!c.m_outstandingPing) && (sinceLastResponse > (m_connectionResponseTimeoutNanos / 3))) {
                         c.sendPing();
                     }
+                }
+            } catch (Throwable t) {
+                t.printStackTrace();
+            }
+        }
+    }
 
-                    // for each outstanding procedure
-                    for (final Map.Entry<Long, CallbackBookeeping> e : c.m_callbacks.entrySet()) {
-                        final long handle = e.getKey();
-                        final CallbackBookeeping cb = e.getValue();
-
-                        // if the timeout is expired, call the callback and remove the
-                        // bookeeping data
-                        final long deltaNanos = Math.max(1, nowNanos - cb.timestampNanos);
-                        if (deltaNanos > cb.procedureTimeoutNanos) {
-
-                            //For expected long operations don't use the default timeout
-                            //unless it is > MINIMUM_LONG_RUNNING_SYSTEM_CALL_TIMEOUT_MS
-                            final boolean isLongOp = isLongOp(cb.name);
-                            if (isLongOp && (deltaNanos < TimeUnit.MILLISECONDS.toNanos(MINIMUM_LONG_RUNNING_SYSTEM_CALL_TIMEOUT_MS))) {
-                                continue;
-                            }
+    /*
+     * Advances the timing wheels and times out every call whose deadline has passed.
+     * Only ever run on the reaper thread.
+     */
+    class TimeoutWheelTick implements Runnable {
+        private final ArrayList<TimeoutWheel.Entry> m_expired = new ArrayList<TimeoutWheel.Entry>();
 
-                            c.handleTimedoutCallback(handle, nowNanos);
-                        }
-                    }
+        @Override
+        public void run() {
+            try {
+                final long nowNanos = System.nanoTime();
+                for (TimeoutWheel wheel : m_timeoutWheels) {
+                    wheel.advance(nowNanos, m_expired);
+                }
+                for (TimeoutWheel.Entry e : m_expired) {
+                    final CallbackBookeeping cb = (CallbackBookeeping) e;
+                    cb.connection.handleTimedoutCallback(cb.handle, nowNanos);
                 }
             } catch (Throwable t) {
                 t.printStackTrace();
+            } finally {
+                m_expired.clear();
             }
         }
     }
 
+    private TimeoutWheel timeoutWheel(long handle) {
+        return m_timeoutWheels[(int)(handle & (TIMEOUT_WHEEL_STRIPES - 1))];
+    }
+
     /*
      * Check if the proc name is a procedure that is expected to run long
      * Make the minimum timeoutMS for certain long running system procedures
@@ -331,15 +405,20 @@ class Distributer {
         return false;
     }
 
-    class CallbackBookeeping {
-        public CallbackBookeeping(long timestampNanos, ProcedureCallback callback, String name, long timeoutNanos, boolean ignoreBackpressure) {
+    static class CallbackBookeeping extends TimeoutWheel.Entry {
+        public CallbackBookeeping(NodeConnection connection, long handle, long timestampNanos, ProcedureCallback callback,
+                String name, long timeoutNanos, boolean ignoreBackpressure) {
             assert(callback != null);
+            this.connection = connection;
+            this.handle = handle;
             this.timestampNanos = timestampNanos;
             this.callback = callback;
             this.name = name;
             this.procedureTimeoutNanos = timeoutNanos;
             this.ignoreBackpressure = ignoreBackpressure;
         }
+        final NodeConnection connection;
+        final long handle;
         long timestampNanos;
         //Timeout in ms 0 means use conenction specified procedure timeoutMS.
         final long procedureTimeoutNanos;
@@ -350,7 +429,7 @@ class Distributer {
 
     class NodeConnection extends VoltProtocolHandler implements org.voltcore.network.QueueMonitor {
         private final AtomicInteger m_callbacksToInvoke = new AtomicInteger(0);
-        private final ConcurrentMap<Long, CallbackBookeeping> m_callbacks = new ConcurrentHashMap<Long, CallbackBookeeping>();
+        private final CallbackTable m_callbacks = new CallbackTable();
         private final NonBlockingHashMap<String, ClientStats> m_stats = new NonBlockingHashMap<String, ClientStats>();
         private Connection m_connection;
         private volatile boolean m_isConnected = true;
@@ -359,7 +438,12 @@ class Distributer {
         boolean m_outstandingPing = false;
         ClientStatusListenerExt.DisconnectCause m_closeCause = DisconnectCause.CONNECTION_CLOSED;
 
-        public NodeConnection(long ids[]) {}
+        // whether the server understands messages carrying several invocations
+        final boolean m_supportsBatches;
+
+        public NodeConnection(long ids[]) {
+            m_supportsBatches = ids.length > 4 && (ids[4] & Constants.SERVER_CAPABILITY_BATCH_INVOCATIONS) != 0;
+        }
 
         /*
          * NodeConnection uses ignoreBackpressure to get rate limiter to not
@@ -369,25 +453,56 @@ class Distributer {
          */
         public void createWork(final long nowNanos, long handle, String name, ByteBuffer c,
                 ProcedureCallback callback, boolean ignoreBackpressure, long timeoutNanos) {
+            if (registerCallback(nowNanos, handle, name, callback, ignoreBackpressure, timeoutNanos)) {
+                m_connection.writeStream().enqueue(c);
+            }
+        }
+
+        /*
+         * Same as createWork but for a single message carrying several invocations. Invocations
+         * whose callback was already completed, with a timeout in the rate limiter or because
+         * the connection is gone, must not run, so if any are left out the message is rebuilt
+         * from the invocations that are still waiting on a response.
+         */
+        public void createBatchWork(final long nowNanos, List<ProcedureInvocation> invocations,
+                List<ProcedureCallback> callbacks, ByteBuffer c, boolean ignoreBackpressure, long timeoutNanos)
+                throws IOException {
+            final List<ProcedureInvocation> registered = new ArrayList<ProcedureInvocation>(invocations.size());
+            for (int ii = 0; ii < invocations.size(); ii++) {
+                final ProcedureInvocation invocation = invocations.get(ii);
+                if (registerCallback(nowNanos, invocation.getHandle(), invocation.getProcName(),
+                        callbacks.get(ii), ignoreBackpressure, timeoutNanos)) {
+                    registered.add(invocation);
+                }
+            }
+            if (registered.size() == invocations.size()) {
+                m_connection.writeStream().enqueue(c);
+            } else if (registered.size() == 1) {
+                m_connection.writeStream().enqueue(serializeSPI(registered.get(0)));
+            } else if (!registered.isEmpty()) {
+                m_connection.writeStream().enqueue(ProcedureBatch.serialize(registered));
+            }
+        }
+
+        /*
+         * Rate limit and record the callback for an invocation about to be written.
+         * Returns false if the callback was already completed, either with a timeout
+         * while blocked in the rate limiter or because the connection is gone.
+         */
+        private boolean registerCallback(final long nowNanos, long handle, String name,
+                ProcedureCallback callback, boolean ignoreBackpressure, long timeoutNanos) {
             assert(callback != null);
 
             //How long from the starting point in time to wait to get this stuff done
             timeoutNanos = (timeoutNanos == Distributer.USE_DEFAULT_CLIENT_TIMEOUT) ? m_procedureCallTimeoutNanos : timeoutNanos;
 
-            //Trigger the timeout at this point in time no matter what
-            final long timeoutTime = nowNanos + timeoutNanos;
-
-            //What was the time after the rate limiter returned
-            //Will be the same as timeoutNanos if it didn't block
-            long afterRateLimitNanos = 0;
-
             /*
              * Do rate limiting or check for max outstanding related backpressure in
              * the rate limiter which can block. If it blocks we can still get a timeout
              * exception to give prompt timeouts
              */
             try {
-                afterRateLimitNanos = m_rateLimiter.sendTxnWithOptionalBlockAndReturnCurrentTime(
+                m_rateLimiter.sendTxnWithOptionalBlockAndReturnCurrentTime(
                         nowNanos, timeoutNanos, ignoreBackpressure);
             } catch (TimeoutException e) {
                 /*
@@ -395,36 +510,40 @@ class Distributer {
                  * the transaction out on the wire due to max outstanding
                  */
                 final long deltaNanos = Math.max(1, System.nanoTime() - nowNanos);
-                    invokeCallbackWithTimeout(name, callback, deltaNanos, afterRateLimitNanos,  timeoutNanos, handle, ignoreBackpressure);
-                return;
+                invokeCallbackWithTimeout(name, callback, deltaNanos, timeoutNanos, handle);
+                return false;
             }
 
-            assert(m_callbacks.containsKey(handle) == false);
+            assert(m_callbacks.contains(handle) == false);
 
             //Drain needs to know when all callbacks have been invoked
             final int callbacksToInvoke = m_callbacksToInvoke.incrementAndGet();
             assert(callbacksToInvoke >= 0);
 
             //Optimistically submit the task
-            m_callbacks.put(handle, new CallbackBookeeping(nowNanos, callback, name, timeoutNanos, ignoreBackpressure));
-
-            //Schedule the timeout to fire relative to the amount of time
-            //spent getting to this point. Might fire immediately
-            //some of the time, but that is fine
-            final long timeoutRemaining = timeoutTime - afterRateLimitNanos;
-
-            //Schedule an individual timeout if necessary
-            //If it is a long op, don't bother scheduling a discrete timeout
-            if (timeoutNanos < TimeUnit.SECONDS.toNanos(1) && !isLongOp(name)) {
-                submitDiscreteTimeoutTask(handle, Math.max(0, timeoutRemaining));
-            }
+            final CallbackBookeeping cb =
+                    new CallbackBookeeping(this, handle, nowNanos, callback, name, timeoutNanos, ignoreBackpressure);
+            m_callbacks.put(cb);
+
+            //Trigger the timeout at this point in time no matter what, it is relative to
+            //the start of the call so it might fire on the next tick if the rate limiter blocked.
+            //For expected long operations don't use the default timeout
+            //unless it is > MINIMUM_LONG_RUNNING_SYSTEM_CALL_TIMEOUT_MS
+            final long wheelTimeoutNanos = isLongOp(name) ?
+                    Math.max(timeoutNanos, TimeUnit.MILLISECONDS.toNanos(MINIMUM_LONG_RUNNING_SYSTEM_CALL_TIMEOUT_MS)) :
+                    timeoutNanos;
+            //Must come after the put, an expiration that can't find the callback is lost.
+            //A response that already removed the callback cancelled the entry, which
+            //keeps the wheel from scheduling it
+            timeoutWheel(handle).schedule(cb, nowNanos, wheelTimeoutNanos);
 
             //Check for disconnect
             if (!m_isConnected) {
                 //Check if the disconnect or expiration already handled the callback
                 if (m_callbacks.remove(handle) == null) {
-                    return;
+                    return false;
                 }
+                timeoutWheel(handle).cancel(cb);
                 final ClientResponse r = new ClientResponseImpl(
                         ClientResponse.CONNECTION_LOST, new VoltTable[0],
                         "Connection to database host (" + m_connection.getHostnameAndIPAndPort() +
@@ -441,30 +560,9 @@ class Distributer {
 
                 //for bookkeeping, but it feels dishonest to call this here
                 m_rateLimiter.transactionResponseReceived(nowNanos, -1, ignoreBackpressure);
-                return;
-            } else {
-                m_connection.writeStream().enqueue(c);
+                return false;
             }
-        }
-
-        /*
-         * For high precision timeouts, submit a discrete task to a scheduled
-         * executor service to time out the transaction. The timeout task
-         * when run checks if the task is still present in the concurrent map
-         * of tasks and removes it. If it wins the race to remove the map
-         * then the transaction will be timed out even if a response is received
-         * at the same time.
-         *
-         * This will race with the periodic task that checks lower resolution timeouts
-         * and it is fine, the concurrent map makes sure each callback is handled exactly once
-         */
-        void submitDiscreteTimeoutTask(final long handle, long timeoutNanos) {
-            m_ex.schedule(new Runnable() {
-                @Override
-                public void run() {
-                    handleTimedoutCallback(handle, System.nanoTime());
-                }
-            }, timeoutNanos, TimeUnit.NANOSECONDS);
+            return true;
         }
 
         /*
@@ -473,7 +571,7 @@ class Distributer {
          */
         void handleTimedoutCallback(long handle, long nowNanos) {
             //Callback doesn't have to be there, it may have already
-            //received a response or been expired by the periodic expiration task, or a discrete expiration task
+            //received a response or been failed by a lost connection
             final CallbackBookeeping cb = m_callbacks.remove(handle);
 
             //It was handled during the race
@@ -483,19 +581,25 @@ class Distributer {
 
             final long deltaNanos = Math.max(1, nowNanos - cb.timestampNanos);
 
-            invokeCallbackWithTimeout(cb.name, cb.callback, deltaNanos, nowNanos, cb.procedureTimeoutNanos, handle, cb.ignoreBackpressure);
+            invokeCallbackWithTimeout(cb.name, cb.callback, deltaNanos, cb.procedureTimeoutNanos, handle);
+
+            //Drain needs to know when all callbacks have been invoked
+            final int remainingToInvoke = m_callbacksToInvoke.decrementAndGet();
+            assert(remainingToInvoke >= 0);
+
+            m_rateLimiter.transactionResponseReceived(nowNanos, -1, cb.ignoreBackpressure);
         }
 
         /*
-         * Factor out the boilerplate involved in invoking a callback with a timeout response
+         * Factor out the boilerplate involved in invoking a callback with a timeout response.
+         * Callers that registered the callback also give back its outstanding count and
+         * rate limiter permit, one that timed out in the rate limiter never took them
          */
         void invokeCallbackWithTimeout(String procName,
                                        ProcedureCallback callback,
                                        long deltaNanos,
-                                       long nowNanos,
                                        long timeoutNanos,
-                                       long handle,
-                                       boolean ignoreBackpressure) {
+                                       long handle) {
             ClientResponseImpl r = new ClientResponseImpl(
                     ClientResponse.CONNECTION_TIMEOUT,
                     ClientResponse.UNINITIALIZED_APP_STATUS_CODE,
@@ -512,11 +616,6 @@ class Distributer {
                 uncaughtException( callback, r, e1);
             }
 
-            //Drain needs to know when all callbacks have been invoked
-            final int remainingToInvoke = m_callbacksToInvoke.decrementAndGet();
-            assert(remainingToInvoke >= 0);
-
-            m_rateLimiter.transactionResponseReceived(nowNanos, -1, ignoreBackpressure);
             updateStatsForTimeout(procName, r.getClientRoundtripNanos(), r.getClusterRoundtrip());
         }
 
@@ -613,7 +712,7 @@ class Distributer {
 
             //Race with expiration thread to be the first to remove the callback
             //from the map and process it
-            final CallbackBookeeping stuff = m_callbacks.remove(response.getClientHandle());
+            final CallbackBookeeping stuff = m_callbacks.remove(handle);
 
             // presumably (hopefully) this is a response for a timed-out message
             if (stuff == null) {
@@ -630,6 +729,7 @@ class Distributer {
             }
             // handle a proper callback
             else {
+                timeoutWheel(handle).cancel(stuff);
                 final long callTimeNanos = stuff.timestampNanos;
                 final long deltaNanos = Math.max(1, nowNanos - callTimeNanos);
                 final ProcedureCallback cb = stuff.callback;
@@ -678,50 +778,39 @@ class Distributer {
             synchronized (Distributer.this) {
                 /*
                  * Repair all cluster topology data with the node connection removed
+                 * and publish it as a new routing table
                  */
-                Iterator<Map.Entry<Integer, NodeConnection>> i = m_partitionMasters.entrySet().iterator();
-                while (i.hasNext()) {
-                    Map.Entry<Integer, NodeConnection> entry = i.next();
-                    if (entry.getValue() == this) {
-                        i.remove();
+                final RoutingTable routing = m_routing;
+                Map<Integer, NodeConnection> partitionMasters = new HashMap<Integer, NodeConnection>();
+                for (Map.Entry<Integer, NodeConnection> entry : routing.partitionMasters.entrySet()) {
+                    if (entry.getValue() != this) {
+                        partitionMasters.put(entry.getKey(), entry.getValue());
                     }
                 }
 
-                i = m_hostIdToConnection.entrySet().iterator();
-                while (i.hasNext()) {
-                    Map.Entry<Integer, NodeConnection> entry = i.next();
-                    if (entry.getValue() == this) {
-                        i.remove();
+                Map<Integer, NodeConnection> hostIdToConnection = new HashMap<Integer, NodeConnection>();
+                for (Map.Entry<Integer, NodeConnection> entry : routing.hostIdToConnection.entrySet()) {
+                    if (entry.getValue() != this) {
+                        hostIdToConnection.put(entry.getKey(), entry.getValue());
                     }
                 }
 
-                Iterator<Map.Entry<Integer, NodeConnection[]>> i2 = m_partitionReplicas.entrySet().iterator();
-                List<Pair<Integer, NodeConnection[]>> entriesToRewrite = new ArrayList<Pair<Integer, NodeConnection[]>>();
-                while (i2.hasNext()) {
-                    Map.Entry<Integer, NodeConnection[]> entry = i2.next();
+                Map<Integer, NodeConnection[]> partitionReplicas = new HashMap<Integer, NodeConnection[]>();
+                for (Map.Entry<Integer, NodeConnection[]> entry : routing.partitionReplicas.entrySet()) {
+                    List<NodeConnection> survivors = new ArrayList<NodeConnection>();
                     for (NodeConnection nc : entry.getValue()) {
-                        if (nc == this) {
-                            entriesToRewrite.add(Pair.of(entry.getKey(), entry.getValue()));
+                        if (nc != this) {
+                            survivors.add(nc);
                         }
                     }
-                }
-
-                for (Pair<Integer, NodeConnection[]> entry : entriesToRewrite) {
-                    m_partitionReplicas.remove(entry.getFirst());
-                    NodeConnection survivors[] = new NodeConnection[entry.getSecond().length - 1];
-                    if (survivors.length == 0) {
-                        break;
-                    }
-                    int zz = 0;
-                    for (int ii = 0; ii < entry.getSecond().length; ii++) {
-                        if (entry.getSecond()[ii] != this) {
-                            survivors[zz++] = entry.getSecond()[ii];
-                        }
+                    if (!survivors.isEmpty()) {
+                        partitionReplicas.put(entry.getKey(), survivors.toArray(new NodeConnection[survivors.size()]));
                     }
-                    m_partitionReplicas.put(entry.getFirst(), survivors);
                 }
 
                 m_connections.remove(this);
+                m_routing = routing.withConnections(m_connections, hostIdToConnection)
+                                   .withTopology(partitionMasters, partitionReplicas, routing.hashinator);
                 //Notify listeners that a connection has been lost
                 for (ClientStatusListenerExt s : m_listeners) {
                     s.connectionLost(
@@ -764,12 +853,13 @@ class Distributer {
                         ClientResponse.CONNECTION_LOST, new VoltTable[0],
                         "Connection to database host (" + m_connection.getHostnameAndIPAndPort() +
                 ") was lost before a response was received");
-            for (Map.Entry<Long, CallbackBookeeping> e : m_callbacks.entrySet()) {
+            for (CallbackBookeeping e : m_callbacks) {
                 //Check for race with other threads
-                if (m_callbacks.remove(e.getKey()) == null) {
+                final CallbackBookeeping callBk = m_callbacks.remove(e.handle);
+                if (callBk == null) {
                     continue;
                 }
-                final CallbackBookeeping callBk = e.getValue();
+                timeoutWheel(callBk.handle).cancel(callBk);
                 try {
                     callBk.callback.clientCallback(r);
                 }
@@ -880,8 +970,15 @@ class Distributer {
         m_connectionResponseTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(connectionResponseTimeoutMS);
         m_useClientAffinity = useClientAffinity;
 
-        // schedule the task that looks for timed-out proc calls and connections
+        // schedule the task that looks for timed-out connections
         m_timeoutReaperHandle = m_ex.scheduleAtFixedRate(new CallExpiration(), 1, 1, TimeUnit.SECONDS);
+        // and the one that looks for timed-out proc calls
+        final long startNanos = System.nanoTime();
+        for (int ii = 0; ii < m_timeoutWheels.length; ii++) {
+            m_timeoutWheels[ii] = new TimeoutWheel(TIMEOUT_WHEEL_TICK_NANOS, startNanos);
+        }
+        m_timeoutWheelHandle = m_ex.scheduleAtFixedRate(new TimeoutWheelTick(),
+                TIMEOUT_WHEEL_TICK_NANOS, TIMEOUT_WHEEL_TICK_NANOS, TimeUnit.NANOSECONDS);
         m_subject = subject;
     }
 
@@ -931,13 +1028,16 @@ class Distributer {
             m_buildString = (String)socketChannelAndInstanceIdAndBuildString[2];
 
             m_connections.add(cxn);
+            final RoutingTable routing = m_routing;
+            Map<Integer, NodeConnection> hostIdToConnection = routing.hostIdToConnection;
+            if (m_useClientAffinity) {
+                hostIdToConnection = new HashMap<Integer, NodeConnection>(hostIdToConnection);
+                hostIdToConnection.put(hostId, cxn);
+            }
+            m_routing = routing.withConnections(m_connections, hostIdToConnection);
         }
 
         if (m_useClientAffinity) {
-            synchronized (this) {
-                m_hostIdToConnection.put(hostId, cxn);
-            }
-
             if (m_subscribedConnection == null) {
                 subscribeToNewNode();
             }
@@ -1024,133 +1124,268 @@ class Distributer {
         assert(invocation != null);
         assert(cb != null);
 
-        NodeConnection cxn = null;
-        boolean backpressure = true;
-
         /*
-         * Synchronization is necessary to ensure that m_connections is not modified
-         * as well as to ensure that backpressure is reported correctly
+         * Route against the current immutable snapshot without taking the Distributer
+         * monitor. Only if every candidate connection has backpressure do we fall back
+         * to the synchronized path below.
          */
-        synchronized (this) {
-            final int totalConnections = m_connections.size();
-
-            if (totalConnections == 0) {
-                throw new NoConnectionsException("No connections.");
-            }
+        NodeConnection cxn = route(m_routing, invocation, ignoreBackpressure, true);
 
+        if (cxn == null) {
             /*
-             * Check if the master for the partition is known. No back pressure check to ensure correct
-             * routing, but backpressure will be managed anyways. This is where we guess partition based on client
-             * affinity and known topology (hashinator initialized).
+             * Synchronization is necessary to ensure that backpressure is reported correctly.
+             * offBackPressure notifies listeners while holding the monitor, so re-checking
+             * here guarantees we can't report backpressure after it has already ended.
              */
-            if (m_useClientAffinity && (m_hashinator != null)) {
-                final Procedure procedureInfo = m_procedureInfo.get(invocation.getProcName());
-                Integer hashedPartition = -1;
-
-                if (procedureInfo != null) {
-                    hashedPartition = Constants.MP_INIT_PID;
-                    if (( ! procedureInfo.multiPart) &&
-                        // User may have passed too few parameters to allow dispatching.
-                        // Avoid an indexing error here to fall through to the proper ProcCallException.
-                            (procedureInfo.partitionParameter < invocation.getPassedParamCount())) {
-                        hashedPartition = m_hashinator.getHashedPartitionForParameter(
-                                procedureInfo.partitionParameterType,
-                                invocation.getPartitionParamValue(procedureInfo.partitionParameter));
+            synchronized (this) {
+                cxn = route(m_routing, invocation, ignoreBackpressure, false);
+                if (cxn == null) {
+                    for (ClientStatusListenerExt s : m_listeners) {
+                        s.backpressure(true);
                     }
-                    /*
-                     * If the procedure is read only and single part, load balance across replicas
-                     */
-                    if (!procedureInfo.multiPart && procedureInfo.readOnly) {
-                        NodeConnection partitionReplicas[] = m_partitionReplicas.get(hashedPartition);
-                        if (partitionReplicas != null && partitionReplicas.length > 0) {
-                            cxn = partitionReplicas[ThreadLocalRandom.current().nextInt(partitionReplicas.length)];
-                            if (cxn.hadBackPressure()) {
-                                //See if there is one without backpressure, make sure it's still connected
-                                for (NodeConnection nc : partitionReplicas) {
-                                    if (!nc.hadBackPressure() && nc.m_isConnected) {
-                                        cxn = nc;
-                                        break;
-                                    }
-                                }
-                            }
-                            if (!cxn.hadBackPressure() || ignoreBackpressure) {
-                                backpressure = false;
+                    return false;
+                }
+            }
+        }
+
+        /*
+         * Do the heavy weight serialization outside the synchronized block.
+         * createWork synchronizes on an individual connection which allows for more concurrency
+         */
+        ByteBuffer buf = null;
+        try {
+            buf = serializeSPI(invocation);
+        } catch (Exception e) {
+            Throwables.propagate(e);
+        }
+        cxn.createWork(nowNanos, invocation.getHandle(), invocation.getProcName(), buf, cb, ignoreBackpressure, timeoutNanos);
+
+        return true;
+    }
+
+    /**
+     * Queue a batch of invocations. Each invocation is routed the same way {@link #queue} would
+     * route it and invocations headed for the same connection are written as one batch message.
+     * Either the whole batch is queued or, if any chosen connection has backpressure, none of it is.
+     * @param invocations
+     * @param callbacks callback for each invocation, in the same order
+     * @param ignoreBackpressure If true the invocations will be queued even if there is backpressure
+     * @param nowNanos Current time in nanoseconds using System.nanoTime
+     * @param timeoutNanos nanoseconds from nowNanos where timeout should fire
+     * @return True if the batch was queued and false if it was not queued due to backpressure
+     * @throws NoConnectionsException
+     */
+    boolean queueBatch(
+            List<ProcedureInvocation> invocations,
+            List<ProcedureCallback> callbacks,
+            final boolean ignoreBackpressure, final long nowNanos, final long timeoutNanos)
+            throws NoConnectionsException {
+        assert(invocations.size() == callbacks.size());
+
+        final NodeConnection[] targets = new NodeConnection[invocations.size()];
+        boolean backpressure = false;
+        RoutingTable routing = m_routing;
+        for (int ii = 0; ii < targets.length; ii++) {
+            targets[ii] = route(routing, invocations.get(ii), ignoreBackpressure, true);
+            backpressure |= targets[ii] == null;
+        }
+
+        if (backpressure) {
+            // See queue() for why backpressure has to be confirmed under the monitor
+            synchronized (this) {
+                routing = m_routing;
+                for (int ii = 0; ii < targets.length; ii++) {
+                    if (targets[ii] == null) {
+                        targets[ii] = route(routing, invocations.get(ii), ignoreBackpressure, false);
+                        if (targets[ii] == null) {
+                            for (ClientStatusListenerExt s : m_listeners) {
+                                s.backpressure(true);
                             }
-                        }
-                    } else {
-                        /*
-                         * Writes have to go to the master
-                         */
-                        cxn = m_partitionMasters.get(hashedPartition);
-                        if (cxn != null && !cxn.hadBackPressure() || ignoreBackpressure) {
-                            backpressure = false;
+                            return false;
                         }
                     }
                 }
-                if (cxn != null && !cxn.m_isConnected) {
-                    // Would be nice to log something here
-                    // Client affinity picked a connection that was actually disconnected.  Reset to null
-                    // and let the round-robin choice pick a connection
-                    cxn = null;
+            }
+        }
+
+        // Group by connection, preserving the submission order within each connection
+        final Map<NodeConnection, List<Integer>> byConnection = new IdentityHashMap<NodeConnection, List<Integer>>();
+        for (int ii = 0; ii < targets.length; ii++) {
+            List<Integer> indexes = byConnection.get(targets[ii]);
+            if (indexes == null) {
+                indexes = new ArrayList<Integer>();
+                byConnection.put(targets[ii], indexes);
+            }
+            indexes.add(ii);
+        }
+
+        try {
+            for (Map.Entry<NodeConnection, List<Integer>> e : byConnection.entrySet()) {
+                final NodeConnection cxn = e.getKey();
+                List<ProcedureInvocation> frame = new ArrayList<ProcedureInvocation>();
+                List<ProcedureCallback> frameCallbacks = new ArrayList<ProcedureCallback>();
+                int frameBytes = 0;
+                for (int index : e.getValue()) {
+                    final ProcedureInvocation invocation = invocations.get(index);
+                    final int size = invocation.getSerializedSize();
+                    if (!frame.isEmpty() && frameBytes + size > ProcedureBatch.MAX_BATCH_FRAME_BYTES) {
+                        sendBatchFrame(cxn, frame, frameCallbacks, ignoreBackpressure, nowNanos, timeoutNanos);
+                        frame = new ArrayList<ProcedureInvocation>();
+                        frameCallbacks = new ArrayList<ProcedureCallback>();
+                        frameBytes = 0;
+                    }
+                    frame.add(invocation);
+                    frameCallbacks.add(callbacks.get(index));
+                    frameBytes += size;
                 }
-                ClientAffinityStats stats = m_clientAffinityStats.get(hashedPartition);
-                if (stats == null) {
-                    stats = new ClientAffinityStats(hashedPartition, 0, 0, 0, 0);
-                    m_clientAffinityStats.put(hashedPartition, stats);
+                sendBatchFrame(cxn, frame, frameCallbacks, ignoreBackpressure, nowNanos, timeoutNanos);
+            }
+        } catch (IOException e) {
+            Throwables.propagate(e);
+        }
+
+        return true;
+    }
+
+    private void sendBatchFrame(NodeConnection cxn, List<ProcedureInvocation> invocations,
+            List<ProcedureCallback> callbacks, boolean ignoreBackpressure, long nowNanos, long timeoutNanos)
+            throws IOException {
+        if (invocations.size() == 1 || !cxn.m_supportsBatches) {
+            // No point in the batch envelope for a single invocation, and older servers don't understand it
+            for (int ii = 0; ii < invocations.size(); ii++) {
+                final ProcedureInvocation invocation = invocations.get(ii);
+                cxn.createWork(nowNanos, invocation.getHandle(), invocation.getProcName(), serializeSPI(invocation),
+                        callbacks.get(ii), ignoreBackpressure, timeoutNanos);
+            }
+        } else {
+            cxn.createBatchWork(nowNanos, invocations, callbacks, ProcedureBatch.serialize(invocations),
+                    ignoreBackpressure, timeoutNanos);
+        }
+    }
+
+    /**
+     * Pick the connection for an invocation from a routing snapshot.
+     * @return The connection to use or null if the chosen connection(s) had backpressure
+     * @throws NoConnectionsException
+     */
+    private NodeConnection route(
+            RoutingTable routing,
+            ProcedureInvocation invocation,
+            boolean ignoreBackpressure,
+            boolean updateAffinityStats)
+            throws NoConnectionsException {
+        final NodeConnection[] connections = routing.connections;
+        final int totalConnections = connections.length;
+
+        if (totalConnections == 0) {
+            throw new NoConnectionsException("No connections.");
+        }
+
+        NodeConnection cxn = null;
+        boolean backpressure = true;
+
+        /*
+         * Check if the master for the partition is known. No back pressure check to ensure correct
+         * routing, but backpressure will be managed anyways. This is where we guess partition based on client
+         * affinity and known topology (hashinator initialized).
+         */
+        if (m_useClientAffinity && (routing.hashinator != null)) {
+            final Procedure procedureInfo = routing.procedureInfo.get(invocation.getProcName());
+            Integer hashedPartition = -1;
+
+            if (procedureInfo != null) {
+                hashedPartition = Constants.MP_INIT_PID;
+                if (( ! procedureInfo.multiPart) &&
+                    // User may have passed too few parameters to allow dispatching.
+                    // Avoid an indexing error here to fall through to the proper ProcCallException.
+                        (procedureInfo.partitionParameter < invocation.getPassedParamCount())) {
+                    hashedPartition = routing.hashinator.getHashedPartitionForParameter(
+                            procedureInfo.partitionParameterType,
+                            invocation.getPartitionParamValue(procedureInfo.partitionParameter));
                 }
-                if (cxn != null) {
-                    if (procedureInfo != null && procedureInfo.readOnly) {
-                        stats.addAffinityRead();
+                /*
+                 * If the procedure is read only and single part, load balance across replicas
+                 */
+                if (!procedureInfo.multiPart && procedureInfo.readOnly) {
+                    NodeConnection partitionReplicas[] = routing.partitionReplicas.get(hashedPartition);
+                    if (partitionReplicas != null && partitionReplicas.length > 0) {
+                        cxn = partitionReplicas[ThreadLocalRandom.current().nextInt(partitionReplicas.length)];
+                        if (cxn.hadBackPressure()) {
+                            //See if there is one without backpressure, make sure it's still connected
+                            for (NodeConnection nc : partitionReplicas) {
+                                if (!nc.hadBackPressure() && nc.m_isConnected) {
+                                    cxn = nc;
+                                    break;
+                                }
+                            }
+                        }
+                        if (!cxn.hadBackPressure() || ignoreBackpressure) {
+                            backpressure = false;
+                        }
                     }
-                    else {
-                        stats.addAffinityWrite();
+                } else {
+                    /*
+                     * Writes have to go to the master
+                     */
+                    cxn = routing.partitionMasters.get(hashedPartition);
+                    if (cxn != null && !cxn.hadBackPressure() || ignoreBackpressure) {
+                        backpressure = false;
                     }
                 }
+            }
+            if (cxn != null && !cxn.m_isConnected) {
+                // Would be nice to log something here
+                // Client affinity picked a connection that was actually disconnected.  Reset to null
+                // and let the round-robin choice pick a connection
+                cxn = null;
+            }
+            if (updateAffinityStats) {
                 // account these here because we lose the partition ID and procedure info once we
                 // bust out of this scope.
-                else {
-                    if (procedureInfo != null && procedureInfo.readOnly) {
-                        stats.addRrRead();
-                    }
-                    else {
-                        stats.addRrWrite();
-                    }
-                }
+                updateAffinityStats(hashedPartition, cxn != null, procedureInfo != null && procedureInfo.readOnly);
             }
-            if (cxn == null) {
-                for (int i=0; i < totalConnections; ++i) {
-                    cxn = m_connections.get(Math.abs(++m_nextConnection % totalConnections));
-                    if (!cxn.hadBackPressure() || ignoreBackpressure) {
-                        // serialize and queue the invocation
-                        backpressure = false;
-                        break;
-                    }
+        }
+        if (cxn == null) {
+            for (int i=0; i < totalConnections; ++i) {
+                cxn = connections[Math.abs(m_nextConnection.incrementAndGet() % totalConnections)];
+                if (!cxn.hadBackPressure() || ignoreBackpressure) {
+                    // serialize and queue the invocation
+                    backpressure = false;
+                    break;
                 }
             }
+        }
 
-            if (backpressure) {
-                cxn = null;
-                for (ClientStatusListenerExt s : m_listeners) {
-                    s.backpressure(true);
-                }
+        return backpressure ? null : cxn;
+    }
+
+    private void updateAffinityStats(Integer partition, boolean affinity, boolean readOnly) {
+        ClientAffinityStats stats = m_clientAffinityStats.get(partition);
+        if (stats == null) {
+            stats = new ClientAffinityStats(partition, 0, 0, 0, 0);
+            ClientAffinityStats existing = m_clientAffinityStats.putIfAbsent(partition, stats);
+            if (existing != null) {
+                stats = existing;
             }
         }
-
-        /*
-         * Do the heavy weight serialization outside the synchronized block.
-         * createWork synchronizes on an individual connection which allows for more concurrency
-         */
-        if (cxn != null) {
-            ByteBuffer buf = null;
-            try {
-                buf = serializeSPI(invocation);
-            } catch (Exception e) {
-                Throwables.propagate(e);
+        synchronized (stats) {
+            if (affinity) {
+                if (readOnly) {
+                    stats.addAffinityRead();
+                }
+                else {
+                    stats.addAffinityWrite();
+                }
+            }
+            else {
+                if (readOnly) {
+                    stats.addRrRead();
+                }
+                else {
+                    stats.addRrWrite();
+                }
             }
-            cxn.createWork(nowNanos, invocation.getHandle(), invocation.getProcName(), buf, cb, ignoreBackpressure, timeoutNanos);
         }
-
-        return !backpressure;
     }
 
     /**
@@ -1161,6 +1396,7 @@ class Distributer {
     final void shutdown() throws InterruptedException {
         // stop the old proc call reaper
         m_timeoutReaperHandle.cancel(false);
+        m_timeoutWheelHandle.cancel(false);
         m_ex.shutdown();
         m_ex.awaitTermination(1, TimeUnit.SECONDS);
 
@@ -1245,10 +1481,11 @@ class Distributer {
     Map<Integer, ClientAffinityStats> getAffinityStatsSnapshot()
     {
         Map<Integer, ClientAffinityStats> retval = new HashMap<Integer, ClientAffinityStats>();
-        // these get modified under this lock in queue()
-        synchronized(this) {
-            for (Entry<Integer, ClientAffinityStats> e : m_clientAffinityStats.entrySet()) {
-                retval.put(e.getKey(), (ClientAffinityStats)e.getValue().clone());
+        // these get modified under their own lock in queue()
+        for (Entry<Integer, ClientAffinityStats> e : m_clientAffinityStats.entrySet()) {
+            final ClientAffinityStats stats = e.getValue();
+            synchronized (stats) {
+                retval.put(e.getKey(), (ClientAffinityStats)stats.clone());
             }
         }
         return retval;
@@ -1284,6 +1521,8 @@ class Distributer {
     private void updateAffinityTopology(VoltTable tables[]) {
         //First table contains the description of partition ids master/slave relationships
         VoltTable vt = tables[0];
+        final RoutingTable routing = m_routing;
+        HashinatorLite hashinator;
 
         //In future let TOPO return cooked bytes when cooked and we use correct recipe
         boolean cooked = false;
@@ -1291,7 +1530,7 @@ class Distributer {
             //Just in case the new client connects to the old version of Volt that only returns 1 topology table
             // We're going to get the MPI back in this table, so subtract it out from the number of partitions.
             int numPartitions = vt.getRowCount() - 1;
-            m_hashinator = new HashinatorLite(numPartitions); // legacy only
+            hashinator = new HashinatorLite(numPartitions); // legacy only
         } else {
             //Second table contains the hash function
             boolean advanced = tables[1].advanceRow();
@@ -1300,13 +1539,13 @@ class Distributer {
                                    "performance will be lower because transactions can't be routed at this client");
                 return;
             }
-            m_hashinator = new HashinatorLite(
+            hashinator = new HashinatorLite(
                     HashinatorLiteType.valueOf(tables[1].getString("HASHTYPE")),
                     tables[1].getVarbinary("HASHCONFIG"),
                     cooked);
         }
-        m_partitionMasters.clear();
-        m_partitionReplicas.clear();
+        Map<Integer, NodeConnection> partitionMasters = new HashMap<Integer, NodeConnection>();
+        Map<Integer, NodeConnection[]> partitionReplicas = new HashMap<Integer, NodeConnection[]>();
         // The MPI's partition ID is 16383 (MpInitiator.MP_INIT_PID), so we shouldn't inadvertently
         // hash to it.  Go ahead and include it in the maps, we can use it at some point to
         // route MP transactions directly to the MPI node.
@@ -1317,21 +1556,22 @@ class Distributer {
             for (String site : vt.getString("Sites").split(",")) {
                 site = site.trim();
                 Integer hostId = Integer.valueOf(site.split(":")[0]);
-                if (m_hostIdToConnection.containsKey(hostId)) {
-                    connections.add(m_hostIdToConnection.get(hostId));
+                if (routing.hostIdToConnection.containsKey(hostId)) {
+                    connections.add(routing.hostIdToConnection.get(hostId));
                 }
             }
-            m_partitionReplicas.put(partition, connections.toArray(new NodeConnection[0]));
+            partitionReplicas.put(partition, connections.toArray(new NodeConnection[0]));
 
             Integer leaderHostId = Integer.valueOf(vt.getString("Leader").split(":")[0]);
-            if (m_hostIdToConnection.containsKey(leaderHostId)) {
-                m_partitionMasters.put(partition, m_hostIdToConnection.get(leaderHostId));
+            if (routing.hostIdToConnection.containsKey(leaderHostId)) {
+                partitionMasters.put(partition, routing.hostIdToConnection.get(leaderHostId));
             }
         }
+        m_routing = routing.withTopology(partitionMasters, partitionReplicas, hashinator);
     }
 
     private void updateProcedurePartitioning(VoltTable vt) {
-        m_procedureInfo.clear();
+        Map<String, Procedure> procedureInfo = new HashMap<String, Procedure>();
         while (vt.advanceRow()) {
             try {
                 //Data embedded in JSON object in remarks column
@@ -1343,11 +1583,11 @@ class Distributer {
                     int partitionParameter = jsObj.getInt(Constants.JSON_PARTITION_PARAMETER);
                     int partitionParameterType =
                         jsObj.getInt(Constants.JSON_PARTITION_PARAMETER_TYPE);
-                    m_procedureInfo.put(procedureName,
+                    procedureInfo.put(procedureName,
                             new Procedure(false,readOnly, partitionParameter, partitionParameterType));
                 } else {
                     // Multi Part procedure JSON descriptors omit the partitionParameter
-                    m_procedureInfo.put(procedureName, new Procedure(true, readOnly, Procedure.PARAMETER_NONE,
+                    procedureInfo.put(procedureName, new Procedure(true, readOnly, Procedure.PARAMETER_NONE,
                                 Procedure.PARAMETER_NONE));
                 }
 
@@ -1355,6 +1595,7 @@ class Distributer {
                 e.printStackTrace();
             }
         }
+        m_routing = m_routing.withProcedures(procedureInfo);
     }
 
     /**
@@ -1364,7 +1605,7 @@ class Distributer {
      * @return
      */
     public boolean isHashinatorInitialized() {
-        return (m_hashinator != null);
+        return (m_routing.hashinator != null);
     }
 
     /**
@@ -1375,17 +1616,19 @@ class Distributer {
      * @return
      */
     public long getPartitionForParameter(byte typeValue, Object value) {
-        if (m_hashinator == null) {
+        final HashinatorLite hashinator = m_routing.hashinator;
+        if (hashinator == null) {
             return -1;
         }
-        return m_hashinator.getHashedPartitionForParameter(typeValue, value);
+        return hashinator.getHashedPartitionForParameter(typeValue, value);
     }
 
     public HashinatorLiteType getHashinatorType() {
-        if (m_hashinator == null) {
+        final HashinatorLite hashinator = m_routing.hashinator;
+        if (hashinator == null) {
             return HashinatorLiteType.LEGACY;
         }
-        return m_hashinator.getConfigurationType();
+        return hashinator.getConfigurationType();
     }
 
     private ByteBuffer serializeSPI(ProcedureInvocation pi) throws IOException {
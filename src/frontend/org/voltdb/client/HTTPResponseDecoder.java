@@ -0,0 +1,132 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb.client;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URLConnection;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import org.json_voltpatches.JSONArray;
+import org.json_voltpatches.JSONException;
+import org.json_voltpatches.JSONObject;
+import org.voltdb.ClientResponseImpl;
+import org.voltdb.VoltTable;
+
+/**
+ * Decodes the responses of the HTTP interface (/api/1.0/) into client responses.
+ *
+ * A request made with {@link #BINARY_CONTENT_TYPE} in its Accept header gets the procedure
+ * response back in the same wire format the native client protocol uses, so the result
+ * tables are wrapped around the bytes read from the connection instead of being parsed
+ * out of JSON text. Responses the server writes before a procedure runs, such as failed
+ * authentication or bad parameters, are still JSON and are decoded from that.
+ */
+public class HTTPResponseDecoder {
+
+    public static final String BINARY_CONTENT_TYPE = "application/x-voltdb-response";
+
+    /**
+     * Ask for the binary format, must be called before the connection is connected
+     */
+    public static void acceptBinary(URLConnection connection) {
+        connection.setRequestProperty("Accept", BINARY_CONTENT_TYPE);
+    }
+
+    /**
+     * Read and decode the response of a connection, in whichever format the server chose
+     */
+    public static ClientResponse decode(HttpURLConnection connection) throws IOException {
+        final InputStream in = connection.getResponseCode() < HttpURLConnection.HTTP_BAD_REQUEST ?
+                connection.getInputStream() : connection.getErrorStream();
+        if (in == null) {
+            throw new IOException("HTTP " + connection.getResponseCode() + " response has no body");
+        }
+        try {
+            return decode(connection.getContentType(), readFully(in, connection.getContentLength()));
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * @param contentType the content type of the response, JSON unless it is {@link #BINARY_CONTENT_TYPE}
+     * @param body the response body, the result tables of a binary response share it
+     */
+    public static ClientResponse decode(String contentType, byte[] body) throws IOException {
+        if (contentType != null && contentType.trim().startsWith(BINARY_CONTENT_TYPE)) {
+            final ClientResponseImpl response = new ClientResponseImpl();
+            try {
+                response.initFromBuffer(ByteBuffer.wrap(body));
+            } catch (RuntimeException e) {
+                // underflows and bad table sizes from a truncated body
+                throw new IOException("Malformed binary response", e);
+            }
+            return response;
+        }
+        return decodeJSON(new String(body, StandardCharsets.UTF_8));
+    }
+
+    static ClientResponse decodeJSON(String json) throws IOException {
+        try {
+            final JSONObject jsonObj = new JSONObject(json);
+            final JSONArray jsonResults = jsonObj.getJSONArray("results");
+            final VoltTable results[] = new VoltTable[jsonResults.length()];
+            for (int i = 0; i < results.length; i++) {
+                results[i] = VoltTable.fromJSONObject(jsonResults.getJSONObject(i));
+            }
+            return new ClientResponseImpl((byte) jsonObj.getInt("status"),
+                                          (byte) jsonObj.getInt("appstatus"),
+                                          optString(jsonObj, "appstatusstring"),
+                                          results,
+                                          optString(jsonObj, "statusstring"));
+        } catch (JSONException e) {
+            throw new IOException("Malformed JSON response", e);
+        }
+    }
+
+    private static String optString(JSONObject jsonObj, String key) throws JSONException {
+        return jsonObj.isNull(key) ? null : jsonObj.getString(key);
+    }
+
+    private static byte[] readFully(InputStream in, int contentLength) throws IOException {
+        if (contentLength >= 0) {
+            // the server sets the length of binary responses, read them without copying
+            final byte body[] = new byte[contentLength];
+            int offset = 0;
+            while (offset < contentLength) {
+                final int read = in.read(body, offset, contentLength - offset);
+                if (read == -1) {
+                    throw new IOException("Response ended after " + offset + " of " + contentLength + " bytes");
+                }
+                offset += read;
+            }
+            return body;
+        }
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(8192);
+        final byte buffer[] = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,205 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb.client;
+
+import java.util.List;
+
+/**
+ * Hierarchical timing wheel for call timeouts.
+ *
+ * Time is divided into ticks. Level 0 has one slot per tick, each higher level has
+ * one slot per full revolution of the level below it. An entry goes into the lowest
+ * level whose range covers its deadline and is cascaded down into a finer level when
+ * the level below wraps around to its slot, so scheduling, cancelling and expiring an
+ * entry are all O(1) and the cost of a tick only depends on what actually expires.
+ *
+ * Entries are intrusive so the wheel never allocates. All methods are synchronized,
+ * callers that need more concurrency stripe several wheels. Entries never fire early,
+ * and fire at most one tick late when {@link #advance(long, List)} is called on time.
+ *
+ * Entries are used once. Cancelling an entry that isn't scheduled yet keeps it from
+ * ever being scheduled, so a caller that publishes an entry before scheduling it can't
+ * leave it stranded in the wheel when it is cancelled in between.
+ */
+class TimeoutWheel {
+
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int SLOT_MASK = SLOTS - 1;
+    private static final int LEVELS = 4;
+    // deadlines further out than this many ticks park in the top level and get re-cascaded
+    private static final long MAX_DELTA = (1L << (SLOT_BITS * LEVELS)) - 1;
+
+    /**
+     * Base class for anything that can be scheduled in the wheel.
+     */
+    static class Entry {
+        private Entry m_prev;
+        private Entry m_next;
+        private Entry[] m_wheelSlots;
+        private int m_slot = -1;
+        private long m_deadlineTick;
+        private boolean m_cancelled;
+
+        boolean isScheduled() {
+            return m_slot != -1;
+        }
+    }
+
+    private final long m_tickNanos;
+    private final long m_startNanos;
+    // heads of the intrusive lists, [level][slot]
+    private final Entry[][] m_slots = new Entry[LEVELS][SLOTS];
+    // the last tick whose level 0 slot has been expired
+    private long m_currentTick = 0;
+    private int m_size = 0;
+
+    TimeoutWheel(long tickNanos, long startNanos) {
+        if (tickNanos <= 0) {
+            throw new IllegalArgumentException("Tick must be positive: " + tickNanos);
+        }
+        m_tickNanos = tickNanos;
+        m_startNanos = startNanos;
+    }
+
+    long getTickNanos() {
+        return m_tickNanos;
+    }
+
+    synchronized int size() {
+        return m_size;
+    }
+
+    /**
+     * Schedule an entry to expire timeoutNanos after nowNanos or later.
+     * A timeout of Long.MAX_VALUE is effectively forever.
+     * @return false if the entry was already cancelled and isn't scheduled
+     */
+    synchronized boolean schedule(Entry e, long nowNanos, long timeoutNanos) {
+        assert(!e.isScheduled());
+        if (e.m_cancelled) {
+            return false;
+        }
+        final long elapsedNanos = Math.max(0, nowNanos - m_startNanos);
+        // saturate instead of overflowing for infinite timeouts
+        final long deadlineNanos = timeoutNanos > Long.MAX_VALUE - elapsedNanos ?
+                Long.MAX_VALUE : elapsedNanos + timeoutNanos;
+        // round up so an entry never fires before its deadline
+        final long deadlineTick = divideRoundingUp(deadlineNanos, m_tickNanos);
+        e.m_deadlineTick = Math.max(deadlineTick, m_currentTick + 1);
+        place(e);
+        m_size++;
+        return true;
+    }
+
+    /**
+     * Remove an entry before it expires, or keep it from being scheduled if it isn't yet.
+     * @return true if the entry was scheduled and is now cancelled
+     */
+    synchronized boolean cancel(Entry e) {
+        e.m_cancelled = true;
+        if (!e.isScheduled()) {
+            return false;
+        }
+        unlink(e);
+        m_size--;
+        return true;
+    }
+
+    /**
+     * Move the wheel forward to nowNanos, unlinking every entry whose deadline has passed.
+     * @param expired receives the expired entries, in no particular order
+     */
+    synchronized void advance(long nowNanos, List<Entry> expired) {
+        final long nowTick = (nowNanos - m_startNanos) / m_tickNanos;
+        while (m_currentTick < nowTick) {
+            final long tick = ++m_currentTick;
+            // cascade from the top down so entries moved into a level that
+            // also wraps on this tick get cascaded again before expiring level 0
+            for (int level = LEVELS - 1; level > 0; level--) {
+                if ((tick & ((1L << (SLOT_BITS * level)) - 1)) == 0) {
+                    cascade(level, (int)((tick >>> (SLOT_BITS * level)) & SLOT_MASK));
+                }
+            }
+            final int slot = (int)(tick & SLOT_MASK);
+            Entry e = m_slots[0][slot];
+            while (e != null) {
+                final Entry next = e.m_next;
+                assert(e.m_deadlineTick <= tick);
+                unlink(e);
+                m_size--;
+                expired.add(e);
+                e = next;
+            }
+        }
+    }
+
+    private void cascade(int level, int slot) {
+        Entry e = m_slots[level][slot];
+        m_slots[level][slot] = null;
+        while (e != null) {
+            final Entry next = e.m_next;
+            e.m_prev = null;
+            e.m_next = null;
+            e.m_slot = -1;
+            e.m_wheelSlots = null;
+            place(e);
+            e = next;
+        }
+    }
+
+    private void place(Entry e) {
+        final long delta = Math.min(e.m_deadlineTick - m_currentTick, MAX_DELTA);
+        final long targetTick = m_currentTick + delta;
+        int level = 0;
+        while (level < LEVELS - 1 && delta >= (1L << (SLOT_BITS * (level + 1)))) {
+            level++;
+        }
+        final int slot = (int)((targetTick >>> (SLOT_BITS * level)) & SLOT_MASK);
+        final Entry[] slots = m_slots[level];
+        final Entry head = slots[slot];
+        e.m_prev = null;
+        e.m_next = head;
+        if (head != null) {
+            head.m_prev = e;
+        }
+        slots[slot] = e;
+        e.m_wheelSlots = slots;
+        e.m_slot = slot;
+    }
+
+    private static void unlink(Entry e) {
+        if (e.m_prev != null) {
+            e.m_prev.m_next = e.m_next;
+        } else {
+            e.m_wheelSlots[e.m_slot] = e.m_next;
+        }
+        if (e.m_next != null) {
+            e.m_next.m_prev = e.m_prev;
+        }
+        e.m_prev = null;
+        e.m_next = null;
+        e.m_wheelSlots = null;
+        e.m_slot = -1;
+    }
+
+    private static long divideRoundingUp(long value, long divisor) {
+        final long quotient = value / divisor;
+        return value % divisor == 0 ? quotient : quotient + 1;
+    }
+}
@@ -0,0 +1,118 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb.client.VoltBulkLoader;
+
+/**
+ * Bounds the number of batches a {@link PerPartitionTable} has submitted without a response
+ * and adapts the size of its batches to their response latency.
+ *
+ * The batch size halves when the smoothed latency is over the target and grows back by a
+ * sixteenth of the maximum size when it is under half the target. Latency is measured from
+ * the point the batch was handed to the Client, so time spent blocked on the Client's
+ * backpressure counts and shrinks the batches too. Batches submitted before the last
+ * resize are left out of the average since they say nothing about the new size.
+ */
+class BatchPipeline {
+    // share of a new latency sample in the smoothed latency
+    static final int LATENCY_SMOOTHING = 8;
+    // batches grow back by this fraction of the maximum size
+    static final int GROWTH_DIVISOR = 16;
+
+    private int m_maxBatchSize;
+    private volatile int m_batchSize;
+    private int m_pipelineDepth;
+    private long m_targetLatencyNanos;
+    private int m_inFlight = 0;
+    private long m_avgLatencyNanos = 0;
+    private long m_lastResizeNanos = Long.MIN_VALUE;
+
+    BatchPipeline(int maxBatchSize, int pipelineDepth, long targetLatencyNanos) {
+        m_maxBatchSize = maxBatchSize;
+        m_batchSize = maxBatchSize;
+        m_pipelineDepth = pipelineDepth;
+        m_targetLatencyNanos = targetLatencyNanos;
+    }
+
+    /**
+     * @return the size of the batches to submit now, between 1 and the maximum batch size
+     */
+    int batchSize() {
+        return m_batchSize;
+    }
+
+    synchronized int maxBatchSize() {
+        return m_maxBatchSize;
+    }
+
+    synchronized int inFlight() {
+        return m_inFlight;
+    }
+
+    synchronized void setMaxBatchSize(int maxBatchSize) {
+        m_maxBatchSize = maxBatchSize;
+        m_batchSize = Math.min(m_batchSize, maxBatchSize);
+    }
+
+    synchronized void setPipelineDepth(int pipelineDepth) {
+        m_pipelineDepth = pipelineDepth;
+        notifyAll();
+    }
+
+    /**
+     * @param targetLatencyNanos the latency to aim for, 0 always submits batches of the maximum size
+     */
+    synchronized void setTargetLatency(long targetLatencyNanos) {
+        m_targetLatencyNanos = targetLatencyNanos;
+        if (targetLatencyNanos <= 0) {
+            m_batchSize = m_maxBatchSize;
+        }
+    }
+
+    /**
+     * Take a slot for a batch about to be submitted, waiting while the pipeline is full
+     */
+    synchronized void acquire() throws InterruptedException {
+        while (m_inFlight >= m_pipelineDepth) {
+            wait();
+        }
+        m_inFlight++;
+    }
+
+    /**
+     * Give back the slot of a batch that got its response and adapt the batch size to its latency
+     */
+    synchronized void completed(long submittedNanos, long nowNanos, boolean success) {
+        m_inFlight--;
+        notifyAll();
+
+        final long target = m_targetLatencyNanos;
+        if (!success || target <= 0 || submittedNanos < m_lastResizeNanos) {
+            return;
+        }
+        final long latencyNanos = nowNanos - submittedNanos;
+        m_avgLatencyNanos = m_avgLatencyNanos == 0 ?
+                latencyNanos : m_avgLatencyNanos + (latencyNanos - m_avgLatencyNanos) / LATENCY_SMOOTHING;
+        if (m_avgLatencyNanos > target && m_batchSize > 1) {
+            m_batchSize = Math.max(1, m_batchSize / 2);
+            m_avgLatencyNanos = 0;
+            m_lastResizeNanos = nowNanos;
+        } else if (m_avgLatencyNanos < target / 2 && m_batchSize < m_maxBatchSize) {
+            m_batchSize = Math.min(m_maxBatchSize, m_batchSize + Math.max(1, m_maxBatchSize / GROWTH_DIVISOR));
+        }
+    }
+}
@@ -27,6 +27,7 @@ import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.voltcore.logging.VoltLogger;
 import org.voltcore.utils.CoreUtils;
@@ -46,6 +47,9 @@ import org.voltdb.client.ProcedureCallback;
 public class PerPartitionTable {
     private static final VoltLogger loaderLog = new VoltLogger("LOADER");
 
+    static final int DEFAULT_PIPELINE_DEPTH = Integer.getInteger("BULKLOADER_PIPELINE_DEPTH", 8);
+    static final long DEFAULT_TARGET_BATCH_LATENCY_MS = Long.getLong("BULKLOADER_TARGET_BATCH_LATENCY_MS", 1000);
+
     // Client we are tied to
     final ClientImpl m_clientImpl;
     //The index in loader tables and the PartitionProcessor number
@@ -74,11 +78,18 @@ public class PerPartitionTable {
     final String m_tableName;
     // Upsert Mode Flag
     final byte m_upsert;
+    //Bounds the batches in flight and adapts their size between 1 and m_minBatchTriggerSize
+    final BatchPipeline m_pipeline;
+    //Set while a task draining full batches is queued or running on m_es
+    private final AtomicBoolean m_drainQueued = new AtomicBoolean(false);
+    //Converted values of the row being staged into a table, only used on m_es
+    private final Object[] m_rowArgs;
 
     // Callback for batch submissions to the Client. A failed request submits the entire
     // batch of rows to m_failedQueue for row by row processing on m_failureProcessor.
     class PartitionProcedureCallback implements ProcedureCallback {
         final List<VoltBulkLoaderRow> m_batchRowList;
+        long m_submittedNanos;
 
         PartitionProcedureCallback(List<VoltBulkLoaderRow> batchRowList) {
             m_batchRowList = batchRowList;
@@ -87,6 +98,7 @@ public class PerPartitionTable {
         // Called by Client to inform us of the status of the bulk insert.
         @Override
         public void clientCallback(ClientResponse response) throws InterruptedException {
+            m_pipeline.completed(m_submittedNanos, System.nanoTime(), response.getStatus() == ClientResponse.SUCCESS);
             if (response.getStatus() != ClientResponse.SUCCESS) {
                 // Queue up all rows for individual processing by originating BulkLoader's FailureProcessor.
                 m_es.execute(new Runnable() {
@@ -116,6 +128,8 @@ public class PerPartitionTable {
         m_upsert = (byte) (firstLoader.m_upsert ? 1:0);
         m_partitionRowQueue = new LinkedBlockingQueue<VoltBulkLoaderRow>(minBatchTriggerSize*5);
         m_minBatchTriggerSize = minBatchTriggerSize;
+        m_pipeline = new BatchPipeline(minBatchTriggerSize, DEFAULT_PIPELINE_DEPTH,
+                TimeUnit.MILLISECONDS.toNanos(DEFAULT_TARGET_BATCH_LATENCY_MS));
         m_columnInfo = firstLoader.m_colInfo;
         m_partitionedColumnIndex = firstLoader.m_partitionedColumnIndex;
         m_columnTypes = firstLoader.m_columnTypes;
@@ -123,6 +137,7 @@ public class PerPartitionTable {
         m_tableName = tableName;
 
         table = new VoltTable(m_columnInfo);
+        m_rowArgs = new Object[m_columnInfo.length];
 
         m_es = CoreUtils.getSingleThreadExecutor(tableName + "-" + partitionId);
     }
@@ -131,6 +146,7 @@ public class PerPartitionTable {
         if (m_minBatchTriggerSize >= minBatchTriggerSize) {
             // This will generate a batch of arbitrary length when the next insert is made
             m_minBatchTriggerSize = minBatchTriggerSize;
+            m_pipeline.setMaxBatchSize(minBatchTriggerSize);
             return true;
         }
         else {
@@ -138,25 +154,40 @@ public class PerPartitionTable {
         }
      }
 
+    void setPipelineDepth(int pipelineDepth) {
+        m_pipeline.setPipelineDepth(pipelineDepth);
+    }
+
+    void setTargetBatchLatency(long targetBatchLatencyNanos) {
+        m_pipeline.setTargetLatency(targetBatchLatencyNanos);
+    }
+
+    // Drains the queue until it doesn't contain a single batch.
+    private final Runnable m_drainTask = new Runnable() {
+        @Override
+        public void run() {
+            try {
+                do {
+                    while (m_partitionRowQueue.size() >= m_pipeline.batchSize()) {
+                        loadBatch(buildTable());
+                    }
+                    m_drainQueued.set(false);
+                    // a row that filled a batch after the last check saw the flag still set
+                } while (m_partitionRowQueue.size() >= m_pipeline.batchSize() && m_drainQueued.compareAndSet(false, true));
+            } catch (Exception e) {
+                m_drainQueued.set(false);
+                loaderLog.error("Failed to load batch", e);
+            }
+        }
+    };
+
     /**
-     * Synchronized so that when the a single batch is filled up, we only queue one task to
-     * drain the queue. The task will drain the queue until it doesn't contain a single batch.
+     * When a batch is filled up, only queue one task to drain the queue.
      */
     synchronized void insertRowInTable(final VoltBulkLoaderRow nextRow) throws InterruptedException {
         m_partitionRowQueue.put(nextRow);
-        if (m_partitionRowQueue.size() == m_minBatchTriggerSize) {
-            m_es.execute(new Runnable() {
-                @Override
-                public void run() {
-                    try {
-                        while (m_partitionRowQueue.size() >= m_minBatchTriggerSize) {
-                            loadTable(buildTable(), table);
-                        }
-                    } catch (Exception e) {
-                        loaderLog.error("Failed to load batch", e);
-                    }
-                }
-            });
+        if (m_partitionRowQueue.size() >= m_pipeline.batchSize() && m_drainQueued.compareAndSet(false, true)) {
+            m_es.execute(m_drainTask);
         }
     }
 
@@ -169,7 +200,12 @@ public class PerPartitionTable {
         return m_es.submit(new Callable<Boolean>() {
             @Override
             public Boolean call() throws Exception {
-                loadTable(buildTable(), table);
+                // the batch size may have shrunk since the rows were queued
+                final int batchSize = m_pipeline.batchSize();
+                int batches = (m_partitionRowQueue.size() + batchSize - 1) / batchSize;
+                do {
+                    loadBatch(buildTable());
+                } while (--batches > 0);
                 return true;
             }
         });
@@ -191,13 +227,12 @@ public class PerPartitionTable {
             // No need to check error here if a correctedLine has come here it was
             // previously successful.
             try {
-                Object row_args[] = new Object[row.m_rowData.length];
-                for (int i = 0; i < row_args.length; i++) {
+                for (int i = 0; i < m_rowArgs.length; i++) {
                     final VoltType type = m_columnTypes[i];
-                    row_args[i] = ParameterConverter.tryToMakeCompatible(type.classFromType(),
+                    m_rowArgs[i] = ParameterConverter.tryToMakeCompatible(type.classFromType(),
                             row.m_rowData[i]);
                 }
-                tmpTable.addRow(row_args);
+                tmpTable.addRow(m_rowArgs);
             } catch (VoltTypeException ex) {
                 // Should never happened because the bulk conversion in PerPartitionProcessor
                 // should have caught this
@@ -222,18 +257,17 @@ public class PerPartitionTable {
     }
 
     private PartitionProcedureCallback buildTable() {
-        ArrayList<VoltBulkLoaderRow> buf = new ArrayList<VoltBulkLoaderRow>(m_minBatchTriggerSize);
-        m_partitionRowQueue.drainTo(buf, m_minBatchTriggerSize);
+        final int batchSize = m_pipeline.batchSize();
+        ArrayList<VoltBulkLoaderRow> buf = new ArrayList<VoltBulkLoaderRow>(batchSize);
+        m_partitionRowQueue.drainTo(buf, batchSize);
         ListIterator<VoltBulkLoaderRow> it = buf.listIterator();
         while (it.hasNext()) {
             VoltBulkLoaderRow currRow = it.next();
             VoltBulkLoader loader = currRow.m_loader;
-            Object row_args[];
-            row_args = new Object[currRow.m_rowData.length];
             try {
-                for (int i = 0; i < row_args.length; i++) {
+                for (int i = 0; i < m_rowArgs.length; i++) {
                     final VoltType type = m_columnTypes[i];
-                    row_args[i] = ParameterConverter.tryToMakeCompatible(type.classFromType(),
+                    m_rowArgs[i] = ParameterConverter.tryToMakeCompatible(type.classFromType(),
                             currRow.m_rowData[i]);
                 }
             } catch (VoltTypeException e) {
@@ -242,12 +276,25 @@ public class PerPartitionTable {
                 it.remove();
                 continue;
             }
-            table.addRow(row_args);
+            table.addRow(m_rowArgs);
         }
 
         return new PartitionProcedureCallback(buf);
     }
 
+    /**
+     * Submit the staged table as one batch, waiting first if the pipeline is full.
+     * The batch's callback gives the pipeline slot back.
+     */
+    private void loadBatch(PartitionProcedureCallback callback) throws Exception {
+        if (table.getRowCount() <= 0) {
+            return;
+        }
+        m_pipeline.acquire();
+        callback.m_submittedNanos = System.nanoTime();
+        loadTable(callback, table);
+    }
+
     private void loadTable(ProcedureCallback callback, VoltTable toSend) throws Exception {
         if (toSend.getRowCount() <= 0) {
             return;
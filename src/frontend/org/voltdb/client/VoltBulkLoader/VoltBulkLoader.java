@@ -286,6 +286,35 @@ public class VoltBulkLoader {
         }
     }
 
+    /**
+     * Set how many batches each partition of the table may have submitted to the Client
+     * without a response before further rows wait in the partition's queue. Applies to all
+     * VoltBulkLoader instances working on the same table with the same Client.
+     *
+     * @param depth Maximum number of outstanding batches per partition, must be positive
+     */
+    public void setPipelineDepth(int depth) {
+        if (depth <= 0) {
+            throw new IllegalArgumentException("Pipeline depth must be positive: " + depth);
+        }
+        for (int i = m_firstPartitionTable; i <= m_lastPartitionTable; i++) {
+            m_partitionTable[i].setPipelineDepth(depth);
+        }
+    }
+
+    /**
+     * Set the batch response latency the table aims for. While responses take longer than this,
+     * batches shrink, and they grow back towards the maximum batch size once latency drops.
+     * Applies to all VoltBulkLoader instances working on the same table with the same Client.
+     *
+     * @param ms Target latency in milliseconds, <code>0</code> always submits full batches
+     */
+    public void setTargetBatchLatency(long ms) {
+        for (int i = m_firstPartitionTable; i <= m_lastPartitionTable; i++) {
+            m_partitionTable[i].setTargetBatchLatency(TimeUnit.MILLISECONDS.toNanos(Math.max(0, ms)));
+        }
+    }
+
     void generateError(Object rowHandle, Object[] objectList, String errMessage) {
         VoltTable[] dummyTable = new VoltTable[1];
         dummyTable[0] = new VoltTable(m_colInfo);
@@ -429,6 +458,16 @@ public class VoltBulkLoader {
         return m_partitionTable[m_firstPartitionTable].m_minBatchTriggerSize;
     }
 
+    /**
+     * With adaptive batch sizing, batches may be smaller than {@link #getMaxBatchSize()}
+     * while the cluster is slow to respond.
+     *
+     * @return The size of the batches the first partition of this table is currently submitting
+     */
+    public int getCurrentBatchSize() {
+        return m_partitionTable[m_firstPartitionTable].m_pipeline.batchSize();
+    }
+
     /**
      * @return The number rows that have been received by this instance of VoltBulkLoader
      *  but have not been processed by the Client
@@ -36,6 +36,9 @@ public class Constants
     public static final byte AUTH_SERVICE_NAME = 4;
     public static final byte AUTH_HANDSHAKE = 5;
 
+    // capabilities a server advertises in the byte following the build string of a successful login response
+    public static final byte SERVER_CAPABILITY_BATCH_INVOCATIONS = 1;
+
     public static final String KERBEROS = "kerberos";
 
     // reasons a connection can fail
@@ -24,6 +24,8 @@ import java.util.List;
 import java.util.Map;
 import java.util.Timer;
 import java.util.TimerTask;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.voltdb.common.Constants;
 import org.voltdb.planner.BoundPlan;
@@ -83,22 +85,30 @@ public class AdHocCompilerCache implements Serializable {
     final long MAX_LITERAL_MEM  = Long.getLong("ADHOC_COMPILER_CACHE_MAX_LITERAL_MEM_BYTES", 32*1024*1024);
     final int MAX_CORE_ENTRIES;
 
+    // the planner threads share the caches, each level is split into stripes by key
+    // that are locked and kept in LRU order independently
+    static final int MAX_STRIPES = Integer.getInteger("ADHOC_COMPILER_CACHE_STRIPES", 16);
+    // don't split small caches into stripes too small for LRU to mean much
+    static final int MIN_STRIPE_ENTRIES = 64;
+
     /** cache of literals to full plans */
-    final Map<String, AdHocPlannedStatement> m_literalCache;
+    final AdHocStatementCache[] m_literalCache;
     /** cache of parameterized plan descriptions to one or more core parameterized plans,
      *  each plan optionally has its own requirements for which parameters need to be bound
      *  to what values to enable its specialized (expression-indexed) plan. */
-    final Map<String, List<BoundPlan> > m_coreCache;
-
-    // placeholder stats used during development that may/may not survive
-    long m_literalHits = 0;
-    long m_literalQueries = 0;
-    long m_literalInsertions = 0;
-    long m_literalEvictions = 0;
-    long m_planHits = 0;
-    long m_planQueries = 0;
-    long m_planInsertions = 0;
-    long m_planEvictions = 0;
+    final Map<String, List<BoundPlan> >[] m_coreCache;
+
+    final AtomicLong m_literalHits = new AtomicLong();
+    final AtomicLong m_literalQueries = new AtomicLong();
+    final AtomicLong m_literalInsertions = new AtomicLong();
+    final AtomicLong m_literalEvictions = new AtomicLong();
+    final AtomicLong m_planHits = new AtomicLong();
+    final AtomicLong m_planQueries = new AtomicLong();
+    final AtomicLong m_planInsertions = new AtomicLong();
+    final AtomicLong m_planEvictions = new AtomicLong();
+    // evictions already handed to the planner stats
+    final AtomicLong m_reportedLiteralEvictions = new AtomicLong();
+    final AtomicLong m_reportedPlanEvictions = new AtomicLong();
 
     /** {@see this#startPeriodicStatsPrinting() } */
     Timer m_statsTimer = null;
@@ -110,34 +120,56 @@ public class AdHocCompilerCache implements Serializable {
         this(1000, 1000);
     }
 
+    private static int stripeCount(int maxEntries) {
+        return Math.max(1, Math.min(MAX_STRIPES, maxEntries / MIN_STRIPE_ENTRIES));
+    }
+
+    private static int stripe(Object key, int stripes) {
+        int h = key.hashCode();
+        h ^= (h >>> 16);
+        return (h & Integer.MAX_VALUE) % stripes;
+    }
+
     /**
      * Constructor with specific cache sizes is only called directly for testing.
      *
      * @param maxLiteralEntries cache size for literals
      * @param maxLiteralMem cache memory for literals
      */
+    @SuppressWarnings("unchecked")
     AdHocCompilerCache(int maxLiteralEntries, int maxCoreEntries) {
         MAX_LITERAL_ENTRIES = maxLiteralEntries;
         MAX_CORE_ENTRIES = maxCoreEntries;
 
-        // an LRU cache map
-        m_literalCache = new AdHocStatementCache(MAX_LITERAL_ENTRIES, MAX_LITERAL_MEM);
+        // LRU cache maps
+        final int literalStripes = stripeCount(MAX_LITERAL_ENTRIES);
+        m_literalCache = new AdHocStatementCache[literalStripes];
+        for (int i = 0; i < literalStripes; i++) {
+            m_literalCache[i] = new AdHocStatementCache(
+                    (MAX_LITERAL_ENTRIES + literalStripes - 1) / literalStripes,
+                    MAX_LITERAL_MEM / literalStripes);
+        }
 
-        // an LRU cache map
-        m_coreCache = new LinkedHashMap<String, List<BoundPlan> >(MAX_CORE_ENTRIES * 2, .75f, true) {
-            private static final long serialVersionUID = 1L;
+        // LRU cache maps
+        final int coreStripes = stripeCount(MAX_CORE_ENTRIES);
+        final int maxStripeEntries = (MAX_CORE_ENTRIES + coreStripes - 1) / coreStripes;
+        m_coreCache = new Map[coreStripes];
+        for (int i = 0; i < coreStripes; i++) {
+            m_coreCache[i] = new LinkedHashMap<String, List<BoundPlan> >(maxStripeEntries * 2, .75f, true) {
+                private static final long serialVersionUID = 1L;
 
-            // This method is called just after a new entry has been added
-            @Override
-            public boolean removeEldestEntry(Map.Entry<String, List<BoundPlan> > eldest) {
-                if (size() > MAX_CORE_ENTRIES) {
-                    ++m_planEvictions;
-                    return true;
+                // This method is called just after a new entry has been added
+                @Override
+                public boolean removeEldestEntry(Map.Entry<String, List<BoundPlan> > eldest) {
+                    if (size() > maxStripeEntries) {
+                        m_planEvictions.incrementAndGet();
+                        return true;
+                    }
+                    return false;
                 }
-                return false;
-            }
 
-        };
+            };
+        }
     }
 
     // define a LinkedHashMap based LRU cache bounds by both entry number and entry value on-heap size
@@ -171,7 +203,7 @@ public class AdHocCompilerCache implements Serializable {
         @Override
         public boolean removeEldestEntry(final Map.Entry<String, AdHocPlannedStatement> eldest) {
             if ((size() > maxEntries) || (this.currentMemory > this.maxMemory))  {
-                ++m_literalEvictions;
+                m_literalEvictions.incrementAndGet();
                 this.currentMemory -= eldest.getValue().getSerializedSize();
                 return true;
             }
@@ -204,37 +236,35 @@ public class AdHocCompilerCache implements Serializable {
      * Stats printing method used during development.
      * Probably shouldn't live past real stats integration.
      */
-    synchronized void printStats() {
+    void printStats() {
+        long literalHits = m_literalHits.getAndSet(0);
+        long literalQueries = m_literalQueries.getAndSet(0);
+        long planHits = m_planHits.getAndSet(0);
+        long planQueries = m_planQueries.getAndSet(0);
         String line1 = String.format("CACHE STATS - Literals: Hits %d/%d (%.1f%%), Inserts %d Evictions %d\n",
-                m_literalHits, m_literalQueries, (m_literalHits * 100.0) / m_literalQueries,
-                m_literalInsertions, m_literalEvictions);
+                literalHits, literalQueries, (literalHits * 100.0) / literalQueries,
+                m_literalInsertions.getAndSet(0), m_literalEvictions.get());
         String line2 = String.format("CACHE STATS - Plans:    Hits %d/%d (%.1f%%), Inserts %d Evictions %d\n",
-                m_planHits, m_planQueries, (m_planHits * 100.0) /m_planQueries,
-                m_planInsertions, m_planEvictions);
+                planHits, planQueries, (planHits * 100.0) / planQueries,
+                m_planInsertions.getAndSet(0), m_planEvictions.get());
 
         System.out.print(line1 + line2);
         System.out.flush();
-
-        // reset these
-        m_literalHits = 0;
-        m_literalQueries = 0;
-        m_literalInsertions = 0;
-        m_literalEvictions = 0;
-        m_planHits = 0;
-        m_planQueries = 0;
-        m_planInsertions = 0;
-        m_planEvictions = 0;
     }
 
     /**
      * @param sql SQL literal
      * @return full, ready-to-go plan
      */
-    public synchronized AdHocPlannedStatement getWithSQL(String sql) {
-        ++m_literalQueries;
-        AdHocPlannedStatement retval = m_literalCache.get(sql);
+    public AdHocPlannedStatement getWithSQL(String sql) {
+        m_literalQueries.incrementAndGet();
+        final AdHocStatementCache literalCache = m_literalCache[stripe(sql, m_literalCache.length)];
+        AdHocPlannedStatement retval;
+        synchronized (literalCache) {
+            retval = literalCache.get(sql);
+        }
         if (retval != null) {
-            ++m_literalHits;
+            m_literalHits.incrementAndGet();
         }
         return retval;
     }
@@ -244,11 +274,15 @@ public class AdHocCompilerCache implements Serializable {
      * SQL statement
      * @return A CorePlan that needs parameter values to run.
      */
-    public synchronized List<BoundPlan> getWithParsedToken(String parsedToken) {
-        ++m_planQueries;
-        List<BoundPlan> retval = m_coreCache.get(parsedToken);
+    public List<BoundPlan> getWithParsedToken(String parsedToken) {
+        m_planQueries.incrementAndGet();
+        final Map<String, List<BoundPlan>> coreCache = m_coreCache[stripe(parsedToken, m_coreCache.length)];
+        List<BoundPlan> retval;
+        synchronized (coreCache) {
+            retval = coreCache.get(parsedToken);
+        }
         if (retval != null) {
-            ++m_planHits;
+            m_planHits.incrementAndGet();
         }
         return retval;
     }
@@ -271,12 +305,12 @@ public class AdHocCompilerCache implements Serializable {
      * @param hasUserQuestionMarkParameters is user provided parameterized query
      * @param hasAutoParameterizedException is the auto parameterized query has parameter exception
      */
-    public synchronized void put(String sql,
-                                 String parsedToken,
-                                 AdHocPlannedStatement planIn,
-                                 String[] extractedLiterals,
-                                 boolean hasUserQuestionMarkParameters,
-                                 boolean hasAutoParameterizedException)
+    public void put(String sql,
+                    String parsedToken,
+                    AdHocPlannedStatement planIn,
+                    String[] extractedLiterals,
+                    boolean hasUserQuestionMarkParameters,
+                    boolean hasAutoParameterizedException)
     {
         assert(sql != null);
         assert(parsedToken != null);
@@ -293,52 +327,59 @@ public class AdHocCompilerCache implements Serializable {
 
         // deal with L2 cache
         if (! hasAutoParameterizedException) {
+            final Map<String, List<BoundPlan>> coreCache = m_coreCache[stripe(parsedToken, m_coreCache.length)];
             BoundPlan matched = null;
             BoundPlan unmatched = new BoundPlan(planIn.core, planIn.parameterBindings(extractedLiterals));
-            // deal with the parameterized plan cache first
-            List<BoundPlan> boundVariants = m_coreCache.get(parsedToken);
-            if (boundVariants == null) {
-                boundVariants = new ArrayList<BoundPlan>();
-                m_coreCache.put(parsedToken, boundVariants);
-                // Note that there is an edge case in which more than one plan is getting counted as one
-                // "plan insertion". This only happens when two different plans arose from the same parameterized
-                // query (token) because one invocation used the correct constants to trigger an expression index and
-                // another invocation did not.  These are not counted separately (which would have to happen below
-                // after each call to boundVariants.add) because they are not evicted separately.
-                // It seems saner to use consistent units when counting insertions vs. evictions.
-                ++m_planInsertions;
-            } else {
-                for (BoundPlan boundPlan : boundVariants) {
-                    if (boundPlan.equals(unmatched)) {
-                        matched = boundPlan;
-                        break;
+            synchronized (coreCache) {
+                // deal with the parameterized plan cache first
+                List<BoundPlan> boundVariants = coreCache.get(parsedToken);
+                if (boundVariants == null) {
+                    // planner threads iterate the variants they got from the cache without the lock
+                    boundVariants = new CopyOnWriteArrayList<BoundPlan>();
+                    coreCache.put(parsedToken, boundVariants);
+                    // Note that there is an edge case in which more than one plan is getting counted as one
+                    // "plan insertion". This only happens when two different plans arose from the same parameterized
+                    // query (token) because one invocation used the correct constants to trigger an expression index and
+                    // another invocation did not.  These are not counted separately (which would have to happen below
+                    // after each call to boundVariants.add) because they are not evicted separately.
+                    // It seems saner to use consistent units when counting insertions vs. evictions.
+                    m_planInsertions.incrementAndGet();
+                } else {
+                    for (BoundPlan boundPlan : boundVariants) {
+                        if (boundPlan.equals(unmatched)) {
+                            matched = boundPlan;
+                            break;
+                        }
                     }
                 }
-                if (matched != null) {
-                    // if a different core is found, reuse it
-                    // this is useful when updating the literal cache
-                    if (unmatched.m_core != matched.m_core) {
-                        plan = new AdHocPlannedStatement(planIn, matched.m_core);
-                        plan.setBoundConstants(matched.m_constants);
-                    }
+                if (matched == null) {
+                    // Don't count insertions (of possibly repeated tokens) here
+                    //  -- see the comment above where only UNIQUE token insertions are being counted, instead.
+                    boundVariants.add(unmatched);
                 }
             }
-            if (matched == null) {
-                // Don't count insertions (of possibly repeated tokens) here
-                //  -- see the comment above where only UNIQUE token insertions are being counted, instead.
-                boundVariants.add(unmatched);
+            if (matched != null) {
+                // if a different core is found, reuse it
+                // this is useful when updating the literal cache
+                if (unmatched.m_core != matched.m_core) {
+                    plan = new AdHocPlannedStatement(planIn, matched.m_core);
+                    plan.setBoundConstants(matched.m_constants);
+                }
             }
         }
 
         // then deal with the L1 cache
         if (! hasUserQuestionMarkParameters) {
-            AdHocPlannedStatement cachedPlan = m_literalCache.get(sql);
-            if (cachedPlan == null) {
-                m_literalCache.put(sql, plan);
-                ++m_literalInsertions;
-            }
-            else {
-                assert(cachedPlan.equals(plan));
+            final AdHocStatementCache literalCache = m_literalCache[stripe(sql, m_literalCache.length)];
+            synchronized (literalCache) {
+                AdHocPlannedStatement cachedPlan = literalCache.get(sql);
+                if (cachedPlan == null) {
+                    literalCache.put(sql, plan);
+                    m_literalInsertions.incrementAndGet();
+                }
+                else {
+                    assert(cachedPlan.equals(plan));
+                }
             }
         }
     }
@@ -364,7 +405,13 @@ public class AdHocCompilerCache implements Serializable {
      * @return  literal cache size as a count
      */
     public int getLiteralCacheSize() {
-        return m_literalCache.size();
+        int size = 0;
+        for (AdHocStatementCache literalCache : m_literalCache) {
+            synchronized (literalCache) {
+                size += literalCache.size();
+            }
+        }
+        return size;
     }
 
     /**
@@ -372,6 +419,42 @@ public class AdHocCompilerCache implements Serializable {
      * @return  core cache size as a count
      */
     public int getCoreCacheSize() {
-        return m_coreCache.size();
+        int size = 0;
+        for (Map<String, List<BoundPlan>> coreCache : m_coreCache) {
+            synchronized (coreCache) {
+                size += coreCache.size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * @return  number of plans evicted from the literal cache since the last call
+     */
+    public long takeLiteralCacheEvictions() {
+        return takeUnreported(m_literalEvictions, m_reportedLiteralEvictions);
+    }
+
+    /**
+     * @return  number of parameterized plans evicted from the core cache since the last call
+     */
+    public long takeCoreCacheEvictions() {
+        return takeUnreported(m_planEvictions, m_reportedPlanEvictions);
+    }
+
+    /**
+     * Planner threads report concurrently, only the one moving the reported count
+     * forward gets the difference so no eviction is reported twice or taken back
+     */
+    private static long takeUnreported(AtomicLong counter, AtomicLong reported) {
+        final long count = counter.get();
+        long last;
+        do {
+            last = reported.get();
+            if (count <= last) {
+                return 0;
+            }
+        } while (!reported.compareAndSet(last, count));
+        return count - last;
     }
 }
@@ -23,6 +23,7 @@ import java.util.List;
 import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 
@@ -45,6 +46,7 @@ import org.voltdb.parser.SQLLexer;
 import org.voltdb.planner.StatementPartitioning;
 import org.voltdb.utils.MiscUtils;
 
+import com.google_voltpatches.common.base.Throwables;
 import com.google_voltpatches.common.util.concurrent.ListeningExecutorService;
 
 public class AsyncCompilerAgent {
@@ -55,21 +57,41 @@ public class AsyncCompilerAgent {
     // if more than this amount of work is queued, reject new work
     static public final int MAX_QUEUE_DEPTH = 250;
 
+    // threads planning ad hoc DML and queries, catalog changes are always done one at a time
+    static final int PLANNER_THREADS = Integer.getInteger("ADHOC_PLANNER_THREADS",
+            Math.max(1, Math.min(4, CoreUtils.availableProcessors() / 4)));
+
     // accept work via this mailbox
     Mailbox m_mailbox;
 
     public AsyncCompilerAgent(LicenseApi licenseApi) {
+        this(licenseApi, PLANNER_THREADS);
+    }
+
+    AsyncCompilerAgent(LicenseApi licenseApi, int plannerThreads) {
         m_helper = new AsyncCompilerAgentHelper(licenseApi);
+        if (plannerThreads == 1) {
+            m_plannerEs = new ListeningExecutorService[] { m_es };
+        } else {
+            m_plannerEs = new ListeningExecutorService[plannerThreads];
+            for (int i = 0; i < plannerThreads; i++) {
+                m_plannerEs[i] = CoreUtils.getBoundedSingleThreadExecutor("Ad Hoc Planner " + i, MAX_QUEUE_DEPTH);
+            }
+        }
     }
 
     // The helper for catalog updates, back after its exclusive three year tour
     // of Europe, Scandinavia, and the sub-continent.
     final AsyncCompilerAgentHelper m_helper;
 
-    // do work in this executor service
+    // do catalog change work in this executor service
     final ListeningExecutorService m_es =
         CoreUtils.getBoundedSingleThreadExecutor("Ad Hoc Planner", MAX_QUEUE_DEPTH);
 
+    // and plan ad hoc statements in these. All the work from a connection is planned
+    // by the same thread, so its statements are answered in the order they were sent
+    final ListeningExecutorService[] m_plannerEs;
+
     // Enable debug hooks when the "asynccompilerdebug" sys prop is set to "true" or "yes".
     private final static MiscUtils.BooleanSystemProperty DEBUG_MODE =
             new MiscUtils.BooleanSystemProperty("asynccompilerdebug");
@@ -82,6 +104,12 @@ public class AsyncCompilerAgent {
     // intended for integration test use. finish planning what's in
     // the queue and terminate the TPE.
     public void shutdown() throws InterruptedException {
+        for (ListeningExecutorService plannerEs : m_plannerEs) {
+            if (plannerEs != m_es) {
+                plannerEs.shutdown();
+                plannerEs.awaitTermination(120, TimeUnit.SECONDS);
+            }
+        }
         if (m_es != null) {
             m_es.shutdown();
             m_es.awaitTermination(120, TimeUnit.SECONDS);
@@ -99,8 +127,13 @@ public class AsyncCompilerAgent {
 
             @Override
             public void deliver(final VoltMessage message) {
+                // ad hoc work can turn out to be DDL, that is handed over to m_es once it is found
+                final ListeningExecutorService es = message instanceof LocalObjectMessage &&
+                        ((LocalObjectMessage)message).payload instanceof AdHocPlannerWork ?
+                                plannerFor(((AdHocPlannerWork)((LocalObjectMessage)message).payload).connectionId) :
+                                m_es;
                 try {
-                    m_es.submit(new Runnable() {
+                    es.submit(new Runnable() {
                         @Override
                         public void run() {
                             handleMailboxMessage(message);
@@ -116,6 +149,10 @@ public class AsyncCompilerAgent {
         hostMessenger.createMailbox(hsId, m_mailbox);
     }
 
+    ListeningExecutorService plannerFor(long connectionId) {
+        return m_plannerEs[(int)((connectionId & Long.MAX_VALUE) % m_plannerEs.length)];
+    }
+
     void generateErrorResult(String errorMsg, AsyncCompilerWork work) {
         AsyncCompilerResult retval = new AsyncCompilerResult();
         retval.clientHandle = work.clientHandle;
@@ -275,7 +312,37 @@ public class AsyncCompilerAgent {
                 return;
             }
             final CatalogChangeWork ccw = new CatalogChangeWork(w);
-            dispatchCatalogChangeWork(ccw);
+            if (plannerFor(w.connectionId) == m_es) {
+                dispatchCatalogChangeWork(ccw);
+                return;
+            }
+            try {
+                // Wait for it, later work from this connection must not be answered ahead of the DDL
+                m_es.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        // Don't let exceptions escape
+                        try {
+                            dispatchCatalogChangeWork(ccw);
+                        }
+                        catch (RuntimeException e) {
+                            AsyncCompilerResult errResult =
+                                AsyncCompilerResult.makeErrorResult(ccw,
+                                    String.format("Unexpected async compiler exception for %s: %s: %s",
+                                            ccw.getClass().getName(),
+                                            e.getLocalizedMessage(),
+                                            "Please contact VoltDB support with this message."));
+                            ccw.completionHandler.onCompletion(errResult);
+                        }
+                    }
+                }).get();
+            } catch (RejectedExecutionException rejected) {
+                generateErrorResult("Ad Hoc Planner task queue is full. Try again.", ccw);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                throw Throwables.propagate(e.getCause());
+            }
         }
     }
 
@@ -313,7 +380,8 @@ public class AsyncCompilerAgent {
     }
 
     public void compileAdHocPlanForProcedure(final AdHocPlannerWork apw) {
-        m_es.submit(new Runnable() {
+        // there is no connection, the requesting site waits for each plan in turn
+        plannerFor(apw.replySiteId).submit(new Runnable() {
             @Override
             public void run(){
                 apw.completionHandler.onCompletion(compileAdHocPlan(apw));
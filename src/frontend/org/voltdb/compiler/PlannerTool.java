@@ -18,6 +18,7 @@
 package org.voltdb.compiler;
 
 import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 import org.hsqldb_voltpatches.HSQLInterface;
 import org.hsqldb_voltpatches.HSQLInterface.HSQLParseException;
@@ -51,7 +52,10 @@ public class PlannerTool {
 
     private final Database m_database;
     private final Cluster m_cluster;
-    private final HSQLInterface m_hsql;
+    private final String[] m_ddl;
+    // HSQL sessions loaded with the schema that aren't planning a statement right now,
+    // each planner thread takes one so statements can be planned concurrently
+    private final ConcurrentLinkedQueue<HSQLInterface> m_idleHsql = new ConcurrentLinkedQueue<HSQLInterface>();
     private final byte[] m_catalogHash;
     private final AdHocCompilerCache m_cache;
     private static PlannerStatsCollector m_plannerStats;
@@ -68,26 +72,12 @@ public class PlannerTool {
         m_catalogHash = catalogHash;
         m_cache = AdHocCompilerCache.getCacheForCatalogHash(catalogHash);
 
-        // LOAD HSQL
-        m_hsql = HSQLInterface.loadHsqldb();
         String binDDL = m_database.getSchema();
         String ddl = Encoder.decodeBase64AndDecompress(binDDL);
-        String[] commands = ddl.split("\n");
-        for (String command : commands) {
-            String decoded_cmd = Encoder.hexDecodeToString(command);
-            decoded_cmd = decoded_cmd.trim();
-            if (decoded_cmd.length() == 0)
-                continue;
-            try {
-                m_hsql.runDDLCommand(decoded_cmd);
-            }
-            catch (HSQLParseException e) {
-                // need a good error message here
-                throw new RuntimeException("Error creating hsql: " + e.getMessage() + " in DDL statement: " + decoded_cmd);
-            }
-        }
+        m_ddl = ddl.split("\n");
 
-        hostLog.debug("hsql loaded");
+        // LOAD HSQL
+        m_idleHsql.offer(loadHsql());
 
         // Create and register a singleton planner stats collector, if this is the first time.
         if (m_plannerStats == null) {
@@ -104,6 +94,42 @@ public class PlannerTool {
         }
     }
 
+    private HSQLInterface loadHsql() {
+        HSQLInterface hsql = HSQLInterface.loadHsqldb();
+        for (String command : m_ddl) {
+            String decoded_cmd = Encoder.hexDecodeToString(command);
+            decoded_cmd = decoded_cmd.trim();
+            if (decoded_cmd.length() == 0)
+                continue;
+            try {
+                hsql.runDDLCommand(decoded_cmd);
+            }
+            catch (HSQLParseException e) {
+                // need a good error message here
+                throw new RuntimeException("Error creating hsql: " + e.getMessage() + " in DDL statement: " + decoded_cmd);
+            }
+        }
+
+        hostLog.debug("hsql loaded");
+        return hsql;
+    }
+
+    /**
+     * Take an idle HSQL session, loading another one if all of them are in use.
+     * Give it back with {@link #releaseHsql(HSQLInterface)} when done planning.
+     */
+    private HSQLInterface acquireHsql() {
+        HSQLInterface hsql = m_idleHsql.poll();
+        if (hsql == null) {
+            hsql = loadHsql();
+        }
+        return hsql;
+    }
+
+    private void releaseHsql(HSQLInterface hsql) {
+        m_idleHsql.offer(hsql);
+    }
+
     public AdHocPlannedStatement planSqlForTest(String sqlIn) {
         StatementPartitioning infer = StatementPartitioning.inferPartitioning();
         return planSql(sqlIn, infer, false, null);
@@ -116,12 +142,13 @@ public class PlannerTool {
     /**
      * Stripped down compile that is ONLY used to plan default procedures.
      */
-    public synchronized CompiledPlan planSqlCore(String sql, StatementPartitioning partitioning) {
+    public CompiledPlan planSqlCore(String sql, StatementPartitioning partitioning) {
         TrivialCostModel costModel = new TrivialCostModel();
         DatabaseEstimates estimates = new DatabaseEstimates();
+        HSQLInterface hsql = acquireHsql();
         QueryPlanner planner = new QueryPlanner(
             sql, "PlannerTool", "PlannerToolProc", m_cluster, m_database,
-            partitioning, m_hsql, estimates, !VoltCompiler.DEBUG_MODE,
+            partitioning, hsql, estimates, !VoltCompiler.DEBUG_MODE,
             AD_HOC_JOINED_TABLE_LIMIT, costModel, null, null, DeterminismMode.FASTER);
 
         CompiledPlan plan = null;
@@ -143,6 +170,9 @@ public class PlannerTool {
             }
             throw new RuntimeException("Error compiling query: " + e.toString() + loggedMsg, e);
         }
+        finally {
+            releaseHsql(hsql);
+        }
 
         if (plan == null) {
             throw new RuntimeException("Null plan received in PlannerTool.planSql");
@@ -151,7 +181,7 @@ public class PlannerTool {
         return plan;
     }
 
-    synchronized AdHocPlannedStatement planSql(String sqlIn, StatementPartitioning partitioning,
+    AdHocPlannedStatement planSql(String sqlIn, StatementPartitioning partitioning,
             boolean isExplainMode, final Object[] userParams) {
 
         CacheUse cacheUse = CacheUse.FAIL;
@@ -160,6 +190,7 @@ public class PlannerTool {
         }
         boolean hasUserQuestionMark = false;
         boolean wrongNumberParameters = false;
+        HSQLInterface hsql = null;
         try {
             if ((sqlIn == null) || (sqlIn.length() == 0)) {
                 throw new RuntimeException("Can't plan empty or null SQL.");
@@ -195,9 +226,10 @@ public class PlannerTool {
 
             TrivialCostModel costModel = new TrivialCostModel();
             DatabaseEstimates estimates = new DatabaseEstimates();
+            hsql = acquireHsql();
             QueryPlanner planner = new QueryPlanner(
                     sql, "PlannerTool", "PlannerToolProc", m_cluster, m_database,
-                    partitioning, m_hsql, estimates, !VoltCompiler.DEBUG_MODE,
+                    partitioning, hsql, estimates, !VoltCompiler.DEBUG_MODE,
                     AD_HOC_JOINED_TABLE_LIMIT, costModel, null, null, DeterminismMode.FASTER);
 
             CompiledPlan plan = null;
@@ -311,8 +343,12 @@ public class PlannerTool {
             return ahps;
         }
         finally {
+            if (hsql != null) {
+                releaseHsql(hsql);
+            }
             if (m_plannerStats != null) {
-                m_plannerStats.endStatsCollection(m_cache.getLiteralCacheSize(), m_cache.getCoreCacheSize(), cacheUse, -1);
+                m_plannerStats.endStatsCollection(m_cache.getLiteralCacheSize(), m_cache.getCoreCacheSize(),
+                        m_cache.takeLiteralCacheEvictions(), m_cache.takeCoreCacheEvictions(), cacheUse, -1);
             }
         }
     }
@@ -54,6 +54,7 @@ import org.voltdb.utils.CatalogUtil;
 import org.voltdb.utils.VoltFile;
 
 import com.google_voltpatches.common.base.Charsets;
+import com.google_voltpatches.common.base.Function;
 import com.google_voltpatches.common.base.Preconditions;
 import com.google_voltpatches.common.base.Throwables;
 import com.google_voltpatches.common.collect.ImmutableList;
@@ -651,13 +652,37 @@ public class ExportDataSource implements Comparable<ExportDataSource> {
     }
 
     public ListenableFuture<?> sync(final boolean nofsync) {
+        if (nofsync) {
+            RunnableWithES runnable = new RunnableWithES() {
+                @Override
+                public void run() {
+                    new SyncRunnable(nofsync).run();
+                }
+            };
+            return stashOrSubmitTask(runnable, false, false);
+        }
+
+        // Only write the buffers out in the export thread, the fsync is done by the
+        // sync pipeline together with those of the other streams on the same disk
+        final AtomicReference<ListenableFuture<?>> durable =
+                new AtomicReference<ListenableFuture<?>>(Futures.immediateFuture(null));
         RunnableWithES runnable = new RunnableWithES() {
             @Override
             public void run() {
-                new SyncRunnable(nofsync).run();
+                try {
+                    durable.set(m_committedBuffers.syncAsync());
+                } catch (IOException e) {
+                    exportLog.error("failed to sync export overflow", e);
+                }
             }
         };
-        return stashOrSubmitTask(runnable, false, false);
+        return Futures.dereference(Futures.transform(stashOrSubmitTask(runnable, false, false),
+                new Function<Object, ListenableFuture<?>>() {
+                    @Override
+                    public ListenableFuture<?> apply(Object input) {
+                        return durable.get();
+                    }
+                }));
     }
 
     public ListenableFuture<?> close() {
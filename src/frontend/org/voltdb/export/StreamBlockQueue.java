@@ -32,6 +32,8 @@ import org.voltdb.utils.PersistentBinaryDeque;
 import org.voltdb.utils.PersistentBinaryDeque.ByteBufferTruncatorResponse;
 import org.voltdb.utils.VoltFile;
 
+import com.google_voltpatches.common.util.concurrent.ListenableFuture;
+
 /**
  * A customized queue for StreamBlocks that contain export data. The queue is able to
  * overflow to disk when more then two stream blocks are stored
@@ -242,6 +244,15 @@ public class StreamBlockQueue {
         }
     }
 
+    /*
+     * Push all the in memory buffers to disk and hand the fsync to the sync
+     * pipeline so it can be shared with the other streams overflowing to the same disk
+     */
+    public ListenableFuture<?> syncAsync() throws IOException {
+        sync(true);
+        return m_persistentDeque.syncAsync();
+    }
+
     public long sizeInBytes() throws IOException {
         long memoryBlockUsage = 0;
         for (StreamBlock b : m_memoryDeque) {
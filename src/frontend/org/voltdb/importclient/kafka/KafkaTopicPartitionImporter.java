@@ -23,7 +23,14 @@ import java.io.IOException;
 import java.net.URI;
 import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
@@ -62,6 +69,16 @@ import org.voltdb.importer.formatter.Formatter;
 
 /**
  * Implementation that imports from a Kafka topic. This is for a single partition of a Kafka topic.
+ *
+ * Unless KAFKA_IMPORT_PREFETCH is set to false, the fetch of the next batch of messages is sent as soon
+ * as the current batch arrives, so the round trip to the broker overlaps with turning the current
+ * batch into procedure invocations. The lag behind the partition's high watermark is reported to the
+ * importer statistics after every batch.
+ *
+ * Unless KAFKA_IMPORT_BATCH is set to false, the rows of a fetched batch are submitted together. When
+ * the procedure is the default insert procedure of a partitioned table, the server loads them with one
+ * transaction per VoltDB partition. Each row keeps its own callback, so offsets are committed exactly
+ * as if the rows had been submitted one at a time.
  */
 public class KafkaTopicPartitionImporter extends AbstractImporter
 {
@@ -79,6 +96,8 @@ public class KafkaTopicPartitionImporter extends AbstractImporter
     private SimpleConsumer m_consumer = null;
     private final TopicAndPartition m_topicAndPartition;
     private final Gap m_gapTracker = new Gap(Integer.getInteger("KAFKA_IMPORT_GAP_LEAD", 32_768));
+    private final boolean m_prefetch = Boolean.valueOf(System.getProperty("KAFKA_IMPORT_PREFETCH", "true"));
+    private final boolean m_batch = Boolean.valueOf(System.getProperty("KAFKA_IMPORT_BATCH", "true"));
     private final KafkaStreamImporterConfig m_config;
     private HostAndPort m_coordinator;
 
@@ -95,6 +114,12 @@ public class KafkaTopicPartitionImporter extends AbstractImporter
         return m_config.getResourceID();
     }
 
+    @Override
+    public String getStreamName()
+    {
+        return m_topicAndPartition.topic() + "/" + m_topicAndPartition.partition();
+    }
+
     //Find leader for the topic+partition.
     private PartitionMetadata findLeader() {
         PartitionMetadata returnMetaData = null;
@@ -353,12 +378,63 @@ public class KafkaTopicPartitionImporter extends AbstractImporter
                 );
     }
 
+    private FetchRequest buildFetchRequest(long offset) {
+        return new FetchRequestBuilder().clientId(KafkaStreamImporterConfig.CLIENT_ID)
+                .addFetch(m_topicAndPartition.topic(),
+                        m_topicAndPartition.partition(), offset, m_config.getFetchSize())
+                        .build();
+    }
+
+    //Send the fetch for the messages following the batch being processed.
+    private Future<FetchResponse> prefetch(ExecutorService executor, long offset) {
+        final SimpleConsumer consumer = m_consumer;
+        final FetchRequest req = buildFetchRequest(offset);
+        return executor.submit(new Callable<FetchResponse>() {
+            @Override
+            public FetchResponse call() throws Exception {
+                return consumer.fetch(req);
+            }
+        });
+    }
+
+    //Use the prefetched response if it starts at the current offset, fetch it otherwise.
+    private FetchResponse fetch(Future<FetchResponse> prefetched, long prefetchedOffset) throws Exception {
+        if (prefetched != null) {
+            if (prefetchedOffset == m_currentOffset.get()) {
+                try {
+                    return prefetched.get();
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof Exception) {
+                        throw (Exception)e.getCause();
+                    }
+                    throw e;
+                }
+            }
+            prefetched.cancel(false);
+        }
+        return m_consumer.fetch(buildFetchRequest(m_currentOffset.get()));
+    }
+
     @Override
     protected void accept() {
         info(null, "Starting partition fetcher for " + m_topicAndPartition);
         long submitCount = 0;
         AtomicLong cbcnt = new AtomicLong(0);
         Formatter<String> formatter = (Formatter<String>) m_config.getFormatterBuilder().create();
+        ExecutorService prefetcher = null;
+        if (m_prefetch) {
+            final String threadName = "Kafka prefetch " + getStreamName();
+            prefetcher = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, threadName);
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        }
+        Future<FetchResponse> prefetched = null;
+        long prefetchedOffset = -1L;
         try {
             //Start with the starting leader.
             resetLeader();
@@ -391,14 +467,12 @@ public class KafkaTopicPartitionImporter extends AbstractImporter
                     info(null, "Starting offset for " + m_topicAndPartition + " is " + m_currentOffset.get());
                 }
                 long currentFetchCount = 0;
-                //Build fetch request of we have a valid offset and not too many are pending.
-                FetchRequest req = new FetchRequestBuilder().clientId(KafkaStreamImporterConfig.CLIENT_ID)
-                        .addFetch(m_topicAndPartition.topic(),
-                                m_topicAndPartition.partition(), m_currentOffset.get(), m_config.getFetchSize())
-                                .build();
+                //Fetch if we have a valid offset and not too many are pending.
                 FetchResponse fetchResponse = null;
+                final Future<FetchResponse> pending = prefetched;
+                prefetched = null;
                 try {
-                    fetchResponse = m_consumer.fetch(req);
+                    fetchResponse = fetch(pending, prefetchedOffset);
                     if (fetchResponse == null) {
                         sleepCounter = backoffSleep(sleepCounter);
                         continue;
@@ -431,7 +505,16 @@ public class KafkaTopicPartitionImporter extends AbstractImporter
                     continue;
                 }
                 sleepCounter = 1;
+                final InvocationBatch batch = new InvocationBatch();
+                List<MessageAndOffset> messages = new ArrayList<MessageAndOffset>();
                 for (MessageAndOffset messageAndOffset : fetchResponse.messageSet(m_topicAndPartition.topic(), m_topicAndPartition.partition())) {
+                    messages.add(messageAndOffset);
+                }
+                if (prefetcher != null && !messages.isEmpty()) {
+                    prefetchedOffset = messages.get(messages.size() - 1).nextOffset();
+                    prefetched = prefetch(prefetcher, prefetchedOffset);
+                }
+                for (MessageAndOffset messageAndOffset : messages) {
 
                     //You may be catchin up so dont sleep.
                     currentFetchCount++;
@@ -455,7 +538,9 @@ public class KafkaTopicPartitionImporter extends AbstractImporter
                         TopicPartitionInvocationCallback cb = new TopicPartitionInvocationCallback(
                                 messageAndOffset.nextOffset(), cbcnt, m_gapTracker, m_dead,
                                 invocation);
-                         if (!callProcedure(invocation, cb)) {
+                        if (m_batch) {
+                            batch.add(invocation, cb, currentOffset);
+                        } else if (!callProcedure(invocation, cb)) {
                               if (isDebugEnabled()) {
                                  debug(null, "Failed to process Invocation possibly bad data: " + line);
                                }
@@ -471,9 +556,15 @@ public class KafkaTopicPartitionImporter extends AbstractImporter
                         break;
                     }
                 }
+                // the callbacks of the collected rows are already tracked, so submit them even when stopping
+                submitBatch(batch);
                 if (!shouldRun()) {
                     break;
                 }
+                final long highWatermark = fetchResponse.highWatermark(m_topicAndPartition.topic(), m_topicAndPartition.partition());
+                if (highWatermark >= 0) {
+                    reportLag(m_config.getProcedure(), highWatermark - m_currentOffset.get());
+                }
 
                 //wait to fetch more if we read nothing last time.
                 if (currentFetchCount == 0) {
@@ -487,6 +578,9 @@ public class KafkaTopicPartitionImporter extends AbstractImporter
         } catch (Exception ex) {
             error(ex, "Failed to start topic partition fetcher for " + m_topicAndPartition);
         } finally {
+            if (prefetcher != null) {
+                prefetcher.shutdownNow();
+            }
             commitOffset();
             KafkaStreamImporterConfig.closeConsumer(m_consumer);
             m_consumer = null;
@@ -638,6 +732,37 @@ public class KafkaTopicPartitionImporter extends AbstractImporter
         // Nothing to stop. shouldRun() should take care of exiting the work loop.
     }
 
+    private void submitBatch(InvocationBatch batch) {
+        if (batch.m_invocations.isEmpty()) {
+            return;
+        }
+        boolean[] queued = callProcedures(m_config.getProcedure(), batch.m_invocations, batch.m_callbacks);
+        for (int i = 0; i < queued.length; i++) {
+            if (!queued[i]) {
+                if (isDebugEnabled()) {
+                    debug(null, "Failed to process Invocation possibly bad data at offset " + batch.m_offsets.get(i));
+                }
+                m_gapTracker.commit(batch.m_offsets.get(i));
+            }
+        }
+    }
+
+    /**
+     * The rows of a fetched batch, with the callback and the offset of each of them.
+     */
+    private final static class InvocationBatch
+    {
+        private final List<Invocation> m_invocations = new ArrayList<>();
+        private final List<ProcedureCallback> m_callbacks = new ArrayList<>();
+        private final List<Long> m_offsets = new ArrayList<>();
+
+        void add(Invocation invocation, ProcedureCallback cb, long offset) {
+            m_invocations.add(invocation);
+            m_callbacks.add(cb);
+            m_offsets.add(offset);
+        }
+    }
+
     //Per topic per partition that we are responsible for.
     //Callback for each invocation we have submitted.
     private final static class TopicPartitionInvocationCallback implements ProcedureCallback
@@ -18,6 +18,8 @@
 package org.voltdb.importer;
 
 import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import org.voltcore.logging.Level;
@@ -113,6 +115,39 @@ public abstract class AbstractImporter
         }
     }
 
+    /**
+     * This should be used by importer implementations to execute the same stored procedure for
+     * several rows at once. Rows for the default insert procedure of a partitioned table are
+     * loaded a batch per partition, which costs far fewer transactions than a call per row.
+     * Each callback still receives the execution status of its own row.
+     *
+     * @param procName the name of the procedure to execute for each row
+     * @param invocations the invocations, one per row, all for the given procedure
+     * @param callbacks the callback of each invocation
+     * @return for each invocation, true if the procedure execution went through successfully; false otherwise
+     */
+    protected final boolean[] callProcedures(String procName, List<Invocation> invocations, List<ProcedureCallback> callbacks)
+    {
+        try {
+            List<Object[]> rows = new ArrayList<>(invocations.size());
+            for (Invocation invocation : invocations) {
+                rows.add(invocation.getParams());
+            }
+            boolean[] result = m_importServerAdapter.callProcedures(this, callbacks, procName, rows);
+            for (boolean queued : result) {
+                reportStat(queued, procName);
+            }
+            applyBackPressureAsNeeded();
+            return result;
+        } catch (Exception ex) {
+            rateLimitedLog(Level.ERROR, ex, "%s: Error trying to import", getName());
+            for (int i = 0; i < invocations.size(); i++) {
+                reportFailureStat(procName);
+            }
+            return new boolean[invocations.size()];
+        }
+    }
+
     private void applyBackPressureAsNeeded()
     {
         int count = m_backPressureCount.get();
@@ -156,14 +191,37 @@ public abstract class AbstractImporter
 
     private void reportStat(boolean result, String procName) {
         if (result) {
-            m_importServerAdapter.reportQueued(getName(), procName);
+            m_importServerAdapter.reportQueued(getName(), getStreamName(), procName);
         } else {
-            m_importServerAdapter.reportFailure(getName(), procName, false);
+            m_importServerAdapter.reportFailure(getName(), getStreamName(), procName, false);
         }
     }
 
     private void reportFailureStat(String procName) {
-        m_importServerAdapter.reportFailure(getName(), procName, false);
+        m_importServerAdapter.reportFailure(getName(), getStreamName(), procName, false);
+    }
+
+    /**
+     * Importers that read from a stream with a known end, like a Kafka topic partition, should
+     * use this to report how far behind they are, so that it shows up in the importer statistics.
+     *
+     * @param procName the name of the procedure the rows of the stream are imported with
+     * @param lag the number of rows in the stream that haven't been read yet
+     */
+    protected final void reportLag(String procName, long lag)
+    {
+        m_importServerAdapter.reportLag(getName(), getStreamName(), procName, lag);
+    }
+
+    /**
+     * Returns the name of the stream this importer instance reads from, when an importer
+     * runs an instance per stream and wants separate statistics for each of them.
+     *
+     * @return the stream name, or null to report the statistics of all instances together
+     */
+    public String getStreamName()
+    {
+        return null;
     }
 
     /**
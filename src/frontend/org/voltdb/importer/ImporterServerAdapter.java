@@ -17,6 +17,8 @@
 
 package org.voltdb.importer;
 
+import java.util.List;
+
 import org.voltdb.client.ProcedureCallback;
 
 
@@ -52,6 +54,19 @@ public interface ImporterServerAdapter {
      */
     public boolean callProcedure(AbstractImporter importer, ProcedureCallback callback, String proc, Object... fieldList);
 
+    /**
+     * This is used by importers to execute a procedure once for each of several rows. Rows for
+     * the default insert procedure of a partitioned table are loaded together, a batch per partition.
+     *
+     * @param importer the calling importer instance. This may be used by the importer framework
+     * to report back pressure.
+     * @param callbacks the callback object of each row, that will receive its execution status
+     * @param proc the name of the procedure that is to be executed
+     * @param rows the parameters to be passed in to the procedure for each row
+     * @return returns for each row true if its procedure execution was queued successfully; false otherwise.
+     */
+    public boolean[] callProcedures(AbstractImporter importer, List<ProcedureCallback> callbacks, String proc, List<Object[]> rows);
+
     /**
      * This should be used by importers to report failure while trying to execute a procedure.
      *
@@ -71,4 +86,37 @@ public interface ImporterServerAdapter {
      * @param procName the name of the procedure that the importer was trying to execute
      */
     public void reportQueued(String importerName, String procName);
+
+    /**
+     * This should be used by importers that read from several streams to report failure while trying
+     * to execute a procedure for a row of one of them.
+     *
+     * @param importerName the name of the importer
+     * @param streamName the name of the stream the row was read from
+     * @param procName the name of the procedure that the importer was trying to execute
+     * @param decrementPending indicates if this failed after the importer reported that the
+     * procedure execution was queued or not.
+     */
+    public void reportFailure(String importerName, String streamName, String procName, boolean decrementPending);
+
+    /**
+     * This should be used by importers that read from several streams to report that a procedure
+     * executed for a row of one of them was queued successfully.
+     *
+     * @param importerName the name of the importer
+     * @param streamName the name of the stream the row was read from
+     * @param procName the name of the procedure that the importer was trying to execute
+     */
+    public void reportQueued(String importerName, String streamName, String procName);
+
+    /**
+     * This should be used by importers that read from several streams to report how far behind
+     * the end of one of them the importer is.
+     *
+     * @param importerName the name of the importer
+     * @param streamName the name of the stream
+     * @param procName the name of the procedure the rows of the stream are imported with
+     * @param lag the number of rows in the stream that the importer hasn't read yet
+     */
+    public void reportLag(String importerName, String streamName, String procName, long lag);
 }
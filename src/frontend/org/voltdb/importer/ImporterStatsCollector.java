@@ -33,6 +33,10 @@ import com.google_voltpatches.common.collect.ImmutableMap;
 
 /**
  * Maintains success, failure, pending and other relevant counts per importer.
+ *
+ * Importers that read from several streams, like the partitions of a Kafka topic, report
+ * them separately so that every stream gets its own row with the lag the importer last
+ * saw on it and the rate rows were successfully imported at since the previous poll.
  */
 
 public class ImporterStatsCollector extends SiteStatsSource
@@ -44,6 +48,9 @@ public class ImporterStatsCollector extends SiteStatsSource
     public static final String FAILURE_COUNT_COL = "FAILURES";
     public static final String PENDING_COUNT_COL = "OUTSTANDING_REQUESTS";
     public static final String RETRY_COUNT_COL = "RETRIES";
+    public static final String STREAM_NAME_COL = "STREAM_NAME";
+    public static final String LAG_COL = "LAG";
+    public static final String ROWS_PER_SECOND_COL = "ROWS_PER_SECOND";
 
     // Holds stats info for each known importer-procname combination.
     // Using AtomicReferences with ImmutableMap to avoid locking and faster access
@@ -57,33 +64,61 @@ public class ImporterStatsCollector extends SiteStatsSource
 
     @Override
     public void reportCompletion(String importerName, String procName, ClientResponse response) {
+        reportCompletion(importerName, null, procName, response);
+    }
+
+    public void reportCompletion(String importerName, String streamName, String procName, ClientResponse response) {
             switch(response.getStatus()) {
             case ClientResponse.RESPONSE_UNKNOWN :
-                reportRetry(importerName, procName);
+                reportRetry(importerName, streamName, procName);
                 break;
             case ClientResponse.SUCCESS:
-                reportSuccess(importerName, procName);
+                reportSuccess(importerName, streamName, procName);
                 break;
             default:
-                reportFailure(importerName, procName);
+                reportFailure(importerName, streamName, procName);
                 break;
             }
     }
 
+    /**
+     * @return a collector that reports the completions of an importer's requests against
+     * the given stream, or this collector if the stream is null
+     */
+    public InternalConnectionStatsCollector forStream(final String streamName) {
+        if (streamName == null) {
+            return this;
+        }
+        return new InternalConnectionStatsCollector() {
+            @Override
+            public void reportCompletion(String importerName, String procName, ClientResponse response) {
+                ImporterStatsCollector.this.reportCompletion(importerName, streamName, procName, response);
+            }
+        };
+    }
+
     // An insert request was queued
     public void reportQueued(String importerName, String procName) {
-        StatsInfo statsInfo = getStatsInfo(importerName, procName);
+        reportQueued(importerName, null, procName);
+    }
+
+    public void reportQueued(String importerName, String streamName, String procName) {
+        StatsInfo statsInfo = getStatsInfo(importerName, streamName, procName);
         statsInfo.m_pendingCount.incrementAndGet();
     }
 
     // One insert failed
-    private void reportFailure(String importerName, String procName) {
-        reportFailure(importerName, procName, true);
+    private void reportFailure(String importerName, String streamName, String procName) {
+        reportFailure(importerName, streamName, procName, true);
     }
 
     // Use this when the insert fails even before the request is queued by the InternalConnectionHandler
     public void reportFailure(String importerName, String procName, boolean decrementPending) {
-        StatsInfo statsInfo = getStatsInfo(importerName, procName);
+        reportFailure(importerName, null, procName, decrementPending);
+    }
+
+    public void reportFailure(String importerName, String streamName, String procName, boolean decrementPending) {
+        StatsInfo statsInfo = getStatsInfo(importerName, streamName, procName);
         if (decrementPending) {
             statsInfo.m_pendingCount.decrementAndGet();
         }
@@ -91,19 +126,28 @@ public class ImporterStatsCollector extends SiteStatsSource
     }
 
     // One insert succeeded
-    private void reportSuccess(String importerName, String procName) {
-        StatsInfo statsInfo = getStatsInfo(importerName, procName);
+    private void reportSuccess(String importerName, String streamName, String procName) {
+        StatsInfo statsInfo = getStatsInfo(importerName, streamName, procName);
         statsInfo.m_pendingCount.decrementAndGet();
         statsInfo.m_successCount.incrementAndGet();
     }
 
     // One insert was retried
-    private void reportRetry(String importerName, String procName) {
-        StatsInfo statsInfo = getStatsInfo(importerName, procName);
+    private void reportRetry(String importerName, String streamName, String procName) {
+        StatsInfo statsInfo = getStatsInfo(importerName, streamName, procName);
         statsInfo.m_retryCount.incrementAndGet();
     }
 
-    private StatsInfo getStatsInfo(String importerName, String procName) {
+    // How far behind the end of the stream the importer was the last time it looked
+    public void reportLag(String importerName, String streamName, String procName, long lag) {
+        StatsInfo statsInfo = getStatsInfo(importerName, streamName, procName);
+        statsInfo.m_lag = Math.max(0, lag);
+    }
+
+    private StatsInfo getStatsInfo(String importerName, String streamName, String procName) {
+        // procedure names can't have spaces in them
+        final String statsKey = (streamName == null) ? procName : procName + " " + streamName;
+
         ImmutableMap<String, AtomicReference<ImmutableMap<String, StatsInfo>>> existingMap;
         ImmutableMap<String, AtomicReference<ImmutableMap<String, StatsInfo>>> newMap;
         do {
@@ -127,21 +171,21 @@ public class ImporterStatsCollector extends SiteStatsSource
         ImmutableMap<String, StatsInfo> newProcMap;
         do {
             existingProcMap = existingProcMapRef.get();
-            if (existingProcMap != null && existingProcMap.containsKey(procName)) {
+            if (existingProcMap != null && existingProcMap.containsKey(statsKey)) {
                 break;
             }
-            StatsInfo newStatValue = new StatsInfo(importerName, procName);
+            StatsInfo newStatValue = new StatsInfo(importerName, streamName, procName);
             if (existingProcMap == null) {
-                newProcMap = ImmutableMap.of(procName, newStatValue);
+                newProcMap = ImmutableMap.of(statsKey, newStatValue);
             } else {
                 newProcMap = ImmutableMap.<String, StatsInfo> builder()
                 .putAll(existingProcMap)
-                .put(procName, newStatValue)
+                .put(statsKey, newStatValue)
                 .build();
             }
         } while(!existingProcMapRef.compareAndSet(existingProcMap, newProcMap));
 
-        return existingProcMapRef.get().get(procName);
+        return existingProcMapRef.get().get(statsKey);
     }
 
     @Override
@@ -153,6 +197,9 @@ public class ImporterStatsCollector extends SiteStatsSource
         rowValues[columnNameToIndex.get(FAILURE_COUNT_COL)] = getFailureCountUpdateLast(stats);
         rowValues[columnNameToIndex.get(PENDING_COUNT_COL)] = getPendingCountUpdateLast(stats);
         rowValues[columnNameToIndex.get(RETRY_COUNT_COL)] = getRetryCountUpdateLast(stats);
+        rowValues[columnNameToIndex.get(STREAM_NAME_COL)] = (stats.m_streamName == null) ? "" : stats.m_streamName;
+        rowValues[columnNameToIndex.get(LAG_COL)] = stats.m_lag;
+        rowValues[columnNameToIndex.get(ROWS_PER_SECOND_COL)] = getRowsPerSecondUpdateLast(stats);
 
         super.updateStatsRow(rowKey, rowValues);
     }
@@ -168,6 +215,20 @@ public class ImporterStatsCollector extends SiteStatsSource
         return successValue;
     }
 
+    // Rate of successes since the previous poll, independent of whether that was an interval poll
+    private double getRowsPerSecondUpdateLast(StatsInfo stats) {
+        final long now = System.currentTimeMillis();
+        final long current = stats.m_successCount.get();
+        final long elapsed = now - stats.m_lastRateMillis;
+        if (elapsed <= 0) {
+            return 0.0;
+        }
+        final double rate = (current - stats.m_lastRateSuccessCount) * 1000.0 / elapsed;
+        stats.m_lastRateSuccessCount = current;
+        stats.m_lastRateMillis = now;
+        return rate;
+    }
+
     private long getFailureCountUpdateLast(StatsInfo stats) {
         long current = stats.m_failureCount.get();
         long value = current;
@@ -219,11 +280,15 @@ public class ImporterStatsCollector extends SiteStatsSource
         columns.add(new ColumnInfo(FAILURE_COUNT_COL, VoltType.BIGINT));
         columns.add(new ColumnInfo(PENDING_COUNT_COL, VoltType.BIGINT));
         columns.add(new ColumnInfo(RETRY_COUNT_COL, VoltType.BIGINT));
+        columns.add(new ColumnInfo(STREAM_NAME_COL, VoltType.STRING));
+        columns.add(new ColumnInfo(LAG_COL, VoltType.BIGINT));
+        columns.add(new ColumnInfo(ROWS_PER_SECOND_COL, VoltType.FLOAT));
     }
 
     private class StatsInfo
     {
         String m_importerName;
+        String m_streamName;
         String m_procName;
         AtomicLong m_successCount = new AtomicLong(0);
         AtomicLong m_failureCount = new AtomicLong(0);
@@ -233,15 +298,21 @@ public class ImporterStatsCollector extends SiteStatsSource
         long m_lastFailureCount = 0;
         long m_lastPendingCount = 0;
         long m_lastRetryCount = 0;
+        // -1 until the importer reports the lag of the stream
+        volatile long m_lag = -1;
+        long m_lastRateSuccessCount = 0;
+        long m_lastRateMillis = System.currentTimeMillis();
 
-        public StatsInfo(String importerName, String procName) {
+        public StatsInfo(String importerName, String streamName, String procName) {
             m_importerName = importerName;
+            m_streamName = streamName;
             m_procName = procName;
         }
 
         @Override
         public String toString() {
-            return "StatsInfo(" + m_importerName + "." + m_procName + ")";
+            return "StatsInfo(" + m_importerName + "." + m_procName
+                    + (m_streamName == null ? "" : "." + m_streamName) + ")";
         }
     }
 
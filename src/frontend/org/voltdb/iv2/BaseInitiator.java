@@ -27,6 +27,7 @@ import org.voltdb.BackendTarget;
 import org.voltdb.CatalogContext;
 import org.voltdb.CatalogSpecificPlanner;
 import org.voltdb.CommandLog;
+import org.voltdb.LatencyPercentileStats;
 import org.voltdb.LoadedProcedureSet;
 import org.voltdb.MemoryStats;
 import org.voltdb.PartitionDRGateway;
@@ -61,6 +62,7 @@ public abstract class BaseInitiator implements Initiator
     protected Site m_executionSite = null;
     protected Thread m_siteThread = null;
     protected final RepairLog m_repairLog = new RepairLog();
+    protected final LatencyPercentileStats m_latencyStats;
 
     public BaseInitiator(String zkMailboxNode, HostMessenger messenger, Integer partition,
             Scheduler scheduler, String whoamiPrefix, StatsAgent agent,
@@ -105,10 +107,19 @@ public abstract class BaseInitiator implements Initiator
         m_repairLog.setHSId(m_initiatorMailbox.getHSId());
         StarvationTracker st = new StarvationTracker(getInitiatorHSId());
         m_scheduler.setStarvationTracker(st);
+        m_latencyStats = new LatencyPercentileStats(getInitiatorHSId());
+        m_scheduler.getQueue().setQueueLatency(m_latencyStats.distribution(
+                LatencyPercentileStats.Type.QUEUE, Integer.toString(m_partitionId)));
         m_scheduler.setLock(m_initiatorMailbox);
         agent.registerStatsSource(StatsSelector.STARVATION,
                                   getInitiatorHSId(),
                                   st);
+        agent.registerStatsSource(StatsSelector.REPAIRLOG,
+                                  getInitiatorHSId(),
+                                  new RepairLogStats(getInitiatorHSId(), m_repairLog));
+        agent.registerStatsSource(StatsSelector.LATENCYPERCENTILES,
+                                  getInitiatorHSId(),
+                                  m_latencyStats);
 
         String partitionString = " ";
         if (m_partitionId != -1) {
@@ -159,6 +170,7 @@ public abstract class BaseInitiator implements Initiator
                                        m_initiatorMailbox,
                                        agent,
                                        memStats,
+                                       m_latencyStats,
                                        coreBindIds,
                                        taskLog,
                                        drGateway,
@@ -210,6 +222,9 @@ public abstract class BaseInitiator implements Initiator
                 tmLog.info("Interrupted during shutdown", e);
             }
         }
+
+        m_repairLog.shutdown();
+        m_latencyStats.clear();
     }
 
     @Override
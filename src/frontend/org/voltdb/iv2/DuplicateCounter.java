@@ -19,10 +19,13 @@ package org.voltdb.iv2;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
+import org.voltcore.logging.Level;
 import org.voltcore.logging.VoltLogger;
 import org.voltcore.messaging.VoltMessage;
 import org.voltcore.utils.CoreUtils;
+import org.voltcore.utils.RateLimitedLogger;
 import org.voltdb.ClientResponseImpl;
 import org.voltdb.StoredProcedureInvocation;
 import org.voltdb.VoltTable;
@@ -34,6 +37,11 @@ import org.voltdb.messaging.Iv2InitiateTaskMessage;
 /**
  * Track responses from each partition. This should be subsumed
  * by proper response tracking for the usual replication case?
+ *
+ * Replicas may send a digest of their results instead of the results, see
+ * InitiateResponseMessage.convertToResultsDigest(). Those are never the response
+ * passed on while there is a full one, and once there is one the digests of the
+ * results are compared as well as the hash of the SQL that was run.
  */
 public class DuplicateCounter
 {
@@ -45,6 +53,8 @@ public class DuplicateCounter
 
     final long m_destinationId;
     Long m_responseHash = null;
+    // only computed once a replica has sent a digest instead of its results
+    Long m_resultsDigest = null;
     protected VoltMessage m_lastResponse = null;
     protected VoltTable m_lastResultTables[] = null;
     final List<Long> m_expectedHSIds;
@@ -141,8 +151,10 @@ public class DuplicateCounter
                 logRelevantMismatchInformation(hash, message);
                 return MISMATCH;
             }
-            m_lastResponse = message;
-            m_lastResultTables = resultTables;
+            if (m_lastResponse == null || !isResultsDigestOnly(message)) {
+                m_lastResponse = message;
+                m_lastResultTables = resultTables;
+            }
         }
 
         /*
@@ -174,9 +186,45 @@ public class DuplicateCounter
         if (sqlHash != null) {
             hash = sqlHash.intValue();
         }
+        if (!message.isRecovering() && !resultsDigestMatches(message)) {
+            // The SQL run was the same, so the difference is most likely a read without a
+            // deterministic order. Don't take the cluster down for it, but make it visible.
+            RateLimitedLogger.tryLogForMessage(System.currentTimeMillis(),
+                    60, TimeUnit.SECONDS,
+                    tmLog,
+                    Level.ERROR,
+                    "Stored procedure %s returned different results at different replicas of the same partition. " +
+                    "This log message is rate limited to once every 60 seconds.",
+                    getStoredProcedureName());
+        }
         return checkCommon(hash, message.isRecovering(), r.getResults(), message);
     }
 
+    private static boolean isResultsDigestOnly(VoltMessage message)
+    {
+        return message instanceof InitiateResponseMessage &&
+                ((InitiateResponseMessage)message).isResultsDigestOnly();
+    }
+
+    private boolean resultsDigestMatches(InitiateResponseMessage message)
+    {
+        if (m_resultsDigest == null) {
+            if (!message.isResultsDigestOnly()) {
+                // nothing to compare with yet, and hashing the results may never be needed
+                return true;
+            }
+            if (m_lastResponse instanceof InitiateResponseMessage &&
+                    !((InitiateResponseMessage)m_lastResponse).isRecovering()) {
+                m_resultsDigest = ((InitiateResponseMessage)m_lastResponse).getResultsDigest();
+            }
+            else {
+                m_resultsDigest = message.getResultsDigest();
+                return true;
+            }
+        }
+        return m_resultsDigest == message.getResultsDigest();
+    }
+
     int offer(FragmentResponseMessage message)
     {
         return checkCommon(0, message.isRecovering(), null, message);
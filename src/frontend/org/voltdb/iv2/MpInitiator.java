@@ -34,6 +34,7 @@ import org.voltdb.ProducerDRGateway;
 import org.voltdb.Promotable;
 import org.voltdb.StartAction;
 import org.voltdb.StatsAgent;
+import org.voltdb.StatsSelector;
 import org.voltdb.VoltDB;
 import org.voltdb.VoltZK;
 import org.voltdb.iv2.RepairAlgo.RepairResult;
@@ -61,6 +62,10 @@ public class MpInitiator extends BaseInitiator implements Promotable
                 "MP",
                 agent,
                 StartAction.CREATE /* never for rejoin */);
+        agent.registerStatsSource(StatsSelector.MPSCHEDULING,
+                                  getInitiatorHSId(),
+                                  new MpSchedulingStats(getInitiatorHSId(),
+                                                        ((MpScheduler)m_scheduler).getPendingTasks()));
     }
 
     @Override
@@ -92,7 +97,8 @@ public class MpInitiator extends BaseInitiator implements Promotable
                 catalogContext,
                 m_partitionId,
                 m_initiatorMailbox,
-                csp);
+                csp,
+                m_latencyStats);
         sched.setMpRoSitePool(sitePool);
 
         // add ourselves to the ephemeral node list which BabySitters will watch for this
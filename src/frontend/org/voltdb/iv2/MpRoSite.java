@@ -31,6 +31,7 @@ import org.voltdb.CatalogSpecificPlanner;
 import org.voltdb.DRConsumerDrIdTracker;
 import org.voltdb.DependencyPair;
 import org.voltdb.HsqlBackend;
+import org.voltdb.LatencyPercentileStats;
 import org.voltdb.LoadedProcedureSet;
 import org.voltdb.NonVoltDBBackend;
 import org.voltdb.ParameterSet;
@@ -87,6 +88,9 @@ public class MpRoSite implements Runnable, SiteProcedureConnection
     // Currently available procedure
     volatile LoadedProcedureSet m_loadedProcedures;
 
+    // shared with the MPI's site
+    final LatencyPercentileStats m_latencyStats;
+
     // Current topology
     int m_partitionId;
 
@@ -292,13 +296,15 @@ public class MpRoSite implements Runnable, SiteProcedureConnection
             long siteId,
             BackendTarget backend,
             CatalogContext context,
-            int partitionId)
+            int partitionId,
+            LatencyPercentileStats latencyStats)
     {
         m_siteId = siteId;
         m_context = context;
         m_partitionId = partitionId;
         m_scheduler = scheduler;
         m_backend = backend;
+        m_latencyStats = latencyStats;
     }
 
     /** Update the loaded procedures. */
@@ -382,6 +388,12 @@ public class MpRoSite implements Runnable, SiteProcedureConnection
         return m_siteId;
     }
 
+    @Override
+    public LatencyPercentileStats getLatencyStats()
+    {
+        return m_latencyStats;
+    }
+
     @Override
     public int getCorrespondingPartitionId()
     {
@@ -588,6 +600,11 @@ public class MpRoSite implements Runnable, SiteProcedureConnection
         throw new RuntimeException("RO MP Site doesn't do this, shouldn't be here.");
     }
 
+    @Override
+    public long[] getTableModificationCounts(long[] tableIds) {
+        throw new RuntimeException("RO MP Site doesn't do this, shouldn't be here.");
+    }
+
     @Override
     public void setBatch(int batchIndex) {
         // don't need to do anything here
@@ -18,17 +18,22 @@
 package org.voltdb.iv2;
 
 import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Deque;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 import org.voltcore.logging.VoltLogger;
 import org.voltcore.utils.CoreUtils;
 import org.voltdb.BackendTarget;
 import org.voltdb.CatalogContext;
 import org.voltdb.CatalogSpecificPlanner;
+import org.voltdb.LatencyPercentileStats;
 import org.voltdb.LoadedProcedureSet;
 import org.voltdb.ProcedureRunnerFactory;
 import org.voltdb.StarvationTracker;
@@ -37,12 +42,19 @@ import org.voltdb.StarvationTracker;
  * Provide a pool of MP Read-only sites to do MP RO work.
  * This should be owned by the MpTransactionTaskQueue and expects all operations
  * to be done while holding its lock.
+ *
+ * Building a site loads every procedure, so the pool keeps as many sites warm as recent
+ * demand needs, see MpRoSitePoolSizing. Sites are built ahead of demand on a separate thread
+ * when the last idle site is taken and after catalog updates, so that reads don't wait for them.
+ * Idle sites beyond the target are retired, least recently used first, as reads complete.
  */
 class MpRoSitePool {
     final static VoltLogger tmLog = new VoltLogger("TM");
 
     static int DEFAULT_MAX_POOL_SIZE = 20;
     static int INITIAL_POOL_SIZE = 1;
+    // how long the pool keeps sites for a burst of reads after it ends
+    static long DEFAULT_IDLE_MILLIS = 60 * 1000;
 
     class MpRoSiteContext {
         final private BackendTarget m_backend;
@@ -63,7 +75,7 @@ class MpRoSitePool {
             m_queue = new SiteTaskerQueue();
             // IZZY: Just need something non-null for now
             m_queue.setStarvationTracker(new StarvationTracker(siteId));
-            m_site = new MpRoSite(m_queue, siteId, backend, m_catalogContext, partitionId);
+            m_site = new MpRoSite(m_queue, siteId, backend, m_catalogContext, partitionId, m_latencyStats);
             m_prf = new ProcedureRunnerFactory();
             m_prf.configure(m_site, m_site.m_sysprocContext);
             m_loadedProcedures = new LoadedProcedureSet(m_site, m_prf,
@@ -100,10 +112,13 @@ class MpRoSitePool {
         }
     }
 
-    // Stack of idle MpRoSites
+    // Stack of idle MpRoSites, the least recently used at the bottom
     private Deque<MpRoSiteContext> m_idleSites = new ArrayDeque<MpRoSiteContext>();
     // Active sites, hashed by the txnID they're working on
     private Map<Long, MpRoSiteContext> m_busySites = new HashMap<Long, MpRoSiteContext>();
+    // Sites being built ahead of demand
+    private int m_prewarming = 0;
+    private boolean m_shutdown = false;
 
     // Stuff we need to construct new MpRoSites
     private final long m_siteId;
@@ -114,6 +129,14 @@ class MpRoSitePool {
     private CatalogSpecificPlanner m_csp;
     private ThreadFactory m_poolThreadFactory;
     private final int m_poolSize;
+    private final MpRoSitePoolSizing m_sizing;
+    private final ExecutorService m_prewarmExecutor;
+    private final LatencyPercentileStats m_latencyStats;
+
+    // utilization, for MPSCHEDULING statistics
+    private long m_sitesCreated = 0;
+    private long m_sitesRetired = 0;
+    private long m_coldStarts = 0;
 
     MpRoSitePool(
             long siteId,
@@ -121,7 +144,8 @@ class MpRoSitePool {
             CatalogContext context,
             int partitionId,
             InitiatorMailbox initiatorMailbox,
-            CatalogSpecificPlanner csp)
+            CatalogSpecificPlanner csp,
+            LatencyPercentileStats latencyStats)
     {
         m_siteId = siteId;
         m_backend = backend;
@@ -129,6 +153,7 @@ class MpRoSitePool {
         m_partitionId = partitionId;
         m_initiatorMailbox = initiatorMailbox;
         m_csp = csp;
+        m_latencyStats = latencyStats;
         m_poolThreadFactory =
             CoreUtils.getThreadFactory("RO MP Site - " + CoreUtils.hsIdToString(m_siteId),
                     CoreUtils.MEDIUM_STACK_SIZE);
@@ -138,40 +163,116 @@ class MpRoSitePool {
             poolSize = DEFAULT_MAX_POOL_SIZE;
         }
         m_poolSize = poolSize;
-        tmLog.info("Setting maximum size of MPI read pool to: " + m_poolSize);
+        m_sizing = new MpRoSitePoolSizing(Integer.getInteger("mpiReadPoolMinSize", INITIAL_POOL_SIZE),
+                m_poolSize,
+                TimeUnit.MILLISECONDS.toNanos(Long.getLong("mpiReadPoolIdleMillis", DEFAULT_IDLE_MILLIS)),
+                System.nanoTime());
+        m_prewarmExecutor = CoreUtils.getCachedSingleThreadExecutor(
+                "RO MP Site prewarm - " + CoreUtils.hsIdToString(m_siteId), 15000);
+        tmLog.info("Setting maximum size of MPI read pool to: " + m_poolSize +
+                ", keeping at least " + m_sizing.minSize() + " sites warm");
 
         // Construct the initial pool
-        for (int i = 0; i < INITIAL_POOL_SIZE; i++) {
-            m_idleSites.push(new MpRoSiteContext(m_siteId,
-                        m_backend,
-                        m_catalogContext,
-                        m_partitionId,
-                        m_initiatorMailbox,
-                        m_csp,
-                        m_poolThreadFactory));
+        for (int i = 0; i < m_sizing.minSize(); i++) {
+            m_idleSites.push(createSite(m_catalogContext, m_csp));
+        }
+
+    }
+
+    private MpRoSiteContext createSite(CatalogContext context, CatalogSpecificPlanner csp)
+    {
+        MpRoSiteContext site = new MpRoSiteContext(m_siteId,
+                m_backend,
+                context,
+                m_partitionId,
+                m_initiatorMailbox,
+                csp,
+                m_poolThreadFactory);
+        synchronized (this) {
+            ++m_sitesCreated;
         }
+        return site;
+    }
+
+    private boolean isCurrent(MpRoSiteContext site)
+    {
+        return site.getCatalogCRC() == m_catalogContext.getCatalogCRC()
+                && site.getCatalogVersion() == m_catalogContext.catalogVersion;
+    }
 
+    private void retire(MpRoSiteContext site)
+    {
+        site.shutdown();
+        ++m_sitesRetired;
+    }
+
+    /**
+     * Build sites on the prewarm thread until the pool, counting the sites already
+     * being built, reaches the target. The sites are built outside of the lock and only
+     * added to the pool if the catalog hasn't changed and the pool has room for them.
+     */
+    private void prewarm(long nowNanos)
+    {
+        final int missing = m_sizing.target(nowNanos) -
+                (m_idleSites.size() + m_busySites.size() + m_prewarming);
+        for (int i = 0; i < missing && !m_shutdown; i++) {
+            ++m_prewarming;
+            final CatalogContext context = m_catalogContext;
+            final CatalogSpecificPlanner csp = m_csp;
+            m_prewarmExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    MpRoSiteContext site = null;
+                    try {
+                        synchronized (MpRoSitePool.this) {
+                            if (m_shutdown || context != m_catalogContext) {
+                                return;
+                            }
+                        }
+                        site = createSite(context, csp);
+                    } catch (Throwable t) {
+                        tmLog.warn("Unable to prewarm an MPI read site, it will be built when needed", t);
+                    } finally {
+                        addPrewarmedSite(site);
+                    }
+                }
+            });
+        }
+    }
+
+    private synchronized void addPrewarmedSite(MpRoSiteContext site)
+    {
+        --m_prewarming;
+        if (site == null) {
+            return;
+        }
+        if (!m_shutdown && isCurrent(site) && m_idleSites.size() + m_busySites.size() < m_poolSize) {
+            m_idleSites.push(site);
+        }
+        else {
+            retire(site);
+        }
     }
 
     /**
      * Update the catalog
      */
-    void updateCatalog(String diffCmds, CatalogContext context, CatalogSpecificPlanner csp)
+    synchronized void updateCatalog(String diffCmds, CatalogContext context, CatalogSpecificPlanner csp)
     {
         m_catalogContext = context;
         m_csp = csp;
-        // Wipe out all the idle sites with stale catalogs.
+        // Wipe out all the idle sites with stale catalogs and build their replacements ahead of demand.
         // Non-idle sites will get killed and replaced when they finish
         // whatever they started before the catalog update
         Iterator<MpRoSiteContext> siterator = m_idleSites.iterator();
         while (siterator.hasNext()) {
             MpRoSiteContext site = siterator.next();
-            if (site.getCatalogCRC() != m_catalogContext.getCatalogCRC()
-                    || site.getCatalogVersion() != m_catalogContext.catalogVersion) {
-                site.shutdown();
-                m_idleSites.remove(site);
+            if (!isCurrent(site)) {
+                retire(site);
+                siterator.remove();
             }
         }
+        prewarm(System.nanoTime());
     }
 
     /**
@@ -179,7 +280,7 @@ class MpRoSitePool {
      * with txnId.  This occurs when the MPI has survived a node failure and needs to interrupt and
      * re-run the current MP transaction; this task is used to run the repair algorithm in the site thread.
      */
-    void repair(long txnId, SiteTasker task)
+    synchronized void repair(long txnId, SiteTasker task)
     {
         if (m_busySites.containsKey(txnId)) {
             MpRoSiteContext site = m_busySites.get(txnId);
@@ -194,7 +295,7 @@ class MpRoSitePool {
     /**
      * Is there a RO site available to do MP RO work?
      */
-    boolean canAcceptWork()
+    synchronized boolean canAcceptWork()
     {
         boolean retval = (!m_idleSites.isEmpty() || m_busySites.size() < m_poolSize);
         return retval;
@@ -204,7 +305,7 @@ class MpRoSitePool {
      * Attempt to start the transaction represented by the given task.  Need the txn ID for future reference.
      * @return true if work was started successfully, false if not.
      */
-    boolean doWork(long txnId, TransactionTask task)
+    synchronized boolean doWork(long txnId, TransactionTask task)
     {
         boolean retval = canAcceptWork();
         if (!retval) {
@@ -216,17 +317,20 @@ class MpRoSitePool {
             site = m_busySites.get(txnId);
         }
         else {
-            if (m_idleSites.isEmpty()) {
-                m_idleSites.push(new MpRoSiteContext(m_siteId,
-                            m_backend,
-                            m_catalogContext,
-                            m_partitionId,
-                            m_initiatorMailbox,
-                            m_csp,
-                            m_poolThreadFactory));
+            final boolean coldStart = m_idleSites.isEmpty();
+            if (coldStart) {
+                ++m_coldStarts;
+                m_idleSites.push(createSite(m_catalogContext, m_csp));
             }
             site = m_idleSites.pop();
             m_busySites.put(txnId, site);
+
+            final long now = System.nanoTime();
+            m_sizing.recordStart(m_busySites.size(), coldStart, now);
+            if (m_idleSites.isEmpty()) {
+                // the next read would have to wait for a site to be built
+                prewarm(now);
+            }
         }
         site.offer(task);
         return true;
@@ -235,7 +339,7 @@ class MpRoSitePool {
     /**
      * Inform the pool that the work associated with the given txnID is complete
      */
-    void completeWork(long txnId)
+    synchronized void completeWork(long txnId)
     {
         MpRoSiteContext site = m_busySites.remove(txnId);
         if (site == null) {
@@ -244,28 +348,56 @@ class MpRoSitePool {
         // check the catalog versions, only push back onto idle if the catalog hasn't changed
         // otherwise, just let it get garbage collected and let doWork() construct new ones for the
         // pool with the updated catalog.
-        if (site.getCatalogCRC() == m_catalogContext.getCatalogCRC()
-                && site.getCatalogVersion() == m_catalogContext.catalogVersion) {
+        if (isCurrent(site)) {
             m_idleSites.push(site);
         }
         else {
-            site.shutdown();
+            retire(site);
         }
+        // retire the sites that haven't been needed lately, least recently used first
+        final int target = m_sizing.target(System.nanoTime());
+        while (!m_idleSites.isEmpty() && m_idleSites.size() + m_busySites.size() > target) {
+            retire(m_idleSites.pollLast());
+        }
+    }
+
+    /**
+     * Fill in the pool's columns of the MPSCHEDULING statistics
+     */
+    synchronized void populateStats(Map<String, Integer> columnNameToIndex, Object[] rowValues)
+    {
+        rowValues[columnNameToIndex.get("POOL_SIZE")] = m_idleSites.size() + m_busySites.size();
+        rowValues[columnNameToIndex.get("POOL_BUSY")] = m_busySites.size();
+        rowValues[columnNameToIndex.get("POOL_TARGET")] = m_sizing.target(System.nanoTime());
+        rowValues[columnNameToIndex.get("POOL_MAX_SIZE")] = m_poolSize;
+        rowValues[columnNameToIndex.get("POOL_SITES_CREATED")] = m_sitesCreated;
+        rowValues[columnNameToIndex.get("POOL_SITES_RETIRED")] = m_sitesRetired;
+        rowValues[columnNameToIndex.get("POOL_COLD_STARTS")] = m_coldStarts;
     }
 
     void shutdown()
     {
-        // Shutdown all, then join all, hopefully save some shutdown time for tests.
-        for (MpRoSiteContext site : m_idleSites) {
-            site.shutdown();
+        synchronized (this) {
+            m_shutdown = true;
         }
-        for (MpRoSiteContext site : m_busySites.values()) {
-            site.shutdown();
+        // Don't build any more sites, and wait for the one being built to be retired
+        m_prewarmExecutor.shutdown();
+        try {
+            m_prewarmExecutor.awaitTermination(365, TimeUnit.DAYS);
+        } catch (InterruptedException e) {
         }
-        for (MpRoSiteContext site : m_idleSites) {
-            site.joinThread();
+        // Sites complete their work through the queue and then this pool,
+        // so don't hold the lock while waiting for them.
+        final List<MpRoSiteContext> sites = new ArrayList<MpRoSiteContext>();
+        synchronized (this) {
+            sites.addAll(m_idleSites);
+            sites.addAll(m_busySites.values());
+        }
+        // Shutdown all, then join all, hopefully save some shutdown time for tests.
+        for (MpRoSiteContext site : sites) {
+            site.shutdown();
         }
-        for (MpRoSiteContext site : m_busySites.values()) {
+        for (MpRoSiteContext site : sites) {
             site.joinThread();
         }
     }
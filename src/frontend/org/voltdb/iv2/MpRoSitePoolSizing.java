@@ -0,0 +1,96 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb.iv2;
+
+/**
+ * Decides how many sites the MpRoSitePool keeps warm.
+ *
+ * Reads only queue in the MPI backlog once the pool is at its maximum size, so the number of
+ * reads running at once is the demand the pool sees. The target is the peak of that over the
+ * current and the previous window, plus a site of headroom if a read in those windows had to
+ * wait for a site to be built. A burst keeps its sites for at least a window after it ends,
+ * and the pool shrinks back to the minimum after two quiet windows.
+ */
+class MpRoSitePoolSizing {
+    private final int m_minSize;
+    private final int m_maxSize;
+    private final long m_windowNanos;
+
+    private long m_windowStartNanos;
+    private int m_windowPeak = 0;
+    private int m_lastPeak = 0;
+    private int m_windowColdStarts = 0;
+    private int m_lastColdStarts = 0;
+
+    MpRoSitePoolSizing(int minSize, int maxSize, long windowNanos, long nowNanos) {
+        m_maxSize = Math.max(1, maxSize);
+        m_minSize = Math.max(0, Math.min(minSize, m_maxSize));
+        m_windowNanos = windowNanos;
+        m_windowStartNanos = nowNanos;
+    }
+
+    int minSize() {
+        return m_minSize;
+    }
+
+    int maxSize() {
+        return m_maxSize;
+    }
+
+    /**
+     * @param busy the number of reads running, including the one that just started
+     * @param coldStart whether the read that just started had to wait for a site to be built
+     */
+    void recordStart(int busy, boolean coldStart, long nowNanos) {
+        roll(nowNanos);
+        m_windowPeak = Math.max(m_windowPeak, busy);
+        if (coldStart) {
+            ++m_windowColdStarts;
+        }
+    }
+
+    /**
+     * @return the number of sites, busy or idle, the pool should have
+     */
+    int target(long nowNanos) {
+        roll(nowNanos);
+        final int peak = Math.max(m_windowPeak, m_lastPeak);
+        final int headroom = m_windowColdStarts + m_lastColdStarts > 0 ? 1 : 0;
+        return Math.max(m_minSize, Math.min(m_maxSize, peak + headroom));
+    }
+
+    private void roll(long nowNanos) {
+        final long elapsed = nowNanos - m_windowStartNanos;
+        if (elapsed < m_windowNanos) {
+            return;
+        }
+        if (elapsed < 2 * m_windowNanos) {
+            m_lastPeak = m_windowPeak;
+            m_lastColdStarts = m_windowColdStarts;
+            m_windowStartNanos += m_windowNanos;
+        }
+        else {
+            // nothing happened in the window before this one either
+            m_lastPeak = 0;
+            m_lastColdStarts = 0;
+            m_windowStartNanos = nowNanos;
+        }
+        m_windowPeak = 0;
+        m_windowColdStarts = 0;
+    }
+}
@@ -100,6 +100,11 @@ public class MpScheduler extends Scheduler
         m_pendingTasks.updateCatalog(diffCmds, context, csp);
     }
 
+    MpTransactionTaskQueue getPendingTasks()
+    {
+        return m_pendingTasks;
+    }
+
     @Override
     public void shutdown()
     {
@@ -0,0 +1,94 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb.iv2;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+
+import org.voltdb.SiteStatsSource;
+import org.voltdb.VoltTable.ColumnInfo;
+import org.voltdb.VoltType;
+
+/**
+ * How many multi-partition reads the MPI runs concurrently on its read pool and how long
+ * MP writes, which always run one at a time, wait for them. Totals since startup. Only the
+ * host with the MPI leader has non-zero values.
+ */
+public class MpSchedulingStats extends SiteStatsSource {
+
+    private final MpTransactionTaskQueue m_queue;
+
+    public MpSchedulingStats(long siteId, MpTransactionTaskQueue queue) {
+        super(siteId, false);
+        m_queue = queue;
+    }
+
+    @Override
+    protected void populateColumnSchema(ArrayList<ColumnInfo> columns) {
+        super.populateColumnSchema(columns);
+        columns.add(new ColumnInfo("READS", VoltType.BIGINT));
+        columns.add(new ColumnInfo("WRITES", VoltType.BIGINT));
+        columns.add(new ColumnInfo("AVG_CONCURRENT_READS", VoltType.FLOAT));
+        columns.add(new ColumnInfo("MAX_CONCURRENT_READS", VoltType.INTEGER));
+        // time writes spent at the head of the queue waiting for reads to finish
+        columns.add(new ColumnInfo("WRITE_WAIT_MILLIS", VoltType.BIGINT));
+        columns.add(new ColumnInfo("BACKLOG", VoltType.INTEGER));
+        // sites of the MP read pool, idle or busy, and how many it is sized for from recent demand
+        columns.add(new ColumnInfo("POOL_SIZE", VoltType.INTEGER));
+        columns.add(new ColumnInfo("POOL_BUSY", VoltType.INTEGER));
+        columns.add(new ColumnInfo("POOL_TARGET", VoltType.INTEGER));
+        columns.add(new ColumnInfo("POOL_MAX_SIZE", VoltType.INTEGER));
+        columns.add(new ColumnInfo("POOL_SITES_CREATED", VoltType.BIGINT));
+        columns.add(new ColumnInfo("POOL_SITES_RETIRED", VoltType.BIGINT));
+        // reads that had to wait for a site to be built
+        columns.add(new ColumnInfo("POOL_COLD_STARTS", VoltType.BIGINT));
+    }
+
+    @Override
+    protected void updateStatsRow(Object rowKey, Object[] rowValues) {
+        m_queue.populateSchedulingStats(columnNameToIndex, rowValues);
+        super.updateStatsRow(rowKey, rowValues);
+    }
+
+    @Override
+    protected Iterator<Object> getStatsRowKeyIterator(boolean interval) {
+        return new Iterator<Object>() {
+            boolean returnRow = true;
+
+            @Override
+            public boolean hasNext() {
+                return returnRow;
+            }
+
+            @Override
+            public Object next() {
+                if (returnRow) {
+                    returnRow = false;
+                    return new Object();
+                } else {
+                    return null;
+                }
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+}
@@ -24,6 +24,7 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.TimeUnit;
 
 import org.voltcore.logging.VoltLogger;
 import org.voltdb.CatalogContext;
@@ -36,6 +37,14 @@ import org.voltdb.messaging.FragmentTaskMessage;
  * Provide an implementation of the TransactionTaskQueue specifically for the MPI.
  * This class will manage separating the stream of reads and writes to different
  * Sites and block appropriately so that reads and writes never execute concurrently.
+ *
+ * Transactions start in txnId order. Reads never start ahead of a write queued before them,
+ * even one that doesn't touch their tables, because the MPI repair log and the repair logs
+ * of the partitions assume MP transactions complete in txnId order.
+ *
+ * Writes run one at a time on the MPI's own site, even when they touch disjoint tables.
+ * Every MP write is sent to every partition master, and each partition's site stays in
+ * that transaction until it completes, so two MP writes can't overlap at the partitions.
  */
 public class MpTransactionTaskQueue extends TransactionTaskQueue
 {
@@ -49,6 +58,16 @@ public class MpTransactionTaskQueue extends TransactionTaskQueue
 
     private MpRoSitePool m_sitePool = null;
 
+    // when the write at the head of the backlog started waiting for the reads in progress
+    private long m_headWaitStartNanos = 0;
+
+    // read concurrency and write waits, for MPSCHEDULING statistics
+    private long m_readsStarted = 0;
+    private long m_writesStarted = 0;
+    private long m_concurrentReadsTotal = 0;
+    private int m_maxConcurrentReads = 0;
+    private long m_writeWaitNanos = 0;
+
     MpTransactionTaskQueue(SiteTaskerQueue queue, long initialTnxId)
     {
         super(queue, initialTnxId);
@@ -184,10 +203,12 @@ public class MpTransactionTaskQueue extends TransactionTaskQueue
             if (!task.getTransactionState().isReadOnly()) {
                 if (m_currentReads.isEmpty() && m_currentWrites.isEmpty()) {
                     task = m_backlog.pollFirst();
-                    m_currentWrites.put(task.getTxnId(), task);
-                    taskQueueOffer(task);
+                    startWrite(task);
                     retval = true;
                 }
+                else if (m_currentWrites.isEmpty() && m_headWaitStartNanos == 0) {
+                    m_headWaitStartNanos = System.nanoTime();
+                }
             }
             else if (m_currentWrites.isEmpty()) {
                 while (task != null && task.getTransactionState().isReadOnly() &&
@@ -195,8 +216,7 @@ public class MpTransactionTaskQueue extends TransactionTaskQueue
                 {
                     task = m_backlog.pollFirst();
                     assert(task.getTransactionState().isReadOnly());
-                    m_currentReads.put(task.getTxnId(), task);
-                    taskQueueOffer(task);
+                    startRead(task);
                     retval = true;
                     // Prime the pump with the head task, if any.  If empty,
                     // task will be null
@@ -207,6 +227,51 @@ public class MpTransactionTaskQueue extends TransactionTaskQueue
         return retval;
     }
 
+    private void startWrite(TransactionTask task)
+    {
+        m_currentWrites.put(task.getTxnId(), task);
+        ++m_writesStarted;
+        if (m_headWaitStartNanos != 0) {
+            m_writeWaitNanos += System.nanoTime() - m_headWaitStartNanos;
+            m_headWaitStartNanos = 0;
+        }
+        taskQueueOffer(task);
+    }
+
+    private void startRead(TransactionTask task)
+    {
+        m_currentReads.put(task.getTxnId(), task);
+        ++m_readsStarted;
+        m_concurrentReadsTotal += m_currentReads.size();
+        m_maxConcurrentReads = Math.max(m_maxConcurrentReads, m_currentReads.size());
+        taskQueueOffer(task);
+    }
+
+    /**
+     * Fill in the MPSCHEDULING statistics
+     */
+    synchronized void populateSchedulingStats(Map<String, Integer> columnNameToIndex, Object[] rowValues)
+    {
+        rowValues[columnNameToIndex.get("READS")] = m_readsStarted;
+        rowValues[columnNameToIndex.get("WRITES")] = m_writesStarted;
+        rowValues[columnNameToIndex.get("AVG_CONCURRENT_READS")] =
+                m_readsStarted == 0 ? 0.0 : (double)m_concurrentReadsTotal / m_readsStarted;
+        rowValues[columnNameToIndex.get("MAX_CONCURRENT_READS")] = m_maxConcurrentReads;
+        rowValues[columnNameToIndex.get("WRITE_WAIT_MILLIS")] = TimeUnit.NANOSECONDS.toMillis(m_writeWaitNanos);
+        rowValues[columnNameToIndex.get("BACKLOG")] = m_backlog.size();
+        if (m_sitePool != null) {
+            m_sitePool.populateStats(columnNameToIndex, rowValues);
+        }
+        else {
+            for (String column : new String[] { "POOL_SIZE", "POOL_BUSY", "POOL_TARGET", "POOL_MAX_SIZE" }) {
+                rowValues[columnNameToIndex.get(column)] = 0;
+            }
+            for (String column : new String[] { "POOL_SITES_CREATED", "POOL_SITES_RETIRED", "POOL_COLD_STARTS" }) {
+                rowValues[columnNameToIndex.get(column)] = 0L;
+            }
+        }
+    }
+
     /**
      * Indicate that the transaction associated with txnId is complete.  Perform
      * management of reads/writes in progress then call taskQueueOffer() to
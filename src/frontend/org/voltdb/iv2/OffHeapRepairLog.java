@@ -0,0 +1,214 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb.iv2;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+
+import org.voltcore.messaging.VoltMessage;
+import org.voltcore.utils.DBBPool;
+import org.voltcore.utils.DBBPool.BBContainer;
+import org.voltcore.utils.EstTime;
+import org.voltdb.VoltDB;
+
+/**
+ * The SP or the MP part of a RepairLog, with the messages serialized into direct memory
+ * instead of kept on the heap until they are truncated.
+ *
+ * Messages are appended to segments from the global direct buffer pool, a message larger
+ * than a segment gets one of its own. The handles of the entries are kept in a ring of
+ * primitive arrays in log order, so the log holds no objects per entry. Truncation only
+ * moves the head of the ring, and segments go back to the pool once all their entries
+ * are truncated. The serialized messages are copied out as they are for repair.
+ */
+class OffHeapRepairLog
+{
+    // size of the pooled segments messages are appended to
+    static final int SEGMENT_SIZE = Integer.getInteger("REPAIR_LOG_SEGMENT_SIZE", 256 * 1024);
+
+    private static class Segment
+    {
+        final BBContainer m_container;
+        // the buffer's position is where the next message is appended
+        final ByteBuffer m_buf;
+        int m_readPosition = 0;
+        int m_entries = 0;
+
+        Segment(BBContainer container)
+        {
+            m_container = container;
+            m_buf = container.b();
+        }
+    }
+
+    private final boolean m_isSP;
+    private final Deque<Segment> m_segments = new ArrayDeque<Segment>();
+
+    // the entries in log order, starting at m_head and wrapping around
+    private long m_handles[] = new long[64];
+    private long m_txnIds[] = new long[64];
+    private int m_lengths[] = new int[64];
+    private long m_addedMillis[] = new long[64];
+    private int m_head = 0;
+    private int m_size = 0;
+    private long m_bytes = 0;
+    private long m_allocatedBytes = 0;
+
+    OffHeapRepairLog(boolean isSP)
+    {
+        m_isSP = isSP;
+    }
+
+    void add(VoltMessage msg, long handle, long txnId)
+    {
+        final int length = msg.getSerializedSize();
+        Segment tail = m_segments.peekLast();
+        if (tail == null || tail.m_buf.remaining() < length) {
+            tail = new Segment(length > SEGMENT_SIZE ?
+                    DBBPool.allocateDirect(length) : DBBPool.allocateDirectAndPool(SEGMENT_SIZE));
+            m_segments.add(tail);
+            m_allocatedBytes += tail.m_buf.capacity();
+        }
+        final int position = tail.m_buf.position();
+        final ByteBuffer dup = tail.m_buf.duplicate();
+        dup.limit(position + length);
+        try {
+            msg.flattenToBuffer(dup.slice());
+        } catch (IOException e) {
+            VoltDB.crashLocalVoltDB("Unable to serialize a message for the repair log: " + msg, true, e);
+        }
+        tail.m_buf.position(position + length);
+        ++tail.m_entries;
+
+        if (m_size == m_handles.length) {
+            grow();
+        }
+        final int index = (m_head + m_size) % m_handles.length;
+        m_handles[index] = handle;
+        m_txnIds[index] = txnId;
+        m_lengths[index] = length;
+        m_addedMillis[index] = EstTime.currentTimeMillis();
+        ++m_size;
+        m_bytes += length;
+    }
+
+    private void grow()
+    {
+        final int capacity = m_handles.length * 2;
+        m_handles = unwrap(m_handles, new long[capacity]);
+        m_txnIds = unwrap(m_txnIds, new long[capacity]);
+        m_addedMillis = unwrap(m_addedMillis, new long[capacity]);
+        final int lengths[] = new int[capacity];
+        final int first = Math.min(m_size, m_lengths.length - m_head);
+        System.arraycopy(m_lengths, m_head, lengths, 0, first);
+        System.arraycopy(m_lengths, 0, lengths, first, m_size - first);
+        m_lengths = lengths;
+        m_head = 0;
+    }
+
+    private long[] unwrap(long ring[], long grown[])
+    {
+        final int first = Math.min(m_size, ring.length - m_head);
+        System.arraycopy(ring, m_head, grown, 0, first);
+        System.arraycopy(ring, 0, grown, first, m_size - first);
+        return grown;
+    }
+
+    /**
+     * Drop the entries from the head of the log up to the handle, SP entries by
+     * spHandle and MP entries by txnId, like RepairLog.Item.canTruncate()
+     */
+    void truncate(long handle)
+    {
+        while (m_size > 0 && (m_isSP ? m_handles[m_head] : m_txnIds[m_head]) <= handle) {
+            final Segment segment = m_segments.peekFirst();
+            final int length = m_lengths[m_head];
+            segment.m_readPosition += length;
+            if (--segment.m_entries == 0) {
+                m_segments.pollFirst();
+                m_allocatedBytes -= segment.m_buf.capacity();
+                segment.m_container.discard();
+            }
+            m_bytes -= length;
+            m_head = (m_head + 1) % m_handles.length;
+            --m_size;
+        }
+    }
+
+    /**
+     * Copy the serialized messages onto the heap as items for the repair log contents
+     */
+    void addItemsTo(List<RepairLog.Item> items)
+    {
+        final Iterator<Segment> segments = m_segments.iterator();
+        Segment segment = null;
+        int position = 0;
+        int remaining = 0;
+        for (int i = 0; i < m_size; i++) {
+            while (remaining == 0) {
+                segment = segments.next();
+                position = segment.m_readPosition;
+                remaining = segment.m_entries;
+            }
+            final int index = (m_head + i) % m_handles.length;
+            final int length = m_lengths[index];
+            final ByteBuffer src = segment.m_buf.duplicate();
+            src.limit(position + length);
+            src.position(position);
+            final ByteBuffer copy = ByteBuffer.allocate(length);
+            copy.put(src);
+            copy.flip();
+            items.add(RepairLog.Item.serialized(m_isSP, copy, m_handles[index], m_txnIds[index]));
+            position += length;
+            --remaining;
+        }
+    }
+
+    int size()
+    {
+        return m_size;
+    }
+
+    /**
+     * @return the size of the serialized messages
+     */
+    long bytes()
+    {
+        return m_bytes;
+    }
+
+    /**
+     * @return the size of the segments holding the messages
+     */
+    long allocatedBytes()
+    {
+        return m_allocatedBytes;
+    }
+
+    /**
+     * @return when the oldest entry was added, or 0 if the log is empty
+     */
+    long oldestAddedMillis()
+    {
+        return m_size == 0 ? 0 : m_addedMillis[m_head];
+    }
+}
@@ -20,6 +20,7 @@ package org.voltdb.iv2;
 import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.io.Writer;
+import java.nio.ByteBuffer;
 import java.util.concurrent.TimeUnit;
 
 import org.voltcore.logging.Level;
@@ -65,13 +66,22 @@ abstract public class ProcedureTask extends TransactionTask
         final InitiateResponseMessage response = new InitiateResponseMessage(task);
 
         try {
+            ProcedureRunner runner = siteConnection.getProcedureRunner(m_procName);
+            // Java procedures decode their parameters straight from the serialized invocation
+            ByteBuffer serializedParams = null;
+            if (runner != null && runner.acceptsSerializedParams()) {
+                serializedParams = task.getStoredProcedureInvocation().getSerializedParams();
+            }
+
             Object[] callerParams = null;
             /*
              * Parameters are lazily deserialized. We may not find out until now
              * that the parameter set is corrupt
              */
             try {
-                callerParams = task.getParameters();
+                if (serializedParams == null) {
+                    callerParams = task.getParameters();
+                }
             } catch (RuntimeException e) {
                 Writer result = new StringWriter();
                 PrintWriter pw = new PrintWriter(result);
@@ -83,12 +93,11 @@ abstract public class ProcedureTask extends TransactionTask
                                 + m_procName + "\n"
                                 + result.toString()));
             }
-            if (callerParams == null) {
+            if (callerParams == null && serializedParams == null) {
                 return response;
             }
 
             ClientResponseImpl cr = null;
-            ProcedureRunner runner = siteConnection.getProcedureRunner(m_procName);
             if (runner == null) {
                 String error =
                         "Procedure " + m_procName + " is not present in the catalog. "  +
@@ -113,7 +122,11 @@ abstract public class ProcedureTask extends TransactionTask
                 runner.setupTransaction(m_txnState);
 
                 // execute the procedure
-                cr = runner.call(callerParams);
+                if (serializedParams != null) {
+                    cr = runner.callWithSerializedParams(serializedParams);
+                } else {
+                    cr = runner.call(callerParams);
+                }
 
                 m_txnState.setHash(cr.getHash());
                 //Don't pay the cost of returning the result tables for a replicated write
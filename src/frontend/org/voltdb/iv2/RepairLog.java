@@ -17,6 +17,7 @@
 
 package org.voltdb.iv2;
 
+import java.nio.ByteBuffer;
 import java.util.ArrayDeque;
 import java.util.Collections;
 import java.util.Comparator;
@@ -24,10 +25,12 @@ import java.util.Deque;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 
 import org.voltcore.logging.VoltLogger;
 import org.voltcore.messaging.VoltMessage;
 import org.voltcore.utils.CoreUtils;
+import org.voltcore.utils.EstTime;
 import org.voltdb.Consistency;
 import org.voltdb.Consistency.ReadLevel;
 import org.voltdb.TheHashinator;
@@ -44,12 +47,18 @@ import org.voltdb.messaging.Iv2RepairLogResponseMessage;
  * initiator (leader) shed its mortal coil.  This includes recording and sharing messages
  * starting and completing multipartition transactions so that a new MPI can repair the
  * cluster state on promotion.
+ *
+ * With REPAIR_LOG_OFF_HEAP the messages are kept serialized in direct memory, see
+ * OffHeapRepairLog, and handed to repair as they were serialized.
  */
 public class RepairLog
 {
     private static final boolean IS_SP = true;
     private static final boolean IS_MP = false;
 
+    // keep the logged messages serialized off the heap
+    static final boolean OFF_HEAP = Boolean.getBoolean("REPAIR_LOG_OFF_HEAP");
+
     VoltLogger tmLog = new VoltLogger("TM");
 
     // Initialize to Long MAX_VALUE to prevent feeding a newly joined node
@@ -60,6 +69,9 @@ public class RepairLog
     // is this a partition leader?
     boolean m_isLeader = false;
 
+    // a shut down log keeps nothing
+    boolean m_shutdown = false;
+
     // The HSID of this initiator, for logging purposes
     long m_HSId = Long.MIN_VALUE;
 
@@ -70,18 +82,31 @@ public class RepairLog
     static class Item
     {
         final VoltMessage m_msg;
+        // the serialized message instead, when the log is off heap
+        final ByteBuffer m_serializedMsg;
         final long m_handle;
         final long m_txnId;
         final boolean m_type;
 
         Item(boolean type, VoltMessage msg, long handle, long txnId)
+        {
+            this(type, msg, null, handle, txnId);
+        }
+
+        private Item(boolean type, VoltMessage msg, ByteBuffer serializedMsg, long handle, long txnId)
         {
             m_type = type;
             m_msg = msg;
+            m_serializedMsg = serializedMsg;
             m_handle = handle;
             m_txnId = txnId;
         }
 
+        static Item serialized(boolean type, ByteBuffer serializedMsg, long handle, long txnId)
+        {
+            return new Item(type, null, serializedMsg, handle, txnId);
+        }
+
         long getHandle()
         {
             return m_handle;
@@ -118,14 +143,24 @@ public class RepairLog
         }
     }
 
-    // log storage.
+    // log storage, on heap
     final Deque<Item> m_logSP;
     final Deque<Item> m_logMP;
+    // or off heap
+    final OffHeapRepairLog m_offHeapSP;
+    final OffHeapRepairLog m_offHeapMP;
 
     RepairLog()
+    {
+        this(OFF_HEAP);
+    }
+
+    RepairLog(boolean offHeap)
     {
         m_logSP = new ArrayDeque<Item>();
         m_logMP = new ArrayDeque<Item>();
+        m_offHeapSP = offHeap ? new OffHeapRepairLog(IS_SP) : null;
+        m_offHeapMP = offHeap ? new OffHeapRepairLog(IS_MP) : null;
 
         m_defaultConsistencyReadLevel = VoltDB.Configuration.getDefaultReadConsistencyLevel();
     }
@@ -137,7 +172,7 @@ public class RepairLog
     }
 
     // leaders log differently
-    void setLeaderState(boolean isLeader)
+    synchronized void setLeaderState(boolean isLeader)
     {
         m_isLeader = isLeader;
         // The leader doesn't truncate its own SP log; if promoted,
@@ -150,7 +185,7 @@ public class RepairLog
 
     // Offer a new message to the repair log. This will truncate
     // the repairLog if the message includes a truncation hint.
-    public void deliver(VoltMessage msg)
+    public synchronized void deliver(VoltMessage msg)
     {
         /**
          * Note: A shortcut read is a read operation sent to any replica and completed with no
@@ -168,7 +203,7 @@ public class RepairLog
             if (!shortcutRead) {
                 m_lastSpHandle = m.getSpHandle();
                 truncate(m.getTruncationHandle(), IS_SP);
-                m_logSP.add(new Item(IS_SP, m, m.getSpHandle(), m.getTxnId()));
+                add(IS_SP, m, m.getSpHandle(), m.getTxnId());
             }
         } else if (msg instanceof FragmentTaskMessage) {
             final FragmentTaskMessage m = (FragmentTaskMessage) msg;
@@ -179,7 +214,7 @@ public class RepairLog
                 truncate(m.getTruncationHandle(), IS_MP);
                 // only log the first fragment of a procedure (and handle 1st case)
                 if (m.getTxnId() > m_lastMpHandle || m_lastMpHandle == Long.MAX_VALUE) {
-                    m_logMP.add(new Item(IS_MP, m, m.getSpHandle(), m.getTxnId()));
+                    add(IS_MP, m, m.getSpHandle(), m.getTxnId());
                     m_lastMpHandle = m.getTxnId();
                     m_lastSpHandle = m.getSpHandle();
                 }
@@ -194,7 +229,7 @@ public class RepairLog
 
             if (!shortcutRead && !ctm.isRestart()) {
                 truncate(ctm.getTruncationHandle(), IS_MP);
-                m_logMP.add(new Item(IS_MP, ctm, ctm.getSpHandle(), ctm.getTxnId()));
+                add(IS_MP, ctm, ctm.getSpHandle(), ctm.getTxnId());
                 //Restore will send a complete transaction message with a lower mp transaction id because
                 //the restore transaction precedes the loading of the right mp transaction id from the snapshot
                 //Hence Math.max
@@ -212,6 +247,28 @@ public class RepairLog
         }
     }
 
+    private void add(boolean type, VoltMessage msg, long handle, long txnId)
+    {
+        if (m_shutdown) {
+            return;
+        }
+        if (m_offHeapSP != null) {
+            (type == IS_SP ? m_offHeapSP : m_offHeapMP).add(msg, handle, txnId);
+        }
+        else {
+            (type == IS_SP ? m_logSP : m_logMP).add(new Item(type, msg, handle, txnId));
+        }
+    }
+
+    // Drop everything when the initiator shuts down, which gives the
+    // off heap segments back to the pool.
+    synchronized void shutdown()
+    {
+        m_shutdown = true;
+        truncate(Long.MAX_VALUE, IS_SP);
+        truncate(Long.MAX_VALUE, IS_MP);
+    }
+
     // trim unnecessary log messages.
     private void truncate(long handle, boolean isSP)
     {
@@ -220,6 +277,11 @@ public class RepairLog
             return;
         }
 
+        if (m_offHeapSP != null) {
+            (isSP ? m_offHeapSP : m_offHeapMP).truncate(handle);
+            return;
+        }
+
         Deque<RepairLog.Item> deq = null;
         if (isSP) {
             deq = m_logSP;
@@ -260,14 +322,24 @@ public class RepairLog
     };
 
     // produce the contents of the repair log.
-    public List<Iv2RepairLogResponseMessage> contents(long requestId, boolean forMPI)
+    public synchronized List<Iv2RepairLogResponseMessage> contents(long requestId, boolean forMPI)
     {
         List<Item> items = new LinkedList<Item>();
         // All cases include the log of MP transactions
-        items.addAll(m_logMP);
+        if (m_offHeapMP != null) {
+            m_offHeapMP.addItemsTo(items);
+        }
+        else {
+            items.addAll(m_logMP);
+        }
         // SP repair requests also want the SP transactions
         if (!forMPI) {
-            items.addAll(m_logSP);
+            if (m_offHeapSP != null) {
+                m_offHeapSP.addItemsTo(items);
+            }
+            else {
+                items.addAll(m_logSP);
+            }
         }
 
         // Contents need to be sorted in increasing spHandle order
@@ -294,16 +366,55 @@ public class RepairLog
         Iterator<Item> itemator = items.iterator();
         while (itemator.hasNext()) {
             Item item = itemator.next();
-            Iv2RepairLogResponseMessage response =
-                new Iv2RepairLogResponseMessage(
+            Iv2RepairLogResponseMessage response;
+            if (item.m_serializedMsg != null) {
+                response = new Iv2RepairLogResponseMessage(
+                        requestId,
+                        seq++,
+                        ofTotal,
+                        item.getHandle(),
+                        item.getTxnId(),
+                        item.m_serializedMsg);
+            }
+            else {
+                response = new Iv2RepairLogResponseMessage(
                         requestId,
                         seq++,
                         ofTotal,
                         item.getHandle(),
                         item.getTxnId(),
                         item.getMessage());
+            }
             responses.add(response);
         }
         return responses;
     }
+
+    /**
+     * Fill in the REPAIRLOG statistics. The sizes and age are only known off heap.
+     */
+    synchronized void populateStats(Map<String, Integer> columnNameToIndex, Object[] rowValues)
+    {
+        final boolean offHeap = m_offHeapSP != null;
+        rowValues[columnNameToIndex.get("IS_LEADER")] = m_isLeader ? 1 : 0;
+        rowValues[columnNameToIndex.get("OFF_HEAP")] = offHeap ? 1 : 0;
+        rowValues[columnNameToIndex.get("SP_ENTRIES")] = offHeap ? m_offHeapSP.size() : m_logSP.size();
+        rowValues[columnNameToIndex.get("MP_ENTRIES")] = offHeap ? m_offHeapMP.size() : m_logMP.size();
+        long bytes = 0;
+        long allocatedBytes = 0;
+        long oldestAgeMillis = 0;
+        if (offHeap) {
+            bytes = m_offHeapSP.bytes() + m_offHeapMP.bytes();
+            allocatedBytes = m_offHeapSP.allocatedBytes() + m_offHeapMP.allocatedBytes();
+            final long now = EstTime.currentTimeMillis();
+            for (OffHeapRepairLog log : new OffHeapRepairLog[] { m_offHeapSP, m_offHeapMP }) {
+                if (log.size() > 0) {
+                    oldestAgeMillis = Math.max(oldestAgeMillis, now - log.oldestAddedMillis());
+                }
+            }
+        }
+        rowValues[columnNameToIndex.get("BYTES")] = bytes;
+        rowValues[columnNameToIndex.get("ALLOCATED_BYTES")] = allocatedBytes;
+        rowValues[columnNameToIndex.get("OLDEST_ENTRY_AGE_MILLIS")] = oldestAgeMillis;
+    }
 }
@@ -0,0 +1,84 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb.iv2;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+
+import org.voltdb.SiteStatsSource;
+import org.voltdb.VoltTable.ColumnInfo;
+import org.voltdb.VoltType;
+
+/**
+ * How much the repair log of an initiator holds, and for how long. Sizes and age are only
+ * tracked when the log is kept off heap.
+ */
+public class RepairLogStats extends SiteStatsSource {
+
+    private final RepairLog m_repairLog;
+
+    public RepairLogStats(long siteId, RepairLog repairLog) {
+        super(siteId, false);
+        m_repairLog = repairLog;
+    }
+
+    @Override
+    protected void populateColumnSchema(ArrayList<ColumnInfo> columns) {
+        super.populateColumnSchema(columns);
+        columns.add(new ColumnInfo("IS_LEADER", VoltType.TINYINT));
+        columns.add(new ColumnInfo("OFF_HEAP", VoltType.TINYINT));
+        columns.add(new ColumnInfo("SP_ENTRIES", VoltType.INTEGER));
+        columns.add(new ColumnInfo("MP_ENTRIES", VoltType.INTEGER));
+        // the serialized messages, and the direct memory holding them
+        columns.add(new ColumnInfo("BYTES", VoltType.BIGINT));
+        columns.add(new ColumnInfo("ALLOCATED_BYTES", VoltType.BIGINT));
+        columns.add(new ColumnInfo("OLDEST_ENTRY_AGE_MILLIS", VoltType.BIGINT));
+    }
+
+    @Override
+    protected void updateStatsRow(Object rowKey, Object[] rowValues) {
+        m_repairLog.populateStats(columnNameToIndex, rowValues);
+        super.updateStatsRow(rowKey, rowValues);
+    }
+    @Override
+    protected Iterator<Object> getStatsRowKeyIterator(boolean interval) {
+        return new Iterator<Object>() {
+            boolean returnRow = true;
+
+            @Override
+            public boolean hasNext() {
+                return returnRow;
+            }
+
+            @Override
+            public Object next() {
+                if (returnRow) {
+                    returnRow = false;
+                    return new Object();
+                } else {
+                    return null;
+                }
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+}
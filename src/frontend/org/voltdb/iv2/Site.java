@@ -20,6 +20,7 @@ package org.voltdb.iv2;
 import java.io.IOException;
 import java.lang.reflect.Method;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Deque;
 import java.util.HashMap;
@@ -47,6 +48,7 @@ import org.voltdb.DependencyPair;
 import org.voltdb.ExtensibleSnapshotDigestData;
 import org.voltdb.HsqlBackend;
 import org.voltdb.IndexStats;
+import org.voltdb.LatencyPercentileStats;
 import org.voltdb.LoadedProcedureSet;
 import org.voltdb.MemoryStats;
 import org.voltdb.NonVoltDBBackend;
@@ -114,6 +116,9 @@ public class Site implements Runnable, SiteProcedureConnection, SiteSnapshotConn
     private static final double m_taskLogReplayRatio =
             Double.valueOf(System.getProperty("TASKLOG_REPLAY_RATIO", "0.6"));
 
+    // Most tasks taken from the site tasker queue at once in normal operation.
+    private static final int MAX_TASK_BATCH = Integer.getInteger("SITE_TASK_BATCH_SIZE", 64);
+
     // Set to false trigger shutdown.
     volatile boolean m_shouldContinue = true;
 
@@ -159,6 +164,7 @@ public class Site implements Runnable, SiteProcedureConnection, SiteSnapshotConn
     final TableStats m_tableStats;
     final IndexStats m_indexStats;
     final MemoryStats m_memStats;
+    final LatencyPercentileStats m_latencyStats;
 
     // Each execution site manages snapshot using a SnapshotSiteProcessor
     private SnapshotSiteProcessor m_snapshotter;
@@ -560,6 +566,7 @@ public class Site implements Runnable, SiteProcedureConnection, SiteSnapshotConn
             InitiatorMailbox initiatorMailbox,
             StatsAgent agent,
             MemoryStats memStats,
+            LatencyPercentileStats latencyStats,
             String coreBindIds,
             TaskLog rejoinTaskLog,
             PartitionDRGateway drGateway,
@@ -584,6 +591,7 @@ public class Site implements Runnable, SiteProcedureConnection, SiteSnapshotConn
         m_drGateway = drGateway;
         m_mpDrGateway = mpDrGateway;
         m_hashinator = TheHashinator.getCurrentHashinator();
+        m_latencyStats = latencyStats;
 
         if (agent != null) {
             m_tableStats = new TableStats(m_siteId);
@@ -730,16 +738,27 @@ public class Site implements Runnable, SiteProcedureConnection, SiteSnapshotConn
         m_startupConfig = null; // release the serializableCatalog.
         //Maintain a minimum ratio of task log (unrestricted) to live (restricted) transactions
         final MinimumRatioMaintainer mrm = new MinimumRatioMaintainer(m_taskLogReplayRatio);
+        final List<SiteTasker> batch = new ArrayList<SiteTasker>(MAX_TASK_BATCH);
         try {
             while (m_shouldContinue) {
                 if (m_rejoinState == kStateRunning) {
-                    // Normal operation blocks the site thread on the sitetasker queue.
-                    SiteTasker task = m_scheduler.take();
-                    if (task instanceof TransactionTask) {
-                        m_currentTxnId = ((TransactionTask)task).getTxnId();
-                        m_lastTxnTime = EstTime.currentTimeMillis();
+                    // Normal operation blocks the site thread on the sitetasker queue,
+                    // bursts of tasks are taken in batches to avoid waking up per task.
+                    if (m_scheduler.drainTo(batch, MAX_TASK_BATCH) == 0) {
+                        batch.add(m_scheduler.take());
+                    }
+                    try {
+                        for (int i = 0; i < batch.size() && m_shouldContinue; i++) {
+                            SiteTasker task = batch.get(i);
+                            if (task instanceof TransactionTask) {
+                                m_currentTxnId = ((TransactionTask)task).getTxnId();
+                                m_lastTxnTime = EstTime.currentTimeMillis();
+                            }
+                            task.run(getSiteProcedureConnection());
+                        }
+                    } finally {
+                        batch.clear();
                     }
-                    task.run(getSiteProcedureConnection());
                 } else if (m_rejoinState == kStateReplayingRejoin) {
                     // Rejoin operation poll and try to do some catchup work. Tasks
                     // are responsible for logging any rejoin work they might have.
@@ -955,6 +974,12 @@ public class Site implements Runnable, SiteProcedureConnection, SiteSnapshotConn
         return m_siteId;
     }
 
+    @Override
+    public LatencyPercentileStats getLatencyStats()
+    {
+        return m_latencyStats;
+    }
+
     @Override
     public int getCorrespondingPartitionId()
     {
@@ -1403,6 +1428,8 @@ public class Site implements Runnable, SiteProcedureConnection, SiteSnapshotConn
         m_context = context;
         m_ee.setBatchTimeout(m_context.cluster.getDeployment().get("deployment").
                 getSystemsettings().get("systemsettings").getQuerytimeout());
+        // the MPI's RO sites are rebuilt with the new catalog after this
+        m_latencyStats.clearProcedures();
         m_loadedProcedures.loadProcedures(m_context, m_backend, csp);
 
         if (isMPI) {
@@ -1516,6 +1543,26 @@ public class Site implements Runnable, SiteProcedureConnection, SiteSnapshotConn
         return mispartitionedRows;
     }
 
+    /**
+     * For the specified list of table ids, return the number of changes made to each
+     * table so far, or -1 for tables that aren't persistent
+     */
+    @Override
+    public long[] getTableModificationCounts(long[] tableIds) {
+        ByteBuffer paramBuffer = m_ee.getParamBufferForExecuteTask(4 + (8 * tableIds.length));
+        paramBuffer.putInt(tableIds.length);
+        for (long tableId : tableIds) {
+            paramBuffer.putLong(tableId);
+        }
+
+        ByteBuffer resultBuffer = ByteBuffer.wrap(m_ee.executeTask(TaskType.GET_TABLE_MODIFICATION_COUNTS, paramBuffer));
+        long counts[] = new long[tableIds.length];
+        for (int ii = 0; ii < tableIds.length; ii++) {
+            counts[ii] = resultBuffer.getLong();
+        }
+        return counts;
+    }
+
     @Override
     public void setBatch(int batchIndex) {
         m_ee.setBatch(batchIndex);
@@ -17,46 +17,209 @@
 
 package org.voltdb.iv2;
 
-import java.util.concurrent.LinkedTransferQueue;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
 
 import org.voltcore.utils.CoreUtils;
+import org.voltdb.LatencyPercentileStats;
 import org.voltdb.StarvationTracker;
 
-/** SiteTaskerScheduler orders SiteTaskers for execution. */
+/**
+ * SiteTaskerScheduler orders SiteTaskers for execution.
+ *
+ * Tasks are offered from many threads and consumed by a single site thread, so the
+ * queue is a pre-sized multi-producer single-consumer ring. Producers claim a slot
+ * with a CAS on the tail and the consumer never contends with them, nothing is
+ * allocated per task and the site thread is only unparked when it is actually waiting.
+ *
+ * Offering never fails. If the ring is full the task goes to an overflow list, and
+ * until the consumer has emptied the ring and taken the overflow every later offer goes
+ * there too, so tasks offered by one thread are always consumed in the order offered.
+ */
 public class SiteTaskerQueue
 {
-    private final LinkedTransferQueue<SiteTasker> m_tasks = new LinkedTransferQueue<SiteTasker>();
+    static final int DEFAULT_CAPACITY = Integer.getInteger("SITE_TASKER_QUEUE_CAPACITY", 8192);
+
+    /**
+     * How long the site thread busy polls an empty queue before it parks. Spinning trades a
+     * core for lower wakeup latency, defaults to the QUEUE_SPIN_MICROS used by other queues.
+     */
+    static final long SPIN_NANOS = TimeUnit.MICROSECONDS.toNanos(
+            Integer.getInteger("SITE_TASKER_QUEUE_SPIN_MICROS",
+                    (int)TimeUnit.NANOSECONDS.toMicros(CoreUtils.QUEUE_SPIN_MICROSECONDS)));
+
+    private final AtomicReferenceArray<SiteTasker> m_ring;
+    // when the task in the slot was offered, published by the store of the task
+    private final long m_offerNanos[];
+    private final int m_mask;
+    // next slot the consumer reads, only advanced by the consumer
+    private final AtomicLong m_head = new AtomicLong();
+    // next slot a producer claims
+    private final AtomicLong m_tail = new AtomicLong();
+
+    private final ArrayDeque<SiteTasker> m_overflow = new ArrayDeque<SiteTasker>();
+    private final ArrayDeque<Long> m_overflowOfferNanos = new ArrayDeque<Long>();
+    private volatile boolean m_overflowed = false;
+
+    private volatile Thread m_consumer;
+    private volatile boolean m_waiting = false;
+
     private StarvationTracker m_starvationTracker;
+    private LatencyPercentileStats.Distribution m_queueLatency;
+
+    public SiteTaskerQueue()
+    {
+        this(DEFAULT_CAPACITY);
+    }
+
+    SiteTaskerQueue(int capacity)
+    {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Site tasker queue capacity must be positive: " + capacity);
+        }
+        // round up to a power of two so the slot is a mask of the sequence
+        final int size = Math.max(1, Integer.highestOneBit(capacity - 1) << 1);
+        m_ring = new AtomicReferenceArray<SiteTasker>(size);
+        m_offerNanos = new long[size];
+        m_mask = size - 1;
+    }
 
     public boolean offer(SiteTasker task)
     {
-        return m_tasks.offer(task);
+        if (m_overflowed || !offerToRing(task)) {
+            synchronized (m_overflow) {
+                m_overflow.offer(task);
+                m_overflowOfferNanos.offer(System.nanoTime());
+                m_overflowed = true;
+            }
+        }
+        if (m_waiting) {
+            LockSupport.unpark(m_consumer);
+        }
+        return true;
+    }
+
+    private boolean offerToRing(SiteTasker task)
+    {
+        long tail;
+        do {
+            tail = m_tail.get();
+            if (tail - m_head.get() >= m_ring.length()) {
+                return false;
+            }
+        } while (!m_tail.compareAndSet(tail, tail + 1));
+        m_offerNanos[(int)(tail & m_mask)] = System.nanoTime();
+        // volatile store, pairs with the consumer setting m_waiting before it re-polls
+        m_ring.set((int)(tail & m_mask), task);
+        return true;
     }
 
     // Block on the site tasker queue.
     public SiteTasker take() throws InterruptedException
     {
-        SiteTasker task = m_tasks.poll();
+        SiteTasker task = poll();
         if (task == null) {
             m_starvationTracker.beginStarvation();
         } else {
             return task;
         }
         try {
-            return CoreUtils.queueSpinTake(m_tasks);
+            return waitForTask();
         } finally {
             m_starvationTracker.endStarvation();
         }
     }
 
+    private SiteTasker waitForTask() throws InterruptedException
+    {
+        SiteTasker task;
+        if (SPIN_NANOS > 0) {
+            final long start = System.nanoTime();
+            do {
+                if ((task = poll()) != null) {
+                    return task;
+                }
+            } while (System.nanoTime() - start < SPIN_NANOS);
+        }
+        m_consumer = Thread.currentThread();
+        try {
+            for (;;) {
+                m_waiting = true;
+                if ((task = poll()) != null) {
+                    return task;
+                }
+                LockSupport.park(this);
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+            }
+        } finally {
+            m_waiting = false;
+        }
+    }
+
     // Non-blocking poll on the site tasker queue.
     public SiteTasker poll()
     {
-        return m_tasks.poll();
+        final long head = m_head.get();
+        final int slot = (int)(head & m_mask);
+        final SiteTasker task = m_ring.get(slot);
+        if (task != null) {
+            recordQueueLatency(m_offerNanos[slot]);
+            m_ring.lazySet(slot, null);
+            // release the slot only after it is cleared
+            m_head.lazySet(head + 1);
+            return task;
+        }
+        if (m_overflowed && m_tail.get() == head) {
+            // the ring is empty, nothing offered after the overflowed tasks can be in it
+            synchronized (m_overflow) {
+                final SiteTasker overflowed = m_overflow.poll();
+                final Long offerNanos = m_overflowOfferNanos.poll();
+                if (offerNanos != null) {
+                    recordQueueLatency(offerNanos);
+                }
+                if (m_overflow.isEmpty()) {
+                    m_overflowed = false;
+                }
+                return overflowed;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Move up to maxTasks available tasks into the list without blocking, in the order
+     * they would be returned by {@link #poll()}.
+     * @return the number of tasks added
+     */
+    public int drainTo(List<SiteTasker> tasks, int maxTasks)
+    {
+        int drained = 0;
+        SiteTasker task;
+        while (drained < maxTasks && (task = poll()) != null) {
+            tasks.add(task);
+            drained++;
+        }
+        return drained;
     }
 
     public boolean isEmpty() {
-        return m_tasks.isEmpty();
+        return m_tail.get() == m_head.get() && !m_overflowed;
+    }
+
+    private void recordQueueLatency(long offerNanos) {
+        if (m_queueLatency != null) {
+            m_queueLatency.recordNanos(System.nanoTime() - offerNanos);
+        }
+    }
+
+    public void setQueueLatency(LatencyPercentileStats.Distribution queueLatency) {
+        m_queueLatency = queueLatency;
     }
 
     public void setStarvationTracker(StarvationTracker tracker) {
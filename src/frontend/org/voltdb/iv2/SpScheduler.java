@@ -67,6 +67,9 @@ public class SpScheduler extends Scheduler implements SnapshotCompletionInterest
 {
     static final VoltLogger tmLog = new VoltLogger("TM");
 
+    // Replicas send the leader a digest of their results instead of the results
+    static final boolean REPLICA_RESULTS_DIGEST = Boolean.getBoolean("REPLICA_RESULTS_DIGEST");
+
     static class DuplicateCounterKey implements Comparable<DuplicateCounterKey> {
         private final long m_txnId;
         private final long m_spHandle;
@@ -711,6 +714,11 @@ public class SpScheduler extends Scheduler implements SnapshotCompletionInterest
             }
         }
         else {
+            // A replica's response goes to its leader, which only needs it to check
+            // that the replica did the same thing, the client gets the leader's results.
+            if (REPLICA_RESULTS_DIGEST && !m_isLeader && !message.isRecovering()) {
+                message.convertToResultsDigest();
+            }
             // the initiatorHSId is the ClientInterface mailbox. Yeah. I know.
             m_repairLogTruncationHandle = spHandle;
             m_mailbox.send(message.getInitiatorHSId(), message);
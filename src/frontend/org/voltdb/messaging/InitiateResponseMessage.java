@@ -19,6 +19,9 @@ package org.voltdb.messaging;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+
 import org.voltcore.messaging.Subject;
 import org.voltcore.messaging.VoltMessage;
 import org.voltcore.utils.CoreUtils;
@@ -50,6 +53,10 @@ public class InitiateResponseMessage extends VoltMessage {
     private StoredProcedureInvocation m_invocation;
     private Pair<Long, byte[]> m_currentHashinatorConfig;
 
+    // Replicas can send the leader a digest of their results instead of the results
+    private boolean m_resultsDigestOnly = false;
+    private long m_resultsDigest = 0;
+
     /** Empty constructor for de-serialization */
     public InitiateResponseMessage()
     {
@@ -177,6 +184,55 @@ public class InitiateResponseMessage extends VoltMessage {
         return m_readOnly;
     }
 
+    public boolean isResultsDigestOnly() {
+        return m_resultsDigestOnly;
+    }
+
+    /**
+     * @return the digest the replica sent, or the digest of the results in the response
+     */
+    public long getResultsDigest() {
+        return m_resultsDigestOnly ? m_resultsDigest : computeResultsDigest(m_response);
+    }
+
+    /**
+     * Replace the result tables with their digest, so that a replica only sends the leader
+     * what it needs to compare the results with its own
+     */
+    public void convertToResultsDigest() {
+        if (m_resultsDigestOnly) {
+            return;
+        }
+        m_resultsDigest = computeResultsDigest(m_response);
+        m_resultsDigestOnly = true;
+        ClientResponseImpl digestOnly = new ClientResponseImpl(m_response.getStatus(),
+                m_response.getAppStatus(),
+                m_response.getAppStatusString(),
+                new VoltTable[0],
+                m_response.getStatusString());
+        digestOnly.setHash(m_response.getHash());
+        digestOnly.setClientHandle(m_response.getClientHandle());
+        m_response = digestOnly;
+    }
+
+    /**
+     * 64 bit digest of the status codes and the serialized result tables, a CRC32 and an
+     * Adler32 of the same bytes. The tables are read in place, nothing is copied.
+     */
+    public static long computeResultsDigest(ClientResponseImpl response) {
+        final CRC32 crc = new CRC32();
+        final Adler32 adler = new Adler32();
+        crc.update(response.getStatus());
+        adler.update(response.getStatus());
+        crc.update(response.getAppStatus());
+        adler.update(response.getAppStatus());
+        for (VoltTable table : response.getResults()) {
+            crc.update(table.getBuffer());
+            adler.update(table.getBuffer());
+        }
+        return (crc.getValue() << 32) | adler.getValue();
+    }
+
     @Override
     public int getSerializedSize()
     {
@@ -190,8 +246,13 @@ public class InitiateResponseMessage extends VoltMessage {
             + 1 // read only
             + 1 // node recovering indication
             + 1 // mispartitioned invocation
+            + 1 // results digest only
             + m_response.getSerializedSize();
 
+        if (m_resultsDigestOnly) {
+            msgsize += 8; // results digest
+        }
+
         if (m_mispartitioned) {
             msgsize += m_invocation.getSerializedSize()
                        + 8 // current hashinator version
@@ -215,6 +276,10 @@ public class InitiateResponseMessage extends VoltMessage {
         buf.put((byte) (m_readOnly == true ? 1 : 0));
         buf.put((byte) (m_recovering == true ? 1 : 0));
         buf.put((byte) (m_mispartitioned == true ? 1 : 0));
+        buf.put((byte) (m_resultsDigestOnly == true ? 1 : 0));
+        if (m_resultsDigestOnly) {
+            buf.putLong(m_resultsDigest);
+        }
         m_response.flattenToBuffer(buf);
         if (m_mispartitioned) {
             buf.putLong(m_currentHashinatorConfig.getFirst());
@@ -238,6 +303,10 @@ public class InitiateResponseMessage extends VoltMessage {
         m_readOnly = buf.get() == 1;
         m_recovering = buf.get() == 1;
         m_mispartitioned = buf.get() == 1;
+        m_resultsDigestOnly = buf.get() == 1;
+        if (m_resultsDigestOnly) {
+            m_resultsDigest = buf.getLong();
+        }
         m_response = new ClientResponseImpl();
         m_response.initFromBuffer(buf);
         m_commit = (m_response.getStatus() == ClientResponseImpl.SUCCESS);
@@ -267,6 +336,9 @@ public class InitiateResponseMessage extends VoltMessage {
         sb.append("\n READ-ONLY: ").append(m_readOnly);
         sb.append("\n RECOVERING: ").append(m_recovering);
         sb.append("\n MISPARTITIONED: ").append(m_mispartitioned);
+        if (m_resultsDigestOnly) {
+            sb.append("\n RESULTS DIGEST: ").append(m_resultsDigest);
+        }
         if (m_commit)
             sb.append("\n  COMMIT");
         else
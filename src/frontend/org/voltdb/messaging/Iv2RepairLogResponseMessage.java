@@ -48,6 +48,8 @@ public class Iv2RepairLogResponseMessage extends VoltMessage
     // payload (because the requester must know that the
     // log request was processed and that no logs exist.)
     private VoltMessage m_payload = null;
+    // or the payload as the repair log kept it serialized, only deserialized if asked for
+    private ByteBuffer m_serializedPayload = null;
 
     // Only set when sequence is 0
     private byte [] m_hashinatorConfig = new byte[0];
@@ -69,6 +71,18 @@ public class Iv2RepairLogResponseMessage extends VoltMessage
         m_payload = payload;
     }
 
+    public Iv2RepairLogResponseMessage(long requestId, int sequence, int ofTotal,
+            long spHandle, long txnId, ByteBuffer serializedPayload)
+    {
+        super();
+        m_requestId = requestId;
+        m_sequence = sequence;
+        m_ofTotal = ofTotal;
+        m_handle = spHandle;
+        m_txnId = txnId;
+        m_serializedPayload = serializedPayload;
+    }
+
     public Iv2RepairLogResponseMessage(long requestId, int ofTotal,
             long spHandle, long txnId,
             Pair<Long, byte[]> versionedHashinatorConfig)
@@ -109,6 +123,14 @@ public class Iv2RepairLogResponseMessage extends VoltMessage
 
     public VoltMessage getPayload()
     {
+        if (m_payload == null && m_serializedPayload != null) {
+            try {
+                VoltDbMessageFactory messageFactory = new VoltDbMessageFactory();
+                m_payload = messageFactory.createMessageFromBuffer(m_serializedPayload.duplicate(), m_sourceHSId);
+            } catch (IOException e) {
+                throw new RuntimeException("Unable to deserialize repair log message", e);
+            }
+        }
         return m_payload;
     }
 
@@ -135,7 +157,10 @@ public class Iv2RepairLogResponseMessage extends VoltMessage
         msgsize += 4; // ofTotal
         msgsize += 8; // spHandle
         msgsize += 8; // txnId
-        if (m_payload != null) {
+        if (m_serializedPayload != null) {
+            msgsize += m_serializedPayload.remaining();
+        }
+        else if (m_payload != null) {
             msgsize += m_payload.getSerializedSize();
         }
         if (m_hashinatorConfig.length > 0) {
@@ -156,7 +181,10 @@ public class Iv2RepairLogResponseMessage extends VoltMessage
         buf.putLong(m_handle);
         buf.putLong(m_txnId);
 
-        if (m_payload != null) {
+        if (m_serializedPayload != null) {
+            buf.put(m_serializedPayload.duplicate());
+        }
+        else if (m_payload != null) {
             ByteBuffer paybuf = ByteBuffer.allocate(m_payload.getSerializedSize());
             m_payload.flattenToBuffer(paybuf);
             if (paybuf.position() != 0) {
@@ -214,7 +242,7 @@ public class Iv2RepairLogResponseMessage extends VoltMessage
         sb.append(" TXNID: ");
         sb.append(m_txnId);
         sb.append(" PAYLOAD: ");
-        if (m_payload == null) {
+        if (getPayload() == null) {
             sb.append("null");
         }
         else {
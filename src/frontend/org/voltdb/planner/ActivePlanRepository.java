@@ -17,13 +17,27 @@
 
 package org.voltdb.planner;
 
-import java.util.HashMap;
 import java.util.Map.Entry;
 import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.voltdb.jni.ExecutionEngine;
 import org.voltdb.jni.Sha1Wrapper;
 
+/**
+ * Fragments shared by all the sites of the host, looked up by plan hash and by the
+ * fragment id given to the EE.
+ *
+ * Lookups and reference counting don't take any locks, so sites resolving fragments
+ * don't wait on each other. Unreferenced fragments are evicted in least recently used
+ * order by whichever thread finds the cache over its size, and a thread that finds
+ * another one already evicting leaves it to that thread instead of waiting.
+ */
 public abstract class ActivePlanRepository {
 
     /// A plan fragment entry in the cache.
@@ -31,46 +45,63 @@ public abstract class ActivePlanRepository {
         final Sha1Wrapper hash;
         final long fragId;
         final byte[] plan;
-        int refCount;
-        /// The ticker value current when this fragment was last (dis)used.
-        /// A new FragInfo or any other not in the LRU map because it is being referenced has value 0.
-        /// A non-zero value is either the fragment's current key in the LRU map OR its intended/future
+        /// Number of users of the fragment. Set to -1 when it is evicted so it can't be
+        /// referenced again; a thread that finds an evicted fragment loads a new one.
+        final AtomicInteger refCount = new AtomicInteger(0);
+        /// The ticker value current when this fragment was last disused.
+        /// If the fragment is in the LRU map this is either its current key OR its intended/future
         /// key, if it has been lazily updated after the fragment was reused.
-        long lastUse;
+        volatile long lastUse;
+        /// Whether the fragment is in the LRU map or queued to be put there.
+        final AtomicBoolean inLRU = new AtomicBoolean(false);
         /// The statement text for this fragment.  For ad hoc queries this may be null, since
         /// there is no single statement text---ad hoc queries that differ only by their constants
         /// reuse the same plan.
-        String stmtText;
+        volatile String stmtText;
 
         FragInfo(Sha1Wrapper key, byte[] plan, long nextId, String stmtText)
         {
             this.hash = key;
             this.plan = plan;
             this.fragId = nextId;
-            this.refCount = 0;
             this.lastUse = 0;
             this.stmtText = stmtText;
         }
+
+        /// @return false if the fragment has been evicted
+        boolean addRef() {
+            while (true) {
+                final int count = refCount.get();
+                if (count < 0) {
+                    return false;
+                }
+                if (refCount.compareAndSet(count, count + 1)) {
+                    return true;
+                }
+            }
+        }
     }
 
-    private static HashMap<Sha1Wrapper, FragInfo> m_plansByHash = new HashMap<Sha1Wrapper, FragInfo>();
-    private static HashMap<Long, FragInfo> m_plansById = new HashMap<Long, FragInfo>();
-    private static TreeMap<Long, FragInfo> m_plansLRU = new TreeMap<Long, FragInfo>();
+    private static final ConcurrentHashMap<Sha1Wrapper, FragInfo> m_plansByHash =
+            new ConcurrentHashMap<Sha1Wrapper, FragInfo>();
+    private static final ConcurrentHashMap<Long, FragInfo> m_plansById = new ConcurrentHashMap<Long, FragInfo>();
+    /// Fragments that became unused, waiting to be put in the LRU map by the next eviction.
+    private static final ConcurrentLinkedQueue<FragInfo> m_disused = new ConcurrentLinkedQueue<FragInfo>();
+    /// Only used by the thread holding m_evictionLock.
+    private static final TreeMap<Long, FragInfo> m_plansLRU = new TreeMap<Long, FragInfo>();
+    private static final ReentrantLock m_evictionLock = new ReentrantLock();
     /// A ticker that provides temporary ids for all cached fragments, for communicating with the EE.
     private static final long INITIAL_FRAG_ID = 5000;
-    private static long m_nextFragId = INITIAL_FRAG_ID;
+    private static final AtomicLong m_nextFragId = new AtomicLong(INITIAL_FRAG_ID);
     /// A ticker that allows the sequencing of all fragment uses, providing a key to the LRU map.
-    private static long m_nextFragUse = 1;
+    private static final AtomicLong m_nextFragUse = new AtomicLong(1);
 
     /**
      * Get the site-local fragment id for a given plan identified by 20-byte sha-1 hash
      */
     public static long getFragmentIdForPlanHash(byte[] planHash) {
         Sha1Wrapper key = new Sha1Wrapper(planHash);
-        FragInfo frag = null;
-        synchronized (FragInfo.class) {
-            frag = m_plansByHash.get(key);
-        }
+        FragInfo frag = m_plansByHash.get(key);
         assert(frag != null);
         return frag.fragId;
     }
@@ -80,10 +111,7 @@ public abstract class ActivePlanRepository {
      */
     public static String getStmtTextForPlanHash(byte[] planHash) {
         Sha1Wrapper key = new Sha1Wrapper(planHash);
-        FragInfo frag = null;
-        synchronized (FragInfo.class) {
-            frag = m_plansByHash.get(key);
-        }
+        FragInfo frag = m_plansByHash.get(key);
         assert(frag != null);
         // SQL statement text is not stored in the repository for ad hoc statements
         // -- it may be inaccurate because we parameterize the statement on its constants.
@@ -99,15 +127,33 @@ public abstract class ActivePlanRepository {
      */
     public static long loadOrAddRefPlanFragment(byte[] planHash, byte[] plan, String stmtText) {
         Sha1Wrapper key = new Sha1Wrapper(planHash);
-        synchronized (FragInfo.class) {
+        while (true) {
             FragInfo frag = m_plansByHash.get(key);
             if (frag == null) {
-                frag = new FragInfo(key, plan, m_nextFragId++, stmtText);
-                m_plansByHash.put(frag.hash, frag);
-                m_plansById.put(frag.fragId, frag);
-                if (m_plansById.size() > ExecutionEngine.EE_PLAN_CACHE_SIZE) {
-                    evictLRUfragment();
+                FragInfo newFrag = new FragInfo(key, plan, m_nextFragId.getAndIncrement(), stmtText);
+                newFrag.refCount.set(1);
+                // Make the id resolvable before the hash lookup can hand it out to the EE
+                m_plansById.put(newFrag.fragId, newFrag);
+                frag = m_plansByHash.putIfAbsent(key, newFrag);
+                if (frag == null) {
+                    if (m_plansById.size() > ExecutionEngine.EE_PLAN_CACHE_SIZE) {
+                        evictLRUfragments();
+                    }
+                    return newFrag.fragId;
                 }
+                // Another site loaded the same plan first, use that one.
+                m_plansById.remove(newFrag.fragId, newFrag);
+            }
+
+            // The fragment MAY be in the LRU map.
+            // An incremented refCount is a lazy way to keep it safe from eviction
+            // without having to update the map.
+            // This optimizes for popular fragments in a small or stable cache that may be reused
+            // many times before the eviction process needs to take any notice.
+            if (!frag.addRef()) {
+                // Evicted since it was looked up, it's on its way out of the maps.
+                m_plansByHash.remove(key, frag);
+                continue;
             }
 
             // Bit of a hack to work around an issue where a statement-less adhoc
@@ -117,17 +163,26 @@ public abstract class ActivePlanRepository {
             if (frag.stmtText == null) {
                 frag.stmtText = stmtText;
             }
-
-            // The fragment MAY be in the LRU map.
-            // An incremented refCount is a lazy way to keep it safe from eviction
-            // without having to update the map.
-            // This optimizes for popular fragments in a small or stable cache that may be reused
-            // many times before the eviction process needs to take any notice.
-            frag.refCount++;
             return frag.fragId;
         }
     }
 
+    private static void evictLRUfragments() {
+        // Whoever is already evicting will take care of it
+        if (!m_evictionLock.tryLock()) {
+            return;
+        }
+        try {
+            FragInfo disused;
+            while ((disused = m_disused.poll()) != null) {
+                m_plansLRU.put(disused.lastUse, disused);
+            }
+            evictLRUfragment();
+        } finally {
+            m_evictionLock.unlock();
+        }
+    }
+
     private static void evictLRUfragment() {
         /// Evict the least recently used fragment (if any are currently unused).
         /// Along the way, update any obsolete entries that were left
@@ -139,17 +194,16 @@ public abstract class ActivePlanRepository {
             // Remove the earliest entry.
             Entry<Long, FragInfo> lru = m_plansLRU.pollFirstEntry();
             FragInfo frag = lru.getValue();
-            if (frag.refCount > 0) {
+            if (frag.refCount.get() > 0) {
                 // The fragment is being re-used, it is no longer an eviction candidate.
                 // It is only in the map due to the laziness in loadOrAddRefPlanFragment.
                 // It will be re-considered (at a later key) once it is no longer referenced.
-                // Resetting its lastUse to 0, here, restores it to a state identical to that
+                // Taking it out of the LRU restores it to a state identical to that
                 // of a new fragment.
-                // It eventually causes decrefPlanFragmentById to put it back in the map
+                // It eventually causes decrefPlanFragmentById to queue it for the map
                 // at its then up-to-date key.
-                // This makes it safe to keep out of the LRU map for now.
                 // See the comment in decrefPlanFragmentById and the one in the next code block.
-                frag.lastUse = 0;
+                requeueIfDisused(frag);
             }
             else if (lru.getKey() != frag.lastUse) {
                 // The fragment is not in use but has been re-used more recently than the key reflects.
@@ -160,11 +214,15 @@ public abstract class ActivePlanRepository {
                 // its key will now match its lastUse value.
                 m_plansLRU.put(frag.lastUse, frag);
             }
+            else if (!frag.refCount.compareAndSet(0, -1)) {
+                // Re-used between the checks, same as the first case
+                requeueIfDisused(frag);
+            }
             else {
                 // Found and removed the actual up-to-date least recently used entry from the LRU map.
                 // Remove the entry from the other collections.
-                m_plansById.remove(frag.fragId);
-                m_plansByHash.remove(frag.hash);
+                m_plansById.remove(frag.fragId, frag);
+                m_plansByHash.remove(frag.hash, frag);
                 // Normally, one eviction for each new fragment is enough to restore order.
                 // BUT, if a prior call ever failed to find an unused fragment in the cache,
                 // the cache may have grown beyond its normal size. In that rare case,
@@ -182,6 +240,17 @@ public abstract class ActivePlanRepository {
         // Let the cache bloat a little and try again later after the next new fragment.
     }
 
+    /**
+     * Take an in use fragment out of the LRU. If its last user let go of it in the
+     * meantime, the decref saw it as already in the LRU, so put it back.
+     */
+    private static void requeueIfDisused(FragInfo frag) {
+        frag.inLRU.set(false);
+        if (frag.refCount.get() == 0 && frag.inLRU.compareAndSet(false, true)) {
+            m_plansLRU.put(frag.lastUse, frag);
+        }
+    }
+
     /**
      * Decref the plan associated with this site-local fragment id. If the refcount
      * goes to 0, the plan may be removed (depending on caching policy).
@@ -190,36 +259,32 @@ public abstract class ActivePlanRepository {
         // skip dummy/invalid fragment ids
         if (fragmentId <= 0) return;
 
-        FragInfo frag = null;
-        synchronized (FragInfo.class) {
-            frag = m_plansById.get(fragmentId);
-            // The assert that used to be here would fail in TestAdHocQueries when it
-            // re-initialized the RealVoltDB, clearing the m_plansById before
-            // all SQLStmts were finalized. Maybe that's just a "test bug" that would be
-            // better fixed with some kind of test-only cleanup hook?
-            // OR It's possible that this early return is covering for a minor bug.
-            // Maybe SQLStmt.finalize is calling this method when it shouldn't?
-            // Maybe that's because the SQLStmt site member should be null in more cases?
-            //assert(frag != null);
-            if (frag == null) {
-                return;
-            }
-            if (--frag.refCount == 0) {
-                // The disused fragment belongs in the LRU map at the end -- at the current "ticker".
-                // If its lastUse value is 0 like a new entry's, it is not currently in the map.
-                // Put into the map in its proper position.
-                // If it is already in the LRU map (at a "too early" entry), just set its lastUse value
-                // as a cheap way to notify evictLRUfragment that it is not ready for eviction but
-                // should instead be re-ordered further forward in the map.
-                // This re-ordering only needs to happen when the eviction process considers the entry.
-                // For a popular fragment in a small or stable cache, that may be after MANY
-                // re-uses like this.
-                // This prevents thrashing of the LRU map, repositioning recent entries.
-                boolean notInLRUmap = (frag.lastUse == 0); // check this BEFORE updating lastUse
-                frag.lastUse = ++m_nextFragUse;
-                if (notInLRUmap) {
-                    m_plansLRU.put(frag.lastUse, frag);
-                }
+        FragInfo frag = m_plansById.get(fragmentId);
+        // The assert that used to be here would fail in TestAdHocQueries when it
+        // re-initialized the RealVoltDB, clearing the m_plansById before
+        // all SQLStmts were finalized. Maybe that's just a "test bug" that would be
+        // better fixed with some kind of test-only cleanup hook?
+        // OR It's possible that this early return is covering for a minor bug.
+        // Maybe SQLStmt.finalize is calling this method when it shouldn't?
+        // Maybe that's because the SQLStmt site member should be null in more cases?
+        //assert(frag != null);
+        if (frag == null) {
+            return;
+        }
+        if (frag.refCount.decrementAndGet() == 0) {
+            // The disused fragment belongs in the LRU map at the end -- at the current "ticker".
+            // If it isn't in the map, queue it to be put into the map in its proper position
+            // by the next eviction.
+            // If it is already in the LRU map (at a "too early" entry), just set its lastUse value
+            // as a cheap way to notify evictLRUfragment that it is not ready for eviction but
+            // should instead be re-ordered further forward in the map.
+            // This re-ordering only needs to happen when the eviction process considers the entry.
+            // For a popular fragment in a small or stable cache, that may be after MANY
+            // re-uses like this.
+            // This prevents thrashing of the LRU map, repositioning recent entries.
+            frag.lastUse = m_nextFragUse.incrementAndGet();
+            if (frag.inLRU.compareAndSet(false, true)) {
+                m_disused.offer(frag);
             }
         }
     }
@@ -231,10 +296,7 @@ public abstract class ActivePlanRepository {
     public static byte[] planForFragmentId(long fragmentId) {
         assert(fragmentId > 0);
 
-        FragInfo frag = null;
-        synchronized (FragInfo.class) {
-            frag = m_plansById.get(fragmentId);
-        }
+        FragInfo frag = m_plansById.get(fragmentId);
         assert(frag != null);
         return frag.plan;
     }
@@ -242,20 +304,22 @@ public abstract class ActivePlanRepository {
     @Deprecated
     public static void addFragmentForTest(long fragmentId, byte[] plan, String stmtText) {
         Sha1Wrapper key = new Sha1Wrapper(new byte[20]);
-        synchronized (FragInfo.class) {
-            FragInfo frag = new FragInfo(key, plan, fragmentId, stmtText);
-            m_plansById.put(frag.fragId, frag);
-            frag.refCount++;
-        }
+        FragInfo frag = new FragInfo(key, plan, fragmentId, stmtText);
+        frag.refCount.incrementAndGet();
+        m_plansById.put(frag.fragId, frag);
     }
 
     public static void clear() {
-        synchronized (FragInfo.class) {
+        m_evictionLock.lock();
+        try {
             m_plansById.clear();
             m_plansByHash.clear();
+            m_disused.clear();
             m_plansLRU.clear();
-            m_nextFragId = INITIAL_FRAG_ID;
-            m_nextFragUse = 1;
+            m_nextFragId.set(INITIAL_FRAG_ID);
+            m_nextFragUse.set(1);
+        } finally {
+            m_evictionLock.unlock();
         }
     }
 }
@@ -41,8 +41,7 @@ public abstract class MicroOptimization {
             plan.rootPlanGraph = planGraph;
         }
         finally {
-            // Avoid leaking a long-term reference from static optimizations
-            // to a large parsed statement structure.
+            // Only valid for the duration of this call.
             m_parsedStmt = null;
         }
     }
@@ -18,6 +18,7 @@
 package org.voltdb.planner.microoptimizations;
 
 import java.util.ArrayList;
+import java.util.List;
 
 import org.voltdb.planner.AbstractParsedStmt;
 import org.voltdb.planner.CompiledPlan;
@@ -25,8 +26,10 @@ import org.voltdb.planner.CompiledPlan;
 public class MicroOptimizationRunner {
 
     // list all of the micro optimizations here
-    static ArrayList<MicroOptimization> optimizations = new ArrayList<MicroOptimization>();
-    static {
+    // They keep the statement being planned as state, so every plan gets its own
+    // instances and planners on different threads don't share them.
+    private static List<MicroOptimization> optimizations() {
+        List<MicroOptimization> optimizations = new ArrayList<MicroOptimization>();
         // The orders here is important
         optimizations.add(new PushdownLimits());
         optimizations.add(new ReplaceWithIndexCounter());
@@ -37,12 +40,12 @@ public class MicroOptimizationRunner {
 
         // MP ORDER BY Optimization
         optimizations.add(new InlineOrderByIntoMergeReceive());
+        return optimizations;
     }
 
     public static void applyAll(CompiledPlan plan, AbstractParsedStmt parsedStmt)
     {
-        for (int i = 0; i < optimizations.size(); i++) {
-            MicroOptimization opt = optimizations.get(i);
+        for (MicroOptimization opt : optimizations()) {
             opt.apply(plan, parsedStmt);
         }
     }
@@ -22,6 +22,7 @@ import java.util.TreeSet;
 import java.util.Iterator;
 
 import org.voltdb.SnapshotFormat;
+import org.voltdb.SnapshotWriteThrottle;
 import org.voltdb.sysprocs.saverestore.SnapshotUtil;
 
 /**
@@ -54,6 +55,15 @@ public class SnapshotRegistry {
         public final long bytesWritten;
         public final SnapshotFormat format;
 
+        /*
+         * The host's snapshot write throttle totals when the snapshot started,
+         * and what they had grown by when it finished
+         */
+        private final long startBytesSerialized;
+        private final long startThrottledMillis;
+        private final long bytesSerialized;
+        private final long throttledMillis;
+
         private final HashMap< String, Table> tables = new HashMap< String, Table>();
 
         private Snapshot(long txnId, long timeStarted, int hostId, String path, String nonce,
@@ -78,6 +88,10 @@ public class SnapshotRegistry {
             }
             result = false;
             bytesWritten = 0;
+            startBytesSerialized = SnapshotWriteThrottle.totalBytes();
+            startThrottledMillis = SnapshotWriteThrottle.totalThrottledMillis();
+            bytesSerialized = 0;
+            throttledMillis = 0;
         }
 
         private Snapshot(Snapshot incomplete, long timeFinished) {
@@ -100,6 +114,30 @@ public class SnapshotRegistry {
             }
             this.bytesWritten = bytesWritten;
             this.result = result;
+            startBytesSerialized = incomplete.startBytesSerialized;
+            startThrottledMillis = incomplete.startThrottledMillis;
+            bytesSerialized = incomplete.getBytesSerialized();
+            throttledMillis = incomplete.getThrottledMillis();
+        }
+
+        /**
+         * @return the bytes of table data the sites on this host have serialized for the snapshot so far
+         */
+        public long getBytesSerialized() {
+            if (timeFinished != 0) {
+                return bytesSerialized;
+            }
+            return SnapshotWriteThrottle.totalBytes() - startBytesSerialized;
+        }
+
+        /**
+         * @return the time the sites on this host have spent waiting on the write budget, summed over the sites
+         */
+        public long getThrottledMillis() {
+            if (timeFinished != 0) {
+                return throttledMillis;
+            }
+            return SnapshotWriteThrottle.totalThrottledMillis() - startThrottledMillis;
         }
 
         public interface TableUpdater {
@@ -182,7 +182,7 @@ public class CSVSnapshotWritePlan extends SnapshotWritePlan
             {
                 NativeSnapshotWritePlan.createFileBasedCompletionTasks(file_path, file_nonce,
                         txnId, partitionTransactionIds, context, extraSnapshotData, null, timestamp,
-                        context.getNumberOfPartitions(), tables);
+                        context.getNumberOfPartitions(), tables, null, null, Collections.<String>emptyList());
 
                 for (SnapshotTableTask task : replicatedSnapshotTasks) {
                     final SnapshotDataTarget target = createDataTargetForTable(file_path, file_nonce,
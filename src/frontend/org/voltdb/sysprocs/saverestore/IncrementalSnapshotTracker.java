@@ -0,0 +1,158 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb.sysprocs.saverestore;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.voltdb.SystemProcedureExecutionContext;
+import org.voltdb.catalog.Table;
+
+/**
+ * Tracks which tables changed on this host since the last native snapshot, so that an
+ * incremental snapshot to the same path can hard link the files of the unchanged tables
+ * instead of writing them again.
+ *
+ * Every site records the modification counts of its tables as it joins a native snapshot.
+ * Once all the tables of a snapshot have been written without errors it becomes the base
+ * for the next one. A table is unchanged when the count on every site is the same as in
+ * the base. Counts include changes that were rolled back, so a table can be written again
+ * without having changed, but never skipped when it did change.
+ *
+ * The state is only kept in memory, the first snapshot after a restart writes every table.
+ */
+public class IncrementalSnapshotTracker {
+
+    static class SnapshotCounts {
+        final String m_path;
+        final String m_nonce;
+        final long m_catalogCRC;
+        // modification counts by site HSId and then table relative index
+        final Map<Long, Map<Integer, Long>> m_counts;
+        // the tables the snapshot has files for on this host
+        final Set<String> m_tables;
+
+        SnapshotCounts(String path, String nonce, long catalogCRC,
+                Map<Long, Map<Integer, Long>> counts, Set<String> tables) {
+            m_path = path;
+            m_nonce = nonce;
+            m_catalogCRC = catalogCRC;
+            m_counts = counts;
+            m_tables = tables;
+        }
+
+        boolean isUnchanged(SnapshotCounts current, Table table) {
+            if (!m_tables.contains(table.getTypeName())) {
+                return false;
+            }
+            for (Map.Entry<Long, Map<Integer, Long>> e : current.m_counts.entrySet()) {
+                final Map<Integer, Long> baseCounts = m_counts.get(e.getKey());
+                final Long count = e.getValue().get(table.getRelativeIndex());
+                if (baseCounts == null || count == null || count < 0 ||
+                    !count.equals(baseCounts.get(table.getRelativeIndex()))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private static Map<Long, Map<Integer, Long>> m_pendingCounts = new HashMap<Long, Map<Integer, Long>>();
+    private static SnapshotCounts m_current;
+    private static SnapshotCounts m_base;
+
+    /**
+     * Called by every site on the host as it joins a native snapshot, before the setup barrier
+     */
+    public static void recordSiteCounts(SystemProcedureExecutionContext context) {
+        final List<Table> tables = SnapshotUtil.getTablesToSave(context.getDatabase());
+        final long tableIds[] = new long[tables.size()];
+        for (int ii = 0; ii < tableIds.length; ii++) {
+            tableIds[ii] = tables.get(ii).getRelativeIndex();
+        }
+        final long counts[] = context.getSiteProcedureConnection().getTableModificationCounts(tableIds);
+
+        final Map<Integer, Long> siteCounts = new HashMap<Integer, Long>();
+        for (int ii = 0; ii < tableIds.length; ii++) {
+            siteCounts.put((int)tableIds[ii], counts[ii]);
+        }
+        recordSiteCounts(context.getSiteId(), siteCounts);
+    }
+
+    static synchronized void recordSiteCounts(long siteId, Map<Integer, Long> counts) {
+        m_pendingCounts.put(siteId, counts);
+    }
+
+    /**
+     * Start tracking the snapshot the setup is being created for with the counts the sites recorded.
+     * @param incremental whether the tables unchanged since the base can be linked
+     * @return the tables whose files can be linked from the base, empty if all of them have to be written
+     */
+    public static synchronized Set<Table> startSnapshot(String path, String nonce, long catalogCRC,
+            Table tables[], boolean incremental) {
+        final Set<String> tableNames = new HashSet<String>();
+        for (Table table : tables) {
+            tableNames.add(table.getTypeName());
+        }
+        m_current = new SnapshotCounts(path, nonce, catalogCRC, m_pendingCounts, tableNames);
+        m_pendingCounts = new HashMap<Long, Map<Integer, Long>>();
+
+        if (!incremental || m_base == null || !m_base.m_path.equals(path) ||
+            m_base.m_nonce.equals(nonce) || m_base.m_catalogCRC != catalogCRC ||
+            !m_base.m_counts.keySet().equals(m_current.m_counts.keySet())) {
+            return Collections.emptySet();
+        }
+        final Set<Table> unchanged = new HashSet<Table>();
+        for (Table table : tables) {
+            if (m_base.isUnchanged(m_current, table)) {
+                unchanged.add(table);
+            }
+        }
+        return unchanged;
+    }
+
+    /**
+     * @return the nonce of the snapshot the unchanged tables are linked from
+     */
+    public static synchronized String baseNonce() {
+        return m_base == null ? null : m_base.m_nonce;
+    }
+
+    /**
+     * Make the snapshot the base for the next incremental snapshot if every table was written
+     */
+    public static synchronized void snapshotFinished(String nonce, boolean succeeded) {
+        if (m_current == null || !m_current.m_nonce.equals(nonce)) {
+            return;
+        }
+        if (succeeded) {
+            m_base = m_current;
+        }
+        m_current = null;
+    }
+
+    static synchronized void reset() {
+        m_pendingCounts = new HashMap<Long, Map<Integer, Long>>();
+        m_current = null;
+        m_base = null;
+    }
+}
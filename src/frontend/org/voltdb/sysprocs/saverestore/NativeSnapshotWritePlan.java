@@ -19,10 +19,14 @@ package org.voltdb.sysprocs.saverestore;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -46,6 +50,7 @@ import org.voltdb.dtxn.SiteTracker;
 import org.voltdb.export.ExportManager;
 import org.voltdb.sysprocs.SnapshotRegistry;
 import org.voltdb.utils.CatalogUtil;
+import org.voltdb.utils.CompressionCodec;
 
 import com.google_voltpatches.common.collect.Maps;
 
@@ -56,6 +61,10 @@ import com.google_voltpatches.common.collect.Maps;
  * responsibility for writing them is spread round-robin across the sites on a
  * node.  Partitioned tables are written to the same target per table by every
  * site on a node.
+ *
+ * An incremental snapshot hard links the files of the tables that haven't changed
+ * on a node since the last native snapshot to the same path, see
+ * {@link IncrementalSnapshotTracker}.
  */
 public class NativeSnapshotWritePlan extends SnapshotWritePlan
 {
@@ -113,11 +122,27 @@ public class NativeSnapshotWritePlan extends SnapshotWritePlan
                     SnapshotFormat.NATIVE,
                     tableArray);
 
+        final Set<Table> unchangedTables = IncrementalSnapshotTracker.startSnapshot(file_path, file_nonce,
+                context.getCatalogCRC(), tableArray, config.incremental);
+        final String baseNonce = IncrementalSnapshotTracker.baseNonce();
+        final List<String> linkedTables = new ArrayList<String>();
+
         final ArrayList<SnapshotTableTask> partitionedSnapshotTasks =
             new ArrayList<SnapshotTableTask>();
         final ArrayList<SnapshotTableTask> replicatedSnapshotTasks =
             new ArrayList<SnapshotTableTask>();
         for (final Table table : tableArray) {
+            if (unchangedTables.contains(table) &&
+                linkTableFromBase(file_path, baseNonce, file_nonce, table, context.getHostId())) {
+                linkedTables.add(table.getTypeName());
+                result.addRow(context.getHostId(),
+                        CoreUtils.getHostnameOrAddress(),
+                        table.getTypeName(),
+                        "SUCCESS",
+                        "");
+                continue;
+            }
+
             final SnapshotTableTask task =
                     new SnapshotTableTask(
                             table,
@@ -140,7 +165,8 @@ public class NativeSnapshotWritePlan extends SnapshotWritePlan
                     "");
         }
 
-        if (tableArray.length > 0 && replicatedSnapshotTasks.isEmpty() && partitionedSnapshotTasks.isEmpty()) {
+        if (tableArray.length > 0 && replicatedSnapshotTasks.isEmpty() && partitionedSnapshotTasks.isEmpty() &&
+            linkedTables.isEmpty()) {
             SnapshotRegistry.discardSnapshot(m_snapshotRecord);
         }
 
@@ -158,7 +184,35 @@ public class NativeSnapshotWritePlan extends SnapshotWritePlan
         return createDeferredSetup(file_path, file_nonce, txnId, partitionTransactionIds,
                 context, extraSnapshotData, tracker, hashinatorData, timestamp,
                 newPartitionCount, tableArray, m_snapshotRecord, partitionedSnapshotTasks,
-                replicatedSnapshotTasks, isTruncationSnapshot);
+                replicatedSnapshotTasks, isTruncationSnapshot, config.codec, baseNonce, linkedTables);
+    }
+
+    /**
+     * Link the file the base snapshot wrote for the table on this host to the file of the new snapshot.
+     * Linking is only a metadata update, so it is done here to be able to fall back to writing the table.
+     * @return false if the table has to be written
+     */
+    private static boolean linkTableFromBase(String file_path, String baseNonce, String file_nonce,
+                                             Table table, int hostId)
+    {
+        final File baseFile = SnapshotUtil.constructFileForTable(table, file_path, baseNonce,
+                SnapshotFormat.NATIVE, hostId);
+        final File file = SnapshotUtil.constructFileForTable(table, file_path, file_nonce,
+                SnapshotFormat.NATIVE, hostId);
+        try {
+            Files.createLink(file.toPath(), baseFile.toPath());
+            return true;
+        } catch (IOException | UnsupportedOperationException e) {
+            SNAP_LOG.warn("Unable to link " + file + " to " + baseFile + ", writing table " +
+                    table.getTypeName() + " instead", e);
+            return false;
+        }
+    }
+
+    @Override
+    protected void snapshotFinished(SnapshotRegistry.Snapshot completed)
+    {
+        IncrementalSnapshotTracker.snapshotFinished(completed.nonce, completed.result);
     }
 
     private Callable<Boolean> createDeferredSetup(final String file_path,
@@ -175,7 +229,10 @@ public class NativeSnapshotWritePlan extends SnapshotWritePlan
                                                   final SnapshotRegistry.Snapshot snapshotRecord,
                                                   final ArrayList<SnapshotTableTask> partitionedSnapshotTasks,
                                                   final ArrayList<SnapshotTableTask> replicatedSnapshotTasks,
-                                                  final boolean isTruncationSnapshot)
+                                                  final boolean isTruncationSnapshot,
+                                                  final CompressionCodec codec,
+                                                  final String baseNonce,
+                                                  final List<String> linkedTables)
     {
         return new Callable<Boolean>() {
             private final HashMap<Integer, SnapshotDataTarget> m_createdTargets = Maps.newHashMap();
@@ -190,7 +247,10 @@ public class NativeSnapshotWritePlan extends SnapshotWritePlan
                         hashinatorData,
                         timestamp,
                         newPartitionCount,
-                        tables);
+                        tables,
+                        codec,
+                        baseNonce,
+                        linkedTables);
 
                 for (SnapshotTableTask task : replicatedSnapshotTasks) {
                     SnapshotDataTarget target = getSnapshotDataTarget(numTables, task);
@@ -202,6 +262,11 @@ public class NativeSnapshotWritePlan extends SnapshotWritePlan
                     task.setTarget(target);
                 }
 
+                // Nothing is written for the linked tables, the snapshot finishes here if they are all linked
+                for (String tableName : linkedTables) {
+                    tableFinished(tableName, 0, null, numTables, snapshotRecord);
+                }
+
                 if (isTruncationSnapshot) {
                     // Only sync the DR Log on Native Snapshots
                     SnapshotSiteProcessor.m_tasksOnSnapshotCompletion.offer(new Runnable() {
@@ -233,7 +298,7 @@ public class NativeSnapshotWritePlan extends SnapshotWritePlan
                             context.getHostId(), context.getCluster().getTypeName(),
                             context.getDatabase().getTypeName(), context.getNumberOfPartitions(),
                             context.getDatabase().getIsactiveactivedred(),
-                            tracker, timestamp, numTables, snapshotRecord);
+                            tracker, timestamp, numTables, snapshotRecord, codec);
                     m_createdTargets.put(task.m_table.getRelativeIndex(), target);
                 }
                 return target;
@@ -253,7 +318,8 @@ public class NativeSnapshotWritePlan extends SnapshotWritePlan
                                                         SiteTracker tracker,
                                                         long timestamp,
                                                         AtomicInteger numTables,
-                                                        SnapshotRegistry.Snapshot snapshotRecord)
+                                                        SnapshotRegistry.Snapshot snapshotRecord,
+                                                        CompressionCodec codec)
             throws IOException
     {
         SnapshotDataTarget sdt;
@@ -276,7 +342,8 @@ public class NativeSnapshotWritePlan extends SnapshotWritePlan
                     tracker.getPartitionsForHost(hostId),
                     CatalogUtil.getVoltTable(table, CatalogUtil.DR_HIDDEN_COLUMN_INFO),
                     txnId,
-                    timestamp);
+                    timestamp,
+                    codec);
         }
         else {
             sdt = new DefaultSnapshotDataTarget(saveFilePath,
@@ -289,7 +356,8 @@ public class NativeSnapshotWritePlan extends SnapshotWritePlan
                     tracker.getPartitionsForHost(hostId),
                     CatalogUtil.getVoltTable(table),
                     txnId,
-                    timestamp);
+                    timestamp,
+                    codec);
         }
 
         m_targets.add(sdt);
@@ -306,7 +374,8 @@ public class NativeSnapshotWritePlan extends SnapshotWritePlan
             ExtensibleSnapshotDigestData extraSnapshotData,
             HashinatorSnapshotData hashinatorData,
             long timestamp, int newPartitionCount,
-            Table[] tables) throws IOException
+            Table[] tables, CompressionCodec codec,
+            String baseNonce, Collection<String> linkedTables) throws IOException
     {
         InstanceId instId = VoltDB.instance().getHostMessenger().getInstanceId();
         Runnable completionTask = SnapshotUtil.writeSnapshotDigest(
@@ -321,7 +390,10 @@ public class NativeSnapshotWritePlan extends SnapshotWritePlan
                 instId,
                 timestamp,
                 newPartitionCount,
-                context.getClusterId());
+                context.getClusterId(),
+                codec,
+                baseNonce,
+                linkedTables);
         if (completionTask != null) {
             SnapshotSiteProcessor.m_tasksOnSnapshotCompletion.offer(completionTask);
         }
@@ -28,6 +28,7 @@ import org.json_voltpatches.JSONStringer;
 import org.voltcore.logging.VoltLogger;
 import org.voltdb.catalog.Database;
 import org.voltdb.catalog.Table;
+import org.voltdb.utils.CompressionCodec;
 
 import com.google_voltpatches.common.base.Joiner;
 import com.google_voltpatches.common.base.Preconditions;
@@ -37,6 +38,10 @@ public class SnapshotRequestConfig {
     protected static final VoltLogger SNAP_LOG = new VoltLogger("SNAPSHOT");
 
     public final Table[] tables;
+    // how native snapshot files are compressed
+    public final CompressionCodec codec;
+    // link the files of tables unchanged since the last native snapshot to the same path instead of rewriting them
+    public final boolean incremental;
 
     /**
      * @param tables    Tables to snapshot, cannot be null.
@@ -45,11 +50,16 @@ public class SnapshotRequestConfig {
     {
         Preconditions.checkNotNull(tables);
         this.tables = tables.toArray(new Table[0]);
+        this.codec = CompressionCodec.SNAPSHOT_DEFAULT;
+        this.incremental = false;
     }
 
     public SnapshotRequestConfig(JSONObject jsData, Database catalogDatabase)
     {
         tables = getTablesToInclude(jsData, catalogDatabase);
+        codec = CompressionCodec.fromName(jsData == null ? null : jsData.optString("compression", null),
+                                          CompressionCodec.SNAPSHOT_DEFAULT);
+        incremental = jsData != null && jsData.optBoolean("incremental", false);
     }
 
     private static Table[] getTablesToInclude(JSONObject jsData,
@@ -131,5 +141,7 @@ public class SnapshotRequestConfig {
             }
             stringer.endArray();
         }
+        stringer.key("compression").value(codec.name());
+        stringer.key("incremental").value(incremental);
     }
 }
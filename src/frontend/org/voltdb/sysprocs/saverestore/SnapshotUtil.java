@@ -82,6 +82,7 @@ import org.voltdb.catalog.Table;
 import org.voltdb.client.ClientResponse;
 import org.voltdb.common.Constants;
 import org.voltdb.utils.CatalogUtil;
+import org.voltdb.utils.CompressionCodec;
 import org.voltdb.utils.VoltFile;
 
 import com.google_voltpatches.common.base.Throwables;
@@ -149,7 +150,10 @@ public class SnapshotUtil {
         InstanceId instanceId,
         long timestamp,
         int newPartitionCount,
-        int clusterId)
+        int clusterId,
+        CompressionCodec codec,
+        String baseNonce,
+        Collection<String> linkedTables)
     throws IOException
     {
         final File f = new VoltFile(path, constructDigestFilenameForNonce(nonce, hostId));
@@ -185,6 +189,18 @@ public class SnapshotUtil {
 
                 stringer.key("catalogCRC").value(catalogCRC);
                 stringer.key("instanceId").value(instanceId.serializeToJSONObject());
+                if (codec != null) {
+                    stringer.key("compressionCodec").value(codec.name());
+                }
+                if (!linkedTables.isEmpty()) {
+                    // the table files this host linked from the snapshot the incremental snapshot is based on
+                    stringer.key("baseNonce").value(baseNonce);
+                    stringer.key("linkedTables").array();
+                    for (String table : linkedTables) {
+                        stringer.value(table);
+                    }
+                    stringer.endArray();
+                }
 
                 extraSnapshotData.writeToSnapshotDigest(stringer);
                 stringer.endObject();
@@ -588,10 +604,22 @@ public class SnapshotUtil {
 
         public void setTxnId(long txnId)
         {
-            if (m_txnId != Long.MIN_VALUE) {
+            if (m_txnIdFromDigest) {
                 assert(txnId == m_txnId);
             }
             m_txnId = txnId;
+            m_txnIdFromDigest = true;
+        }
+
+        /*
+         * Table files an incremental snapshot linked from its base carry the base's txnId,
+         * so a table file only provides the txnId until a digest is found.
+         */
+        public void setTableFileTxnId(long txnId)
+        {
+            if (!m_txnIdFromDigest) {
+                m_txnId = Math.max(m_txnId, txnId);
+            }
         }
 
         public long getTxnId()
@@ -613,6 +641,7 @@ public class SnapshotUtil {
         private final String m_nonce;
         private InstanceId m_instanceId = null;
         private long m_txnId;
+        private boolean m_txnIdFromDigest = false;
     }
 
     /**
@@ -836,7 +865,7 @@ public class SnapshotUtil {
                         partitionIds.removeAll(saveFile.getCorruptedPartitionIds());
                         String nonce = parseNonceFromSnapshotFilename(f.getName());
                         Snapshot named_s = namedSnapshots.get(nonce);
-                        named_s.setTxnId(saveFile.getTxnId());
+                        named_s.setTableFileTxnId(saveFile.getTxnId());
                         TableFiles namedTableFiles = named_s.m_tableFiles.get(saveFile.getTableName());
                         if (namedTableFiles == null) {
                             namedTableFiles = new TableFiles(saveFile.isReplicated());
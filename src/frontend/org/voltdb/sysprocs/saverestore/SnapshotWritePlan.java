@@ -95,31 +95,50 @@ public abstract class SnapshotWritePlan
 
         @Override
         public void run() {
-            m_snapshotRecord.updateTable(m_tableName,
-                    new SnapshotRegistry.Snapshot.TableUpdater() {
-                        @Override
-                        public SnapshotRegistry.Snapshot.Table update(
-                            SnapshotRegistry.Snapshot.Table registryTable) {
-                            return m_snapshotRecord.new Table(
-                                registryTable,
-                                m_sdt.getBytesWritten(),
-                                m_sdt.getLastWriteException());
-                            }
-                    });
-            int tablesLeft = m_numTables.decrementAndGet();
-            if (tablesLeft == 0) {
-                final SnapshotRegistry.Snapshot completed =
-                    SnapshotRegistry.finishSnapshot(m_snapshotRecord);
-                final double duration =
-                    (completed.timeFinished - completed.timeStarted) / 1000.0;
-                SNAP_LOG.info(
-                        "Snapshot " + m_snapshotRecord.nonce + " finished at " +
-                        completed.timeFinished + " and took " + duration
-                        + " seconds ");
-            }
+            tableFinished(m_tableName, m_sdt.getBytesWritten(), m_sdt.getLastWriteException(),
+                    m_numTables, m_snapshotRecord);
+        }
+    }
+
+    /**
+     * Record the size and error of a table in the registry, finishing the snapshot
+     * once it is the last table on this host
+     */
+    void tableFinished(String tableName, final long bytesWritten, final Throwable error,
+            AtomicInteger numTables, final SnapshotRegistry.Snapshot snapshotRecord)
+    {
+        snapshotRecord.updateTable(tableName,
+                new SnapshotRegistry.Snapshot.TableUpdater() {
+                    @Override
+                    public SnapshotRegistry.Snapshot.Table update(
+                        SnapshotRegistry.Snapshot.Table registryTable) {
+                        return snapshotRecord.new Table(
+                            registryTable,
+                            bytesWritten,
+                            error);
+                        }
+                });
+        int tablesLeft = numTables.decrementAndGet();
+        if (tablesLeft == 0) {
+            final SnapshotRegistry.Snapshot completed =
+                SnapshotRegistry.finishSnapshot(snapshotRecord);
+            final double duration =
+                (completed.timeFinished - completed.timeStarted) / 1000.0;
+            SNAP_LOG.info(
+                    "Snapshot " + snapshotRecord.nonce + " finished at " +
+                    completed.timeFinished + " and took " + duration
+                    + " seconds ");
+            snapshotFinished(completed);
         }
     }
 
+    /**
+     * Called once every table of the snapshot on this host has been written
+     */
+    protected void snapshotFinished(SnapshotRegistry.Snapshot completed)
+    {
+    }
+
     protected final Map<Long, Deque<SnapshotTableTask>> m_taskListsForHSIds =
         new HashMap<Long, Deque<SnapshotTableTask>>();
 
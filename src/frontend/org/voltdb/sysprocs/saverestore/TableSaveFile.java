@@ -26,8 +26,11 @@ import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.util.ArrayDeque;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.Semaphore;
 import java.util.zip.Checksum;
@@ -44,9 +47,14 @@ import org.voltcore.utils.DBBPool;
 import org.voltcore.utils.DBBPool.BBContainer;
 import org.voltdb.EELibraryLoader;
 import org.voltdb.messaging.FastDeserializer;
+import org.voltdb.utils.CompressionCodec;
 import org.voltdb.utils.CompressionService;
 import org.voltdb.utils.PosixAdvise;
 
+import com.google_voltpatches.common.util.concurrent.Futures;
+import com.google_voltpatches.common.util.concurrent.ListenableFuture;
+import com.google_voltpatches.common.util.concurrent.MoreExecutors;
+
 /**
  * An abstraction around a table's save file for restore.  Deserializes the
  * meta-data that was stored when the table was saved and makes it available
@@ -119,6 +127,7 @@ public class TableSaveFile
             }
             m_chunkReads = new Semaphore(readAheadChunks);
             m_saveFile = dataIn;
+            m_fileSize = dataIn.size();
             m_continueOnCorruptedChunk = continueOnCorruptedChunk;
 
             final PureJavaCrc32 crc = new PureJavaCrc32();
@@ -204,6 +213,7 @@ public class TableSaveFile
                     throw new EOFException();
                 }
             }
+            m_headerLength = m_saveFile.position();
             crc.update(m_tableHeader.array(), 4, length);
             secondCRC.update(m_tableHeader.array(), 4, length);
 
@@ -244,6 +254,7 @@ public class TableSaveFile
                 m_tableName = fd.readString();
                 m_isReplicated = fd.readBoolean();
                 m_isCompressed = false;
+                m_codec = CompressionCodec.SNAPPY;
                 m_checksumType = ChecksumType.CRC32;
                 if (!m_isReplicated) {
                     m_partitionIds = (int[])fd.readArray(int.class);
@@ -289,6 +300,13 @@ public class TableSaveFile
                 m_tableName = obj.getString("tableName");
                 m_isReplicated = obj.getBoolean("isReplicated");
                 m_isCompressed = obj.optBoolean("isCompressed", false);
+                //Files written before the codecs were added are all Snappy
+                final String codecName = obj.optString("compressionCodec", null);
+                try {
+                    m_codec = codecName == null ? CompressionCodec.SNAPPY : CompressionCodec.forName(codecName);
+                } catch (IllegalArgumentException e) {
+                    throw new IOException("Save file is compressed with unknown codec " + codecName, e);
+                }
                 m_checksumType = ChecksumType.valueOf(obj.optString("checksumType", "CRC32"));
                 if (!m_isReplicated) {
                     JSONArray partitionIds = obj.getJSONArray("partitionIds");
@@ -369,6 +387,10 @@ public class TableSaveFile
         return m_isCompressed;
     }
 
+    public CompressionCodec getCompressionCodec() {
+        return m_codec;
+    }
+
     public int getTotalPartitions() {
         return m_totalPartitions;
     }
@@ -403,7 +425,10 @@ public class TableSaveFile
 
         synchronized (this) {
             while (!m_availableChunks.isEmpty()) {
-                m_availableChunks.poll().discard();
+                final Container c = getChunk(m_availableChunks.poll());
+                if (c != null) {
+                    c.discard();
+                }
             }
             notifyAll();
         }
@@ -415,6 +440,9 @@ public class TableSaveFile
         while ((cont = m_buffers.poll()) != null) {
             cont.discard();
         }
+        while ((cont = m_inputBuffers.poll()) != null) {
+            cont.discard();
+        }
     }
 
     public Set<Integer> getCorruptedPartitionIds() {
@@ -425,44 +453,88 @@ public class TableSaveFile
         return m_tableHeader;
     }
 
+    /**
+     * @return the size of the file in bytes
+     */
+    public long getFileSize() {
+        return m_fileSize;
+    }
+
+    /**
+     * @return how many bytes of the file have been read so far, including the header
+     */
+    public long getBytesRead() {
+        return m_headerLength + m_bytesRead;
+    }
+
+    /**
+     * @return how many chunks have been handed out by getNextChunk() so far
+     */
+    public synchronized long getChunksLoaded() {
+        return m_chunksLoaded;
+    }
+
     // Will get the next chunk of the table that is just over the chunk size
     public synchronized BBContainer getNextChunk() throws IOException
     {
         if (m_chunkReaderException != null) {
             throw m_chunkReaderException;
         }
-        if (!m_hasMoreChunks) {
-            final Container c = m_availableChunks.poll();
-            return c;
-        }
 
-        if (m_chunkReader == null) {
+        if (m_chunkReader == null && m_hasMoreChunks) {
             m_chunkReader = new ChunkReader();
             m_chunkReaderThread = new Thread(m_chunkReader, "ChunkReader");
             m_chunkReaderThread.start();
         }
 
+        /*
+         * Chunks are handed out in the order they were read, waiting for the
+         * compression service to finish with the oldest one if necessary.
+         * Chunks that were skipped come back as null.
+         */
         Container c = null;
         while (c == null && (m_hasMoreChunks || !m_availableChunks.isEmpty())) {
-            c = m_availableChunks.poll();
-            if (c == null) {
+            final ListenableFuture<Container> next = m_availableChunks.peek();
+            if (next == null || !next.isDone()) {
                 try {
                     wait();
                 } catch (InterruptedException e) {
                     throw new IOException(e);
                 }
+                continue;
             }
-        }
-        if (c != null) {
+            m_availableChunks.poll();
             m_chunkReads.release();
-        } else {
-            if (m_chunkReaderException != null) {
+            try {
+                c = Futures.getUnchecked(next);
+            } catch (RuntimeException e) {
+                m_hasMoreChunks = false;
+                m_chunkReaderException = e.getCause() instanceof IOException ?
+                        (IOException)e.getCause() : new IOException(e.getCause());
+                notifyAll();
                 throw m_chunkReaderException;
             }
+            if (c != null) {
+                m_chunksLoaded++;
+            }
+        }
+        if (c == null && m_chunkReaderException != null) {
+            throw m_chunkReaderException;
         }
         return c;
     }
 
+    /**
+     * Wait for a chunk that is being decompressed, discarding failures
+     */
+    private static Container getChunk(ListenableFuture<Container> chunk) {
+        try {
+            return Futures.getUnchecked(chunk);
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
     public synchronized boolean hasMoreChunks() throws IOException
     {
         if (m_chunkReaderException != null) {
@@ -473,6 +545,8 @@ public class TableSaveFile
 
     private final FileChannel m_saveFile;
     private final FileDescriptor m_fd;
+    private final long m_fileSize;
+    private final long m_headerLength;
     private final ByteBuffer m_tableHeader;
     private final boolean m_completed;
     private final int m_versionNum[] = new int[4];
@@ -483,13 +557,16 @@ public class TableSaveFile
     private final String m_tableName;
     private final boolean m_isReplicated;
     private final boolean m_isCompressed;
+    private final CompressionCodec m_codec;
     private final int m_partitionIds[];
     private final int m_totalPartitions;
     private final long m_txnId;
     private final long m_timestamp;
     private boolean m_hasMoreChunks = true;
     private ConcurrentLinkedQueue<BBContainer> m_buffers = new ConcurrentLinkedQueue<BBContainer>();
-    private final ArrayDeque<Container> m_availableChunks = new ArrayDeque<Container>();
+    private ConcurrentLinkedQueue<BBContainer> m_inputBuffers = new ConcurrentLinkedQueue<BBContainer>();
+    private final ArrayDeque<ListenableFuture<Container>> m_availableChunks =
+            new ArrayDeque<ListenableFuture<Container>>();
     private final HashSet<Integer> m_relevantPartitionIds;
     private final ChecksumType m_checksumType;
 
@@ -504,7 +581,8 @@ public class TableSaveFile
      * Maintain a list of corrupted partitions. It is possible for uncorrupted partitions
      * to be recovered from a save file in the future
      */
-    private final HashSet<Integer> m_corruptedPartitions = new HashSet<Integer>();
+    private final Set<Integer> m_corruptedPartitions =
+            Collections.newSetFromMap(new ConcurrentHashMap<Integer, Boolean>());
 
     /**
      * Ignore corrupted chunks and continue validation of the rest of the chunks.
@@ -520,6 +598,145 @@ public class TableSaveFile
     private Thread m_chunkReaderThread = null;
     private IOException m_chunkReaderException = null;
 
+    /*
+     * Progress of the read, for reporting
+     */
+    private volatile long m_bytesRead = 0;
+    private long m_chunksLoaded = 0;
+
+    private Container getOutputBuffer(final int nextChunkPartitionId) {
+        BBContainer c = m_buffers.poll();
+        if (c == null) {
+            final BBContainer originContainer = DBBPool.allocateDirect(DEFAULT_CHUNKSIZE);
+            final ByteBuffer b = originContainer.b();
+            final Container retcont = new Container(b, originContainer, nextChunkPartitionId);
+            return retcont;
+        }
+        /*
+         * Need to reconstruct the container with the partition id of the next
+         * chunk so it can be a final public field. The buffer, address, and origin
+         * container remain the same.
+         */
+        final Container retcont = new Container(c.b(), c, nextChunkPartitionId);
+        return retcont;
+    }
+
+    /**
+     * Checks the CRC of a compressed chunk and decompresses it into a VoltTable
+     * in one of the compression service threads.
+     */
+    private class ChunkDecompressor implements Callable<Container> {
+        private final BBContainer m_input;
+        private final int m_partitionId;
+        private final int m_crc;
+
+        ChunkDecompressor(BBContainer input, int partitionId, int crc) {
+            m_input = input;
+            m_partitionId = partitionId;
+            m_crc = crc;
+        }
+
+        /**
+         * @return the chunk, or null if the chunk is to be skipped
+         */
+        @Override
+        public Container call() throws IOException {
+            Container c = null;
+            try {
+                final ByteBuffer fileInputBuffer = m_input.b();
+
+                /*
+                 * Validate the rest of the chunk. This can fail if the data is corrupted
+                 * or the length value was corrupted.
+                 */
+                final int calculatedCRC =
+                        DBBPool.getBufferCRC32C(fileInputBuffer, 0, fileInputBuffer.remaining());
+                if (calculatedCRC != m_crc) {
+                    m_corruptedPartitions.add(m_partitionId);
+                    if (m_continueOnCorruptedChunk) {
+                        return null;
+                    } else {
+                        throw new IOException("CRC mismatch in saved table chunk");
+                    }
+                }
+
+                /*
+                 * Skip irrelevant chunks after CRC is calculated. Always calulate the CRC
+                 * in case it is the length value that is corrupted
+                 */
+                if (m_relevantPartitionIds != null) {
+                    if (!m_relevantPartitionIds.contains(m_partitionId)) {
+                        return null;
+                    }
+                }
+
+                /*
+                 * Use the uncompressed length to size the VoltTable,
+                 * the compressed data is what is in the chunk
+                 */
+                final int nextChunkLength = m_codec.uncompressedLength(fileInputBuffer);
+
+                /*
+                 * Now allocate space to store the chunk using the VoltTable serialization representation.
+                 * The chunk will contain an integer row count preceding it so it can
+                 * be sucked straight in.
+                 */
+                c = getOutputBuffer(m_partitionId);
+
+                /*
+                 * If the length value is wrong or not all data made it to disk this read will
+                 * not complete correctly. There could be overflow, underflow etc.
+                 * so use a try finally block to indicate that all partitions are now corrupt.
+                 */
+                boolean completedRead = false;
+                try {
+                    final ByteBuffer buf = c.b();
+                    /*
+                     * Assemble a VoltTable out of the chunk of tuples.
+                     * Put in the header that was cached in the constructor,
+                     * then copy the tuple data.
+                     */
+                    buf.clear();
+                    buf.limit(nextChunkLength  + m_tableHeader.capacity());
+                    final ByteBuffer header = m_tableHeader.duplicate();
+                    header.clear();
+                    buf.put(header);
+                    //Doesn't move buffer position, does change the limit
+                    m_codec.decompress(fileInputBuffer, buf);
+                    completedRead = true;
+                } catch (IOException | RuntimeException e) {
+                    // a bad length or corrupt compressed data, handled below
+                } finally {
+                    if (!completedRead) {
+                        for (int partitionId : m_partitionIds) {
+                            m_corruptedPartitions.add(partitionId);
+                        }
+                    }
+                }
+                if (!completedRead) {
+                    if (m_continueOnCorruptedChunk) {
+                        return null;
+                    } else {
+                        throw new IOException("Failed decompression of saved table chunk");
+                    }
+                }
+
+                /*
+                 * VoltTable wants the buffer at the home position 0
+                 */
+                c.b().position(0);
+                final Container retval = c;
+                c = null;
+                return retval;
+            } finally {
+                m_inputBuffers.offer(m_input);
+                if (c != null) {
+                    c.discard();
+                }
+            }
+        }
+    }
+
     /**
      * Thread to read chunks from the disk
      */
@@ -528,12 +745,13 @@ public class TableSaveFile
         /*
          * The old method was out of hand. Going to start a new one with a different format
          * that should be easier to understand and validate.
+         *
+         * This thread only does the I/O. Each chunk is read into its own input buffer and
+         * handed to the compression service, which checks the CRC and decompresses it while
+         * this thread goes on to read the next one, so a restore isn't limited to the
+         * decompression speed of a single core. The chunks are still handed out in file order.
          */
         private void readChunksV2() {
-            //For reading the compressed input.
-            final BBContainer fileInputBufferC =
-                    DBBPool.allocateDirect(CompressionService.maxCompressedLength(DEFAULT_CHUNKSIZE));
-            final ByteBuffer fileInputBuffer = fileInputBufferC.b();
             long sinceLastFAdvise = Long.MAX_VALUE;
             long positionAtLastFAdvise = 0;
             while (m_hasMoreChunks) {
@@ -579,11 +797,10 @@ public class TableSaveFile
                 try {
                     m_chunkReads.acquire();
                 } catch (InterruptedException e) {
-                    fileInputBufferC.discard();
                     return;
                 }
                 boolean expectedAnotherChunk = false;
-                Container c = null;
+                BBContainer fileInputBufferC = null;
                 try {
 
                     /*
@@ -597,6 +814,7 @@ public class TableSaveFile
                             throw new EOFException();
                         }
                         sinceLastFAdvise += read;
+                        m_bytesRead += read;
                     }
                     int nextChunkLength = chunkLengthB.getInt(0);
                     expectedAnotherChunk = true;
@@ -636,16 +854,16 @@ public class TableSaveFile
                         throw new IOException("Corrupted TableSaveFile chunk has negative chunk length");
                     }
 
+                    fileInputBufferC = getInputBuffer();
+                    final ByteBuffer fileInputBuffer = fileInputBufferC.b();
                     if (nextChunkLength > fileInputBuffer.capacity()) {
                         throw new IOException("Corrupted TableSaveFile chunk has unreasonable length " +
                                 "> DEFAULT_CHUNKSIZE bytes");
                     }
 
                     /*
-                     * Go fetch the compressed data so that the uncompressed size is known
-                     * and use that to set nextChunkLength to be the uncompressed length,
-                     * the code ahead that constructs the volt table is expecting
-                     * the uncompressed size/data since it is producing an uncompressed table
+                     * Go fetch the compressed data, the CRC check and decompression happen
+                     * in the compression service
                      */
                     fileInputBuffer.clear();
                     fileInputBuffer.limit(nextChunkLength);
@@ -655,89 +873,23 @@ public class TableSaveFile
                             throw new EOFException();
                         }
                         sinceLastFAdvise += read;
+                        m_bytesRead += read;
                     }
                     fileInputBuffer.flip();
-                    nextChunkLength = CompressionService.uncompressedLength(fileInputBuffer);
-
-                    /*
-                     * Validate the rest of the chunk. This can fail if the data is corrupted
-                     * or the length value was corrupted.
-                     */
-                    final int calculatedCRC =
-                            DBBPool.getBufferCRC32C(fileInputBuffer, 0, fileInputBuffer.remaining());
-                    if (calculatedCRC != nextChunkCRC) {
-                        m_corruptedPartitions.add(nextChunkPartitionId);
-                        if (m_continueOnCorruptedChunk) {
-                            m_chunkReads.release();
-                            continue;
-                        } else {
-                            throw new IOException("CRC mismatch in saved table chunk");
-                        }
-                    }
 
-                    /*
-                     * Now allocate space to store the chunk using the VoltTable serialization representation.
-                     * The chunk will contain an integer row count preceding it so it can
-                     * be sucked straight in. There is a little funny business to overwrite the
-                     * partition id that is not part of the serialization format
-                     */
-                    c = getOutputBuffer(nextChunkPartitionId);
-
-                    /*
-                     * If the length value is wrong or not all data made it to disk this read will
-                     * not complete correctly. There could be overflow, underflow etc.
-                     * so use a try finally block to indicate that all partitions are now corrupt.
-                     * The enclosing exception handlers will do the right thing WRT to
-                     * propagating the error and closing the file.
-                     */
-                    boolean completedRead = false;
-                    try {
-                        final ByteBuffer buf = c.b();
-                        /*
-                         * Assemble a VoltTable out of the chunk of tuples.
-                         * Put in the header that was cached in the constructor,
-                         * then copy the tuple data.
-                         */
-                        buf.clear();
-                        buf.limit(nextChunkLength  + m_tableHeader.capacity());
-                        m_tableHeader.position(0);
-                        buf.put(m_tableHeader);
-                        //Doesn't move buffer position, does change the limit
-                        CompressionService.decompressBuffer(fileInputBuffer, buf);
-                        completedRead = true;
-                    } finally {
-                        if (!completedRead) {
-                            for (int partitionId : m_partitionIds) {
-                                m_corruptedPartitions.add(partitionId);
-                            }
-                            if (m_continueOnCorruptedChunk) {
-                                m_chunkReads.release();
-                                continue;
-                            } else {
-                                throw new IOException("Failed decompression of saved table chunk");
+                    final ListenableFuture<Container> chunk = CompressionService.submitCompressionTask(
+                            new ChunkDecompressor(fileInputBufferC, nextChunkPartitionId, nextChunkCRC));
+                    fileInputBufferC = null;
+                    chunk.addListener(new Runnable() {
+                        @Override
+                        public void run() {
+                            synchronized (TableSaveFile.this) {
+                                TableSaveFile.this.notifyAll();
                             }
                         }
-                    }
-
-                    /*
-                     * Skip irrelevant chunks after CRC is calculated. Always calulate the CRC
-                     * in case it is the length value that is corrupted
-                     */
-                    if (m_relevantPartitionIds != null) {
-                        if (!m_relevantPartitionIds.contains(nextChunkPartitionId)) {
-                            m_chunkReads.release();
-                            continue;
-                        }
-                    }
-
-                    /*
-                     * VoltTable wants the buffer at the home position 0
-                     */
-                    c.b().position(0);
-
+                    }, MoreExecutors.sameThreadExecutor());
                     synchronized (TableSaveFile.this) {
-                        m_availableChunks.offer(c);
-                        c = null;
+                        m_availableChunks.offer(chunk);
                         TableSaveFile.this.notifyAll();
                     }
                 } catch (EOFException eof) {
@@ -775,10 +927,11 @@ public class TableSaveFile
                         TableSaveFile.this.notifyAll();
                     }
                 } finally {
-                    if (c != null) c.discard();
+                    if (fileInputBufferC != null) {
+                        m_inputBuffers.offer(fileInputBufferC);
+                    }
                 }
             }
-            fileInputBufferC.discard();
         }
 
         private void readChunks() {
@@ -808,6 +961,7 @@ public class TableSaveFile
                         if (read == -1) {
                             throw new EOFException();
                         }
+                        m_bytesRead += read;
                     }
                     chunkLengthB.flip();
                     int nextChunkLength = chunkLengthB.getInt();
@@ -877,6 +1031,7 @@ public class TableSaveFile
                             if (read == -1) {
                                 throw new EOFException();
                             }
+                            m_bytesRead += read;
                         }
                         fileInputBuffer.flip();
                         nextChunkLength = CompressionService.uncompressedLength(fileInputBuffer);
@@ -933,6 +1088,7 @@ public class TableSaveFile
                                 if (read == -1) {
                                     throw new EOFException();
                                 }
+                                m_bytesRead += read;
                             }
                         }
                         c.b().position(c.b().position() - 4);
@@ -1000,7 +1156,7 @@ public class TableSaveFile
                     }
 
                     synchronized (TableSaveFile.this) {
-                        m_availableChunks.offer(c);
+                        m_availableChunks.offer(Futures.immediateFuture(c));
                         c = null;
                         TableSaveFile.this.notifyAll();
                     }
@@ -1043,21 +1199,12 @@ public class TableSaveFile
             }
             fileInputBufferC.discard();
         }
-        private Container getOutputBuffer(final int nextChunkPartitionId) {
-            BBContainer c = m_buffers.poll();
+        private BBContainer getInputBuffer() {
+            BBContainer c = m_inputBuffers.poll();
             if (c == null) {
-                final BBContainer originContainer = DBBPool.allocateDirect(DEFAULT_CHUNKSIZE);
-                final ByteBuffer b = originContainer.b();
-                final Container retcont = new Container(b, originContainer, nextChunkPartitionId);
-                return retcont;
+                c = DBBPool.allocateDirect(m_codec.maxCompressedLength(DEFAULT_CHUNKSIZE));
             }
-            /*
-             * Need to reconstruct the container with the partition id of the next
-             * chunk so it can be a final public field. The buffer, address, and origin
-             * container remain the same.
-             */
-            final Container retcont = new Container(c.b(), c, nextChunkPartitionId);
-            return retcont;
+            return c;
         }
 
         @Override
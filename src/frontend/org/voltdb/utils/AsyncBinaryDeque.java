@@ -23,6 +23,7 @@ import org.voltcore.utils.DBBPool.BBContainer;
 import org.voltdb.utils.BinaryDeque.BinaryDequeTruncator;
 import org.voltdb.utils.BinaryDeque.OutputContainerFactory;
 
+import com.google_voltpatches.common.util.concurrent.Futures;
 import com.google_voltpatches.common.util.concurrent.ListenableFuture;
 import com.google_voltpatches.common.util.concurrent.ListeningExecutorService;
 
@@ -104,19 +105,22 @@ public class AsyncBinaryDeque {
         });
     }
 
+    /*
+     * Write out what the earlier tasks offered in the IO thread and leave the fsync
+     * to the sync pipeline, the returned future completes when the data is durable
+     */
     public ListenableFuture<?> sync() throws InterruptedException {
         acquirePermit();
-        return m_es.submit(new Callable<Object>() {
+        return Futures.dereference(m_es.submit(new Callable<ListenableFuture<?>>() {
             @Override
-            public Object call() throws Exception {
+            public ListenableFuture<?> call() throws Exception {
                 try {
-                    m_deque.sync();
-                    return null;
+                    return m_deque.syncAsync();
                 } finally {
                     releasePermit();
                 }
             }
-        });
+        }));
     }
 
     public ListenableFuture<?> close()  throws InterruptedException {
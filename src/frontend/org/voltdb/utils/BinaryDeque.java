@@ -22,6 +22,8 @@ import java.nio.ByteBuffer;
 import org.voltcore.utils.DBBPool.BBContainer;
 import org.voltcore.utils.DeferredSerialization;
 
+import com.google_voltpatches.common.util.concurrent.ListenableFuture;
+
 /**
  * Specialized deque interface for storing binary objects. Objects can be provided as a buffer chain
  * and will be returned as a single buffer. Technically not a deque because removal at
@@ -83,6 +85,13 @@ public interface BinaryDeque {
      */
     public void sync() throws IOException;
 
+    /**
+     * Persist all objects in the queue to the backing store without waiting for it,
+     * batched with the syncs of other deques on the same filesystem
+     * @return a future that completes when the objects are durable
+     */
+    public ListenableFuture<?> syncAsync();
+
     /**
      * Release all resources (open files) held by the back store of the queue. Continuing to use the deque
      * will result in an exception
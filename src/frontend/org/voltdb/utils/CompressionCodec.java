@@ -0,0 +1,241 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb.utils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Exception;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4SafeDecompressor;
+
+import org.voltcore.logging.VoltLogger;
+import org.xerial.snappy.Snappy;
+
+/**
+ * The block compression formats snapshot chunks can be written in. The codec used
+ * is recorded in the header of every table file and in the digest, and files that
+ * predate the codecs are Snappy.
+ *
+ * All the codecs work like the ByteBuffer methods of Snappy. They read the remaining
+ * bytes of the input without moving its position and write starting at the position of
+ * the output, leaving the position alone and setting the limit to the end of the data.
+ * The LZ4 codecs prefix the block with the uncompressed length because LZ4 blocks don't
+ * record it.
+ */
+public enum CompressionCodec {
+    NONE(null) {
+        @Override
+        public int maxCompressedLength(int uncompressedSize) {
+            return uncompressedSize;
+        }
+
+        @Override
+        public int compress(ByteBuffer input, ByteBuffer output) {
+            final int length = input.remaining();
+            final int start = output.position();
+            output.put(input.duplicate());
+            output.limit(output.position());
+            output.position(start);
+            return length;
+        }
+
+        @Override
+        public int uncompressedLength(ByteBuffer compressed) {
+            return compressed.remaining();
+        }
+
+        @Override
+        public int decompress(ByteBuffer compressed, ByteBuffer output) {
+            return compress(compressed, output);
+        }
+    },
+
+    SNAPPY(null) {
+        @Override
+        public int maxCompressedLength(int uncompressedSize) {
+            return Snappy.maxCompressedLength(uncompressedSize);
+        }
+
+        @Override
+        public int compress(ByteBuffer input, ByteBuffer output) throws IOException {
+            return Snappy.compress(input, output);
+        }
+
+        @Override
+        public int uncompressedLength(ByteBuffer compressed) throws IOException {
+            return Snappy.uncompressedLength(compressed);
+        }
+
+        @Override
+        public int decompress(ByteBuffer compressed, ByteBuffer output) throws IOException {
+            return Snappy.uncompress(compressed, output);
+        }
+    },
+
+    LZ4(LZ4Factory.fastestInstance().fastCompressor()),
+
+    LZ4HC(LZ4Factory.fastestInstance().highCompressor());
+
+    private static final VoltLogger LOG = new VoltLogger("SNAPSHOT");
+
+    /**
+     * The codec snapshots are written with when the request doesn't name one
+     */
+    public static final CompressionCodec SNAPSHOT_DEFAULT =
+            fromName(System.getProperty("SNAPSHOT_COMPRESSION_CODEC", SNAPPY.name()), SNAPPY);
+
+    private static final LZ4Factory LZ4_FACTORY = LZ4Factory.fastestInstance();
+
+    /*
+     * The compressor of the LZ4 codecs, which use the implementations below.
+     * The other codecs override all of them.
+     */
+    private final LZ4Compressor m_lz4Compressor;
+
+    private CompressionCodec(LZ4Compressor lz4Compressor) {
+        m_lz4Compressor = lz4Compressor;
+    }
+
+    /*
+     * The LZ4 library only compresses arrays, reuse them between chunks
+     */
+    private static final ThreadLocal<byte[][]> m_lz4Arrays = new ThreadLocal<byte[][]>() {
+        @Override
+        protected byte[][] initialValue() {
+            return new byte[2][0];
+        }
+    };
+
+    public int maxCompressedLength(int uncompressedSize) {
+        return 4 + m_lz4Compressor.maxCompressedLength(uncompressedSize);
+    }
+
+    /**
+     * Compress the remaining bytes of input into output
+     * @return the compressed length
+     */
+    public int compress(ByteBuffer input, ByteBuffer output) throws IOException {
+        final int length = input.remaining();
+        final LZ4Compressor compressor = m_lz4Compressor;
+        final byte[] in = array(0, length);
+        final byte[] out = array(1, compressor.maxCompressedLength(length));
+        input.duplicate().get(in, 0, length);
+        final int compressedLength = compressor.compress(in, 0, length, out, 0, out.length);
+
+        final int start = output.position();
+        if (output.remaining() < 4 + compressedLength) {
+            throw new IOException("Output buffer too small for " + name() + " compressed data");
+        }
+        output.putInt(length);
+        output.put(out, 0, compressedLength);
+        output.limit(output.position());
+        output.position(start);
+        return 4 + compressedLength;
+    }
+
+    /**
+     * @return the length the compressed data will have when it is decompressed
+     */
+    public int uncompressedLength(ByteBuffer compressed) throws IOException {
+        if (compressed.remaining() < 4) {
+            throw new IOException("Truncated " + name() + " compressed data");
+        }
+        final int length = compressed.getInt(compressed.position());
+        if (length < 0) {
+            throw new IOException("Corrupt " + name() + " compressed data has negative length");
+        }
+        return length;
+    }
+
+    /**
+     * Decompress the remaining bytes of compressed into output
+     * @return the uncompressed length
+     */
+    public int decompress(ByteBuffer compressed, ByteBuffer output) throws IOException {
+        final int length = uncompressedLength(compressed);
+        final int compressedLength = compressed.remaining() - 4;
+        if (output.remaining() < length) {
+            throw new IOException("Output buffer too small for " + name() + " uncompressed data");
+        }
+        final byte[] in = array(0, compressedLength);
+        final byte[] out = array(1, length);
+        final ByteBuffer src = compressed.duplicate();
+        src.position(src.position() + 4);
+        src.get(in, 0, compressedLength);
+        try {
+            // the safe decompressor never reads or writes outside of the arrays, even for corrupt data
+            final LZ4SafeDecompressor decompressor = LZ4_FACTORY.safeDecompressor();
+            if (decompressor.decompress(in, 0, compressedLength, out, 0, length) != length) {
+                throw new IOException("Corrupt " + name() + " compressed data");
+            }
+        } catch (LZ4Exception e) {
+            throw new IOException(e);
+        }
+
+        final int start = output.position();
+        output.put(out, 0, length);
+        output.limit(output.position());
+        output.position(start);
+        return length;
+    }
+
+    private static byte[] array(int index, int length) {
+        final byte[][] arrays = m_lz4Arrays.get();
+        if (arrays[index].length < length) {
+            arrays[index] = new byte[length];
+        }
+        return arrays[index];
+    }
+
+    /**
+     * Look up a codec by name, ignoring case and dashes so that LZ4-HC works
+     * @throws IllegalArgumentException if the name doesn't match a codec
+     */
+    public static CompressionCodec forName(String name) {
+        return valueOf(name.trim().replace("-", "").replace("_", "").toUpperCase());
+    }
+
+    /**
+     * Look up a codec by name like {@link #forName(String)}, for settings that can fall back to a default
+     * @return the codec, or defaultCodec if the name is null or doesn't match one
+     */
+    public static CompressionCodec fromName(String name, CompressionCodec defaultCodec) {
+        if (name == null) {
+            return defaultCodec;
+        }
+        try {
+            return forName(name);
+        } catch (IllegalArgumentException e) {
+            LOG.warn("Unknown compression codec " + name + ", using " + defaultCodec);
+            return defaultCodec;
+        }
+    }
+
+    /**
+     * @return the largest buffer any of the codecs can compress uncompressedSize bytes into
+     */
+    public static int maxCompressedLengthOfAll(int uncompressedSize) {
+        int max = 0;
+        for (CompressionCodec codec : values()) {
+            max = Math.max(max, codec.maxCompressedLength(uncompressedSize));
+        }
+        return max;
+    }
+}
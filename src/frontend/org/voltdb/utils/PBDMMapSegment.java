@@ -32,21 +32,29 @@ import org.voltdb.utils.BinaryDeque.OutputContainerFactory;
 import org.xerial.snappy.Snappy;
 
 /**
- * Objects placed in the queue are stored in file segments that are up to 64 megabytes.
- * Segments only support appending objects. A segment will throw an IOException if an attempt
+ * Objects placed in the queue are stored in memory mapped file segments that are up to 64 megabytes
+ * by default. Segments only support appending objects. A segment will throw an IOException if an attempt
  * to insert an object that exceeds the remaining space is made. A segment can be used
  * for reading and writing, but not both at the same time.
  *
+ * A segment being written maps its whole maximum size, the file is truncated to the data
+ * written when it is closed. Reads are advised to the kernel as sequential and the pages ahead
+ * of the read position are requested a window at a time, instead of faulting them in on access.
  */
 class PBDMMapSegment extends PBDSegment {
     private static final VoltLogger LOG = new VoltLogger("HOST");
 
+    // How far ahead of the read position pages are requested with madvise
+    static final int READ_AHEAD_BYTES = Integer.getInteger("PBD_MMAP_READ_AHEAD_KB", 4 * 1024) * 1024;
+
     private MBBContainer m_buf;
     private ByteBuffer m_readBuf;
+    private boolean m_forWrite;
 
-    //If this is the first time polling a segment, madvise the entire thing
-    //into memory
+    //The first poll advises the mapping as sequential, after that pages
+    //are advised as needed up to this offset
     private boolean m_haveMAdvised;
+    private long m_advisedUpTo;
 
     //Index of the next object to read, not an offset into the file
     //The offset is maintained by the ByteBuffer. Used to determine if there is another object
@@ -56,14 +64,12 @@ class PBDMMapSegment extends PBDSegment {
     //ID of this segment
     private final Long m_index;
 
-    private boolean m_closed = true;
-
     //How many entries that have been polled have from this file have been discarded.
     //Convenient to let PBQ maintain the counter here
     private int m_discardCount;
 
-    public PBDMMapSegment(Long index, File file) {
-        super(file);
+    public PBDMMapSegment(Long index, File file, int maxSize) {
+        super(file, maxSize);
         m_index = index;
         reset();
         if (LOG.isDebugEnabled()) {
@@ -85,6 +91,7 @@ class PBDMMapSegment extends PBDSegment {
     public void reset() {
         m_syncedSinceLastEdit = true;
         m_haveMAdvised = false;
+        m_advisedUpTo = 0;
         m_objectReadIndex = 0;
         m_bytesRead = 0;
         m_discardCount = 0;
@@ -146,13 +153,21 @@ class PBDMMapSegment extends PBDSegment {
         m_ras = new RandomAccessFile(m_file, "rw");
         m_fc = m_ras.getChannel();
 
+        m_forWrite = forWrite;
         if (forWrite) {
-            //If this is for writing, map the chunk size RW and put the buf positions at the start
-            m_buf = DBBPool.wrapMBB(m_fc.map(MapMode.READ_WRITE, 0, CHUNK_SIZE));
-            m_buf.b().position(SIZE_OFFSET + 4);
+            //If this is for writing, map the max size RW and put the read position at the start
+            //and the write position after the last object. A segment written with a larger
+            //max size, or by a regular segment, is mapped whole
+            final long size = m_fc.size();
+            final boolean isNew = size < SEGMENT_HEADER_BYTES;
+            m_buf = DBBPool.wrapMBB(m_fc.map(MapMode.READ_WRITE, 0, Math.max(m_maxSize, size)));
+            m_buf.b().position(SEGMENT_HEADER_BYTES);
             m_readBuf = m_buf.b().duplicate();
-            if (truncate) {
+            if (truncate || isNew) {
                 initNumEntries(0, 0);
+                clearIndex();
+            } else {
+                m_buf.b().position((int)entryOffset(m_buf.b().getInt(COUNT_OFFSET)));
             }
         } else {
             //If it isn't for write, map read only to the actual size and put the write buf position at the end
@@ -170,6 +185,7 @@ class PBDMMapSegment extends PBDSegment {
     @Override
     public void closeAndDelete() throws IOException {
         close();
+        clearIndex();
         if (LOG.isDebugEnabled()) {
             LOG.debug("Deleting segment at Index " + m_index + " File: " + m_file.getAbsolutePath());
         }
@@ -185,12 +201,20 @@ class PBDMMapSegment extends PBDSegment {
     public void close() throws IOException {
         try {
             if (m_fc != null) {
-                m_fc.close();
-                m_ras = null;
-                m_fc = null;
+                final long dataEnd = m_buf.b().position();
                 m_buf.discard();
                 m_buf = null;
                 m_readBuf = null;
+                try {
+                    //Give back the unused part of the mapping, on reopen only the data is mapped
+                    if (m_forWrite && m_fc.size() > dataEnd) {
+                        m_fc.truncate(dataEnd);
+                    }
+                } finally {
+                    m_fc.close();
+                    m_ras = null;
+                    m_fc = null;
+                }
             }
         } finally {
             m_closed = true;
@@ -234,6 +258,7 @@ class PBDMMapSegment extends PBDSegment {
         try {
             //Leave space for length prefix and flags
             final int objSizePosition = mbuf.position();
+            indexEntry(mbuf.getInt(COUNT_OFFSET), objSizePosition);
             mbuf.position(mbuf.position() + OBJECT_HEADER_BYTES);
 
             int written = maxCompressedSize;
@@ -266,6 +291,7 @@ class PBDMMapSegment extends PBDSegment {
         if (mbuf.remaining() < ds.getSerializedSize() + OBJECT_HEADER_BYTES) return -1;
 
         m_syncedSinceLastEdit = false;
+        indexEntry(mbuf.getInt(COUNT_OFFSET), mbuf.position());
         int written = PBDUtils.writeDeferredSerialization(mbuf, ds);
         incrementNumEntries(written);
         return written;
@@ -275,23 +301,14 @@ class PBDMMapSegment extends PBDSegment {
     public BBContainer poll(OutputContainerFactory factory) throws IOException {
         if (m_closed) throw new IOException("closed");
         final long mBufAddr = m_buf.address();
-        if (!m_haveMAdvised) {
-            final ByteBuffer mbuf = m_buf.b();
-            m_haveMAdvised = true;
-            final long retval = PosixAdvise.madvise(
-                    m_buf.address(),
-                    mbuf.position(),
-                    PosixAdvise.POSIX_MADV_WILLNEED);
-            if (retval != 0) {
-                LOG.warn("madvise will need failed: " + retval);
-            }
-        }
 
         //No more entries to read
         if (!hasMoreEntries()) {
             return null;
         }
 
+        adviseReadAhead();
+        indexEntry(m_objectReadIndex, m_readBuf.position());
         m_objectReadIndex++;
 
         //Get the length prefix and then read the object
@@ -376,9 +393,47 @@ class PBDMMapSegment extends PBDSegment {
     }
 
     @Override
-    protected void rewindReadOffset(int byBytes)
+    protected void setReadOffset(long offset)
+    {
+        m_readBuf.position((int)offset);
+    }
+
+    @Override
+    protected int readEntryLength(long offset)
     {
-        m_readBuf.position(m_readBuf.position() - byBytes);
+        return m_buf.b().getInt((int)offset);
+    }
+
+    /**
+     * Ask the kernel for the next window of pages before the reader gets to them. Called
+     * before each poll, a new window is requested once half of the last one has been read.
+     */
+    private void adviseReadAhead() {
+        final long dataEnd = m_buf.b().position();
+        if (!m_haveMAdvised) {
+            m_haveMAdvised = true;
+            final long retval = PosixAdvise.madvise(m_buf.address(), dataEnd, PosixAdvise.POSIX_MADV_SEQUENTIAL);
+            if (retval != 0) {
+                LOG.warn("madvise sequential failed: " + retval);
+            }
+        }
+
+        final long readPos = m_readBuf.position();
+        if (m_advisedUpTo - readPos > READ_AHEAD_BYTES / 2 || m_advisedUpTo >= dataEnd) {
+            return;
+        }
+        // madvise needs a page aligned address, the mapping itself is page aligned
+        final long pageSize = Bits.pageSize();
+        final long start = (Math.max(m_advisedUpTo, readPos) / pageSize) * pageSize;
+        final long end = Math.min(dataEnd, readPos + READ_AHEAD_BYTES);
+        if (end <= start) {
+            return;
+        }
+        final long retval = PosixAdvise.madvise(m_buf.address() + start, end - start, PosixAdvise.POSIX_MADV_WILLNEED);
+        if (retval != 0) {
+            LOG.warn("madvise will need failed: " + retval);
+        }
+        m_advisedUpTo = end;
     }
 
     @Override
@@ -28,7 +28,7 @@ import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
 
 /**
- * Objects placed in the deque are stored in file segments that are up to 64 megabytes.
+ * Objects placed in the deque are stored in file segments that are up to 64 megabytes by default.
  * Segments only support appending objects. A segment will throw an IOException if an attempt
  * to insert an object that exceeds the remaining space is made. A segment can be used
  * for reading and writing, but not both at the same time.
@@ -51,8 +51,8 @@ public class PBDRegularSegment extends PBDSegment {
 
     private DBBPool.BBContainer m_tmpHeaderBuf = null;
 
-    public PBDRegularSegment(Long index, File file) {
-        super(file);
+    public PBDRegularSegment(Long index, File file, int maxSize) {
+        super(file, maxSize);
         m_index = index;
         reset();
     }
@@ -140,6 +140,7 @@ public class PBDRegularSegment extends PBDSegment {
 
         if (emptyFile) {
             initNumEntries(0, 0);
+            clearIndex();
         }
         m_fc.position(SEGMENT_HEADER_BYTES);
 
@@ -178,13 +179,14 @@ public class PBDRegularSegment extends PBDSegment {
      */
     private int remaining() throws IOException {
         //Subtract 8 for the length and size prefix
-        return (int)(PBDSegment.CHUNK_SIZE - m_fc.position()) - SEGMENT_HEADER_BYTES;
+        return (int)(m_maxSize - m_fc.position()) - SEGMENT_HEADER_BYTES;
     }
 
     @Override
     public void closeAndDelete() throws IOException {
         close();
         m_file.delete();
+        clearIndex();
 
         m_numOfEntries = -1;
         m_size = -1;
@@ -214,7 +216,8 @@ public class PBDRegularSegment extends PBDSegment {
     public void sync() throws IOException {
         if (m_closed) throw new IOException("Segment closed");
         if (!m_syncedSinceLastEdit) {
-            m_fc.force(true);
+            //The entry count and size live in the file's own header, only the data needs to be durable
+            m_fc.force(false);
         }
         m_syncedSinceLastEdit = true;
     }
@@ -247,6 +250,7 @@ public class PBDRegularSegment extends PBDSegment {
         DBBPool.BBContainer destBuf = cont;
 
         try {
+            indexEntry(m_numOfEntries, m_fc.position());
             m_tmpHeaderBuf.b().clear();
 
             if (compress) {
@@ -296,6 +300,8 @@ public class PBDRegularSegment extends PBDSegment {
             final int written = PBDUtils.writeDeferredSerialization(destBuf.b(), ds);
             destBuf.b().flip();
 
+            indexEntry(m_numOfEntries, m_fc.position());
+
             while (destBuf.b().hasRemaining()) {
                 m_fc.write(destBuf.b());
             }
@@ -318,6 +324,7 @@ public class PBDRegularSegment extends PBDSegment {
 
         final long writePos = m_fc.position();
         m_fc.position(m_readOffset);
+        indexEntry(m_objectReadIndex, m_readOffset);
         m_objectReadIndex++;
 
         try {
@@ -408,9 +415,18 @@ public class PBDRegularSegment extends PBDSegment {
     }
 
     @Override
-    protected void rewindReadOffset(int byBytes)
+    protected void setReadOffset(long offset)
+    {
+        m_readOffset = offset;
+    }
+
+    @Override
+    protected int readEntryLength(long offset) throws IOException
     {
-        m_readOffset -= byBytes;
+        m_tmpHeaderBuf.b().clear();
+        m_tmpHeaderBuf.b().limit(4);
+        PBDUtils.readBufferFully(m_fc, m_tmpHeaderBuf.b(), (int)offset);
+        return m_tmpHeaderBuf.b().getInt();
     }
 
     @Override
@@ -24,6 +24,7 @@ import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.nio.channels.FileChannel;
+import java.util.Arrays;
 
 public abstract class PBDSegment {
     static final int NO_FLAGS = 0;
@@ -32,11 +33,17 @@ public abstract class PBDSegment {
     static final int COUNT_OFFSET = 0;
     static final int SIZE_OFFSET = 4;
 
-    // Has to be able to hold at least one object (compressed or not)
+    // Default segment size, has to be able to hold at least one object (compressed or not)
     public static final int CHUNK_SIZE = (1024 * 1024) * 64;
     static final int OBJECT_HEADER_BYTES = 8;
     static final int SEGMENT_HEADER_BYTES = 8;
+
+    // Offset of every INDEX_INTERVAL'th object is remembered so finding an object
+    // only walks the headers of the objects since the closest indexed one
+    static final int INDEX_INTERVAL = Integer.getInteger("PBD_SEGMENT_INDEX_INTERVAL", 64);
+
     protected final File m_file;
+    protected final int m_maxSize;
 
     protected boolean m_closed = true;
     protected RandomAccessFile m_ras;
@@ -44,9 +51,13 @@ public abstract class PBDSegment {
     //Avoid unecessary sync with this flag
     protected boolean m_syncedSinceLastEdit = true;
 
-    public PBDSegment(File file)
+    private long[] m_entryOffsets = new long[16];
+    private int m_indexedEntries = 0;
+
+    public PBDSegment(File file, int maxSize)
     {
         m_file = file;
+        m_maxSize = maxSize;
     }
 
     abstract long segmentId();
@@ -96,9 +107,62 @@ public abstract class PBDSegment {
     abstract int uncompressedBytesToRead();
 
     abstract protected long readOffset();
-    abstract protected void rewindReadOffset(int byBytes);
+    abstract protected void setReadOffset(long offset);
     abstract protected int writeTruncatedEntry(BinaryDeque.TruncatorResponse entry, int length) throws IOException;
 
+    /**
+     * @return the stored (possibly compressed) length of the object whose header starts at offset
+     */
+    abstract protected int readEntryLength(long offset) throws IOException;
+
+    /**
+     * Remember where an object starts if it is one of the indexed objects.
+     * Objects are indexed in order as they are written or read.
+     */
+    protected void indexEntry(int entryIndex, long offset) {
+        if (entryIndex % INDEX_INTERVAL != 0 || entryIndex / INDEX_INTERVAL != m_indexedEntries) {
+            return;
+        }
+        if (m_indexedEntries == m_entryOffsets.length) {
+            m_entryOffsets = Arrays.copyOf(m_entryOffsets, m_entryOffsets.length * 2);
+        }
+        m_entryOffsets[m_indexedEntries++] = offset;
+    }
+
+    protected void clearIndex() {
+        m_indexedEntries = 0;
+    }
+
+    /**
+     * Forget the offsets of objects at or after entryIndex, they were truncated
+     */
+    protected void truncateIndex(int entryIndex) {
+        m_indexedEntries = Math.min(m_indexedEntries, (entryIndex + INDEX_INTERVAL - 1) / INDEX_INTERVAL);
+    }
+
+    /**
+     * Offset in the file of the header of an object. Asking for the object after
+     * the last one gives the offset the next object would be written at.
+     */
+    long entryOffset(int entryIndex) throws IOException {
+        int index;
+        long offset;
+        if (m_indexedEntries == 0) {
+            index = 0;
+            offset = SEGMENT_HEADER_BYTES;
+            indexEntry(0, offset);
+        } else {
+            final int slot = Math.min(entryIndex / INDEX_INTERVAL, m_indexedEntries - 1);
+            index = slot * INDEX_INTERVAL;
+            offset = m_entryOffsets[slot];
+        }
+        while (index < entryIndex) {
+            offset += OBJECT_HEADER_BYTES + readEntryLength(offset);
+            indexEntry(++index, offset);
+        }
+        return offset;
+    }
+
     /**
      * Parse the segment and truncate the file if necessary.
      * @param truncator    A caller-supplied truncator that decides where in the segment to truncate
@@ -147,21 +211,23 @@ public abstract class PBDSegment {
                             entriesTruncated = initialEntryCount - (readIndex() - 1);
                             //Don't forget to update the number of entries in the file
                             initNumEntries(readIndex() - 1, sizeInBytes);
-                            m_fc.truncate(readOffset() - (compressedLength + OBJECT_HEADER_BYTES));
+                            m_fc.truncate(beforePos);
+                            //Keep the index for the entries left so reopening for write doesn't rescan
+                            truncateIndex(readIndex() - 1);
                         }
                     } else {
                         assert retval.status == BinaryDeque.TruncatorResponse.Status.PARTIAL_TRUNCATE;
                         entriesTruncated = initialEntryCount - readIndex();
-                        //Partial object truncation
-                        rewindReadOffset(compressedLength + OBJECT_HEADER_BYTES);
-                        final long partialEntryBeginOffset = readOffset();
-                        m_fc.position(partialEntryBeginOffset);
+                        //Partial object truncation, the object is rewritten where it started
+                        setReadOffset(beforePos);
+                        truncateIndex(readIndex());
+                        m_fc.position(beforePos);
 
                         final int written = writeTruncatedEntry(retval, compressedLength);
                         sizeInBytes += written;
 
                         initNumEntries(readIndex(), sizeInBytes);
-                        m_fc.truncate(partialEntryBeginOffset + written + OBJECT_HEADER_BYTES);
+                        m_fc.truncate(beforePos + written + OBJECT_HEADER_BYTES);
                     }
 
                     break;
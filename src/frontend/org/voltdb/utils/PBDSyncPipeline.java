@@ -0,0 +1,190 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.voltcore.utils.CoreUtils;
+
+import com.google_voltpatches.common.util.concurrent.ListenableFuture;
+import com.google_voltpatches.common.util.concurrent.SettableFuture;
+
+/**
+ * Makes the contents of persistent binary deques durable off of the threads that write them.
+ *
+ * Requests are collected in rounds by one thread per filesystem. Every request that arrives
+ * while a round is syncing joins the next round, and a deque with several requests in a round
+ * is only synced once, so the many export and DR streams overflowing to the same disk share
+ * fsyncs instead of each waiting out their own. The deques of a round are synced in parallel by
+ * up to PBD_SYNC_THREADS threads for the filesystem, since devices with deep queues complete
+ * concurrent fsyncs of different files about as fast as one. The futures of a deque complete
+ * as soon as all its segments written before the request are durable.
+ */
+public class PBDSyncPipeline {
+    // how long a round waits for more requests to batch before it starts syncing
+    static final long COALESCE_MICROS = Long.getLong("PBD_SYNC_COALESCE_MICROS", 0);
+    // most deques synced at once on each filesystem
+    static final int SYNC_THREADS = Integer.getInteger("PBD_SYNC_THREADS", 4);
+
+    private static final PBDSyncPipeline m_instance = new PBDSyncPipeline();
+
+    public static PBDSyncPipeline instance() {
+        return m_instance;
+    }
+
+    private static class SyncRequest {
+        final PersistentBinaryDeque m_deque;
+        final SettableFuture<Object> m_future = SettableFuture.create();
+
+        SyncRequest(PersistentBinaryDeque deque) {
+            m_deque = deque;
+        }
+    }
+
+    private final Map<Object, LinkedBlockingQueue<SyncRequest>> m_queues =
+            new ConcurrentHashMap<Object, LinkedBlockingQueue<SyncRequest>>();
+
+    private PBDSyncPipeline() {}
+
+    /**
+     * Sync the deque in the thread for the filesystem its files are on.
+     * @return a future that completes when everything offered to the deque before the call is durable,
+     *         or fails with the IOException from the sync
+     */
+    public ListenableFuture<?> sync(PersistentBinaryDeque deque, File path) {
+        final SyncRequest request = new SyncRequest(deque);
+        queueFor(path).offer(request);
+        return request.m_future;
+    }
+
+    private LinkedBlockingQueue<SyncRequest> queueFor(File path) {
+        Object key;
+        try {
+            key = Files.getFileStore(path.toPath());
+        } catch (IOException e) {
+            // can't tell which filesystem it is, give the directory its own thread
+            key = path.getAbsoluteFile();
+        }
+        LinkedBlockingQueue<SyncRequest> queue = m_queues.get(key);
+        if (queue == null) {
+            synchronized (this) {
+                queue = m_queues.get(key);
+                if (queue == null) {
+                    queue = new LinkedBlockingQueue<SyncRequest>();
+                    final String name = key instanceof FileStore ? ((FileStore)key).name() : key.toString();
+                    final ExecutorService syncers = SYNC_THREADS > 1 ?
+                            CoreUtils.getListeningExecutorService("PBD sync " + name, SYNC_THREADS) :
+                            CoreUtils.SAMETHREADEXECUTOR;
+                    CoreUtils.getThreadFactory("PBD sync round " + name)
+                            .newThread(new SyncRunnable(queue, syncers)).start();
+                    m_queues.put(key, queue);
+                }
+            }
+        }
+        return queue;
+    }
+
+    private static class SyncRunnable implements Runnable {
+        private final LinkedBlockingQueue<SyncRequest> m_queue;
+        private final ExecutorService m_syncers;
+
+        SyncRunnable(LinkedBlockingQueue<SyncRequest> queue, ExecutorService syncers) {
+            m_queue = queue;
+            m_syncers = syncers;
+        }
+
+        @Override
+        public void run() {
+            final List<SyncRequest> batch = new ArrayList<SyncRequest>();
+            final Map<PersistentBinaryDeque, List<SyncRequest>> byDeque =
+                    new IdentityHashMap<PersistentBinaryDeque, List<SyncRequest>>();
+            while (true) {
+                try {
+                    batch.add(m_queue.take());
+                    if (COALESCE_MICROS > 0) {
+                        Thread.sleep(TimeUnit.MICROSECONDS.toMillis(COALESCE_MICROS),
+                                (int)(TimeUnit.MICROSECONDS.toNanos(COALESCE_MICROS) % 1000000));
+                    }
+                } catch (InterruptedException e) {
+                    continue;
+                }
+                m_queue.drainTo(batch);
+
+                for (SyncRequest request : batch) {
+                    List<SyncRequest> requests = byDeque.get(request.m_deque);
+                    if (requests == null) {
+                        requests = new ArrayList<SyncRequest>();
+                        byDeque.put(request.m_deque, requests);
+                    }
+                    requests.add(request);
+                }
+
+                // the round ends when every deque in it is synced, so no deque is synced twice at once
+                final CountDownLatch roundDone = new CountDownLatch(byDeque.size());
+                for (final Map.Entry<PersistentBinaryDeque, List<SyncRequest>> e : byDeque.entrySet()) {
+                    m_syncers.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            try {
+                                syncDeque(e.getKey(), e.getValue());
+                            } finally {
+                                roundDone.countDown();
+                            }
+                        }
+                    });
+                }
+                while (true) {
+                    try {
+                        roundDone.await();
+                        break;
+                    } catch (InterruptedException ignore) {}
+                }
+                batch.clear();
+                byDeque.clear();
+            }
+        }
+
+        private static void syncDeque(PersistentBinaryDeque deque, List<SyncRequest> requests) {
+            Throwable failure = null;
+            try {
+                deque.sync();
+            } catch (Throwable t) {
+                failure = t;
+            }
+            for (SyncRequest request : requests) {
+                if (failure == null) {
+                    request.m_future.set(null);
+                } else {
+                    request.m_future.setException(failure);
+                }
+            }
+        }
+    }
+}
@@ -37,13 +37,14 @@ import org.voltdb.utils.BinaryDeque.TruncatorResponse.Status;
 
 import com.google_voltpatches.common.base.Joiner;
 import com.google_voltpatches.common.base.Throwables;
+import com.google_voltpatches.common.util.concurrent.ListenableFuture;
 
 /**
  * A deque that specializes in providing persistence of binary objects to disk. Any object placed
  * in the deque will be persisted to disk asynchronously. Objects placed in the deque can
  * be persisted synchronously by invoking sync. The files backing this deque all start with a nonce
  * provided at construction time followed by a segment index that is stored in the filename. Files grow to
- * a maximum size of 64 megabytes and then a new segment is created. The index starts at 0. Segments are deleted
+ * a maximum size, 64 megabytes by default, and then a new segment is created. The index starts at 0. Segments are deleted
  * once all objects from the segment have been polled and all the containers returned by poll have been discarded.
  * Push is implemented by creating new segments at the head of the deque containing the objects to be pushed.
  *
@@ -51,6 +52,14 @@ import com.google_voltpatches.common.base.Throwables;
 public class PersistentBinaryDeque implements BinaryDeque {
     private static final VoltLogger LOG = new VoltLogger("HOST");
 
+    /**
+     * Defaults for deques that don't choose a segment type and size. Memory mapped segments
+     * avoid a copy and a system call per object, regular segments use less address space.
+     */
+    public static final boolean DEFAULT_USE_MMAP = Boolean.getBoolean("PBD_USE_MMAP");
+    public static final int DEFAULT_SEGMENT_SIZE = Integer.getInteger("PBD_SEGMENT_SIZE_MB", 64) * 1024 * 1024;
+    static final int MIN_SEGMENT_SIZE = 64 * 1024;
+
     public static class UnsafeOutputContainerFactory implements OutputContainerFactory {
         @Override
         public BBContainer getContainer(int minimumSize) {
@@ -82,6 +91,8 @@ public class PersistentBinaryDeque implements BinaryDeque {
 
     private final File m_path;
     private final String m_nonce;
+    private final boolean m_useMMap;
+    private final int m_segmentSize;
     private boolean m_initializedFromExistingFiles = false;
 
     //Segments that are no longer being written to and can be polled
@@ -114,10 +125,33 @@ public class PersistentBinaryDeque implements BinaryDeque {
      * @throws IOException
      */
     public PersistentBinaryDeque(final String nonce, final File path, VoltLogger logger, final boolean deleteEmpty) throws IOException {
+        this(nonce, path, logger, deleteEmpty, DEFAULT_USE_MMAP, DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * Create a persistent binary deque with the specified nonce and storage back at the specified path.
+     * Existing segments are read whatever their type and size, new segments are created with the type
+     * and size given.
+     *
+     * @param nonce
+     * @param path
+     * @param deleteEmpty
+     * @param useMMap        Use memory mapped segments instead of regular file I/O
+     * @param segmentSize    Maximum size in bytes of a segment, also the maximum size of an object
+     * @throws IOException
+     */
+    public PersistentBinaryDeque(final String nonce, final File path, VoltLogger logger, final boolean deleteEmpty,
+            final boolean useMMap, final int segmentSize) throws IOException {
+        if (segmentSize < MIN_SEGMENT_SIZE) {
+            throw new IllegalArgumentException("PBD segment size must be at least " + MIN_SEGMENT_SIZE +
+                    " bytes, got " + segmentSize);
+        }
         EELibraryLoader.loadExecutionEngineLibrary(true);
         m_path = path;
         m_nonce = nonce;
         m_usageSpecificLog = logger;
+        m_useMMap = useMMap;
+        m_segmentSize = segmentSize;
 
         if (!path.exists() || !path.canRead() || !path.canWrite() || !path.canExecute() || !path.isDirectory()) {
             throw new IOException(path + " is not usable ( !exists || !readable " +
@@ -229,12 +263,11 @@ public class PersistentBinaryDeque implements BinaryDeque {
         assertions();
     }
 
-    private static final boolean USE_MMAP = Boolean.getBoolean("PBD_USE_MMAP");
     private PBDSegment newSegment(long segmentId, File file) {
-        if (USE_MMAP) {
-            return new PBDMMapSegment(segmentId, file);
+        if (m_useMMap) {
+            return new PBDMMapSegment(segmentId, file, m_segmentSize);
         } else {
-            return new PBDRegularSegment(segmentId, file);
+            return new PBDRegularSegment(segmentId, file, m_segmentSize);
         }
     }
 
@@ -327,17 +360,17 @@ public class PersistentBinaryDeque implements BinaryDeque {
 
         //Take the objects that were provided and separate them into deques of objects
         //that will fit in a single write segment
-        int available = PBDSegment.CHUNK_SIZE - 4;
+        int available = m_segmentSize - 4;
         for (BBContainer object : objects) {
             int needed = PBDSegment.OBJECT_HEADER_BYTES + object.b().remaining();
 
             if (available - needed < 0) {
-                if (needed > PBDSegment.CHUNK_SIZE - 4) {
-                    throw new IOException("Maximum object size is " + (PBDSegment.CHUNK_SIZE - 4));
+                if (needed > m_segmentSize - 4) {
+                    throw new IOException("Maximum object size is " + (m_segmentSize - 4));
                 }
                 segments.offer( currentSegment );
                 currentSegment = new ArrayDeque<BBContainer>();
-                available = PBDSegment.CHUNK_SIZE - 4;
+                available = m_segmentSize - 4;
             }
             available -= needed;
             currentSegment.add(object);
@@ -458,6 +491,11 @@ public class PersistentBinaryDeque implements BinaryDeque {
         }
     }
 
+    @Override
+    public ListenableFuture<?> syncAsync() {
+        return PBDSyncPipeline.instance().sync(this, m_path);
+    }
+
     @Override
     public synchronized void close() throws IOException {
         if (m_closed) {
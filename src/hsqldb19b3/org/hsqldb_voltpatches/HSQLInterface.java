@@ -122,7 +122,7 @@ public class HSQLInterface {
      * @return A newly initialized in-memory HSQLDB instance accessible
      * through the returned instance of HSQLInterface
      */
-    public static HSQLInterface loadHsqldb() {
+    public static synchronized HSQLInterface loadHsqldb() {
         // Specifically set the timezone to UTC to avoid the default usage local timezone in HSQL.
         // This ensures that all VoltDB data paths use the same timezone for representing time.
         TimeZone.setDefault(TimeZone.getTimeZone("GMT+0"));
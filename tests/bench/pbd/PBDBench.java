@@ -0,0 +1,110 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import org.voltcore.logging.VoltLogger;
+import org.voltcore.utils.DBBPool;
+import org.voltcore.utils.DBBPool.BBContainer;
+import org.voltdb.utils.PersistentBinaryDeque;
+
+/**
+ * Compares PersistentBinaryDeque throughput with regular and memory mapped segments
+ * for an export overflow like workload: blocks are offered until the deque holds a
+ * backlog, the deque is closed and reopened the way it is after a restart, and the
+ * backlog is polled back out.
+ *
+ * Usage: PBDBench <directory> [block size KB] [blocks] [segment size MB] [iterations]
+ */
+public class PBDBench {
+
+    private static final VoltLogger LOG = new VoltLogger("HOST");
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.err.println("Usage: PBDBench <directory> [block size KB] [blocks] [segment size MB] [iterations]");
+            System.exit(-1);
+        }
+        final File dir = new File(args[0]);
+        final int blockSize = (args.length > 1 ? Integer.parseInt(args[1]) : 2048) * 1024;
+        final int blocks = args.length > 2 ? Integer.parseInt(args[2]) : 1000;
+        final int segmentSize = (args.length > 3 ? Integer.parseInt(args[3]) : 64) * 1024 * 1024;
+        final int iterations = args.length > 4 ? Integer.parseInt(args[4]) : 5;
+        if (!dir.exists() && !dir.mkdirs()) {
+            throw new IOException("Unable to create " + dir);
+        }
+
+        // random contents so compression doesn't hide the IO
+        final ByteBuffer block = ByteBuffer.allocateDirect(blockSize);
+        final Random r = new Random(0);
+        while (block.hasRemaining()) {
+            block.put((byte)r.nextInt());
+        }
+
+        for (int ii = 0; ii < iterations; ii++) {
+            for (boolean useMMap : new boolean[] { false, true }) {
+                runOnce(dir, block, blocks, segmentSize, useMMap);
+            }
+        }
+    }
+
+    private static void runOnce(File dir, ByteBuffer block, int blocks, int segmentSize, boolean useMMap)
+            throws IOException {
+        final String mode = useMMap ? "mmap" : "regular";
+        final double megabytes = blocks * (double)block.capacity() / (1024 * 1024);
+
+        PersistentBinaryDeque pbd = new PersistentBinaryDeque("pbdbench", dir, LOG, true, useMMap, segmentSize);
+        long start = System.nanoTime();
+        for (int ii = 0; ii < blocks; ii++) {
+            block.clear();
+            block.putLong(0, ii);
+            pbd.offer(DBBPool.wrapBB(block.duplicate()), false);
+        }
+        pbd.sync();
+        long offerNanos = System.nanoTime() - start;
+        pbd.close();
+
+        pbd = new PersistentBinaryDeque("pbdbench", dir, LOG, true, useMMap, segmentSize);
+        start = System.nanoTime();
+        long polled = 0;
+        BBContainer cont;
+        while ((cont = pbd.poll(PersistentBinaryDeque.UNSAFE_CONTAINER_FACTORY)) != null) {
+            try {
+                if (cont.b().getLong(0) != polled) {
+                    throw new IllegalStateException("Polled block " + cont.b().getLong(0) + ", expected " + polled);
+                }
+            } finally {
+                cont.discard();
+            }
+            polled++;
+        }
+        long pollNanos = System.nanoTime() - start;
+        pbd.closeAndDelete();
+
+        System.out.printf("%-8s offer %8.1f MB/s  poll %8.1f MB/s  (%d blocks)%n", mode,
+                megabytes / (offerNanos / 1000000000.0), megabytes / (pollNanos / 1000000000.0), polled);
+    }
+}
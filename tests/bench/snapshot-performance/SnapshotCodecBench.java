@@ -0,0 +1,132 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Random;
+
+import org.voltdb.SnapshotSiteProcessor;
+import org.voltdb.VoltTable;
+import org.voltdb.VoltType;
+import org.voltdb.utils.CompressionCodec;
+
+/**
+ * Compares the snapshot compression codecs on chunks of serialized table data:
+ * how fast each codec writes a snapshot file, how fast it decompresses it on restore,
+ * and how big the file ends up.
+ *
+ * Usage: SnapshotCodecBench <directory> [megabytes] [iterations]
+ */
+public class SnapshotCodecBench {
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.err.println("Usage: SnapshotCodecBench <directory> [megabytes] [iterations]");
+            System.exit(-1);
+        }
+        final File dir = new File(args[0]);
+        final int megabytes = args.length > 1 ? Integer.parseInt(args[1]) : 512;
+        final int iterations = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+        if (!dir.exists() && !dir.mkdirs()) {
+            throw new IOException("Unable to create " + dir);
+        }
+
+        final ByteBuffer chunk = makeChunk();
+        final int chunks = (int)((megabytes * 1024L * 1024L) / chunk.remaining());
+        for (int ii = 0; ii < iterations; ii++) {
+            for (CompressionCodec codec : CompressionCodec.values()) {
+                runOnce(dir, codec, chunk, chunks);
+            }
+        }
+    }
+
+    /*
+     * A snapshot sized chunk of rows that look like a typical table, ids, small numbers
+     * and strings drawn from a limited vocabulary.
+     */
+    private static ByteBuffer makeChunk() {
+        final VoltTable table = new VoltTable(
+                new VoltTable.ColumnInfo("ID", VoltType.BIGINT),
+                new VoltTable.ColumnInfo("STATE", VoltType.TINYINT),
+                new VoltTable.ColumnInfo("AMOUNT", VoltType.FLOAT),
+                new VoltTable.ColumnInfo("NAME", VoltType.STRING),
+                new VoltTable.ColumnInfo("CREATED", VoltType.TIMESTAMP));
+        final String[] names = new String[1000];
+        final Random r = new Random(0);
+        for (int ii = 0; ii < names.length; ii++) {
+            names[ii] = Long.toString(r.nextLong(), 36) + "-customer";
+        }
+        long id = 0;
+        while (table.getSerializedSize() < SnapshotSiteProcessor.m_snapshotBufferLength - 1024) {
+            table.addRow(id++, r.nextInt(8), r.nextInt(100000) / 100.0,
+                    names[r.nextInt(names.length)], 1450000000000000L + r.nextInt(1000000000));
+        }
+        final ByteBuffer chunk = ByteBuffer.allocateDirect(table.getSerializedSize());
+        table.flattenToBuffer(chunk);
+        chunk.flip();
+        return chunk;
+    }
+
+    private static void runOnce(File dir, CompressionCodec codec, ByteBuffer chunk, int chunks)
+            throws IOException {
+        final double megabytes = chunks * (double)chunk.remaining() / (1024 * 1024);
+        final File file = new File(dir, "codecbench-" + codec.name() + ".vpt");
+        final ByteBuffer compressed = ByteBuffer.allocateDirect(codec.maxCompressedLength(chunk.remaining()));
+
+        long start = System.nanoTime();
+        final FileOutputStream fos = new FileOutputStream(file);
+        try {
+            final FileChannel channel = fos.getChannel();
+            for (int ii = 0; ii < chunks; ii++) {
+                compressed.clear();
+                codec.compress(chunk, compressed);
+                while (compressed.hasRemaining()) {
+                    channel.write(compressed);
+                }
+            }
+            channel.force(false);
+        } finally {
+            fos.close();
+        }
+        final double writeSeconds = (System.nanoTime() - start) / 1000000000.0;
+        final long fileSize = file.length();
+
+        compressed.clear();
+        codec.compress(chunk, compressed);
+        final ByteBuffer output = ByteBuffer.allocateDirect(chunk.remaining());
+        start = System.nanoTime();
+        for (int ii = 0; ii < chunks; ii++) {
+            output.clear();
+            codec.decompress(compressed, output);
+        }
+        final double decompressSeconds = (System.nanoTime() - start) / 1000000000.0;
+        file.delete();
+
+        System.out.printf("%-6s write %8.1f MB/s  decompress %8.1f MB/s  size %6.1f%% (%d MB)%n",
+                codec.name(), megabytes / writeSeconds, megabytes / decompressSeconds,
+                100.0 * fileSize / (megabytes * 1024 * 1024), fileSize / (1024 * 1024));
+    }
+}
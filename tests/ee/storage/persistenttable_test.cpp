@@ -312,6 +312,39 @@ TEST_F(PersistentTableTest, TruncateTableTest) {
     ASSERT_EQ(1, table->allocatedBlockCount());
 }
 
+TEST_F(PersistentTableTest, ModificationCountTest) {
+    VoltDBEngine* engine = getEngine();
+    engine->loadCatalog(0, catalogPayload());
+    PersistentTable *table = dynamic_cast<PersistentTable*>(engine->getTable("T"));
+    ASSERT_NE(NULL, table);
+    ASSERT_EQ(0, table->modificationCount());
+
+    beginWork();
+    assert(tableutil::addRandomTuples(table, 10));
+    commit();
+    int64_t count = table->modificationCount();
+    ASSERT_EQ(10, count);
+
+    // reading or compacting the table isn't a modification
+    table->doIdleCompaction();
+    ASSERT_EQ(count, table->modificationCount());
+
+    // rolled back changes still count
+    beginWork();
+    assert(tableutil::addRandomTuples(table, 1));
+    rollback();
+    ASSERT_TRUE(table->modificationCount() > count);
+    count = table->modificationCount();
+
+    // the table that replaces a truncated one keeps counting
+    beginWork();
+    table->truncateTable(engine);
+    commit();
+    table = dynamic_cast<PersistentTable*>(engine->getTable("T"));
+    ASSERT_NE(NULL, table);
+    ASSERT_TRUE(table->modificationCount() > count);
+}
+
 int main() {
     return TestSuite::globalInstance()->runAll();
 }
@@ -50,6 +50,7 @@
 
 package org.voltcore.network;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
@@ -163,17 +164,42 @@ public class TestNIOWriteStream extends TestCase {
 
         @Override
         public long write(ByteBuffer src[]) throws IOException {
+            return write(src, 0, src.length);
+        }
+
+        @Override
+        public void close() throws IOException {
+            // TODO Auto-generated method stub
+        }
+
+        @Override
+        public boolean isOpen() {
+            return m_open;
+        }
+
+        @Override
+        public long write(ByteBuffer[] srcs, int offset, int length)
+                throws IOException {
             if (!m_open) throw new IOException();
-            if (closeAfter > 0 && ++writeCount >= closeAfter) {
-                m_open = false;
-            }
+            gatheringWrites++;
 
             if (m_behavior == SINK) {
-                int remaining = src[0].remaining();
-                src[0].position(src[0].limit());
+                //Each buffer counts as a write so the channel can close part way through
+                long remaining = 0;
+                for (int ii = offset; ii < offset + length && m_open; ii++) {
+                    if (closeAfter > 0 && ++writeCount >= closeAfter) {
+                        m_open = false;
+                    }
+                    remaining += srcs[ii].remaining();
+                    srcs[ii].position(srcs[ii].limit());
+                }
                 return remaining;
             }
-            else if (m_behavior == FULL) {
+
+            if (closeAfter > 0 && ++writeCount >= closeAfter) {
+                m_open = false;
+            }
+            if (m_behavior == FULL) {
                 return 0;
             }
             else if (m_behavior == PARTIAL) {
@@ -182,32 +208,61 @@ public class TestNIOWriteStream extends TestCase {
                 } else {
                     wrotePartial = true;
                 }
-                ByteBuffer copy = ByteBuffer.allocate(src[0].remaining());
-                src[0].get(copy.array(), 0, src[0].remaining()/2);
-                return src[0].remaining();
+                ByteBuffer copy = ByteBuffer.allocate(srcs[offset].remaining());
+                srcs[offset].get(copy.array(), 0, srcs[offset].remaining()/2);
+                return srcs[offset].remaining();
             }
             assert(false);
             return -1;
         }
 
+        public int gatheringWrites = 0;
+    }
+
+
+    /**
+     * Channel that accepts at most a few bytes per write and records everything it accepts
+     */
+    private static class TricklingChannel implements GatheringByteChannel {
+        final ByteArrayOutputStream m_written = new ByteArrayOutputStream();
+        final int m_bytesPerWrite;
+        int m_writes = 0;
+
+        TricklingChannel(int bytesPerWrite) {
+            m_bytesPerWrite = bytesPerWrite;
+        }
+
         @Override
-        public void close() throws IOException {
-            // TODO Auto-generated method stub
+        public int write(ByteBuffer src) throws IOException {
+            return (int)write(new ByteBuffer[] { src }, 0, 1);
         }
 
         @Override
-        public boolean isOpen() {
-            return m_open;
+        public long write(ByteBuffer[] srcs) throws IOException {
+            return write(srcs, 0, srcs.length);
         }
 
         @Override
-        public long write(ByteBuffer[] srcs, int offset, int length)
-                throws IOException {
-            // TODO Auto-generated method stub
-            return 0;
+        public long write(ByteBuffer[] srcs, int offset, int length) throws IOException {
+            m_writes++;
+            int budget = m_bytesPerWrite;
+            for (int ii = offset; ii < offset + length && budget > 0; ii++) {
+                while (srcs[ii].hasRemaining() && budget > 0) {
+                    m_written.write(srcs[ii].get());
+                    budget--;
+                }
+            }
+            return m_bytesPerWrite - budget;
         }
-    }
 
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {}
+    }
 
     public void testSink() throws IOException {
         MockChannel channel = new MockChannel(MockChannel.SINK, 0);
@@ -230,6 +285,27 @@ public class TestNIOWriteStream extends TestCase {
         port.toString();
     }
 
+    public void testGatheringWrite() throws IOException {
+        MockChannel channel = new MockChannel(MockChannel.SINK, 0);
+        MockPort port = new MockPort();
+        NIOWriteStream wstream = new NIOWriteStream(port);
+
+        //Pool buffers are 4 bytes so this is serialized into 3 * MAX_GATHERING_WRITE_BUFFERS buffers
+        final int bytes = 4 * 3 * NIOWriteStreamBase.MAX_GATHERING_WRITE_BUFFERS;
+        wstream.enqueue(ByteBuffer.allocate(bytes));
+        assertTrue(port.checkWriteSet());
+        wstream.swapAndSerializeQueuedWrites(pool);
+        assertEquals(bytes, wstream.drainTo(channel));
+        assertEquals(3, channel.gatheringWrites);
+        assertTrue(wstream.isEmpty());
+
+        final long writeInfo[] = wstream.getBytesAndMessagesWritten(false);
+        assertEquals(bytes, writeInfo[0]);
+        assertEquals(3 * NIOWriteStreamBase.MAX_GATHERING_WRITE_BUFFERS, writeInfo[1]);
+        assertEquals(3, writeInfo[2]);
+        wstream.shutdown();
+    }
+
     public void testFull() throws IOException {
         MockChannel channel = new MockChannel(MockChannel.FULL, 0);
         MockPort port = new MockPort();
@@ -358,7 +434,8 @@ public class TestNIOWriteStream extends TestCase {
         boolean threwException = false;
         try {
             wstream.swapAndSerializeQueuedWrites(pool);
-            //First write will succeed leaving 2 in first buffer and 4 in next
+            //First write will succeed for the first buffer and the channel closes before the next
+            assertEquals(4, wstream.drainTo( channel));
             wstream.drainTo( channel);
         } catch (IOException e) {
             threwException = true;
@@ -452,4 +529,65 @@ public class TestNIOWriteStream extends TestCase {
         assertEquals(0, queue.get());
     }
 
+    public void testCoalescedPartialWrites() throws IOException {
+        MockPort port = new MockPort();
+        NIOWriteStream wstream = new NIOWriteStream(port);
+        wstream.setCoalescing(16, 1000);
+
+        //Three byte messages straddle the four byte pool buffers
+        byte next = 1;
+        for (int ii = 0; ii < 3; ii++) {
+            wstream.enqueue(ByteBuffer.wrap(new byte[] { next++, next++, next++ }));
+        }
+        wstream.swapAndSerializeQueuedWrites(pool);
+
+        //Below the byte threshold the write is held back until the window closes
+        final long start = 1000000;
+        assertEquals(start + 1000 * 1000, wstream.coalesceDeadline(start));
+        assertEquals(start + 1000 * 1000, wstream.coalesceDeadline(start + 10));
+
+        for (int ii = 0; ii < 3; ii++) {
+            wstream.enqueue(ByteBuffer.wrap(new byte[] { next++, next++, next++ }));
+        }
+        wstream.swapAndSerializeQueuedWrites(pool);
+        assertEquals(0, wstream.coalesceDeadline(start + 20));
+
+        //Each drain stops at the first short write
+        TricklingChannel channel = new TricklingChannel(5);
+        assertEquals(5, wstream.drainTo(channel));
+        assertEquals(1, channel.m_writes);
+        assertFalse(wstream.isEmpty());
+
+        //A partially written buffer is never held back, and a message queued now goes after it
+        assertEquals(0, wstream.coalesceDeadline(start + 30));
+        wstream.enqueue(ByteBuffer.wrap(new byte[] { next++, next++, next++ }));
+        wstream.swapAndSerializeQueuedWrites(pool);
+
+        int drains = 1;
+        while (!wstream.isEmpty()) {
+            assertEquals(0, wstream.coalesceDeadline(start + 40));
+            wstream.drainTo(channel);
+            drains++;
+        }
+        assertEquals(21, channel.m_written.size());
+        final byte written[] = channel.m_written.toByteArray();
+        for (int ii = 0; ii < written.length; ii++) {
+            assertEquals(ii + 1, written[ii]);
+        }
+        //21 bytes at 5 per write, every gathering write spans as many buffers as it can
+        assertEquals(5, channel.m_writes);
+        assertEquals(5, drains);
+        assertEquals(5, wstream.getBytesAndMessagesWritten(false)[2]);
+
+        //Once empty a lone small write waits again, but only until the window closes
+        wstream.enqueue(ByteBuffer.wrap(new byte[] { next++ }));
+        wstream.swapAndSerializeQueuedWrites(pool);
+        final long deadline = wstream.coalesceDeadline(start + 50);
+        assertEquals(start + 50 + 1000 * 1000, deadline);
+        assertEquals(0, wstream.coalesceDeadline(deadline));
+        assertEquals(1, wstream.drainTo(channel));
+        assertTrue(wstream.isEmpty());
+        wstream.shutdown();
+    }
+
 }
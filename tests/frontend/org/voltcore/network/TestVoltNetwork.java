@@ -31,9 +31,16 @@ import java.nio.ByteBuffer;
 import java.nio.channels.SelectableChannel;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
 import java.nio.channels.spi.SelectorProvider;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.voltcore.utils.Pair;
 
 import jsr166y.ThreadLocalRandom;
 import junit.framework.TestCase;
@@ -288,4 +295,73 @@ public class TestVoltNetwork extends TestCase {
         vn.shutdown();
         assertEquals(SelectionKey.OP_ACCEPT, vp.readyOps());
     }
+
+    /*
+     * A reactor reading a few bytes per selection must still deliver every message,
+     * including the ones left buffered in the socket between selections.
+     */
+    public void testReactorBoundedReads() throws Exception {
+        final int messages = 100;
+        final CountDownLatch received = new CountDownLatch(messages);
+        VoltNetwork vn = new VoltNetwork(0, null, "Test", true, 16);
+        vn.start();
+        ServerSocketChannel listener = ServerSocketChannel.open();
+        SocketChannel client = null;
+        try {
+            listener.socket().bind(new InetSocketAddress(InetAddress.getByName("127.0.0.1"), 0));
+            client = SocketChannel.open(listener.socket().getLocalSocketAddress());
+            SocketChannel server = listener.accept();
+            vn.registerChannel(server, new VoltProtocolHandler() {
+                @Override
+                public int getMaxRead() {
+                    return Integer.MAX_VALUE;
+                }
+
+                @Override
+                public void handleMessage(ByteBuffer message, Connection c) {
+                    received.countDown();
+                }
+
+                @Override
+                public Runnable offBackPressure() {
+                    return null;
+                }
+
+                @Override
+                public Runnable onBackPressure() {
+                    return null;
+                }
+
+                @Override
+                public QueueMonitor writestreamMonitor() {
+                    return null;
+                }
+            }, SelectionKey.OP_READ, ReverseDNSPolicy.NONE);
+
+            // one write holding every message so most of it sits in the socket
+            ByteBuffer buf = ByteBuffer.allocate(messages * 12);
+            for (int ii = 0; ii < messages; ii++) {
+                buf.putInt(8);
+                buf.putLong(ii);
+            }
+            buf.flip();
+            while (buf.hasRemaining()) {
+                client.write(buf);
+            }
+            assertTrue(received.await(10, TimeUnit.SECONDS));
+
+            Map<Long, Pair<String, long[]>> stats = vn.getIOStats(false).get();
+            Pair<String, long[]> reactor = stats.get(VoltNetwork.reactorStatsId(0));
+            assertNotNull(reactor);
+            assertEquals(vn.networkThreadName, reactor.getFirst());
+            assertEquals(messages * 12, reactor.getSecond()[0]);
+            assertEquals(messages, reactor.getSecond()[1]);
+        } finally {
+            if (client != null) {
+                client.close();
+            }
+            listener.close();
+            vn.shutdown();
+        }
+    }
 }
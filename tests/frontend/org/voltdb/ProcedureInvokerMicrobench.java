@@ -0,0 +1,113 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb;
+
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+
+/**
+ * Compares the two ways ProcedureRunner passes a serialized parameter set to run():
+ * ParameterSet deserialization, ParameterConverter and Method.invoke against
+ * ProcedureInvoker decoding straight into the typed arguments.
+ */
+public class ProcedureInvokerMicrobench {
+
+    public static class KeyValueProc {
+        public long sum;
+        public long run(long key, long value, int count, double weight, String name) {
+            sum += key + value + count + (long) weight + name.length();
+            return sum;
+        }
+    }
+
+    static abstract class Bench {
+        abstract long call(ByteBuffer params) throws Exception;
+    }
+
+    static ByteBuffer serialize(Object... params) throws Exception {
+        ParameterSet pset = ParameterSet.fromArrayNoCopy(params);
+        ByteBuffer buf = ByteBuffer.allocate(pset.getSerializedSize());
+        pset.flattenToBuffer(buf);
+        buf.flip();
+        return buf;
+    }
+
+    static void measure(String name, Bench bench, ByteBuffer params, int iterations) throws Exception {
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long tid = Thread.currentThread().getId();
+        long check = 0;
+        // warm up so both paths are compiled
+        for (int i = 0; i < iterations; i++) {
+            check += bench.call(params.duplicate());
+        }
+        long startBytes = threads.getThreadAllocatedBytes(tid);
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            check += bench.call(params.duplicate());
+        }
+        long nanos = System.nanoTime() - start;
+        long bytes = threads.getThreadAllocatedBytes(tid) - startBytes;
+        System.out.printf("%-40s %8.1f ns/call %8.1f bytes/call (%d)%n",
+                name, (double) nanos / iterations, (double) bytes / iterations, check);
+    }
+
+    public static void main(String[] args) throws Exception {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 5000000;
+
+        final KeyValueProc proc = new KeyValueProc();
+        final Method run = KeyValueProc.class.getMethod("run",
+                long.class, long.class, int.class, double.class, String.class);
+        final Class<?>[] paramTypes = run.getParameterTypes();
+        final ProcedureInvoker invoker = ProcedureInvoker.create(run, proc);
+
+        Bench reflective = new Bench() {
+            @Override
+            long call(ByteBuffer params) throws Exception {
+                Object[] paramList = ParameterSet.fromByteBuffer(params).toArray();
+                for (int i = 0; i < paramTypes.length; i++) {
+                    paramList[i] = ParameterConverter.tryToMakeCompatible(paramTypes[i], paramList[i]);
+                }
+                return (Long) run.invoke(proc, paramList);
+            }
+        };
+        Bench typed = new Bench() {
+            @Override
+            long call(ByteBuffer params) throws Exception {
+                invoker.decode(params);
+                return (Long) invoker.invoke();
+            }
+        };
+
+        ByteBuffer exact = serialize(1000000L, 2000000L, 3, 4.5, "name");
+        ByteBuffer widened = serialize(1000000, 2000000, (short) 3, 4.5, "name");
+        for (int round = 0; round < 3; round++) {
+            measure("exact types, Method.invoke", reflective, exact, iterations);
+            measure("exact types, ProcedureInvoker", typed, exact, iterations);
+            measure("widened types, Method.invoke", reflective, widened, iterations);
+            measure("widened types, ProcedureInvoker", typed, widened, iterations);
+        }
+    }
+}
@@ -28,6 +28,7 @@ import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyBoolean;
 import static org.mockito.Matchers.anyInt;
@@ -40,6 +41,7 @@ import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.reset;
 import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -49,6 +51,7 @@ import java.nio.ByteBuffer;
 import java.util.ArrayDeque;
 import java.util.Arrays;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Queue;
 import java.util.Set;
 import java.util.concurrent.BlockingQueue;
@@ -81,6 +84,7 @@ import org.voltdb.VoltDB.Configuration;
 import org.voltdb.VoltTable.ColumnInfo;
 import org.voltdb.catalog.Catalog;
 import org.voltdb.client.ClientResponse;
+import org.voltdb.client.ProcedureBatch;
 import org.voltdb.client.ProcedureInvocationType;
 import org.voltdb.common.Constants;
 import org.voltdb.compiler.AdHocPlannedStatement;
@@ -273,6 +277,25 @@ public class TestClientInterface {
         return buf;
     }
 
+    /**
+     * Wrap serialized invocations into a batch message the way the client does.
+     */
+    private static ByteBuffer createBatchMsg(ByteBuffer... invocations) {
+        int size = 1 + 4;
+        for (ByteBuffer invocation : invocations) {
+            size += 4 + invocation.remaining();
+        }
+        ByteBuffer buf = ByteBuffer.allocate(size);
+        buf.put(ProcedureBatch.BATCH_FRAME_VERSION);
+        buf.putInt(invocations.length);
+        for (ByteBuffer invocation : invocations) {
+            buf.putInt(invocation.remaining());
+            buf.put(invocation);
+        }
+        buf.flip();
+        return buf;
+    }
+
     /**
      * Pass the VoltMessage to CI's handleRead() and inspect if the expected
      * parameters are passed to the initiator's createTranction() method. This
@@ -660,6 +683,48 @@ public class TestClientInterface {
         when(m_volt.getMode()).thenReturn(OperationMode.RUNNING);
     }
 
+    @Test
+    public void testBatchMessage() throws Exception {
+        ByteBuffer msg = createBatchMsg(createMsg("hello", 1),
+                                        createMsg("hellooooo", 1),
+                                        createMsg("hellorw", 2));
+        List<ClientResponseImpl> errors = m_ci.handleBatchRead(msg, m_handler, m_cxn);
+        assertEquals(1, errors.size());
+        assertEquals(ClientResponse.UNEXPECTED_FAILURE, errors.get(0).getStatus());
+        assertFalse(msg.hasRemaining());
+
+        // the valid invocations are initiated in the order they are in the batch
+        ArgumentCaptor<Iv2InitiateTaskMessage> messageCaptor =
+            ArgumentCaptor.forClass(Iv2InitiateTaskMessage.class);
+        verify(m_messenger, times(2)).send(anyLong(), messageCaptor.capture());
+        List<Iv2InitiateTaskMessage> messages = messageCaptor.getAllValues();
+        assertEquals("hello", messages.get(0).getStoredProcedureName());
+        assertTrue(messages.get(0).isReadOnly());
+        assertEquals(1, messages.get(0).getStoredProcedureInvocation().getParameterAtIndex(0));
+        assertEquals("hellorw", messages.get(1).getStoredProcedureName());
+        assertFalse(messages.get(1).isReadOnly());
+        assertEquals(2, messages.get(1).getStoredProcedureInvocation().getParameterAtIndex(0));
+    }
+
+    @Test
+    public void testMalformedBatchMessage() throws Exception {
+        ByteBuffer msg = createBatchMsg(createMsg("hello", 1));
+        // claim one more invocation than the message carries
+        msg.putInt(1, 2);
+        try {
+            m_ci.handleBatchRead(msg, m_handler, m_cxn);
+            fail("Truncated batch message should be rejected");
+        } catch (IOException expected) {}
+
+        msg = createBatchMsg(createMsg("hello", 1));
+        // and an invocation longer than the message
+        msg.putInt(5, msg.getInt(5) + 1);
+        try {
+            m_ci.handleBatchRead(msg, m_handler, m_cxn);
+            fail("Invocation past the end of the batch message should be rejected");
+        } catch (IOException expected) {}
+    }
+
     @Test
     public void testInvalidProcedure() throws IOException {
         ByteBuffer msg = createMsg("hellooooo", 1);
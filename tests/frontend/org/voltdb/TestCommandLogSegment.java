@@ -0,0 +1,172 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+import junit.framework.TestCase;
+
+import org.voltcore.utils.InstanceId;
+import org.voltdb.iv2.TxnEgo;
+import org.voltdb.messaging.Iv2InitiateTaskMessage;
+
+public class TestCommandLogSegment extends TestCase
+{
+    private File m_dir;
+
+    @Override
+    public void setUp() throws IOException {
+        m_dir = File.createTempFile("commandlog", "");
+        assertTrue(m_dir.delete());
+        assertTrue(m_dir.mkdir());
+    }
+
+    @Override
+    public void tearDown() {
+        for (File f : m_dir.listFiles()) {
+            f.delete();
+        }
+        m_dir.delete();
+    }
+
+    private static Iv2InitiateTaskMessage makeInitiate(long txnId, long uniqueId, boolean isSinglePartition) {
+        StoredProcedureInvocation spi = new StoredProcedureInvocation();
+        spi.setClientHandle(25);
+        spi.setProcName("johnisgreat");
+        spi.setParams(57, "gooniestoo", "dudemandude");
+        return new Iv2InitiateTaskMessage(23, 8, 10L, txnId, uniqueId, false, isSinglePartition, spi, 2101, 3101, false);
+    }
+
+    private File writeSegment(long spHandles[], int mpIndex) throws IOException {
+        Map<Integer, Long> partitionTxnIds = new TreeMap<Integer, Long>();
+        partitionTxnIds.put(0, 100L);
+        partitionTxnIds.put(1, 200L);
+        File file = CommandLogSegment.segmentFile(m_dir, 7);
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        try {
+            channel.write(CommandLogSegment.serializeHeader(7, new InstanceId(3, 12345), 42, partitionTxnIds));
+            CRC32 crc = new CRC32();
+            for (int i = 0; i < spHandles.length; i++) {
+                int involved[] = i == mpIndex ? new int[] {0, 1} : null;
+                Iv2InitiateTaskMessage msg = makeInitiate(1000 + i, 2000 + i, i != mpIndex);
+                int size = CommandLogSegment.initiateRecordSize(msg, involved);
+                ByteBuffer buf = ByteBuffer.allocateDirect(size);
+                CommandLogSegment.writeInitiateRecord(buf, msg, spHandles[i], involved, size, crc);
+                assertEquals(size, buf.position());
+                buf.flip();
+                channel.write(buf);
+                // fault records are interleaved with the tasks and skipped on replay
+                channel.write(CommandLogSegment.serializeFaultRecord(1, new long[] {2, 3}, 0, spHandles[i], crc));
+            }
+        } finally {
+            channel.close();
+        }
+        return file;
+    }
+
+    public void testRoundTrip() throws IOException {
+        long spHandles[] = new long[4];
+        TxnEgo ego = TxnEgo.makeZero(1);
+        for (int i = 0; i < spHandles.length; i++) {
+            ego = ego.makeNext();
+            spHandles[i] = ego.getTxnId();
+        }
+        File file = writeSegment(spHandles, 2);
+        assertEquals(1, CommandLogSegment.listSegmentFiles(m_dir).size());
+        assertEquals(7, CommandLogSegment.segmentId(file));
+
+        CommandLogSegment header = CommandLogSegment.readHeader(file);
+        assertEquals(7, header.m_id);
+        assertEquals(new InstanceId(3, 12345), header.m_instanceId);
+        assertEquals(42, header.m_mpTxnId);
+        assertEquals(Long.valueOf(200), header.m_partitionTxnIds.get(1));
+
+        CommandLogSegment.Reader reader = new CommandLogSegment.Reader(file);
+        try {
+            for (int i = 0; i < spHandles.length; i++) {
+                CommandLogSegment.InitiateRecord record = reader.next();
+                assertNotNull(record);
+                assertEquals(spHandles[i], record.m_spHandle);
+                assertEquals(1, TxnEgo.getPartitionId(record.m_spHandle));
+                assertEquals(i == 2, record.isMultiPartition());
+                assertEquals(1000 + i, record.m_message.getTxnId());
+                assertEquals(2000 + i, record.m_message.getUniqueId());
+                assertEquals("johnisgreat", record.m_message.getStoredProcedureName());
+                assertEquals(3, record.m_message.getParameterCount());
+            }
+            assertNull(reader.next());
+        } finally {
+            reader.close();
+        }
+    }
+
+    public void testTornTail() throws IOException {
+        File file = writeSegment(new long[] {1, 2, 3}, -1);
+        // chop off part of the last fault record
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(raf.length() - 10);
+        } finally {
+            raf.close();
+        }
+
+        CommandLogSegment.Reader reader = new CommandLogSegment.Reader(file);
+        try {
+            assertEquals(1, reader.next().m_spHandle);
+            assertEquals(2, reader.next().m_spHandle);
+            assertEquals(3, reader.next().m_spHandle);
+            assertNull(reader.next());
+        } finally {
+            reader.close();
+        }
+
+        raf = new RandomAccessFile(file, "rw");
+        try {
+            // flip a byte in the body of the last task
+            long pos = raf.length() - 70;
+            raf.seek(pos);
+            int b = raf.read();
+            raf.seek(pos);
+            raf.write(b ^ 0xff);
+        } finally {
+            raf.close();
+        }
+        reader = new CommandLogSegment.Reader(file);
+        try {
+            assertEquals(1, reader.next().m_spHandle);
+            assertEquals(2, reader.next().m_spHandle);
+            assertNull(reader.next());
+        } finally {
+            reader.close();
+        }
+    }
+}
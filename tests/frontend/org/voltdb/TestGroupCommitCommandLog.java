@@ -0,0 +1,485 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb;
+
+import static org.mockito.Mockito.mock;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+import org.voltcore.network.Connection;
+import org.voltcore.utils.CoreUtils;
+import org.voltdb.client.ClientResponse;
+import org.voltdb.CommandLog.CompletionChecks;
+import org.voltdb.CommandLog.DurabilityListener;
+import org.voltdb.dtxn.TransactionCreator;
+import org.voltdb.iv2.LeaderCache;
+import org.voltdb.iv2.MpInitiator;
+import org.voltdb.iv2.SpScheduler.DurableUniqueIdListener;
+import org.voltdb.iv2.TransactionTask;
+import org.voltdb.iv2.TxnEgo;
+import org.voltdb.messaging.Iv2InitiateTaskMessage;
+
+import com.google_voltpatches.common.util.concurrent.ListenableFuture;
+
+public class TestGroupCommitCommandLog extends TestCase
+{
+    private MockVoltDB m_mockVolt;
+    private File m_dir;
+    private GroupCommitCommandLog m_log;
+
+    @Override
+    public void setUp() throws IOException {
+        m_mockVolt = new MockVoltDB();
+        VoltDB.replaceVoltDBInstanceForTest(m_mockVolt);
+        m_dir = File.createTempFile("commandlog", "");
+        assertTrue(m_dir.delete());
+    }
+
+    @Override
+    public void tearDown() throws Exception {
+        if (m_log != null) {
+            m_log.shutdown();
+        }
+        if (m_dir.exists()) {
+            for (File f : m_dir.listFiles()) {
+                f.delete();
+            }
+            m_dir.delete();
+        }
+        m_mockVolt.shutdown(null);
+        VoltDB.replaceVoltDBInstanceForTest(null);
+    }
+
+    /**
+     * Records what the command log hands it, and at every release how many records
+     * the segments on disk held
+     */
+    private class MockListener implements DurabilityListener {
+        final List<TransactionTask> m_added = Collections.synchronizedList(new ArrayList<TransactionTask>());
+        final LinkedBlockingQueue<int[]> m_releases = new LinkedBlockingQueue<int[]>();
+        volatile CountDownLatch m_blockAdds = new CountDownLatch(0);
+
+        @Override
+        public void addTransaction(TransactionTask pendingTask) {
+            try {
+                m_blockAdds.await();
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+            m_added.add(pendingTask);
+        }
+
+        @Override
+        public void processDurabilityChecks(CompletionChecks completionChecks) {
+            m_releases.offer(new int[] { m_added.size(), countRecords() });
+        }
+
+        @Override
+        public int getNumberOfTasks() {
+            return m_added.size();
+        }
+
+        @Override
+        public CompletionChecks startNewTaskList(int nextMaxRowCnt) {
+            return null;
+        }
+
+        @Override
+        public void setUniqueIdListener(DurableUniqueIdListener listener) {}
+
+        @Override
+        public void createFirstCompletionCheck(boolean isSyncLogging, boolean commandLoggingEnabled) {}
+
+        @Override
+        public boolean completionCheckInitialized() {
+            return true;
+        }
+
+        @Override
+        public void initializeLastDurableUniqueId(long uniqueId) {}
+
+        /**
+         * Wait for releases until the given number of tasks has been released
+         */
+        void awaitReleased(int tasks) throws Exception {
+            int released = 0;
+            while (released < tasks) {
+                final int release[] = m_releases.poll(10, TimeUnit.SECONDS);
+                assertNotNull("Tasks were not released", release);
+                // everything released is on disk
+                assertTrue(release[1] >= release[0]);
+                released = release[0];
+            }
+        }
+    }
+
+    /**
+     * Initiates replayed transactions by answering them straight away, and records the
+     * order everything is sent in
+     */
+    private static class MockInitiator implements TransactionCreator {
+        final List<String> m_sent = Collections.synchronizedList(new ArrayList<String>());
+        SimpleClientResponseAdapter m_adapter;
+
+        @Override
+        public boolean createTransaction(long connectionId, long txnId, long uniqueId,
+                StoredProcedureInvocation invocation, boolean isReadOnly, boolean isSinglePartition,
+                boolean isEverySite, int partition, int messageSize, long nowNanos) {
+            m_sent.add((isSinglePartition ? "sp " : "mp ") + partition + " " + uniqueId);
+            final ClientResponseImpl response = new ClientResponseImpl(ClientResponse.SUCCESS, new VoltTable[0], "",
+                    invocation.getClientHandle());
+            final ByteBuffer buf = ByteBuffer.allocate(4 + response.getSerializedSize());
+            buf.putInt(response.getSerializedSize());
+            response.flattenToBuffer(buf);
+            buf.flip();
+            m_adapter.enqueue(buf);
+            return true;
+        }
+
+        @Override
+        public boolean createTransaction(long connectionId, StoredProcedureInvocation invocation,
+                boolean isReadOnly, boolean isSinglePartition, boolean isEverySite, int partition,
+                int messageSize, long nowNanos) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void sendSentinel(long uniqueId, int partitionId) {
+            m_sent.add("sentinel " + partitionId + " " + uniqueId);
+        }
+
+        @Override
+        public void sendEOLMessage(int partitionId) {
+            m_sent.add("eol " + partitionId);
+        }
+
+        @Override
+        public void bindAdapter(Connection adapter) {
+            m_adapter = (SimpleClientResponseAdapter)adapter;
+        }
+
+        List<String> sentTo(int partition) {
+            final List<String> sent = new ArrayList<String>();
+            synchronized (m_sent) {
+                for (String s : m_sent) {
+                    if (s.split(" ")[1].equals(Integer.toString(partition))) {
+                        sent.add(s);
+                    }
+                }
+            }
+            return sent;
+        }
+    }
+
+    private static Iv2InitiateTaskMessage makeInitiate(long txnId, long uniqueId, boolean isSinglePartition) {
+        StoredProcedureInvocation spi = new StoredProcedureInvocation();
+        spi.setClientHandle(25);
+        spi.setProcName("johnisgreat");
+        spi.setParams(57, "gooniestoo", "dudemandude");
+        return new Iv2InitiateTaskMessage(23, 8, 10L, txnId, uniqueId, false, isSinglePartition, spi, 2101, 3101, false);
+    }
+
+    private int countRecords() {
+        int records = 0;
+        try {
+            for (File file : CommandLogSegment.listSegmentFiles(m_dir)) {
+                CommandLogSegment.Reader reader = new CommandLogSegment.Reader(file);
+                try {
+                    while (reader.next() != null) {
+                        records++;
+                    }
+                } finally {
+                    reader.close();
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return records;
+    }
+
+    private void startLog(boolean synchronous, int fsyncIntervalMs, long asyncBackpressureBytes) {
+        m_log = new GroupCommitCommandLog(synchronous, fsyncIntervalMs, 1000, m_dir.getPath(), asyncBackpressureBytes);
+        Map<Integer, Long> partitionTxnIds = new TreeMap<Integer, Long>();
+        partitionTxnIds.put(0, TxnEgo.makeZero(0).getTxnId());
+        partitionTxnIds.put(1, TxnEgo.makeZero(1).getTxnId());
+        m_log.init(1024, Long.MIN_VALUE, 2, null, partitionTxnIds);
+    }
+
+    private Object[] stats() {
+        Map<String, Integer> columns = new HashMap<String, Integer>();
+        for (CommandLogStats.StatName name : CommandLogStats.StatName.values()) {
+            columns.put(name.name(), name.ordinal());
+        }
+        Object[] row = new Object[columns.size()];
+        m_log.populateCommandLogStats(columns, row);
+        return row;
+    }
+
+    private static long stat(Object[] row, CommandLogStats.StatName name) {
+        return ((Number)row[name.ordinal()]).longValue();
+    }
+
+    public void testSynchronousRelease() throws Exception {
+        startLog(true, 100, Long.MAX_VALUE);
+        MockListener listener = new MockListener();
+        TxnEgo ego = TxnEgo.makeZero(1);
+        for (int i = 0; i < 5; i++) {
+            ego = ego.makeNext();
+            assertNull(m_log.log(makeInitiate(1000 + i, 2000 + i, true), ego.getTxnId(), null, listener,
+                    mock(TransactionTask.class)));
+        }
+        listener.awaitReleased(5);
+
+        Object[] row = stats();
+        assertEquals(5, stat(row, CommandLogStats.StatName.TXNS_LOGGED));
+        assertEquals(0, stat(row, CommandLogStats.StatName.OUTSTANDING_TXNS));
+        assertEquals(0, stat(row, CommandLogStats.StatName.OUTSTANDING_BYTES));
+        assertTrue(stat(row, CommandLogStats.StatName.FSYNC_COUNT) >= 1);
+        assertEquals(1, stat(row, CommandLogStats.StatName.IN_USE_SEGMENT_COUNT));
+    }
+
+    public void testAsynchronousRelease() throws Exception {
+        startLog(false, 20, Long.MAX_VALUE);
+        MockListener listener = new MockListener();
+        TxnEgo ego = TxnEgo.makeZero(1);
+        for (int i = 0; i < 5; i++) {
+            ego = ego.makeNext();
+            // the caller can run the task straight away
+            ListenableFuture<Object> f = m_log.log(makeInitiate(1000 + i, 2000 + i, true), ego.getTxnId(), null,
+                    listener, mock(TransactionTask.class));
+            assertTrue(f.isDone());
+        }
+        // and the listener only hears about it at the next fsync
+        listener.awaitReleased(5);
+        assertEquals(5, stat(stats(), CommandLogStats.StatName.TXNS_LOGGED));
+    }
+
+    public void testAsynchronousBackpressure() throws Exception {
+        final Iv2InitiateTaskMessage msg = makeInitiate(1000, 2000, true);
+        // no fsync during the test, so outstanding bytes only grow
+        startLog(false, 60 * 1000, CommandLogSegment.initiateRecordSize(msg, null));
+        MockListener listener = new MockListener();
+        final CountDownLatch writerBlocked = new CountDownLatch(1);
+        listener.m_blockAdds = writerBlocked;
+
+        TxnEgo ego = TxnEgo.makeZero(1).makeNext();
+        assertTrue(m_log.log(msg, ego.getTxnId(), null, listener, mock(TransactionTask.class)).isDone());
+        List<ListenableFuture<Object>> waiting = new ArrayList<ListenableFuture<Object>>();
+        for (int i = 1; i < 4; i++) {
+            ego = ego.makeNext();
+            waiting.add(m_log.log(makeInitiate(1000 + i, 2000 + i, true), ego.getTxnId(), null, listener,
+                    mock(TransactionTask.class)));
+        }
+        Thread.sleep(50);
+        for (ListenableFuture<Object> f : waiting) {
+            assertFalse(f.isDone());
+        }
+        assertEquals(4, stat(stats(), CommandLogStats.StatName.OUTSTANDING_TXNS));
+
+        // the waiters go once their tasks are written, without waiting for the fsync
+        writerBlocked.countDown();
+        for (ListenableFuture<Object> f : waiting) {
+            f.get(10, TimeUnit.SECONDS);
+        }
+        assertEquals(4, countRecords());
+        assertTrue(listener.m_releases.isEmpty());
+
+        // still over the limit because none of it has been synced
+        ego = ego.makeNext();
+        ListenableFuture<Object> f = m_log.log(makeInitiate(1004, 2004, true), ego.getTxnId(), null, listener,
+                mock(TransactionTask.class));
+        f.get(10, TimeUnit.SECONDS);
+        assertEquals(5, stat(stats(), CommandLogStats.StatName.OUTSTANDING_TXNS));
+    }
+
+    private static SnapshotCompletionInterest.SnapshotCompletionEvent truncationSnapshot(long mpTxnId,
+            Map<Integer, Long> partitionTxnIds) {
+        return new SnapshotCompletionInterest.SnapshotCompletionEvent("", "", mpTxnId, partitionTxnIds,
+                true, true, "", null, null, null, 0, 0);
+    }
+
+    private void awaitSegments(int count) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + 10000;
+        while (CommandLogSegment.listSegmentFiles(m_dir).size() != count) {
+            assertTrue(System.currentTimeMillis() < deadline);
+            Thread.sleep(5);
+        }
+    }
+
+    public void testSegmentDeletedAfterTruncationSnapshot() throws Exception {
+        startLog(true, 100, Long.MAX_VALUE);
+        MockListener listener = new MockListener();
+        TxnEgo ego = TxnEgo.makeZero(0);
+        long spHandles[] = new long[3];
+        for (int i = 0; i < 2; i++) {
+            ego = ego.makeNext();
+            spHandles[i] = ego.getTxnId();
+            m_log.log(makeInitiate(1000 + i, 2000 + i, true), spHandles[i], null, listener,
+                    mock(TransactionTask.class));
+        }
+        listener.awaitReleased(2);
+
+        // the request rolls the segment so the snapshot can cover all of the old one
+        m_log.requestTruncationSnapshot(false);
+        awaitSegments(2);
+        ego = ego.makeNext();
+        spHandles[2] = ego.getTxnId();
+        m_log.log(makeInitiate(1002, 2002, true), spHandles[2], null, listener, mock(TransactionTask.class));
+        listener.awaitReleased(3);
+
+        // a snapshot taken before the last transaction in the old segment doesn't cover it
+        Map<Integer, Long> partitionTxnIds = new TreeMap<Integer, Long>();
+        partitionTxnIds.put(0, spHandles[0]);
+        m_log.snapshotCompleted(truncationSnapshot(Long.MIN_VALUE, partitionTxnIds));
+        assertEquals(2, CommandLogSegment.listSegmentFiles(m_dir).size());
+
+        partitionTxnIds.put(0, spHandles[2]);
+        m_log.snapshotCompleted(new SnapshotCompletionInterest.SnapshotCompletionEvent("", "", Long.MIN_VALUE,
+                partitionTxnIds, false, true, "", null, null, null, 0, 0));
+        assertEquals(2, CommandLogSegment.listSegmentFiles(m_dir).size());
+
+        // the segment being written is kept even when the snapshot covers it
+        m_log.snapshotCompleted(truncationSnapshot(Long.MIN_VALUE, partitionTxnIds));
+        List<File> segments = CommandLogSegment.listSegmentFiles(m_dir);
+        assertEquals(1, segments.size());
+        assertEquals(1, CommandLogSegment.segmentId(segments.get(0)));
+        assertEquals(1, countRecords());
+        assertEquals(1, stat(stats(), CommandLogStats.StatName.IN_USE_SEGMENT_COUNT));
+
+        // later segments follow the new snapshot
+        m_log.requestTruncationSnapshot(true);
+        awaitSegments(2);
+        CommandLogSegment header = CommandLogSegment.readHeader(CommandLogSegment.listSegmentFiles(m_dir).get(1));
+        assertEquals(partitionTxnIds, header.m_partitionTxnIds);
+    }
+
+    public void testCreateKeepsLeftoverSegments() throws Exception {
+        assertTrue(m_dir.mkdirs());
+        assertNull(GroupCommitCommandLog.leftoverSegmentsError(m_dir));
+
+        startLog(true, 100, Long.MAX_VALUE);
+        MockListener listener = new MockListener();
+        m_log.log(makeInitiate(1000, 2000, true), TxnEgo.makeZero(0).makeNext().getTxnId(), null, listener,
+                mock(TransactionTask.class));
+        listener.awaitReleased(1);
+        m_log.shutdown();
+        m_log = null;
+
+        // a community create without --force is stopped before the log would delete them
+        String error = GroupCommitCommandLog.leftoverSegmentsError(m_dir);
+        assertNotNull(error);
+        assertTrue(error.contains(m_dir.getAbsolutePath()));
+        assertEquals(1, countRecords());
+
+        // create doesn't replay, the recover action "voltdb start" probes to does
+        assertFalse(new GroupCommitCommandLogReinitiator(0, StartAction.CREATE,
+                m_mockVolt.getHostMessenger(), m_dir.getPath()).hasReplayedSegments());
+        assertTrue(new GroupCommitCommandLogReinitiator(0, StartAction.RECOVER,
+                m_mockVolt.getHostMessenger(), m_dir.getPath()).hasReplayedSegments());
+    }
+
+    public void testReplay() throws Exception {
+        startLog(true, 100, Long.MAX_VALUE);
+        MockListener listener = new MockListener();
+        TxnEgo egos[] = new TxnEgo[] { TxnEgo.makeZero(0), TxnEgo.makeZero(1), TxnEgo.makeZero(2) };
+        final int involved[] = new int[] { 0, 1 };
+        // partition 1's first transaction is in the snapshot the replay starts from
+        final long inSnapshot = (egos[1] = egos[1].makeNext()).getTxnId();
+        m_log.log(makeInitiate(1000, 2000, true), inSnapshot, null, listener, mock(TransactionTask.class));
+        m_log.log(makeInitiate(1001, 2001, true), (egos[0] = egos[0].makeNext()).getTxnId(), null, listener,
+                mock(TransactionTask.class));
+        // every partition a multi-partition transaction involves logs it
+        Iv2InitiateTaskMessage mp = makeInitiate(1002, 2002, false);
+        m_log.log(mp, (egos[0] = egos[0].makeNext()).getTxnId(), involved, listener, mock(TransactionTask.class));
+        m_log.log(mp, (egos[1] = egos[1].makeNext()).getTxnId(), involved, listener, mock(TransactionTask.class));
+        m_log.log(makeInitiate(1003, 2003, true), (egos[0] = egos[0].makeNext()).getTxnId(), null, listener,
+                mock(TransactionTask.class));
+        m_log.log(makeInitiate(1004, 2004, true), (egos[1] = egos[1].makeNext()).getTxnId(), null, listener,
+                mock(TransactionTask.class));
+        m_log.log(makeInitiate(1005, 2005, true), (egos[2] = egos[2].makeNext()).getTxnId(), null, listener,
+                mock(TransactionTask.class));
+        listener.awaitReleased(7);
+        m_log.shutdown();
+        m_log = null;
+
+        // partitions 0 and 1 and the MPI are mastered here, partition 2 elsewhere
+        final int hostId = m_mockVolt.getHostMessenger().getHostId();
+        LeaderCache masters = new LeaderCache(m_mockVolt.getHostMessenger().getZK(), VoltZK.iv2masters);
+        masters.put(0, CoreUtils.getHSIdFromHostAndSite(hostId, 1));
+        masters.put(1, CoreUtils.getHSIdFromHostAndSite(hostId, 2));
+        masters.put(2, CoreUtils.getHSIdFromHostAndSite(hostId + 1, 1));
+        masters.put(MpInitiator.MP_INIT_PID, CoreUtils.getHSIdFromHostAndSite(hostId, 3));
+
+        GroupCommitCommandLogReinitiator reinitiator = new GroupCommitCommandLogReinitiator(hostId,
+                StartAction.RECOVER, m_mockVolt.getHostMessenger(), m_dir.getPath());
+        assertTrue(reinitiator.hasReplayedSegments());
+        assertEquals(m_mockVolt.getHostMessenger().getInstanceId(), reinitiator.getInstanceId());
+        RestoreAgent.SnapshotInfo info = new RestoreAgent.SnapshotInfo(Long.MIN_VALUE, "", "", 3, 3, 0, hostId,
+                reinitiator.getInstanceId(), Collections.<String>emptySet());
+        Map<Integer, Long> snapshotTxnIds = new TreeMap<Integer, Long>();
+        snapshotTxnIds.put(1, inSnapshot);
+        info.setPidToTxnIdMap(snapshotTxnIds);
+        reinitiator.setSnapshotTxnId(info);
+
+        MockInitiator initiator = new MockInitiator();
+        final CountDownLatch done = new CountDownLatch(1);
+        reinitiator.setCallback(new CommandLogReinitiator.Callback() {
+            @Override
+            public void onReplayCompletion() {
+                done.countDown();
+            }
+        });
+        reinitiator.setInitiator(initiator);
+        reinitiator.generateReplayPlan(0, Long.MIN_VALUE, 3, true);
+        reinitiator.replay();
+        assertTrue(done.await(30, TimeUnit.SECONDS));
+
+        // each partition gets its own transactions with a sentinel where the MP transaction goes
+        assertEquals(Arrays.asList("sp 0 2001", "sentinel 0 2002", "sp 0 2003", "eol 0"), initiator.sentTo(0));
+        assertEquals(Arrays.asList("sentinel 1 2002", "sp 1 2004", "eol 1"), initiator.sentTo(1));
+        assertTrue(initiator.sentTo(2).isEmpty());
+        // and the MPI initiates the MP transaction once
+        assertEquals(Arrays.asList("mp " + MpInitiator.MP_INIT_PID + " 2002", "eol " + MpInitiator.MP_INIT_PID),
+                initiator.sentTo(MpInitiator.MP_INIT_PID));
+        assertTrue(reinitiator.hasReplayedTxns());
+
+        reinitiator.returnAllSegments();
+        assertTrue(CommandLogSegment.listSegmentFiles(m_dir).isEmpty());
+    }
+}
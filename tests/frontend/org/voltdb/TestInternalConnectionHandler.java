@@ -0,0 +1,238 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.voltdb.catalog.Procedure;
+import org.voltdb.client.ClientResponse;
+import org.voltdb.client.ProcedureCallback;
+
+public class TestInternalConnectionHandler {
+
+    private static class Submitted {
+        final String procName;
+        final Object[] params;
+        final ProcedureCallback cb;
+        final int partition;
+
+        Submitted(String procName, Object[] params, ProcedureCallback cb, int partition) {
+            this.procName = procName;
+            this.params = params;
+            this.cb = cb;
+            this.partition = partition;
+        }
+    }
+
+    private static class RecordingAdapter extends InternalClientResponseAdapter {
+        final LinkedBlockingQueue<Submitted> submitted = new LinkedBlockingQueue<>();
+
+        RecordingAdapter() {
+            super(1);
+        }
+
+        @Override
+        public boolean createTransaction(InternalAdapterTaskAttributes kattrs, String procName, Procedure catProc,
+                ProcedureCallback proccb, InternalConnectionStatsCollector statsCollector,
+                StoredProcedureInvocation task, AuthSystem.AuthUser user, int partition, long nowNanos) {
+            submitted.add(new Submitted(procName, task.getParams().toArray(), proccb, partition));
+            return true;
+        }
+    }
+
+    private static class RecordingCallback implements ProcedureCallback {
+        final List<ClientResponse> responses = new CopyOnWriteArrayList<>();
+
+        @Override
+        public void clientCallback(ClientResponse response) {
+            responses.add(response);
+        }
+    }
+
+    private static final InternalConnectionContext s_caller = new InternalConnectionContext() {
+        @Override
+        public String getName() {
+            return "TestImporter";
+        }
+
+        @Override
+        public void setBackPressure(boolean hasBackPressure) {
+        }
+    };
+
+    private MockVoltDB m_vdb;
+    private RecordingAdapter m_adapter;
+    private InternalConnectionHandler m_handler;
+    private final List<String> m_completions = new CopyOnWriteArrayList<>();
+
+    @Before
+    public void setUp() {
+        m_vdb = new MockVoltDB();
+        m_vdb.addTable("P", false);
+        m_vdb.addColumnToTable("P", "ID", VoltType.BIGINT, false, "", VoltType.BIGINT);
+        m_vdb.addColumnToTable("P", "VAL", VoltType.STRING, true, "", VoltType.STRING);
+        m_vdb.getTable("P").setPartitioncolumn(m_vdb.getTable("P").getColumns().get("ID"));
+        m_vdb.addTable("R", true);
+        m_vdb.addColumnToTable("R", "ID", VoltType.BIGINT, false, "", VoltType.BIGINT);
+        VoltDB.replaceVoltDBInstanceForTest(m_vdb);
+        TheHashinator.initialize(TheHashinator.getConfiguredHashinatorClass(), TheHashinator.getConfigureBytes(3));
+
+        m_adapter = new RecordingAdapter();
+        m_handler = new InternalConnectionHandler(m_adapter, null);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        m_vdb.shutdown(null);
+    }
+
+    private InternalConnectionStatsCollector stats() {
+        return new InternalConnectionStatsCollector() {
+            @Override
+            public void reportCompletion(String callerName, String procName, ClientResponse response) {
+                m_completions.add(procName + ":" + response.getStatus());
+            }
+        };
+    }
+
+    private static List<Object[]> rows(int count) {
+        List<Object[]> rows = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            rows.add(new Object[] { i, "row" + i });
+        }
+        return rows;
+    }
+
+    private static List<ProcedureCallback> callbacks(int count) {
+        List<ProcedureCallback> callbacks = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            callbacks.add(new RecordingCallback());
+        }
+        return callbacks;
+    }
+
+    @Test
+    public void testDefaultInsertLoadedPerPartition() throws Exception {
+        final int rowCount = 30;
+        List<ProcedureCallback> callbacks = callbacks(rowCount);
+        boolean[] queued = m_handler.callProcedures(s_caller, stats(), callbacks, "P.insert", rows(rowCount));
+        for (boolean q : queued) {
+            assertTrue(q);
+        }
+
+        Set<Integer> partitions = new HashSet<>();
+        for (int i = 0; i < rowCount; i++) {
+            partitions.add(TheHashinator.getPartitionForParameter(VoltType.BIGINT, (long) i));
+        }
+        assertEquals(partitions.size(), m_adapter.submitted.size());
+
+        Set<Long> loaded = new HashSet<>();
+        for (Submitted s : m_adapter.submitted) {
+            assertEquals("@LoadSinglepartitionTable", s.procName);
+            assertEquals("P", s.params[1]);
+            assertTrue(partitions.remove(s.partition));
+            VoltTable table = (VoltTable) s.params[3];
+            while (table.advanceRow()) {
+                long id = table.getLong(0);
+                assertEquals("row" + id, table.getString(1));
+                assertEquals(s.partition, TheHashinator.getPartitionForParameter(VoltType.BIGINT, id));
+                loaded.add(id);
+            }
+        }
+        assertEquals(rowCount, loaded.size());
+
+        // every row of a batch gets the batch response and is counted as a completion
+        for (Submitted s : m_adapter.submitted) {
+            s.cb.clientCallback(new ClientResponseImpl(ClientResponse.SUCCESS, new VoltTable[0], null));
+        }
+        for (ProcedureCallback cb : callbacks) {
+            assertEquals(1, ((RecordingCallback) cb).responses.size());
+        }
+        assertEquals(rowCount, m_completions.size());
+        for (String completion : m_completions) {
+            assertEquals("P.insert:" + ClientResponse.SUCCESS, completion);
+        }
+    }
+
+    @Test
+    public void testFailedBatchInsertsRowsOneAtATime() throws Exception {
+        final int rowCount = 30;
+        List<Object[]> rows = rows(rowCount);
+        List<ProcedureCallback> callbacks = callbacks(rowCount);
+        m_handler.callProcedures(s_caller, stats(), callbacks, "P.insert", rows);
+
+        Submitted batch = m_adapter.submitted.poll();
+        VoltTable table = (VoltTable) batch.params[3];
+        Set<Long> batchIds = new HashSet<>();
+        while (table.advanceRow()) {
+            batchIds.add(table.getLong(0));
+        }
+        m_adapter.submitted.clear();
+
+        batch.cb.clientCallback(new ClientResponseImpl(ClientResponse.GRACEFUL_FAILURE, new VoltTable[0], "constraint"));
+
+        Map<Long, ProcedureCallback> retried = new HashMap<>();
+        for (int i = 0; i < batchIds.size(); i++) {
+            Submitted s = m_adapter.submitted.poll(10, TimeUnit.SECONDS);
+            assertEquals("P.insert", s.procName);
+            retried.put(((Number) s.params[0]).longValue(), s.cb);
+        }
+        assertNull(m_adapter.submitted.poll(100, TimeUnit.MILLISECONDS));
+        assertEquals(batchIds, retried.keySet());
+        // the rows get their own responses, not the one of the failed batch
+        for (long id : batchIds) {
+            assertTrue(retried.get(id) == callbacks.get((int) id));
+            assertTrue(((RecordingCallback) callbacks.get((int) id)).responses.isEmpty());
+        }
+        assertTrue(m_completions.isEmpty());
+    }
+
+    @Test
+    public void testOtherProceduresCalledPerRow() throws Exception {
+        List<Object[]> rows = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            rows.add(new Object[] { i });
+        }
+        m_handler.callProcedures(s_caller, stats(), callbacks(5), "R.insert", rows);
+        assertEquals(5, m_adapter.submitted.size());
+        for (Submitted s : m_adapter.submitted) {
+            assertEquals("R.insert", s.procName);
+        }
+    }
+}
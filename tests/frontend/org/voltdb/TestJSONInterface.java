@@ -64,6 +64,7 @@ import java.net.HttpURLConnection;
 import java.net.URI;
 import java.net.URL;
 import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.HashMap;
@@ -97,6 +98,7 @@ import org.voltdb.client.ClientAuthScheme;
 import org.voltdb.client.ClientConfig;
 import org.voltdb.client.ClientFactory;
 import org.voltdb.client.ClientResponse;
+import org.voltdb.client.HTTPResponseDecoder;
 import org.voltdb.client.ProcedureCallback;
 import org.voltdb.compiler.VoltProjectBuilder;
 import org.voltdb.compiler.VoltProjectBuilder.ProcedureInfo;
@@ -1434,6 +1436,73 @@ public class TestJSONInterface extends TestCase {
         }
     }
 
+    public void testBinaryResponseFormat() throws Exception {
+        try {
+            String simpleSchema
+                    = "CREATE TABLE foo (\n"
+                    + "    bar BIGINT NOT NULL,\n"
+                    + "    b VARCHAR(256) DEFAULT NULL,\n"
+                    + "    PRIMARY KEY (bar)\n"
+                    + ");";
+
+            VoltProjectBuilder builder = new VoltProjectBuilder();
+            builder.addLiteralSchema(simpleSchema);
+            builder.addPartitionInfo("foo", "bar");
+            builder.addStmtProcedure("Insert", "insert into foo values (?, ?);");
+            builder.addStmtProcedure("Select", "select * from foo order by bar;");
+            builder.setHTTPDPort(8095);
+            boolean success = builder.compile(Configuration.getPathToCatalogForTest("json.jar"));
+            assertTrue(success);
+
+            VoltDB.Configuration config = new VoltDB.Configuration();
+            config.m_pathToCatalog = config.setPathToCatalogForTest("json.jar");
+            config.m_pathToDeployment = builder.getPathToDeployment();
+            server = new ServerThread(config);
+            server.start();
+            server.waitForInitialization();
+
+            for (int i = 0; i < 100; i++) {
+                ClientResponse r = callProcOverBinary("Procedure=Insert&Parameters=[" + i + ",\"row" + i + "\"]");
+                assertEquals(ClientResponse.SUCCESS, r.getStatus());
+                assertEquals(1, r.getResults()[0].asScalarLong());
+            }
+
+            ClientResponse r = callProcOverBinary("Procedure=Select");
+            assertEquals(ClientResponse.SUCCESS, r.getStatus());
+            VoltTable result = r.getResults()[0];
+            assertEquals(100, result.getRowCount());
+            // the same rows as the JSON response
+            Response json = responseFromJSON(callProcOverJSONRaw("Procedure=Select", 200));
+            assertEquals(json.results[0].toJSONString(), result.toJSONString());
+
+            // errors from before the procedure runs are JSON, the decoder handles both
+            r = callProcOverBinary("Procedure=Select&Parameters=[x4{]");
+            assertEquals(ClientResponse.UNEXPECTED_FAILURE, r.getStatus());
+        } finally {
+            if (server != null) {
+                server.shutdown();
+                server.join();
+            }
+            server = null;
+        }
+    }
+
+    private static ClientResponse callProcOverBinary(String varString) throws Exception {
+        HttpURLConnection conn = (HttpURLConnection) new URL("http://localhost:8095/api/1.0/").openConnection();
+        conn.setRequestMethod("POST");
+        conn.setDoOutput(true);
+        conn.setRequestProperty("Content-Type", "application/x-www-form-urlencoded");
+        HTTPResponseDecoder.acceptBinary(conn);
+        try (OutputStream os = conn.getOutputStream()) {
+            os.write(varString.getBytes(StandardCharsets.UTF_8));
+        }
+        try {
+            return HTTPResponseDecoder.decode(conn);
+        } finally {
+            conn.disconnect();
+        }
+    }
+
     public void testGarbageProcs() throws Exception {
         try {
             String simpleSchema
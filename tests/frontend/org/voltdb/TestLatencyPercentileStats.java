@@ -0,0 +1,125 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb;
+
+import java.util.ArrayList;
+
+import junit.framework.TestCase;
+
+import org.voltdb.VoltTable.ColumnInfo;
+
+public class TestLatencyPercentileStats extends TestCase
+{
+    private static VoltTable poll(VoltTable table, LatencyPercentileStats stats, boolean interval) {
+        for (Object row[] : stats.getStatsRows(interval, System.currentTimeMillis())) {
+            table.addRow(row);
+        }
+        return table;
+    }
+
+    private static VoltTable emptyTable(LatencyPercentileStats stats) {
+        ArrayList<ColumnInfo> columns = stats.getColumnSchema();
+        return new VoltTable(columns.toArray(new ColumnInfo[columns.size()]));
+    }
+
+    public void testMergeAcrossSites() {
+        LatencyPercentileStats site1 = new LatencyPercentileStats(1);
+        LatencyPercentileStats site2 = new LatencyPercentileStats(2);
+        LatencyPercentileStats.Distribution proc1 = site1.distribution(LatencyPercentileStats.Type.PROCEDURE, "Insert");
+        LatencyPercentileStats.Distribution proc2 = site2.distribution(LatencyPercentileStats.Type.PROCEDURE, "Insert");
+        assertSame(proc1, site1.distribution(LatencyPercentileStats.Type.PROCEDURE, "Insert"));
+        // 1000 calls of 1 to 1000 microseconds spread over the two sites
+        for (int i = 1; i <= 1000; i++) {
+            (i % 2 == 0 ? proc1 : proc2).recordNanos(i * 1000L);
+        }
+        site2.distribution(LatencyPercentileStats.Type.QUEUE, "0").recordNanos(5000);
+        // a distribution nothing was recorded in has no row
+        site2.distribution(LatencyPercentileStats.Type.STATEMENT, "Insert.stmt");
+
+        VoltTable siteRows = emptyTable(site1);
+        poll(siteRows, site1, false);
+        poll(siteRows, site2, false);
+        assertEquals(3, siteRows.getRowCount());
+
+        VoltTable merged = LatencyPercentileStats.aggregate(siteRows);
+        assertEquals(2, merged.getRowCount());
+        merged.advanceRow();
+        assertEquals("PROCEDURE", merged.getString("TYPE"));
+        assertEquals("Insert", merged.getString("NAME"));
+        assertEquals(1000, merged.getLong("COUNT"));
+        assertEquals(500, merged.getLong("P50"), 5);
+        assertEquals(990, merged.getLong("P99"), 10);
+        assertEquals(999, merged.getLong("P999"), 10);
+        assertEquals(1000, merged.getLong("MAX"), 10);
+        merged.advanceRow();
+        assertEquals("QUEUE", merged.getString("TYPE"));
+        assertEquals(1, merged.getLong("COUNT"));
+        assertEquals(5, merged.getLong("MAX"));
+    }
+
+    public void testIntervals() {
+        LatencyPercentileStats site = new LatencyPercentileStats(1);
+        LatencyPercentileStats.Distribution proc = site.distribution(LatencyPercentileStats.Type.PROCEDURE, "Select");
+        proc.recordNanos(10000);
+        proc.recordNanos(20000);
+
+        VoltTable rows = poll(emptyTable(site), site, true);
+        rows.advanceRow();
+        assertEquals(2, rows.getLong("COUNT"));
+
+        proc.recordNanos(30000);
+        rows = poll(emptyTable(site), site, true);
+        rows.advanceRow();
+        assertEquals(1, rows.getLong("COUNT"));
+        assertEquals(30, rows.getLong("P50"), 1);
+
+        // nothing since the last interval, but the totals still have everything
+        assertEquals(0, poll(emptyTable(site), site, true).getRowCount());
+        rows = poll(emptyTable(site), site, false);
+        rows.advanceRow();
+        assertEquals(3, rows.getLong("COUNT"));
+    }
+
+    public void testClear() {
+        LatencyPercentileStats site = new LatencyPercentileStats(1);
+        LatencyPercentileStats.Distribution queue = site.distribution(LatencyPercentileStats.Type.QUEUE, "0");
+        site.distribution(LatencyPercentileStats.Type.PROCEDURE, "Dropped").recordNanos(1000);
+        site.distribution(LatencyPercentileStats.Type.STATEMENT, "Dropped.stmt").recordNanos(1000);
+        queue.recordNanos(1000);
+        assertEquals(3, poll(emptyTable(site), site, false).getRowCount());
+
+        // the catalog update drops the procedures, the queue keeps recording into its distribution
+        site.clearProcedures();
+        queue.recordNanos(1000);
+        VoltTable rows = poll(emptyTable(site), site, false);
+        assertEquals(1, rows.getRowCount());
+        rows.advanceRow();
+        assertEquals("QUEUE", rows.getString("TYPE"));
+        assertEquals(2, rows.getLong("COUNT"));
+        assertSame(queue, site.distribution(LatencyPercentileStats.Type.QUEUE, "0"));
+
+        site.clear();
+        assertEquals(0, poll(emptyTable(site), site, false).getRowCount());
+    }
+}
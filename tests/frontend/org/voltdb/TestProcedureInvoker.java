@@ -0,0 +1,237 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.voltdb.types.TimestampType;
+
+import junit.framework.TestCase;
+
+public class TestProcedureInvoker extends TestCase {
+
+    public static class LongProc {
+        public Object arg;
+        public long run(long a) { arg = a; return a; }
+    }
+
+    public static class IntProc {
+        public Object arg;
+        public void run(int a) { arg = a; }
+    }
+
+    public static class ShortProc {
+        public Object arg;
+        public void run(short a) { arg = a; }
+    }
+
+    public static class ByteProc {
+        public Object arg;
+        public void run(byte a) { arg = a; }
+    }
+
+    public static class DoubleProc {
+        public Object arg;
+        public void run(double a) { arg = a; }
+    }
+
+    public static class StringProc {
+        public Object arg;
+        public void run(String a) { arg = a; }
+    }
+
+    public static class TimestampProc {
+        public Object arg;
+        public void run(TimestampType a) { arg = a; }
+    }
+
+    public static class MixedProc {
+        public static Object[] args;
+        public static long run(long a, int b, double c, String d, BigDecimal e, long[] f, byte g) {
+            args = new Object[] { a, b, c, d, e, f, g };
+            return a + b;
+        }
+    }
+
+    public static class ThrowingProc {
+        public void run(long a) {
+            throw new IllegalStateException("run failed " + a);
+        }
+    }
+
+    static final Object[] WIRE_VALUES = new Object[] {
+        null,
+        (byte) 7, (byte) -7, VoltType.NULL_TINYINT,
+        (short) 300, (short) -300, VoltType.NULL_SMALLINT,
+        70000, -70000, VoltType.NULL_INTEGER, 12,
+        5000000000L, -5L, VoltType.NULL_BIGINT, 100L,
+        1.5, VoltType.NULL_FLOAT,
+        "42", " 1,000 ", "abc", "", "\\N", "X'0A'",
+        VoltType.NULL_STRING_OR_VARBINARY,
+        new TimestampType(1234567L),
+        new BigDecimal("3.25"),
+    };
+
+    static ByteBuffer serialize(Object... params) throws Exception {
+        ParameterSet pset = ParameterSet.fromArrayNoCopy(params);
+        ByteBuffer buf = ByteBuffer.allocate(pset.getSerializedSize());
+        pset.flattenToBuffer(buf);
+        buf.flip();
+        return buf;
+    }
+
+    static Object argOf(Object proc) throws Exception {
+        return proc.getClass().getField("arg").get(proc);
+    }
+
+    /**
+     * Every wire value decoded by the invoker must reach run() as the same value
+     * ParameterConverter produces from the deserialized ParameterSet, or fail
+     * with the same conversion error.
+     */
+    public void testMatchesParameterConverter() throws Exception {
+        Class<?>[] procClasses = new Class<?>[] {
+            LongProc.class, IntProc.class, ShortProc.class, ByteProc.class,
+            DoubleProc.class, StringProc.class, TimestampProc.class
+        };
+        for (Class<?> procClass : procClasses) {
+            for (Object wireValue : WIRE_VALUES) {
+                Object proc = procClass.newInstance();
+                Method run = procClass.getMethod("run", runParamType(procClass));
+                Class<?> type = run.getParameterTypes()[0];
+                ProcedureInvoker invoker = ProcedureInvoker.create(run, proc);
+                assertNotNull(invoker);
+
+                ByteBuffer buf = serialize(wireValue);
+                Object deserialized = ParameterSet.fromByteBuffer(buf.duplicate()).getParam(0);
+                Object expected = null;
+                String expectedError = null;
+                try {
+                    expected = ParameterConverter.tryToMakeCompatible(type, deserialized);
+                } catch (Exception e) {
+                    expectedError = e.toString();
+                }
+                if (expectedError == null && !convertsToExactType(expected, type)) {
+                    // ProcedureRunner asserts on these, so does the invoker
+                    continue;
+                }
+
+                String context = procClass.getSimpleName() + " <- " + wireValue;
+                try {
+                    assertEquals(context, 1, invoker.decode(buf));
+                    assertNull(context + " should fail with " + expectedError, expectedError);
+                    assertEquals(context, buf.limit(), invoker.getSerializedSize());
+                    invoker.invoke();
+                    assertEquals(context, expected, argOf(proc));
+                } catch (ProcedureInvoker.ParameterConversionException e) {
+                    assertEquals(context, 0, e.m_index);
+                    assertEquals(context, expectedError, e.getCause().toString());
+                }
+                assertFalse(context, buf.hasRemaining());
+            }
+        }
+    }
+
+    private static boolean convertsToExactType(Object value, Class<?> type) {
+        try {
+            return ParameterConverter.verifyParameterConversion(value, type);
+        } catch (AssertionError e) {
+            return false;
+        }
+    }
+
+    private static Class<?> runParamType(Class<?> procClass) {
+        for (Method m : procClass.getMethods()) {
+            if (m.getName().equals("run")) {
+                return m.getParameterTypes()[0];
+            }
+        }
+        throw new AssertionError("no run() in " + procClass);
+    }
+
+    public void testMixedStaticRun() throws Exception {
+        Method run = MixedProc.class.getMethod("run", long.class, int.class, double.class,
+                String.class, BigDecimal.class, long[].class, byte.class);
+        ProcedureInvoker invoker = ProcedureInvoker.create(run, new MixedProc());
+        assertNotNull(invoker);
+
+        long[] array = new long[] { 1, 2, 3 };
+        assertEquals(7, invoker.decode(serialize(
+                3, (short) 4, 2.5, "str", new BigDecimal("1.5"), array, (byte) 9)));
+        assertEquals(7L, invoker.invoke());
+        assertEquals(3L, MixedProc.args[0]);
+        assertEquals(4, MixedProc.args[1]);
+        assertEquals(2.5, MixedProc.args[2]);
+        assertEquals("str", MixedProc.args[3]);
+        assertEquals(0, new BigDecimal("1.5").compareTo((BigDecimal) MixedProc.args[4]));
+        assertTrue(Arrays.equals(array, (long[]) MixedProc.args[5]));
+        assertEquals((byte) 9, MixedProc.args[6]);
+
+        // the invoker is reused for the next call
+        assertEquals(7, invoker.decode(serialize(
+                10L, 20, 0.5, null, null, null, null)));
+        assertEquals(30L, invoker.invoke());
+        assertNull(MixedProc.args[3]);
+        assertNull(MixedProc.args[4]);
+        assertNull(MixedProc.args[5]);
+        assertEquals(VoltType.NULL_TINYINT, MixedProc.args[6]);
+    }
+
+    public void testWrongParamCount() throws Exception {
+        Method run = LongProc.class.getMethod("run", long.class);
+        ProcedureInvoker invoker = ProcedureInvoker.create(run, new LongProc());
+        assertEquals(2, invoker.decode(serialize(1L, 2L)));
+        assertEquals(0, invoker.decode(serialize()));
+    }
+
+    public void testConversionErrorIndex() throws Exception {
+        Method run = MixedProc.class.getMethod("run", long.class, int.class, double.class,
+                String.class, BigDecimal.class, long[].class, byte.class);
+        ProcedureInvoker invoker = ProcedureInvoker.create(run, null);
+        try {
+            invoker.decode(serialize(1L, 2, 3.0, "s", null, null, 1000));
+            fail();
+        } catch (ProcedureInvoker.ParameterConversionException e) {
+            assertEquals(6, e.m_index);
+            assertTrue(e.getCause() instanceof VoltTypeException);
+        }
+    }
+
+    public void testRunExceptionIsWrapped() throws Exception {
+        Method run = ThrowingProc.class.getMethod("run", long.class);
+        ProcedureInvoker invoker = ProcedureInvoker.create(run, new ThrowingProc());
+        invoker.decode(serialize(5L));
+        try {
+            invoker.invoke();
+            fail();
+        } catch (InvocationTargetException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+            assertEquals("run failed 5", e.getCause().getMessage());
+        }
+    }
+}
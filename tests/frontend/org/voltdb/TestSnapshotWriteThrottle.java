@@ -0,0 +1,98 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb;
+
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+public class TestSnapshotWriteThrottle extends TestCase
+{
+    private static final long MB = 1024 * 1024;
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    public void testUnpaced() {
+        // nothing configured
+        SnapshotWriteThrottle throttle = new SnapshotWriteThrottle(0, 0);
+        throttle.start(true, 0);
+        throttle.recordWork(100 * MB, 0);
+        assertEquals(0, throttle.delayNanos(1, 0));
+
+        // streams to other nodes are never paced
+        throttle = new SnapshotWriteThrottle(10 * MB, 0);
+        throttle.start(false, 0);
+        throttle.recordWork(100 * MB, 0);
+        assertEquals(0, throttle.delayNanos(1, 0));
+    }
+
+    public void testBudgetSharedBySites() {
+        SnapshotWriteThrottle throttle = new SnapshotWriteThrottle(10 * MB, 0);
+        throttle.start(true, 0);
+        assertEquals(0, throttle.delayNanos(2, 0));
+        // half the budget, 5MB takes a second
+        throttle.recordWork(5 * MB, 0);
+        assertEquals(SECOND, throttle.delayNanos(2, 0));
+        assertEquals(SECOND / 2, throttle.delayNanos(2, SECOND / 2));
+        assertEquals(0, throttle.delayNanos(2, 2 * SECOND));
+    }
+
+    public void testLatencyFeedback() {
+        final long target = TimeUnit.MILLISECONDS.toNanos(50);
+        SnapshotWriteThrottle throttle = new SnapshotWriteThrottle(100 * MB, target);
+        throttle.start(true, 0);
+        assertEquals(100.0 * MB, throttle.rate());
+
+        // fast writes stay at the budget
+        throttle.recordWriteLatency(target / 10, target);
+        assertEquals(100.0 * MB, throttle.rate());
+
+        // slow writes back off, but at most once per latency period
+        throttle.recordWork(20 * MB, SECOND);
+        throttle.recordWriteLatency(target * 10, SECOND);
+        assertEquals(10.0 * MB, throttle.rate());
+        throttle.recordWriteLatency(target * 10, SECOND + 1);
+        assertEquals(10.0 * MB, throttle.rate());
+
+        // and recover by a tenth of the budget once latency is back under the target
+        for (int i = 0; i < 20; i++) {
+            throttle.recordWriteLatency(0, 2 * SECOND);
+        }
+        assertTrue(throttle.rate() > 10.0 * MB);
+        for (int i = 0; i < 20; i++) {
+            throttle.recordWriteLatency(0, 2 * SECOND);
+        }
+        assertEquals(100.0 * MB, throttle.rate());
+    }
+
+    public void testFloor() {
+        final long target = TimeUnit.MILLISECONDS.toNanos(1);
+        SnapshotWriteThrottle throttle = new SnapshotWriteThrottle(0, target);
+        throttle.start(true, 0);
+        throttle.recordWork(MB, SECOND);
+        for (int i = 1; i < 100; i++) {
+            throttle.recordWriteLatency(SECOND, SECOND + i * target);
+        }
+        assertEquals(SnapshotWriteThrottle.MIN_BYTES_PER_SECOND, throttle.rate());
+    }
+}
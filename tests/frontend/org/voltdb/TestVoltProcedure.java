@@ -54,6 +54,7 @@ import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
 
 import java.math.BigDecimal;
+import java.nio.ByteBuffer;
 import java.util.Date;
 
 import org.voltcore.utils.CoreUtils;
@@ -308,6 +309,7 @@ public class TestVoltProcedure extends TestCase {
         doReturn(42).when(site).getCorrespondingPartitionId();
         doReturn(executionSiteId).when(site).getCorrespondingSiteId();
         doReturn(expectedClusterId).when(site).getCorrespondingClusterId();
+        doReturn(new LatencyPercentileStats(executionSiteId)).when(site).getLatencyStats();
         nullParam = ParameterSet.fromArrayNoCopy(new Object[]{null});
     }
 
@@ -465,6 +467,48 @@ public class TestVoltProcedure extends TestCase {
         assertTrue(((Long)statsRow[0][9]) > 0L);
     }
 
+    public void testSerializedParams() throws Exception {
+        ClientResponse r = callSerializedWithArgs(LongProcedure.class, Integer.valueOf(-1000));
+        assertEquals(-1000L, LongProcedure.arg);
+        assertEquals(ClientResponse.SUCCESS, r.getStatus());
+
+        r = callSerializedWithArgs(IntegerProcedure.class, (Object) null);
+        assertEquals(VoltType.NULL_INTEGER, IntegerProcedure.arg);
+        assertEquals(ClientResponse.SUCCESS, r.getStatus());
+
+        r = callSerializedWithArgs(StringProcedure.class, "abc");
+        assertEquals("abc", StringProcedure.arg);
+        assertEquals(ClientResponse.SUCCESS, r.getStatus());
+
+        r = callSerializedWithArgs(TimestampProcedure.class, 5L);
+        assertEquals(new TimestampType(5L), TimestampProcedure.arg);
+        assertEquals(ClientResponse.SUCCESS, r.getStatus());
+
+        r = callSerializedWithArgs(NPEProcedure.class, (Object) null);
+        assertEquals(ClientResponse.UNEXPECTED_FAILURE, r.getStatus());
+        assertTrue(r.getStatusString().contains("java.lang.NullPointerException"));
+    }
+
+    public void testSerializedParamErrors() throws Exception {
+        // the errors match the ones for deserialized parameters
+        ClientResponse expected = callWithArgs(ByteProcedure.class, 1L, 2L);
+        ClientResponse r = callSerializedWithArgs(ByteProcedure.class, 1L, 2L);
+        assertEquals(ClientResponse.GRACEFUL_FAILURE, r.getStatus());
+        assertEquals(expected.getStatusString(), r.getStatusString());
+
+        expected = callWithArgs(ByteProcedure.class, 1000L);
+        r = callSerializedWithArgs(ByteProcedure.class, 1000L);
+        assertEquals(ClientResponse.GRACEFUL_FAILURE, r.getStatus());
+        assertTrue(r.getStatusString().contains("TYPE ERROR FOR PARAMETER 0"));
+        assertEquals(expected.getStatusString(), r.getStatusString());
+
+        ByteBuffer corrupt = ByteBuffer.allocate(3);
+        corrupt.putShort((short) 1).put((byte) 127).flip();
+        r = newRunner(ByteProcedure.class).callWithSerializedParams(corrupt);
+        assertEquals(ClientResponse.GRACEFUL_FAILURE, r.getStatus());
+        assertTrue(r.getStatusString().contains("Exception while deserializing procedure params"));
+    }
+
     public void testGetClusterId() {
         GetClusterIdProcedure gcip = new GetClusterIdProcedure();
         ProcedureRunner runner = new ProcedureRunner(
@@ -480,7 +524,23 @@ public class TestVoltProcedure extends TestCase {
         return callWithArgs(procedure, (Object) null);
     }
 
+    private ClientResponse callSerializedWithArgs(Class<? extends NullProcedureWrapper> procedure, Object... args)
+            throws Exception {
+        ParameterSet params = ParameterSet.fromArrayNoCopy(args);
+        ByteBuffer buf = ByteBuffer.allocate(params.getSerializedSize());
+        params.flattenToBuffer(buf);
+        buf.flip();
+        ProcedureRunner runner = newRunner(procedure);
+        assertTrue(runner.acceptsSerializedParams());
+        return runner.callWithSerializedParams(buf);
+    }
+
     private ClientResponse callWithArgs(Class<? extends NullProcedureWrapper> procedure, Object... args) {
+        ProcedureRunner runner = newRunner(procedure);
+        return runner.call(args);
+    }
+
+    private ProcedureRunner newRunner(Class<? extends NullProcedureWrapper> procedure) {
         NullProcedureWrapper wrapper = null;
         try {
             wrapper = procedure.newInstance();
@@ -494,7 +554,7 @@ public class TestVoltProcedure extends TestCase {
                 VoltDB.instance().getCatalogContext().database.getProcedures().get(LongProcedure.class.getName()), null);
 
         runner.setupTransaction(null);
-        return runner.call(args);
+        return runner;
     }
 
     private class MockStatsAgent extends StatsAgent {
@@ -24,14 +24,17 @@
 package org.voltdb;
 
 import java.io.IOException;
+import java.io.StringWriter;
 import java.math.BigDecimal;
 import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.Random;
 
 import org.json_voltpatches.JSONException;
+import org.json_voltpatches.JSONWriter;
 import org.voltdb.TableHelper.RandomTable;
 import org.voltdb.VoltTable.ColumnInfo;
+import org.voltdb.client.ClientResponse;
 import org.voltdb.types.GeographyPointValue;
 import org.voltdb.types.GeographyValue;
 import org.voltdb.types.TimestampType;
@@ -1163,6 +1166,33 @@ public class TestVoltTable extends TestCase {
         assertTrue(t1.equals(t2));
     }
 
+    public void testJSONWriterMatchesJSONString() throws JSONException, IOException {
+        VoltTable t1 = new VoltTable(new ColumnInfo("bigint", VoltType.BIGINT),
+                                     new ColumnInfo("float", VoltType.FLOAT),
+                                     new ColumnInfo("string", VoltType.STRING),
+                                     new ColumnInfo("varbinary", VoltType.VARBINARY),
+                                     new ColumnInfo("point", VoltType.GEOGRAPHY_POINT));
+        t1.addRow(null, null, null, null, null);
+        t1.addRow(1L, Double.NaN, "quote \" and \\ newline \n", new byte[] { 1, 2 }, GEOG_PT_VALUE);
+        for (int i = 0; i < 100; i++) {
+            t1.addRow(i, i * 0.5, "row" + i, new byte[] { (byte)i }, GEOG_PT_VALUE);
+        }
+        // reading the rows for JSON must not move the table's own position
+        t1.advanceRow();
+
+        StringWriter table = new StringWriter();
+        t1.toJSONWriter(new JSONWriter(table));
+        assertEquals(t1.toJSONString(), table.toString());
+        assertEquals(0, t1.getActiveRowIndex());
+
+        ClientResponseImpl response = new ClientResponseImpl(ClientResponse.SUCCESS,
+                new VoltTable[] { t1, new VoltTable(new ColumnInfo("empty", VoltType.INTEGER)), LONG_FIVE },
+                "status");
+        StringWriter streamed = new StringWriter();
+        response.toJSONWriter(new JSONWriter(streamed));
+        assertEquals(response.toJSONString(), streamed.toString());
+    }
+
     /**
      * Java won't let you pass >255 args to a method. Verify it's possible to
      * make a big table using vararg methods and arrays.
@@ -159,6 +159,11 @@ public class MockVoltClient implements Client, ReplicaProcCaller{
         return false;
     }
 
+    @Override
+    public boolean callProcedureBatch(ProcedureBatch batch) throws NoConnectionsException {
+        return false;
+    }
+
     @Override
     public void drain() {
         // TODO Auto-generated method stub
@@ -0,0 +1,116 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb.client;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+import org.voltdb.client.Distributer.CallbackBookeeping;
+
+public class TestCallbackTable extends TestCase {
+
+    private static CallbackBookeeping bookkeeping(long handle) {
+        return new CallbackBookeeping(null, handle, System.nanoTime(), new NullCallback(), "Foo", 0, false);
+    }
+
+    public void testCapacityIsPowerOfTwo() {
+        assertEquals(1, new CallbackTable(1).capacity());
+        assertEquals(8, new CallbackTable(5).capacity());
+        assertEquals(4096, new CallbackTable(4096).capacity());
+    }
+
+    public void testPutRemove() {
+        CallbackTable table = new CallbackTable(16);
+        CallbackBookeeping cb = bookkeeping(3);
+        table.put(cb);
+        assertTrue(table.contains(3));
+        assertFalse(table.contains(19));
+        assertNull(table.remove(19));
+        assertSame(cb, table.remove(3));
+        assertNull(table.remove(3));
+        assertFalse(table.contains(3));
+    }
+
+    public void testCollisionsSpillToOverflow() {
+        CallbackTable table = new CallbackTable(4);
+        Set<Long> handles = new HashSet<Long>();
+        // handles that all map to the same slot plus negative system handles
+        for (long h : new long[] { 1, 5, 9, 13, -1, -5 }) {
+            table.put(bookkeeping(h));
+            handles.add(h);
+        }
+        Set<Long> seen = new HashSet<Long>();
+        for (CallbackBookeeping cb : table) {
+            seen.add(cb.handle);
+        }
+        assertEquals(handles, seen);
+
+        // removing the slot holder must not disturb the spilled entries
+        assertEquals(1, table.remove(1).handle);
+        for (long h : new long[] { 5, 9, 13, -1, -5 }) {
+            assertTrue(table.contains(h));
+            assertEquals(h, table.remove(h).handle);
+        }
+        assertFalse(table.iterator().hasNext());
+    }
+
+    public void testRemoveRacesClaimOnce() throws Exception {
+        final CallbackTable table = new CallbackTable(64);
+        final int count = 10000;
+        for (long h = 0; h < count; h++) {
+            table.put(bookkeeping(h));
+        }
+        final AtomicInteger claimed = new AtomicInteger();
+        final CountDownLatch start = new CountDownLatch(1);
+        Thread threads[] = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (long h = 0; h < count; h++) {
+                        if (table.remove(h) != null) {
+                            claimed.incrementAndGet();
+                        }
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        start.countDown();
+        for (Thread t : threads) {
+            t.join();
+        }
+        assertEquals(count, claimed.get());
+        assertFalse(table.iterator().hasNext());
+    }
+}
@@ -47,6 +47,7 @@ import org.voltdb.ClientResponseImpl;
 import org.voltdb.StoredProcedureInvocation;
 import org.voltdb.VoltTable;
 import org.voltdb.VoltType;
+import org.voltdb.common.Constants;
 
 public class TestDistributer extends TestCase {
 
@@ -66,9 +67,27 @@ public class TestDistributer extends TestCase {
 
         @Override
         public void handleMessage(ByteBuffer message, Connection c) {
+            if (message.get(message.position()) == ProcedureBatch.BATCH_FRAME_VERSION) {
+                batchMessages.incrementAndGet();
+                message.get();
+                final int count = message.getInt();
+                for (int ii = 0; ii < count; ii++) {
+                    ByteBuffer invocation = message.slice();
+                    invocation.limit(invocation.getInt() + 4);
+                    invocation.position(4);
+                    message.position(message.position() + invocation.limit());
+                    handleInvocation(invocation.slice(), c);
+                }
+            } else {
+                handleInvocation(message, c);
+            }
+        }
+
+        private void handleInvocation(ByteBuffer message, Connection c) {
             try {
                 StoredProcedureInvocation spi = new StoredProcedureInvocation();
                 spi.initFromBuffer(message);
+                invocationsReceived.incrementAndGet();
 
                 final String proc = spi.getProcName();
 
@@ -138,6 +157,8 @@ public class TestDistributer extends TestCase {
 
         }
         AtomicInteger roundTrips = new AtomicInteger();
+        AtomicInteger invocationsReceived = new AtomicInteger();
+        AtomicInteger batchMessages = new AtomicInteger();
 
         @Override
         public Runnable offBackPressure() {
@@ -168,6 +189,8 @@ public class TestDistributer extends TestCase {
     // A fake server.
     class MockVolt extends Thread {
         boolean handleConnection = true;
+        // servers that predate batch messages don't advertise them after the build string
+        boolean advertiseBatches = true;
         MockVolt(int port) throws IOException {
             network = new VoltNetworkPool();
             network.start();
@@ -225,8 +248,8 @@ public class TestDistributer extends TestCase {
                         @SuppressWarnings("unused")
                         final String username = new String(usernameBytes);
 
-                        final ByteBuffer responseBuffer = ByteBuffer.allocate(34);
-                        responseBuffer.putInt(30);
+                        final ByteBuffer responseBuffer = ByteBuffer.allocate(advertiseBatches ? 35 : 34);
+                        responseBuffer.putInt(responseBuffer.capacity() - 4);
                         responseBuffer.put((byte)0);//version
                         responseBuffer.put((byte)0);//success response
                         responseBuffer.putInt(0);//hostId
@@ -234,6 +257,9 @@ public class TestDistributer extends TestCase {
                         responseBuffer.putLong(0);//instanceId
                         responseBuffer.putInt(0);//instanceId pt 2
                         responseBuffer.putInt(0);
+                        if (advertiseBatches) {
+                            responseBuffer.put(Constants.SERVER_CAPABILITY_BATCH_INVOCATIONS);
+                        }
                         responseBuffer.flip();
                         handler = new MockInputHandler();
                         client.write(responseBuffer);
@@ -406,6 +432,162 @@ public class TestDistributer extends TestCase {
         }
     }
 
+    @Test
+    public void testQueueBatch() throws Exception {
+        MockVolt volt0, volt1;
+        volt0 = volt1 = null;
+        try {
+            volt0 = new MockVolt(20000);
+            volt0.start();
+            volt1 = new MockVolt(20001);
+            volt1.start();
+
+            Distributer dist = new Distributer(false,
+                    ClientConfig.DEFAULT_PROCEDURE_TIMOUT_NANOS,
+                    ClientConfig.DEFAULT_CONNECTION_TIMOUT_MS,
+                    false, null /* subject */);
+            dist.createConnection("localhost", "", "", 20000, ClientAuthScheme.HASH_SHA1);
+            dist.createConnection("localhost", "", "", 20001, ClientAuthScheme.HASH_SHA1);
+
+            assertTrue(volt0.handler != null);
+            assertTrue(volt1.handler != null);
+
+            final int count = 10;
+            final CountDownLatch responses = new CountDownLatch(count);
+            List<ProcedureInvocation> invocations = new ArrayList<ProcedureInvocation>();
+            List<ProcedureCallback> callbacks = new ArrayList<ProcedureCallback>();
+            for (int ii = 0; ii < count; ii++) {
+                invocations.add(new ProcedureInvocation(ii + 1, "i1", new Integer(ii)));
+                callbacks.add(new ProcedureCallback() {
+                    @Override
+                    public void clientCallback(ClientResponse clientResponse) {
+                        assertEquals(ClientResponse.SUCCESS, clientResponse.getStatus());
+                        responses.countDown();
+                    }
+                });
+            }
+
+            assertTrue(dist.queueBatch(invocations, callbacks, true, System.nanoTime(), 0));
+            assertTrue(responses.await(10, TimeUnit.SECONDS));
+            dist.drain();
+
+            // round robin splits the batch across both connections, one message each
+            assertEquals(count / 2, volt0.handler.roundTrips.get());
+            assertEquals(count / 2, volt1.handler.roundTrips.get());
+            assertEquals(1, volt0.handler.batchMessages.get());
+            assertEquals(1, volt1.handler.batchMessages.get());
+        }
+        finally {
+            if (volt0 != null) {
+                volt0.shutdown();
+            }
+            if (volt1 != null) {
+                volt1.shutdown();
+            }
+        }
+    }
+
+    @Test
+    public void testQueueBatchSkipsTimedOutInvocations() throws Exception {
+        MockVolt volt0 = null;
+        try {
+            volt0 = new MockVolt(20000);
+            volt0.start();
+
+            Distributer dist = new Distributer(false,
+                    ClientConfig.DEFAULT_PROCEDURE_TIMOUT_NANOS,
+                    ClientConfig.DEFAULT_CONNECTION_TIMOUT_MS,
+                    false, null /* subject */);
+            dist.createConnection("localhost", "", "", 20000, ClientAuthScheme.HASH_SHA1);
+            assertTrue(volt0.handler != null);
+            volt0.handler.sendResponses.set(false);
+            // only three invocations get past the rate limiter, the rest time out waiting for it.
+            // A long running procedure keeps the three that got through from expiring meanwhile
+            dist.m_rateLimiter.setLimits(Integer.MAX_VALUE, 3);
+
+            final int count = 6;
+            final AtomicInteger timedOut = new AtomicInteger();
+            List<ProcedureInvocation> invocations = new ArrayList<ProcedureInvocation>();
+            List<ProcedureCallback> callbacks = new ArrayList<ProcedureCallback>();
+            for (int ii = 0; ii < count; ii++) {
+                invocations.add(new ProcedureInvocation(ii + 1, "@SnapshotSave", new Integer(ii)));
+                callbacks.add(new ProcedureCallback() {
+                    @Override
+                    public void clientCallback(ClientResponse clientResponse) {
+                        // the ones that were sent get CONNECTION_LOST at shutdown
+                        if (clientResponse.getStatus() == ClientResponse.CONNECTION_TIMEOUT) {
+                            timedOut.incrementAndGet();
+                        }
+                    }
+                });
+            }
+
+            assertTrue(dist.queueBatch(invocations, callbacks, false, System.nanoTime(),
+                    TimeUnit.MILLISECONDS.toNanos(200)));
+            // timing out in the rate limiter doesn't give back a permit it never took
+            assertEquals(count - 3, timedOut.get());
+
+            // the invocations already reported as timed out are not sent
+            final long deadline = System.currentTimeMillis() + 10000;
+            while (volt0.handler.invocationsReceived.get() < 3 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            Thread.sleep(200);
+            assertEquals(3, volt0.handler.invocationsReceived.get());
+            assertEquals(1, volt0.handler.batchMessages.get());
+        }
+        finally {
+            if (volt0 != null) {
+                volt0.shutdown();
+            }
+        }
+    }
+
+    @Test
+    public void testQueueBatchToOlderServer() throws Exception {
+        MockVolt volt0 = null;
+        try {
+            volt0 = new MockVolt(20000);
+            volt0.advertiseBatches = false;
+            volt0.start();
+
+            Distributer dist = new Distributer(false,
+                    ClientConfig.DEFAULT_PROCEDURE_TIMOUT_NANOS,
+                    ClientConfig.DEFAULT_CONNECTION_TIMOUT_MS,
+                    false, null /* subject */);
+            dist.createConnection("localhost", "", "", 20000, ClientAuthScheme.HASH_SHA1);
+            assertTrue(volt0.handler != null);
+
+            final int count = 10;
+            final CountDownLatch responses = new CountDownLatch(count);
+            List<ProcedureInvocation> invocations = new ArrayList<ProcedureInvocation>();
+            List<ProcedureCallback> callbacks = new ArrayList<ProcedureCallback>();
+            for (int ii = 0; ii < count; ii++) {
+                invocations.add(new ProcedureInvocation(ii + 1, "i1", new Integer(ii)));
+                callbacks.add(new ProcedureCallback() {
+                    @Override
+                    public void clientCallback(ClientResponse clientResponse) {
+                        assertEquals(ClientResponse.SUCCESS, clientResponse.getStatus());
+                        responses.countDown();
+                    }
+                });
+            }
+
+            assertTrue(dist.queueBatch(invocations, callbacks, true, System.nanoTime(), 0));
+            assertTrue(responses.await(10, TimeUnit.SECONDS));
+            dist.drain();
+
+            // the server didn't advertise batch messages, every invocation goes in its own message
+            assertEquals(count, volt0.handler.roundTrips.get());
+            assertEquals(0, volt0.handler.batchMessages.get());
+        }
+        finally {
+            if (volt0 != null) {
+                volt0.shutdown();
+            }
+        }
+    }
+
     @Test
     public void testQueue() throws Exception {
 
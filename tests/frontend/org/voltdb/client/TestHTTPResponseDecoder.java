@@ -0,0 +1,94 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb.client;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.voltdb.ClientResponseImpl;
+import org.voltdb.VoltTable;
+import org.voltdb.VoltTable.ColumnInfo;
+import org.voltdb.VoltType;
+
+import junit.framework.TestCase;
+
+public class TestHTTPResponseDecoder extends TestCase {
+
+    private static ClientResponseImpl makeResponse() {
+        VoltTable table = new VoltTable(new ColumnInfo("id", VoltType.BIGINT),
+                                        new ColumnInfo("name", VoltType.STRING),
+                                        new ColumnInfo("value", VoltType.FLOAT));
+        for (int i = 0; i < 1000; i++) {
+            table.addRow(i, "name" + i, i * 1.5);
+        }
+        table.addRow(null, null, null);
+        return new ClientResponseImpl(ClientResponse.SUCCESS, (byte) 3, "app status",
+                new VoltTable[] { table, new VoltTable(new ColumnInfo("empty", VoltType.INTEGER)) }, null);
+    }
+
+    private static byte[] flatten(ClientResponseImpl response) {
+        ByteBuffer buf = ByteBuffer.allocate(response.getSerializedSize());
+        response.flattenToBuffer(buf);
+        return buf.array();
+    }
+
+    private static void assertSameResponse(ClientResponse expected, ClientResponse actual) {
+        assertEquals(expected.getStatus(), actual.getStatus());
+        assertEquals(expected.getStatusString(), actual.getStatusString());
+        assertEquals(expected.getAppStatus(), actual.getAppStatus());
+        assertEquals(expected.getAppStatusString(), actual.getAppStatusString());
+        assertEquals(expected.getResults().length, actual.getResults().length);
+        for (int i = 0; i < expected.getResults().length; i++) {
+            assertTrue(expected.getResults()[i].hasSameContents(actual.getResults()[i]));
+        }
+    }
+
+    public void testBinary() throws Exception {
+        ClientResponseImpl response = makeResponse();
+        ClientResponse decoded = HTTPResponseDecoder.decode(HTTPResponseDecoder.BINARY_CONTENT_TYPE, flatten(response));
+        assertSameResponse(response, decoded);
+    }
+
+    public void testJSON() throws Exception {
+        ClientResponseImpl response = makeResponse();
+        byte json[] = response.toJSONString().getBytes(StandardCharsets.UTF_8);
+        assertSameResponse(response, HTTPResponseDecoder.decode("application/json; charset=utf-8", json));
+        assertSameResponse(response, HTTPResponseDecoder.decode(null, json));
+    }
+
+    public void testMalformed() throws Exception {
+        byte binary[] = flatten(makeResponse());
+        try {
+            HTTPResponseDecoder.decode(HTTPResponseDecoder.BINARY_CONTENT_TYPE,
+                                       Arrays.copyOf(binary, binary.length / 2));
+            fail("decoded a truncated response");
+        } catch (IOException expected) {}
+        try {
+            HTTPResponseDecoder.decode("application/json", "{\"status\":".getBytes(StandardCharsets.UTF_8));
+            fail("decoded truncated JSON");
+        } catch (IOException expected) {}
+    }
+}
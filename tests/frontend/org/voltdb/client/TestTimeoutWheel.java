@@ -0,0 +1,155 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package org.voltdb.client;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+public class TestTimeoutWheel extends TestCase {
+
+    private static final long TICK = 10;
+
+    private static class TestEntry extends TimeoutWheel.Entry {
+        final long deadline;
+        TestEntry(long deadline) {
+            this.deadline = deadline;
+        }
+    }
+
+    public void testExpiresOnDeadlineTick() {
+        TimeoutWheel wheel = new TimeoutWheel(TICK, 0);
+        TestEntry e = new TestEntry(25);
+        wheel.schedule(e, 0, e.deadline);
+        assertTrue(e.isScheduled());
+        List<TimeoutWheel.Entry> expired = new ArrayList<TimeoutWheel.Entry>();
+        // never early, the deadline rounds up to the tick at 30
+        wheel.advance(29, expired);
+        assertTrue(expired.isEmpty());
+        wheel.advance(30, expired);
+        assertEquals(1, expired.size());
+        assertSame(e, expired.get(0));
+        assertFalse(e.isScheduled());
+        assertEquals(0, wheel.size());
+    }
+
+    public void testCancelBeforeSchedule() {
+        TimeoutWheel wheel = new TimeoutWheel(TICK, 0);
+        // a response can cancel the entry between publishing the callback and scheduling it
+        TestEntry e = new TestEntry(Long.MAX_VALUE);
+        assertFalse(wheel.cancel(e));
+        assertFalse(wheel.schedule(e, 0, e.deadline));
+        assertFalse(e.isScheduled());
+        assertEquals(0, wheel.size());
+
+        // and an entry that expired stays out of the wheel too
+        TestEntry expiring = new TestEntry(10);
+        assertTrue(wheel.schedule(expiring, 0, expiring.deadline));
+        List<TimeoutWheel.Entry> expired = new ArrayList<TimeoutWheel.Entry>();
+        wheel.advance(10, expired);
+        assertEquals(1, expired.size());
+        assertFalse(wheel.cancel(expiring));
+        assertEquals(0, wheel.size());
+    }
+
+    public void testPastDeadlineFiresOnNextTick() {
+        TimeoutWheel wheel = new TimeoutWheel(TICK, 0);
+        List<TimeoutWheel.Entry> expired = new ArrayList<TimeoutWheel.Entry>();
+        wheel.advance(100, expired);
+        TestEntry e = new TestEntry(50);
+        wheel.schedule(e, 0, e.deadline);
+        wheel.advance(105, expired);
+        assertTrue(expired.isEmpty());
+        wheel.advance(110, expired);
+        assertEquals(1, expired.size());
+    }
+
+    public void testInfiniteTimeout() {
+        TimeoutWheel wheel = new TimeoutWheel(TICK, -1000);
+        TestEntry e = new TestEntry(Long.MAX_VALUE);
+        wheel.schedule(e, 5000, Long.MAX_VALUE);
+        List<TimeoutWheel.Entry> expired = new ArrayList<TimeoutWheel.Entry>();
+        wheel.advance(1000000, expired);
+        assertTrue(expired.isEmpty());
+        assertTrue(e.isScheduled());
+        assertTrue(wheel.cancel(e));
+    }
+
+    public void testCancel() {
+        TimeoutWheel wheel = new TimeoutWheel(TICK, 0);
+        TestEntry a = new TestEntry(100);
+        TestEntry b = new TestEntry(100);
+        TestEntry c = new TestEntry(100);
+        wheel.schedule(a, 0, a.deadline);
+        wheel.schedule(b, 0, b.deadline);
+        wheel.schedule(c, 0, c.deadline);
+        assertTrue(wheel.cancel(b));
+        assertFalse(wheel.cancel(b));
+        assertEquals(2, wheel.size());
+        List<TimeoutWheel.Entry> expired = new ArrayList<TimeoutWheel.Entry>();
+        wheel.advance(1000, expired);
+        assertEquals(2, expired.size());
+        assertTrue(expired.contains(a));
+        assertTrue(expired.contains(c));
+        assertFalse(wheel.cancel(a));
+    }
+
+    /*
+     * Deadlines spread over every level, including past the top level's range,
+     * must each fire on exactly the tick they round up to.
+     */
+    public void testCascadeAcrossLevels() {
+        TimeoutWheel wheel = new TimeoutWheel(1, 0);
+        Random r = new Random(42);
+        List<TestEntry> entries = new ArrayList<TestEntry>();
+        long maxDeadline = 0;
+        for (int ii = 0; ii < 2000; ii++) {
+            long deadline = 1 + (long)(r.nextDouble() * (1L << (r.nextInt(26))));
+            TestEntry e = new TestEntry(deadline);
+            entries.add(e);
+            wheel.schedule(e, 0, deadline);
+            maxDeadline = Math.max(maxDeadline, deadline);
+        }
+        List<TimeoutWheel.Entry> expired = new ArrayList<TimeoutWheel.Entry>();
+        int fired = 0;
+        // step in uneven increments so several ticks are processed per advance
+        for (long now = 0; now <= maxDeadline; now += 1 + r.nextInt(7)) {
+            wheel.advance(now, expired);
+            for (TimeoutWheel.Entry e : expired) {
+                long deadline = ((TestEntry)e).deadline;
+                assertTrue(deadline <= now);
+                assertTrue("late by " + (now - deadline), now - deadline < 8);
+            }
+            fired += expired.size();
+            expired.clear();
+        }
+        wheel.advance(maxDeadline + 1, expired);
+        fired += expired.size();
+        assertEquals(entries.size(), fired);
+        assertEquals(0, wheel.size());
+    }
+}
@@ -0,0 +1,162 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb.client.VoltBulkLoader;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+public class TestBatchPipeline extends TestCase {
+
+    private static final long TARGET = TimeUnit.MILLISECONDS.toNanos(100);
+
+    // complete a batch that took latency nanos, submitted at submitted
+    private static long complete(BatchPipeline pipeline, long submitted, long latency) throws Exception {
+        pipeline.acquire();
+        pipeline.completed(submitted, submitted + latency, true);
+        return submitted + latency;
+    }
+
+    public void testShrinksWhileLatencyIsOverTarget() throws Exception {
+        BatchPipeline pipeline = new BatchPipeline(200, 8, TARGET);
+        assertEquals(200, pipeline.batchSize());
+
+        long now = 0;
+        now = complete(pipeline, now, 2 * TARGET);
+        assertEquals(100, pipeline.batchSize());
+
+        // a batch sized before the resize doesn't shrink the new size again
+        pipeline.acquire();
+        pipeline.completed(now - 1, now + 2 * TARGET, true);
+        assertEquals(100, pipeline.batchSize());
+
+        // every slow batch of the new size halves it again, down to a single row
+        for (int expected : new int[] { 50, 25, 12, 6, 3, 1, 1 }) {
+            now = complete(pipeline, now + 1, 2 * TARGET);
+            assertEquals(expected, pipeline.batchSize());
+        }
+        assertEquals(0, pipeline.inFlight());
+    }
+
+    public void testGrowsBackWhenLatencyIsWellUnderTarget() throws Exception {
+        BatchPipeline pipeline = new BatchPipeline(160, 8, TARGET);
+        long now = complete(pipeline, 0, 2 * TARGET);
+        now = complete(pipeline, now + 1, 2 * TARGET);
+        assertEquals(40, pipeline.batchSize());
+
+        // between half the target and the target the size holds
+        for (int ii = 0; ii < 10; ii++) {
+            now = complete(pipeline, now + 1, TARGET * 3 / 4);
+            assertEquals(40, pipeline.batchSize());
+        }
+
+        // the average has to come down under half the target before it grows
+        int previous = pipeline.batchSize();
+        int grew = 0;
+        for (int ii = 0; ii < 100 && pipeline.batchSize() < 160; ii++) {
+            now = complete(pipeline, now + 1, TARGET / 10);
+            assertTrue(pipeline.batchSize() >= previous);
+            // by a sixteenth of the maximum size at a time
+            assertTrue(pipeline.batchSize() - previous <= 160 / BatchPipeline.GROWTH_DIVISOR);
+            if (pipeline.batchSize() > previous) {
+                grew++;
+            }
+            previous = pipeline.batchSize();
+        }
+        assertEquals(160, pipeline.batchSize());
+        assertEquals(12, grew);
+
+        // and never past the maximum
+        now = complete(pipeline, now + 1, TARGET / 10);
+        assertEquals(160, pipeline.batchSize());
+    }
+
+    public void testFailuresAndDisabledTargetDontAdapt() throws Exception {
+        BatchPipeline pipeline = new BatchPipeline(100, 8, TARGET);
+        pipeline.acquire();
+        pipeline.completed(0, 10 * TARGET, false);
+        assertEquals(100, pipeline.batchSize());
+
+        long now = complete(pipeline, 0, 10 * TARGET);
+        assertEquals(50, pipeline.batchSize());
+
+        // turning adaptation off goes straight back to full batches
+        pipeline.setTargetLatency(0);
+        assertEquals(100, pipeline.batchSize());
+        complete(pipeline, now + 1, 10 * TARGET);
+        assertEquals(100, pipeline.batchSize());
+    }
+
+    public void testLoweringMaxBatchSizeCapsCurrentSize() throws Exception {
+        BatchPipeline pipeline = new BatchPipeline(100, 8, TARGET);
+        pipeline.setMaxBatchSize(30);
+        assertEquals(30, pipeline.batchSize());
+        assertEquals(30, pipeline.maxBatchSize());
+    }
+
+    public void testFullPipelineBlocksUntilAResponse() throws Exception {
+        final BatchPipeline pipeline = new BatchPipeline(100, 2, TARGET);
+        pipeline.acquire();
+        pipeline.acquire();
+        assertEquals(2, pipeline.inFlight());
+
+        final CountDownLatch acquired = new CountDownLatch(1);
+        Thread submitter = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    pipeline.acquire();
+                    acquired.countDown();
+                } catch (InterruptedException e) {}
+            }
+        };
+        submitter.start();
+        assertFalse(acquired.await(200, TimeUnit.MILLISECONDS));
+
+        // a response frees a slot for the waiting batch
+        pipeline.completed(0, 1, true);
+        assertTrue(acquired.await(10, TimeUnit.SECONDS));
+        submitter.join();
+        assertEquals(2, pipeline.inFlight());
+
+        // and raising the depth releases waiters without a response
+        final CountDownLatch acquiredAfterResize = new CountDownLatch(1);
+        submitter = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    pipeline.acquire();
+                    acquiredAfterResize.countDown();
+                } catch (InterruptedException e) {}
+            }
+        };
+        submitter.start();
+        assertFalse(acquiredAfterResize.await(200, TimeUnit.MILLISECONDS));
+        pipeline.setPipelineDepth(3);
+        assertTrue(acquiredAfterResize.await(10, TimeUnit.SECONDS));
+        submitter.join();
+        assertEquals(3, pipeline.inFlight());
+    }
+}
@@ -30,6 +30,10 @@ import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.spy;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
@@ -41,6 +45,10 @@ import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
 import org.voltcore.messaging.HostMessenger;
 import org.voltcore.messaging.LocalObjectMessage;
+import org.voltdb.AuthSystem;
+import org.voltdb.ClientInterface.ExplainMode;
+import org.voltdb.client.BatchTimeoutOverrideType;
+import org.voltdb.client.ProcedureInvocationType;
 import org.voltdb.compiler.AsyncCompilerWork.AsyncCompilerWorkCompletionHandler;
 import org.voltdb.licensetool.LicenseApi;
 import org.voltdb.utils.MiscUtils;
@@ -133,4 +141,63 @@ public class TestAsyncCompilerAgent {
         m_agent.shutdown();
         assertEquals(AsyncCompilerAgent.MAX_QUEUE_DEPTH + 2, completedRequests.get());
     }
+
+    /**
+     * Checks that ad hoc work from a connection is answered in the order it was sent
+     * when several planner threads are planning.
+     * @throws InterruptedException
+     */
+    @Test
+    public void testPlanningOrderPerConnection() throws InterruptedException {
+        m_agent.shutdown();
+        m_agent = spy(new AsyncCompilerAgent(m_licenseApi, 4));
+        final Random random = new Random();
+        doAnswer(new Answer<AsyncCompilerResult>() {
+            @Override
+            public AsyncCompilerResult answer(InvocationOnMock invocation) throws Throwable {
+                // planning takes a different time for each statement
+                Thread.sleep(random.nextInt(3));
+                return null;
+            }
+        }).when(m_agent).compileAdHocPlan(any(AdHocPlannerWork.class));
+
+        m_agent.createMailbox(mock(HostMessenger.class), 100);
+
+        final int connections = 5;
+        final int perConnection = 50;
+        final List<List<Long>> answered = new ArrayList<List<Long>>();
+        for (int c = 0; c < connections; c++) {
+            answered.add(Collections.synchronizedList(new ArrayList<Long>()));
+        }
+        for (long handle = 0; handle < perConnection; handle++) {
+            for (int c = 0; c < connections; c++) {
+                final List<Long> connectionAnswers = answered.get(c);
+                final long clientHandle = handle;
+                AsyncCompilerWorkCompletionHandler handler = new AsyncCompilerWorkCompletionHandler() {
+                    @Override
+                    public void onCompletion(AsyncCompilerResult compilerResult) {
+                        connectionAnswers.add(clientHandle);
+                    }
+                };
+                AdHocPlannerWork work = new AdHocPlannerWork(100, handle, c, false, null,
+                        "select * from a", new String[] { "select * from a" },
+                        null, null, ExplainMode.NONE, false, null,
+                        "@AdHoc", ProcedureInvocationType.ORIGINAL, 0, 0,
+                        BatchTimeoutOverrideType.NO_TIMEOUT, false, false,
+                        handler, new AuthSystem.AuthDisabledUser());
+                LocalObjectMessage msg = new LocalObjectMessage(work);
+                msg.m_sourceHSId = 100;
+                m_agent.m_mailbox.deliver(msg);
+            }
+        }
+
+        m_agent.shutdown();
+        for (int c = 0; c < connections; c++) {
+            List<Long> connectionAnswers = answered.get(c);
+            assertEquals(perConnection, connectionAnswers.size());
+            for (int i = 0; i < perConnection; i++) {
+                assertEquals(i, connectionAnswers.get(i).longValue());
+            }
+        }
+    }
 }
@@ -0,0 +1,124 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb.importer;
+
+import java.util.ArrayList;
+
+import junit.framework.TestCase;
+
+import org.voltdb.ClientResponseImpl;
+import org.voltdb.InternalConnectionStatsCollector;
+import org.voltdb.VoltTable;
+import org.voltdb.VoltTable.ColumnInfo;
+import org.voltdb.client.ClientResponse;
+
+public class TestImporterStatsCollector extends TestCase
+{
+    private static final ClientResponse SUCCESS = new ClientResponseImpl(ClientResponse.SUCCESS, new VoltTable[0], null);
+    private static final ClientResponse FAILURE = new ClientResponseImpl(ClientResponse.GRACEFUL_FAILURE, new VoltTable[0], null);
+
+    private static VoltTable poll(ImporterStatsCollector stats, boolean interval) {
+        ArrayList<ColumnInfo> columns = stats.getColumnSchema();
+        VoltTable table = new VoltTable(columns.toArray(new ColumnInfo[columns.size()]));
+        for (Object row[] : stats.getStatsRows(interval, System.currentTimeMillis())) {
+            table.addRow(row);
+        }
+        return table;
+    }
+
+    private static boolean findRow(VoltTable table, String importerName, String streamName) {
+        table.resetRowPosition();
+        while (table.advanceRow()) {
+            if (importerName.equals(table.getString(ImporterStatsCollector.IMPORTER_NAME_COL)) &&
+                streamName.equals(table.getString(ImporterStatsCollector.STREAM_NAME_COL))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public void testStreamsHaveSeparateRows() {
+        ImporterStatsCollector stats = new ImporterStatsCollector(0);
+        stats.reportQueued("SocketImporter", "Insert");
+        stats.reportCompletion("SocketImporter", "Insert", SUCCESS);
+
+        InternalConnectionStatsCollector p0 = stats.forStream("topic/0");
+        InternalConnectionStatsCollector p1 = stats.forStream("topic/1");
+        assertSame(stats, stats.forStream(null));
+        for (int i = 0; i < 3; i++) {
+            stats.reportQueued("KafkaImporter", "topic/0", "Insert");
+            p0.reportCompletion("KafkaImporter", "Insert", SUCCESS);
+        }
+        stats.reportQueued("KafkaImporter", "topic/1", "Insert");
+        stats.reportQueued("KafkaImporter", "topic/1", "Insert");
+        p1.reportCompletion("KafkaImporter", "Insert", FAILURE);
+        stats.reportLag("KafkaImporter", "topic/1", "Insert", 42);
+
+        VoltTable table = poll(stats, false);
+        assertEquals(3, table.getRowCount());
+
+        assertTrue(findRow(table, "SocketImporter", ""));
+        assertEquals(1, table.getLong(ImporterStatsCollector.SUCCESS_COUNT_COL));
+        assertEquals(-1, table.getLong(ImporterStatsCollector.LAG_COL));
+
+        assertTrue(findRow(table, "KafkaImporter", "topic/0"));
+        assertEquals("Insert", table.getString(ImporterStatsCollector.PROC_NAME_COL));
+        assertEquals(3, table.getLong(ImporterStatsCollector.SUCCESS_COUNT_COL));
+        assertEquals(0, table.getLong(ImporterStatsCollector.PENDING_COUNT_COL));
+        assertEquals(-1, table.getLong(ImporterStatsCollector.LAG_COL));
+        assertTrue(table.getDouble(ImporterStatsCollector.ROWS_PER_SECOND_COL) >= 0.0);
+
+        assertTrue(findRow(table, "KafkaImporter", "topic/1"));
+        assertEquals(0, table.getLong(ImporterStatsCollector.SUCCESS_COUNT_COL));
+        assertEquals(1, table.getLong(ImporterStatsCollector.FAILURE_COUNT_COL));
+        assertEquals(1, table.getLong(ImporterStatsCollector.PENDING_COUNT_COL));
+        assertEquals(42, table.getLong(ImporterStatsCollector.LAG_COL));
+    }
+
+    public void testRowsPerSecondSincePreviousPoll() throws Exception {
+        ImporterStatsCollector stats = new ImporterStatsCollector(0);
+        InternalConnectionStatsCollector stream = stats.forStream("topic/0");
+        stats.reportQueued("KafkaImporter", "topic/0", "Insert");
+        stream.reportCompletion("KafkaImporter", "Insert", SUCCESS);
+        poll(stats, false);
+
+        Thread.sleep(50);
+        for (int i = 0; i < 100; i++) {
+            stats.reportQueued("KafkaImporter", "topic/0", "Insert");
+            stream.reportCompletion("KafkaImporter", "Insert", SUCCESS);
+        }
+        VoltTable table = poll(stats, false);
+        assertTrue(findRow(table, "KafkaImporter", "topic/0"));
+        assertEquals(101, table.getLong(ImporterStatsCollector.SUCCESS_COUNT_COL));
+        double rate = table.getDouble(ImporterStatsCollector.ROWS_PER_SECOND_COL);
+        // 100 rows in a little more than 50ms
+        assertTrue(rate > 0.0 && rate <= 2000.0);
+
+        // nothing imported since the last poll
+        Thread.sleep(10);
+        table = poll(stats, false);
+        assertTrue(findRow(table, "KafkaImporter", "topic/0"));
+        assertEquals(0.0, table.getDouble(ImporterStatsCollector.ROWS_PER_SECOND_COL));
+    }
+}
@@ -0,0 +1,110 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb.iv2;
+
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+import org.voltdb.ClientResponseImpl;
+import org.voltdb.StoredProcedureInvocation;
+import org.voltdb.VoltTable;
+import org.voltdb.VoltType;
+import org.voltdb.client.ClientResponse;
+import org.voltdb.messaging.InitiateResponseMessage;
+import org.voltdb.messaging.Iv2InitiateTaskMessage;
+
+public class TestDuplicateCounter extends TestCase
+{
+    static final long LEADER = 1;
+    static final long REPLICA = 2;
+
+    Iv2InitiateTaskMessage m_task;
+
+    @Override
+    public void setUp()
+    {
+        StoredProcedureInvocation spi = new StoredProcedureInvocation();
+        spi.setProcName("dummy");
+        spi.setParams(1);
+        m_task = new Iv2InitiateTaskMessage(LEADER, LEADER, 0, 100, 100, true, true, spi, 0, 0, false);
+    }
+
+    InitiateResponseMessage response(long source, String value, boolean digestOnly)
+    {
+        VoltTable table = new VoltTable(new VoltTable.ColumnInfo("value", VoltType.STRING));
+        table.addRow(value);
+        ClientResponseImpl cr = new ClientResponseImpl(ClientResponse.SUCCESS, new VoltTable[] { table }, null);
+        cr.setHash(42);
+        InitiateResponseMessage response = new InitiateResponseMessage(m_task);
+        response.setResults(cr);
+        response.m_sourceHSId = source;
+        if (digestOnly) {
+            response.convertToResultsDigest();
+        }
+        return response;
+    }
+
+    DuplicateCounter counter()
+    {
+        return new DuplicateCounter(3, 100, Arrays.asList(LEADER, REPLICA), m_task);
+    }
+
+    public void testFullResponseIsPassedOnWhenDigestArrivesLast()
+    {
+        DuplicateCounter counter = counter();
+        InitiateResponseMessage full = response(LEADER, "a", false);
+        assertEquals(DuplicateCounter.WAITING, counter.offer(full));
+        assertEquals(DuplicateCounter.DONE, counter.offer(response(REPLICA, "a", true)));
+        assertSame(full, counter.getLastResponse());
+        assertEquals(counter.m_resultsDigest.longValue(), full.getResultsDigest());
+    }
+
+    public void testFullResponseIsPassedOnWhenDigestArrivesFirst()
+    {
+        DuplicateCounter counter = counter();
+        InitiateResponseMessage full = response(LEADER, "a", false);
+        assertEquals(DuplicateCounter.WAITING, counter.offer(response(REPLICA, "a", true)));
+        assertEquals(DuplicateCounter.DONE, counter.offer(full));
+        assertSame(full, counter.getLastResponse());
+    }
+
+    public void testResultsAreOnlyHashedForDigests()
+    {
+        DuplicateCounter counter = counter();
+        counter.offer(response(LEADER, "a", false));
+        counter.offer(response(REPLICA, "a", false));
+        assertNull(counter.m_resultsDigest);
+    }
+
+    public void testDifferentResultsAreNotFatal()
+    {
+        // the SQL run was the same, only the results differ
+        DuplicateCounter counter = counter();
+        InitiateResponseMessage full = response(LEADER, "a", false);
+        counter.offer(full);
+        assertEquals(DuplicateCounter.DONE, counter.offer(response(REPLICA, "b", true)));
+        assertSame(full, counter.getLastResponse());
+    }
+}
@@ -0,0 +1,90 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb.iv2;
+
+import junit.framework.TestCase;
+
+public class TestMpRoSitePoolSizing extends TestCase
+{
+    static final long WINDOW = 1000;
+
+    public void testStartsAtMinimum()
+    {
+        MpRoSitePoolSizing sizing = new MpRoSitePoolSizing(2, 20, WINDOW, 0);
+        assertEquals(2, sizing.target(0));
+        assertEquals(2, sizing.target(10 * WINDOW));
+    }
+
+    public void testMinimumIsCappedByMaximum()
+    {
+        MpRoSitePoolSizing sizing = new MpRoSitePoolSizing(30, 20, WINDOW, 0);
+        assertEquals(20, sizing.minSize());
+        assertEquals(20, sizing.target(0));
+    }
+
+    public void testGrowsToPeakDemand()
+    {
+        MpRoSitePoolSizing sizing = new MpRoSitePoolSizing(1, 20, WINDOW, 0);
+        for (int busy = 1; busy <= 5; busy++) {
+            sizing.recordStart(busy, false, 10);
+        }
+        sizing.recordStart(3, false, 20);
+        assertEquals(5, sizing.target(30));
+    }
+
+    public void testColdStartsAddHeadroom()
+    {
+        MpRoSitePoolSizing sizing = new MpRoSitePoolSizing(1, 20, WINDOW, 0);
+        sizing.recordStart(4, true, 10);
+        sizing.recordStart(5, true, 20);
+        // one spare site, however many reads waited
+        assertEquals(6, sizing.target(30));
+    }
+
+    public void testNeverAboveMaximum()
+    {
+        MpRoSitePoolSizing sizing = new MpRoSitePoolSizing(1, 4, WINDOW, 0);
+        sizing.recordStart(4, true, 10);
+        assertEquals(4, sizing.target(20));
+    }
+
+    public void testKeepsBurstForAWindowThenShrinks()
+    {
+        MpRoSitePoolSizing sizing = new MpRoSitePoolSizing(1, 20, WINDOW, 0);
+        sizing.recordStart(8, false, 10);
+        // the burst's window is over, it is still remembered for the next one
+        sizing.recordStart(2, false, WINDOW + 10);
+        assertEquals(8, sizing.target(WINDOW + 20));
+        // and forgotten after that
+        assertEquals(2, sizing.target(2 * WINDOW + 20));
+        assertEquals(1, sizing.target(3 * WINDOW + 20));
+    }
+
+    public void testLongIdleForgetsEverything()
+    {
+        MpRoSitePoolSizing sizing = new MpRoSitePoolSizing(1, 20, WINDOW, 0);
+        sizing.recordStart(8, true, 10);
+        assertEquals(1, sizing.target(5 * WINDOW));
+    }
+}
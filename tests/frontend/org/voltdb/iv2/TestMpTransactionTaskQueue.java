@@ -26,6 +26,7 @@ package org.voltdb.iv2;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyLong;
 import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
@@ -35,11 +36,18 @@ import static org.mockito.Mockito.when;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Deque;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import junit.framework.TestCase;
 
 import org.junit.Test;
+import org.mockito.InOrder;
+import org.voltdb.TheHashinator;
+import org.voltdb.TheHashinator.HashinatorType;
+import org.voltdb.messaging.FragmentTaskMessage;
+import org.voltdb.messaging.Iv2RepairLogResponseMessage;
 
 public class TestMpTransactionTaskQueue extends TestCase
 {
@@ -150,4 +158,70 @@ public class TestMpTransactionTaskQueue extends TestCase
         verify(m_MPpool).doWork(eq(readtxnid), any(TransactionTask.class));
         verify(m_MPpool).doWork(eq(readtxnid2), any(TransactionTask.class));
     }
+
+    FragmentTaskMessage fragment(long txnId, long truncationHandle)
+    {
+        FragmentTaskMessage msg = mock(FragmentTaskMessage.class);
+        when(msg.getTxnId()).thenReturn(txnId);
+        when(msg.getTruncationHandle()).thenReturn(truncationHandle);
+        return msg;
+    }
+
+    // A read queued behind a write that waits for the reads in progress stays behind it
+    // through a failover, so the write reaches the partitions' repair logs first
+    @Test
+    public void testFailoverWithReadBehindWaitingWrite()
+    {
+        TxnEgo txnId = TxnEgo.makeZero(MpInitiator.MP_INIT_PID);
+        txnId = txnId.makeNext();
+        long read1 = txnId.getTxnId();
+        MpProcedureTask read1Task = makeTransactionTask(read1, true);
+        m_dut.offer(read1Task);
+        verify(m_MPpool).doWork(read1, read1Task);
+
+        txnId = txnId.makeNext();
+        long write = txnId.getTxnId();
+        MpProcedureTask writeTask = makeTransactionTask(write, false);
+        m_dut.offer(writeTask);
+        txnId = txnId.makeNext();
+        long read2 = txnId.getTxnId();
+        MpProcedureTask read2Task = makeTransactionTask(read2, true);
+        m_dut.offer(read2Task);
+        verify(m_writeQueue, never()).offer(any(TransactionTask.class));
+        verify(m_MPpool, never()).doWork(eq(read2), any(TransactionTask.class));
+
+        // fail over while the first read runs, it restarts and the others keep their places
+        List<Long> masters = new ArrayList<Long>();
+        m_dut.repair(mock(SiteTasker.class), masters, new HashMap<Integer, Long>());
+        verify(m_MPpool).repair(eq(read1), any(SiteTasker.class));
+        verify(read1Task).doRestart(eq(masters), any(Map.class));
+        verify(writeTask).updateMasters(eq(masters), any(Map.class));
+        verify(read2Task).updateMasters(eq(masters), any(Map.class));
+        m_dut.restart();
+        verify(m_MPpool, times(2)).doWork(read1, read1Task);
+        verify(m_writeQueue, never()).offer(any(TransactionTask.class));
+        verify(m_MPpool, never()).doWork(eq(read2), any(TransactionTask.class));
+
+        m_dut.flush(read1);
+        verify(m_writeQueue).offer(writeTask);
+        verify(m_MPpool, never()).doWork(eq(read2), any(TransactionTask.class));
+
+        // the partitions see the fragments in the order the transactions started, so a
+        // failover while the write runs finds it in their repair logs
+        TheHashinator.setConfiguredHashinatorType(HashinatorType.ELASTIC);
+        TheHashinator.initialize(TheHashinator.getConfiguredHashinatorClass(), TheHashinator.getConfigureBytes(8));
+        RepairLog partitionLog = new RepairLog();
+        partitionLog.deliver(fragment(read1, Long.MIN_VALUE));
+        partitionLog.deliver(fragment(write, Long.MIN_VALUE));
+        List<Long> logged = new ArrayList<Long>();
+        for (Iv2RepairLogResponseMessage msg : partitionLog.contents(1L, false)) {
+            logged.add(msg.getTxnId());
+        }
+        assertTrue(logged.contains(write));
+
+        m_dut.flush(write);
+        InOrder order = inOrder(m_writeQueue, m_MPpool);
+        order.verify(m_writeQueue).offer(writeTask);
+        order.verify(m_MPpool).doWork(read2, read2Task);
+    }
 }
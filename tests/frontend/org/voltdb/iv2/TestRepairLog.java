@@ -49,6 +49,7 @@ import org.voltdb.messaging.CompleteTransactionMessage;
 import org.voltdb.messaging.FragmentTaskMessage;
 import org.voltdb.messaging.Iv2InitiateTaskMessage;
 import org.voltdb.messaging.Iv2RepairLogResponseMessage;
+import org.voltdb.messaging.VoltDbMessageFactory;
 
 public class TestRepairLog
 {
@@ -346,4 +347,107 @@ public class TestRepairLog
         log.deliver(msg);
         validateRepairLog(log.contents(1l, false), endSpUniqueId, endMpUniqueId);
     }
+
+    Iv2InitiateTaskMessage realInitMsg(long truncPt, long handle, Object... params)
+    {
+        StoredProcedureInvocation spi = new StoredProcedureInvocation();
+        spi.setProcName("dummy");
+        spi.setParams(params);
+        Iv2InitiateTaskMessage msg =
+                new Iv2InitiateTaskMessage(0l, 0l, truncPt, handle, handle, false, true,
+                        spi, 0l, 0l, false);
+        msg.setSpHandle(handle);
+        return msg;
+    }
+
+    CompleteTransactionMessage realCompleteMsg(long truncPt, long mpTxnId, long handle)
+    {
+        CompleteTransactionMessage msg =
+                new CompleteTransactionMessage(0l, 0l, mpTxnId, false, 0, false, false, false, false);
+        msg.setTruncationHandle(truncPt);
+        msg.setSpHandle(handle);
+        return msg;
+    }
+
+    @Test
+    public void testOffHeapOfferAndTruncate()
+    {
+        RepairLog rl = new RepairLog(true);
+        // enough entries to grow the index and fill several segments
+        byte padding[] = new byte[10000];
+        for (long handle = 1; handle <= 200; handle++) {
+            rl.deliver(realInitMsg(handle - 100, handle, handle, padding));
+        }
+        assertEquals(100, rl.m_offHeapSP.size());
+        assertTrue(rl.m_offHeapSP.allocatedBytes() >= rl.m_offHeapSP.bytes());
+
+        List<Iv2RepairLogResponseMessage> contents = rl.contents(1l, false);
+        assertEquals(101, contents.size());
+        for (int i = 1; i <= 100; i++) {
+            Iv2InitiateTaskMessage msg = (Iv2InitiateTaskMessage)contents.get(i).getPayload();
+            assertEquals(100L + i, contents.get(i).getHandle());
+            assertEquals(100L + i, msg.getSpHandle());
+            assertEquals(100L + i, msg.getParameters()[0]);
+        }
+
+        rl.deliver(realInitMsg(Long.MAX_VALUE - 1, Long.MAX_VALUE, 0L));
+        assertEquals(1, rl.m_offHeapSP.size());
+        rl.setLeaderState(true);
+        assertEquals(0, rl.m_offHeapSP.size());
+        assertEquals(0, rl.m_offHeapSP.bytes());
+        assertEquals(0, rl.m_offHeapSP.allocatedBytes());
+        rl.shutdown();
+    }
+
+    @Test
+    public void testOffHeapLargeMessage()
+    {
+        RepairLog rl = new RepairLog(true);
+        rl.deliver(realInitMsg(Long.MIN_VALUE, 1, new byte[OffHeapRepairLog.SEGMENT_SIZE * 2]));
+        rl.deliver(realInitMsg(Long.MIN_VALUE, 2, 2L));
+        List<Iv2RepairLogResponseMessage> contents = rl.contents(1l, false);
+        assertEquals(3, contents.size());
+        assertEquals(OffHeapRepairLog.SEGMENT_SIZE * 2,
+                ((byte[])((Iv2InitiateTaskMessage)contents.get(1).getPayload()).getParameters()[0]).length);
+        assertEquals(2L, ((Iv2InitiateTaskMessage)contents.get(2).getPayload()).getParameters()[0]);
+        rl.shutdown();
+        assertEquals(0, rl.m_offHeapSP.allocatedBytes());
+    }
+
+    @Test
+    public void testOffHeapContentsAreSorted() throws IOException
+    {
+        RepairLog rl = new RepairLog(true);
+        rl.deliver(realInitMsg(Long.MIN_VALUE, 1, 1L));
+        rl.deliver(realCompleteMsg(Long.MIN_VALUE, 10, 2));
+        rl.deliver(realInitMsg(Long.MIN_VALUE, 3, 3L));
+
+        List<Iv2RepairLogResponseMessage> contents = rl.contents(1l, false);
+        assertEquals(4, contents.size());
+        assertEquals(1L, contents.get(1).getHandle());
+        assertEquals(2L, contents.get(2).getHandle());
+        assertEquals(3L, contents.get(3).getHandle());
+
+        // the serialized message is sent as it was logged
+        Iv2RepairLogResponseMessage response = contents.get(2);
+        ByteBuffer buf = ByteBuffer.allocate(response.getSerializedSize());
+        response.flattenToBuffer(buf);
+        buf.flip();
+        Iv2RepairLogResponseMessage response2 =
+                (Iv2RepairLogResponseMessage)new VoltDbMessageFactory().createMessageFromBuffer(buf, 0);
+        assertEquals(10L, ((CompleteTransactionMessage)response2.getPayload()).getTxnId());
+
+        // the MPI only gets the MP part
+        contents = rl.contents(1l, true);
+        assertEquals(2, contents.size());
+        assertTrue(contents.get(1).getPayload() instanceof CompleteTransactionMessage);
+
+        // shutting down gives the segments back, and nothing is logged after it
+        rl.shutdown();
+        assertEquals(0, rl.m_offHeapSP.allocatedBytes());
+        assertEquals(0, rl.m_offHeapMP.allocatedBytes());
+        rl.deliver(realInitMsg(Long.MIN_VALUE, 4, 4L));
+        assertEquals(0, rl.m_offHeapSP.size());
+        assertEquals(1, rl.contents(1l, false).size());
+    }
 }
@@ -0,0 +1,126 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb.iv2;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.voltdb.StarvationTracker;
+
+public class TestSiteTaskerQueue extends TestCase
+{
+    private static class NumberedTask extends SiteTasker.SiteTaskerRunnable {
+        final int m_producer;
+        final int m_seq;
+
+        NumberedTask(int producer, int seq) {
+            m_producer = producer;
+            m_seq = seq;
+        }
+
+        @Override
+        void run() {}
+    }
+
+    private static SiteTaskerQueue getSiteTaskerQueue(int capacity) {
+        SiteTaskerQueue queue = new SiteTaskerQueue(capacity);
+        queue.setStarvationTracker(new StarvationTracker(0));
+        return queue;
+    }
+
+    public void testOrderedPollAndDrain() {
+        SiteTaskerQueue queue = getSiteTaskerQueue(8);
+        assertTrue(queue.isEmpty());
+        assertNull(queue.poll());
+        for (int i = 0; i < 6; i++) {
+            queue.offer(new NumberedTask(0, i));
+        }
+        assertFalse(queue.isEmpty());
+        assertEquals(0, ((NumberedTask)queue.poll()).m_seq);
+
+        List<SiteTasker> batch = new ArrayList<SiteTasker>();
+        assertEquals(3, queue.drainTo(batch, 3));
+        assertEquals(2, queue.drainTo(batch, 10));
+        for (int i = 0; i < batch.size(); i++) {
+            assertEquals(i + 1, ((NumberedTask)batch.get(i)).m_seq);
+        }
+        assertTrue(queue.isEmpty());
+        assertEquals(0, queue.drainTo(batch, 10));
+    }
+
+    public void testOverflowKeepsOrder() {
+        SiteTaskerQueue queue = getSiteTaskerQueue(4);
+        for (int i = 0; i < 10; i++) {
+            queue.offer(new NumberedTask(0, i));
+        }
+        // taking from the ring while overflowed must not let new offers jump the overflow
+        assertEquals(0, ((NumberedTask)queue.poll()).m_seq);
+        queue.offer(new NumberedTask(0, 10));
+        for (int i = 1; i <= 10; i++) {
+            assertEquals(i, ((NumberedTask)queue.poll()).m_seq);
+        }
+        assertTrue(queue.isEmpty());
+
+        // back to using the ring once the overflow is drained
+        for (int i = 0; i < 3; i++) {
+            queue.offer(new NumberedTask(0, i));
+        }
+        for (int i = 0; i < 3; i++) {
+            assertEquals(i, ((NumberedTask)queue.poll()).m_seq);
+        }
+        assertNull(queue.poll());
+    }
+
+    public void testConcurrentProducers() throws Exception {
+        final SiteTaskerQueue queue = getSiteTaskerQueue(64);
+        final int producers = 4;
+        final int perProducer = 50000;
+        Thread threads[] = new Thread[producers];
+        for (int p = 0; p < producers; p++) {
+            final int producer = p;
+            threads[p] = new Thread() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < perProducer; i++) {
+                        queue.offer(new NumberedTask(producer, i));
+                    }
+                }
+            };
+            threads[p].start();
+        }
+
+        // each producer's tasks must come out in the order it offered them
+        int next[] = new int[producers];
+        for (int i = 0; i < producers * perProducer; i++) {
+            NumberedTask task = (NumberedTask)queue.take();
+            assertEquals(next[task.m_producer]++, task.m_seq);
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        assertTrue(queue.isEmpty());
+    }
+}
@@ -155,6 +155,41 @@ public class TestVoltMessageSerialization extends TestCase {
         assertTrue(iresponse2.isReadOnly());
     }
 
+    public void testResultsDigestResponse() throws IOException {
+        StoredProcedureInvocation spi = new StoredProcedureInvocation();
+        spi.setClientHandle(25);
+        spi.setProcName("elmerfudd");
+        spi.setParams(57, "wrascallywabbit");
+
+        Iv2InitiateTaskMessage itask = new Iv2InitiateTaskMessage(23, 8, 10L, 100045, 99, true, false, spi, 2101, 3101, true);
+
+        VoltTable table = new VoltTable(
+                new VoltTable.ColumnInfo("foobar", VoltType.STRING)
+        );
+        table.addRow("howmanylicksdoesittaketogettothecenterofatootsiepop");
+
+        InitiateResponseMessage iresponse = new InitiateResponseMessage(itask);
+        ClientResponseImpl cr = new ClientResponseImpl(ClientResponse.SUCCESS,
+                new VoltTable[] { table, table }, null);
+        cr.setHash(1234);
+        iresponse.setResults(cr);
+        iresponse.setClientHandle(99);
+        long digest = iresponse.getResultsDigest();
+        iresponse.convertToResultsDigest();
+
+        InitiateResponseMessage iresponse2 = (InitiateResponseMessage) checkVoltMessage(iresponse);
+
+        assertTrue(iresponse2.isResultsDigestOnly());
+        assertEquals(digest, iresponse2.getResultsDigest());
+        assertEquals(0, iresponse2.getClientResponseData().getResults().length);
+        assertEquals(Integer.valueOf(1234), iresponse2.getClientResponseData().getHash());
+        assertTrue(iresponse2.shouldCommit());
+
+        // different results have a different digest
+        table.addRow("three");
+        assertTrue(digest != InitiateResponseMessage.computeResultsDigest(cr));
+    }
+
     public void testMispartitionedResponse() throws IOException {
         StoredProcedureInvocation spi = new StoredProcedureInvocation();
         spi.setClientHandle(25);
@@ -0,0 +1,130 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb.planner;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicReference;
+
+import junit.framework.TestCase;
+
+import org.voltdb.jni.ExecutionEngine;
+
+public class TestActivePlanRepository extends TestCase
+{
+    private static byte[] hash(int i) {
+        return ByteBuffer.allocate(20).putInt(i).array();
+    }
+
+    private static byte[] plan(int i) {
+        return ("plan " + i).getBytes();
+    }
+
+    @Override
+    public void setUp() {
+        ActivePlanRepository.clear();
+    }
+
+    @Override
+    public void tearDown() {
+        ActivePlanRepository.clear();
+    }
+
+    public void testLoadAndAddRef() {
+        long id = ActivePlanRepository.loadOrAddRefPlanFragment(hash(1), plan(1), null);
+        assertEquals(id, ActivePlanRepository.loadOrAddRefPlanFragment(hash(1), plan(1), "select 1"));
+        assertEquals(id, ActivePlanRepository.getFragmentIdForPlanHash(hash(1)));
+        assertEquals("select 1", ActivePlanRepository.getStmtTextForPlanHash(hash(1)));
+        assertEquals("plan 1", new String(ActivePlanRepository.planForFragmentId(id)));
+        assertTrue(id != ActivePlanRepository.loadOrAddRefPlanFragment(hash(2), plan(2), null));
+    }
+
+    public void testEvictsLeastRecentlyUsed() {
+        final int size = ExecutionEngine.EE_PLAN_CACHE_SIZE;
+        long ids[] = new long[size];
+        for (int i = 0; i < size; i++) {
+            ids[i] = ActivePlanRepository.loadOrAddRefPlanFragment(hash(i), plan(i), null);
+        }
+        // release in reverse so fragment 0 is the most recently used
+        for (int i = size - 1; i >= 0; i--) {
+            ActivePlanRepository.decrefPlanFragmentById(ids[i]);
+        }
+        // reuse and release the oldest so it is the most recent instead
+        assertEquals(ids[size - 1], ActivePlanRepository.loadOrAddRefPlanFragment(hash(size - 1), plan(size - 1), null));
+        ActivePlanRepository.decrefPlanFragmentById(ids[size - 1]);
+
+        // two new fragments push out the two least recently used
+        ActivePlanRepository.loadOrAddRefPlanFragment(hash(size), plan(size), null);
+        ActivePlanRepository.loadOrAddRefPlanFragment(hash(size + 1), plan(size + 1), null);
+        assertTrue(ids[size - 2] != ActivePlanRepository.loadOrAddRefPlanFragment(hash(size - 2), plan(size - 2), null));
+        assertEquals(ids[size - 1], ActivePlanRepository.loadOrAddRefPlanFragment(hash(size - 1), plan(size - 1), null));
+        assertEquals(ids[0], ActivePlanRepository.loadOrAddRefPlanFragment(hash(0), plan(0), null));
+    }
+
+    public void testReferencedFragmentsAreNotEvicted() {
+        final int size = ExecutionEngine.EE_PLAN_CACHE_SIZE;
+        long first = ActivePlanRepository.loadOrAddRefPlanFragment(hash(0), plan(0), null);
+        for (int i = 1; i < size * 2; i++) {
+            long id = ActivePlanRepository.loadOrAddRefPlanFragment(hash(i), plan(i), null);
+            ActivePlanRepository.decrefPlanFragmentById(id);
+        }
+        assertEquals(first, ActivePlanRepository.getFragmentIdForPlanHash(hash(0)));
+        assertEquals("plan 0", new String(ActivePlanRepository.planForFragmentId(first)));
+    }
+
+    public void testConcurrentSites() throws Exception {
+        final int sites = 4;
+        final int plans = ExecutionEngine.EE_PLAN_CACHE_SIZE * 2;
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        Thread threads[] = new Thread[sites];
+        for (int s = 0; s < sites; s++) {
+            final int site = s;
+            threads[s] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        for (int round = 0; round < 5; round++) {
+                            for (int i = 0; i < plans; i++) {
+                                // every site uses a fragment others are loading, using and evicting
+                                int p = (i * (site + 1)) % plans;
+                                long id = ActivePlanRepository.loadOrAddRefPlanFragment(hash(p), plan(p), null);
+                                // a referenced fragment must stay resolvable by the EE
+                                assertEquals("plan " + p, new String(ActivePlanRepository.planForFragmentId(id)));
+                                ActivePlanRepository.decrefPlanFragmentById(id);
+                            }
+                        }
+                    } catch (Throwable t) {
+                        failure.compareAndSet(null, t);
+                    }
+                }
+            };
+            threads[s].start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        if (failure.get() != null) {
+            throw new AssertionError(failure.get());
+        }
+    }
+}
@@ -25,12 +25,14 @@ package org.voltdb.planner;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.concurrent.atomic.AtomicReference;
 
 import junit.framework.TestCase;
 
 import org.voltdb.CatalogContext;
 import org.voltdb.benchmark.tpcc.TPCCProjectBuilder;
 import org.voltdb.catalog.Catalog;
+import org.voltdb.common.Constants;
 import org.voltdb.compiler.AdHocPlannedStatement;
 import org.voltdb.compiler.PlannerTool;
 import org.voltdb.compiler.VoltProjectBuilder;
@@ -132,6 +134,79 @@ public class TestPlannerTool extends TestCase {
         System.out.println(result);
     }
 
+    private String planBytes(String sql) {
+        CompiledPlan plan = m_pt.planSqlCore(sql, StatementPartitioning.forceMP());
+        String bytes = new String(CompiledPlan.bytesForPlan(plan.rootPlanGraph), Constants.UTF8ENCODING);
+        if (plan.subPlanGraph != null) {
+            bytes += new String(CompiledPlan.bytesForPlan(plan.subPlanGraph), Constants.UTF8ENCODING);
+        }
+        return bytes;
+    }
+
+    public void testConcurrentPlanning() throws Exception {
+        TPCCProjectBuilder builder = new TPCCProjectBuilder();
+        builder.addAllDefaults();
+        final File jar = new File("tpcc-oop.jar");
+        jar.deleteOnExit();
+        builder.compile("tpcc-oop.jar");
+        byte[] bytes = MiscUtils.fileToBytes(jar);
+        String serializedCatalog = CatalogUtil.getSerializedCatalogStringFromJar(CatalogUtil.loadAndUpgradeCatalogFromJar(bytes).getFirst());
+        Catalog catalog = new Catalog();
+        catalog.execute(serializedCatalog);
+        CatalogContext context = new CatalogContext(0, 0, catalog, bytes, new byte[] {}, 0);
+        m_pt = new PlannerTool(context.cluster, context.database, context.getCatalogHash());
+
+        final String[] queries = new String[] {
+                "select * from warehouse where w_id = %d;",
+                "select c_id, count(*) from customer where c_w_id = %d group by c_id;",
+                "select * from orders, order_line where o_id = ol_o_id and o_w_id = ol_w_id and o_w_id = %d order by o_id;",
+                "select count(*) from (select c_id from customer where c_w_id = %d) as sub;",
+                // MIN/MAX through an index
+                "select max(ol_o_id) from order_line where ol_w_id = %d and ol_d_id = 1;",
+                // MP ORDER BY with LIMIT inlined into the merge receive
+                "select ol_w_id, ol_d_id, ol_o_id from order_line where ol_o_id > %d " +
+                        "order by ol_w_id, ol_d_id, ol_o_id limit 10;"
+        };
+        // plans made one at a time to compare the concurrent ones with
+        final String[] expected = new String[queries.length];
+        for (int i = 0; i < queries.length; i++) {
+            expected[i] = planBytes(String.format(queries[i], 0));
+        }
+        // the micro optimizations that read the parsed statement were applied
+        assertTrue(expected[4].contains("\"SKIP_NULL_PREDICATE\""));
+        assertTrue(expected[5].contains("\"MERGERECEIVE\""));
+
+        final int threads = 4;
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        Thread planners[] = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            final int thread = t;
+            planners[t] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        for (int i = 0; i < 200; i++) {
+                            int query = (thread + i) % queries.length;
+                            // full planning, which doesn't use the plan cache
+                            assertEquals(expected[query], planBytes(String.format(queries[query], 0)));
+                            // distinct literals share cached parameterized plans
+                            assertNotNull(m_pt.planSqlForTest(String.format(queries[query], thread * 1000 + i)));
+                        }
+                    } catch (Throwable t) {
+                        failure.compareAndSet(null, t);
+                    }
+                }
+            };
+            planners[t].start();
+        }
+        for (Thread t : planners) {
+            t.join();
+        }
+        if (failure.get() != null) {
+            throw new AssertionError(failure.get());
+        }
+    }
+
     public void testBadDDL() throws IOException
     {
         // semicolons in in-lined comments are bad
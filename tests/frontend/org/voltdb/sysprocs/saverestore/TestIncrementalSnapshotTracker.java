@@ -0,0 +1,116 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb.sysprocs.saverestore;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import org.voltdb.catalog.Catalog;
+import org.voltdb.catalog.Database;
+import org.voltdb.catalog.Table;
+
+public class TestIncrementalSnapshotTracker extends TestCase
+{
+    private Table m_tables[];
+
+    @Override
+    public void setUp() {
+        IncrementalSnapshotTracker.reset();
+        Catalog catalog = new Catalog();
+        catalog.execute("add / clusters cluster");
+        catalog.execute("add /clusters#cluster databases database");
+        Database db = catalog.getClusters().get("cluster").getDatabases().get("database");
+        m_tables = new Table[] { db.getTables().add("A"), db.getTables().add("B"), db.getTables().add("C") };
+    }
+
+    private void recordCounts(long siteId, long a, long b, long c) {
+        Map<Integer, Long> counts = new HashMap<Integer, Long>();
+        counts.put(m_tables[0].getRelativeIndex(), a);
+        counts.put(m_tables[1].getRelativeIndex(), b);
+        counts.put(m_tables[2].getRelativeIndex(), c);
+        IncrementalSnapshotTracker.recordSiteCounts(siteId, counts);
+    }
+
+    private Set<Table> start(String nonce, long crc) {
+        return IncrementalSnapshotTracker.startSnapshot("/snapshots", nonce, crc, m_tables, true);
+    }
+
+    public void testUnchangedTables() {
+        recordCounts(1, 10, 20, -1);
+        recordCounts(2, 10, 21, -1);
+        assertTrue(start("base", 5).isEmpty());
+        IncrementalSnapshotTracker.snapshotFinished("base", true);
+
+        // B changed on one site, C doesn't count its changes
+        recordCounts(1, 10, 20, -1);
+        recordCounts(2, 10, 22, -1);
+        Set<Table> unchanged = start("delta", 5);
+        assertEquals(1, unchanged.size());
+        assertTrue(unchanged.contains(m_tables[0]));
+        assertEquals("base", IncrementalSnapshotTracker.baseNonce());
+        IncrementalSnapshotTracker.snapshotFinished("delta", true);
+
+        // the delta is the base of the next one
+        recordCounts(1, 10, 20, -1);
+        recordCounts(2, 10, 22, -1);
+        assertEquals(2, start("delta2", 5).size());
+        assertEquals("delta", IncrementalSnapshotTracker.baseNonce());
+    }
+
+    public void testNoUsableBase() {
+        recordCounts(1, 10, 20, 30);
+        start("base", 5);
+        IncrementalSnapshotTracker.snapshotFinished("base", false);
+
+        // a failed snapshot is never a base
+        recordCounts(1, 10, 20, 30);
+        assertTrue(start("second", 5).isEmpty());
+        IncrementalSnapshotTracker.snapshotFinished("second", true);
+
+        // the catalog changed
+        recordCounts(1, 10, 20, 30);
+        assertTrue(start("third", 6).isEmpty());
+        IncrementalSnapshotTracker.snapshotFinished("third", true);
+
+        // the sites on the host changed
+        recordCounts(1, 10, 20, 30);
+        recordCounts(2, 10, 20, 30);
+        assertTrue(start("fourth", 6).isEmpty());
+        IncrementalSnapshotTracker.snapshotFinished("fourth", true);
+
+        // not requested
+        recordCounts(1, 10, 20, 30);
+        recordCounts(2, 10, 20, 30);
+        assertTrue(IncrementalSnapshotTracker.startSnapshot("/snapshots", "fifth", 6, m_tables, false).isEmpty());
+        IncrementalSnapshotTracker.snapshotFinished("fifth", true);
+
+        // a different path
+        recordCounts(1, 10, 20, 30);
+        recordCounts(2, 10, 20, 30);
+        assertTrue(IncrementalSnapshotTracker.startSnapshot("/elsewhere", "sixth", 6, m_tables, true).isEmpty());
+    }
+}
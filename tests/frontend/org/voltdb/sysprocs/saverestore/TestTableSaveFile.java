@@ -0,0 +1,296 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb.sysprocs.saverestore;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.voltcore.utils.DBBPool;
+import org.voltcore.utils.DBBPool.BBContainer;
+import org.voltdb.DefaultSnapshotDataTarget;
+import org.voltdb.PrivateVoltTableFactory;
+import org.voltdb.VoltTable;
+import org.voltdb.VoltType;
+
+import com.google_voltpatches.common.util.concurrent.Callables;
+
+public class TestTableSaveFile extends TestCase {
+    private static final int PARTITIONS = 3;
+    private static final int CHUNKS = 40;
+    private static final int ROWS_PER_CHUNK = 100;
+
+    private File m_file;
+
+    @Override
+    public void setUp() throws Exception {
+        m_file = File.createTempFile("TestTableSaveFile", ".vpt");
+        writeFile();
+    }
+
+    @Override
+    public void tearDown() {
+        m_file.delete();
+    }
+
+    private static VoltTable emptyTable() {
+        return new VoltTable(new VoltTable.ColumnInfo("CHUNK", VoltType.INTEGER),
+                             new VoltTable.ColumnInfo("ROW", VoltType.INTEGER));
+    }
+
+    private static int partitionOf(int chunk) {
+        return chunk % PARTITIONS;
+    }
+
+    /**
+     * Write CHUNKS chunks round robin across the partitions, each row holding its chunk number
+     */
+    private void writeFile() throws Exception {
+        DefaultSnapshotDataTarget target = new DefaultSnapshotDataTarget(m_file, 0, "cluster", "database", "table",
+                PARTITIONS, false, Arrays.asList(0, 1, 2), emptyTable(), 1, System.currentTimeMillis());
+        for (int chunk = 0; chunk < CHUNKS; chunk++) {
+            VoltTable t = emptyTable();
+            for (int row = 0; row < ROWS_PER_CHUNK; row++) {
+                t.addRow(chunk, row);
+            }
+            // the site hands over the partition id followed by the row count and rows
+            ByteBuffer data = PrivateVoltTableFactory.getTableDataReference(t);
+            data.limit(PrivateVoltTableFactory.getUnderlyingBufferSize(t));
+            data.position(4 + data.getInt(0));
+            BBContainer cont = DBBPool.allocateDirect(4 + data.remaining());
+            cont.b().putInt(partitionOf(chunk));
+            cont.b().put(data);
+            cont.b().flip();
+            target.write(Callables.returning(cont), 0);
+        }
+        target.close();
+    }
+
+    private TableSaveFile open(int readAheadChunks, Integer[] relevantPartitions, boolean continueOnCorruptedChunk)
+            throws IOException {
+        return new TableSaveFile(new FileInputStream(m_file), readAheadChunks, relevantPartitions,
+                continueOnCorruptedChunk);
+    }
+
+    /**
+     * Read every chunk, checking each one's rows and partition
+     * @return the chunk numbers in the order they were handed out
+     */
+    private static List<Integer> readAll(TableSaveFile saveFile) throws IOException {
+        List<Integer> chunks = new ArrayList<Integer>();
+        while (saveFile.hasMoreChunks()) {
+            TableSaveFile.Container c = (TableSaveFile.Container)saveFile.getNextChunk();
+            if (c == null) {
+                continue;
+            }
+            try {
+                chunks.add(checkChunk(c));
+            } finally {
+                c.discard();
+            }
+        }
+        return chunks;
+    }
+
+    private static int checkChunk(TableSaveFile.Container c) {
+        VoltTable t = PrivateVoltTableFactory.createVoltTableFromBuffer(c.b(), true);
+        assertEquals(ROWS_PER_CHUNK, t.getRowCount());
+        int chunk = -1;
+        int row = 0;
+        while (t.advanceRow()) {
+            if (chunk == -1) {
+                chunk = (int)t.getLong(0);
+            }
+            assertEquals(chunk, t.getLong(0));
+            assertEquals(row++, t.getLong(1));
+        }
+        assertEquals(partitionOf(chunk), c.partitionId);
+        return chunk;
+    }
+
+    private static List<Integer> range(int from, int to, int step) {
+        List<Integer> chunks = new ArrayList<Integer>();
+        for (int i = from; i < to; i += step) {
+            chunks.add(i);
+        }
+        return chunks;
+    }
+
+    public void testChunksInFileOrder() throws IOException {
+        TableSaveFile saveFile = open(4, null, false);
+        try {
+            assertTrue(saveFile.getCompleted());
+            assertEquals("TABLE", saveFile.getTableName());
+            assertEquals(range(0, CHUNKS, 1), readAll(saveFile));
+            assertTrue(saveFile.getCorruptedPartitionIds().isEmpty());
+
+            // everything was read and handed out
+            assertFalse(saveFile.hasMoreChunks());
+            assertNull(saveFile.getNextChunk());
+            assertEquals(CHUNKS, saveFile.getChunksLoaded());
+            assertEquals(saveFile.getFileSize(), saveFile.getBytesRead());
+        } finally {
+            saveFile.close();
+        }
+    }
+
+    public void testRelevantPartitions() throws IOException {
+        TableSaveFile saveFile = open(4, new Integer[] { 1 }, false);
+        try {
+            assertEquals(range(1, CHUNKS, PARTITIONS), readAll(saveFile));
+            // skipped chunks are still read but not counted
+            assertEquals(range(1, CHUNKS, PARTITIONS).size(), saveFile.getChunksLoaded());
+            assertEquals(saveFile.getFileSize(), saveFile.getBytesRead());
+        } finally {
+            saveFile.close();
+        }
+    }
+
+    /**
+     * Flip a byte in the compressed payload of one chunk
+     */
+    private void corruptChunk(int corruptChunk) throws IOException {
+        long offset;
+        TableSaveFile saveFile = open(1, null, false);
+        try {
+            offset = saveFile.getBytesRead();
+        } finally {
+            saveFile.close();
+        }
+        RandomAccessFile raf = new RandomAccessFile(m_file, "rw");
+        try {
+            for (int chunk = 0; chunk < corruptChunk; chunk++) {
+                raf.seek(offset);
+                // length prefix, partition id and the CRCs of both, then the payload
+                offset += 16 + raf.readInt();
+            }
+            raf.seek(offset + 16 + 10);
+            int b = raf.read();
+            raf.seek(offset + 16 + 10);
+            raf.write(b ^ 0xff);
+        } finally {
+            raf.close();
+        }
+    }
+
+    public void testCorruptChunk() throws IOException {
+        final int corruptChunk = 17;
+        corruptChunk(corruptChunk);
+
+        TableSaveFile saveFile = open(4, null, false);
+        try {
+            // the chunks before the corrupt one come out in order, then the failure
+            for (int chunk = 0; chunk < corruptChunk; chunk++) {
+                TableSaveFile.Container c = (TableSaveFile.Container)saveFile.getNextChunk();
+                try {
+                    assertEquals(chunk, checkChunk(c));
+                } finally {
+                    c.discard();
+                }
+            }
+            try {
+                saveFile.getNextChunk();
+                fail("Read a corrupt chunk");
+            } catch (IOException expected) {}
+            assertEquals(new HashSet<Integer>(Arrays.asList(partitionOf(corruptChunk))),
+                         saveFile.getCorruptedPartitionIds());
+            assertEquals(corruptChunk, saveFile.getChunksLoaded());
+            // and it stays failed
+            try {
+                saveFile.hasMoreChunks();
+                fail("Corrupt file has more chunks");
+            } catch (IOException expected) {}
+        } finally {
+            saveFile.close();
+        }
+    }
+
+    public void testContinueOnCorruptChunk() throws IOException {
+        final int corruptChunk = 17;
+        corruptChunk(corruptChunk);
+
+        TableSaveFile saveFile = open(4, null, true);
+        try {
+            List<Integer> expected = range(0, CHUNKS, 1);
+            expected.remove(Integer.valueOf(corruptChunk));
+            assertEquals(expected, readAll(saveFile));
+            assertEquals(new HashSet<Integer>(Arrays.asList(partitionOf(corruptChunk))),
+                         saveFile.getCorruptedPartitionIds());
+            assertEquals(CHUNKS - 1, saveFile.getChunksLoaded());
+        } finally {
+            saveFile.close();
+        }
+    }
+
+    public void testCloseEarly() throws Exception {
+        TableSaveFile saveFile = open(8, null, false);
+        List<BBContainer> held = new ArrayList<BBContainer>();
+        for (int chunk = 0; chunk < 3; chunk++) {
+            TableSaveFile.Container c = (TableSaveFile.Container)saveFile.getNextChunk();
+            assertEquals(chunk, checkChunk(c));
+            held.add(c);
+        }
+        // let the reader fill its read ahead so close has chunks being decompressed to clean up
+        Thread.sleep(100);
+        saveFile.close();
+        assertFalse(saveFile.hasMoreChunks());
+        assertNull(saveFile.getNextChunk());
+        assertEquals(3, saveFile.getChunksLoaded());
+
+        // chunks handed out before the close can still be used and returned
+        for (BBContainer c : held) {
+            checkChunk((TableSaveFile.Container)c);
+            c.discard();
+        }
+    }
+
+    public void testIncompleteFile() throws IOException {
+        // a snapshot that didn't finish leaves the completed flag after the header length clear
+        RandomAccessFile raf = new RandomAccessFile(m_file, "rw");
+        try {
+            raf.seek(8);
+            raf.write(0);
+        } finally {
+            raf.close();
+        }
+
+        TableSaveFile saveFile = open(4, null, false);
+        try {
+            assertFalse(saveFile.getCompleted());
+            assertEquals(new HashSet<Integer>(Arrays.asList(0, 1, 2)), saveFile.getCorruptedPartitionIds());
+            // the chunks that made it to disk can still be read
+            assertEquals(range(0, CHUNKS, 1), readAll(saveFile));
+        } finally {
+            saveFile.close();
+        }
+    }
+}
@@ -0,0 +1,99 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb.utils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+public class TestCompressionCodec extends TestCase {
+
+    private static ByteBuffer makeInput(int size) {
+        // half random, half repeated so there is something to compress
+        final ByteBuffer buf = ByteBuffer.allocateDirect(size);
+        final Random r = new Random(0);
+        while (buf.hasRemaining()) {
+            buf.put(buf.position() < size / 2 ? (byte)r.nextInt() : (byte)(buf.position() % 7));
+        }
+        buf.flip();
+        return buf;
+    }
+
+    public void testRoundTrip() throws IOException {
+        final ByteBuffer input = makeInput(1024 * 1024);
+        for (CompressionCodec codec : CompressionCodec.values()) {
+            final ByteBuffer compressed = ByteBuffer.allocateDirect(16 + codec.maxCompressedLength(input.remaining()));
+            // leave room for a header the way snapshot chunks do
+            compressed.position(16);
+            final int compressedLength = codec.compress(input, compressed);
+            assertEquals(codec.name(), 16, compressed.position());
+            assertEquals(codec.name(), compressedLength, compressed.remaining());
+            assertEquals(codec.name(), 0, input.position());
+            assertEquals(codec.name(), input.remaining(), codec.uncompressedLength(compressed));
+            if (codec != CompressionCodec.NONE) {
+                assertTrue(codec.name(), compressedLength < input.remaining());
+            }
+
+            final ByteBuffer output = ByteBuffer.allocateDirect(input.remaining() + 8);
+            output.position(8);
+            assertEquals(codec.name(), input.remaining(), codec.decompress(compressed, output));
+            assertEquals(codec.name(), 8, output.position());
+            assertEquals(codec.name(), input, output);
+        }
+    }
+
+    public void testCorruptLZ4() throws IOException {
+        final ByteBuffer input = makeInput(64 * 1024);
+        final ByteBuffer compressed = ByteBuffer.allocateDirect(CompressionCodec.LZ4.maxCompressedLength(input.remaining()));
+        CompressionCodec.LZ4.compress(input, compressed);
+        // claim the data is longer than it is
+        compressed.putInt(0, input.remaining() + 100);
+        try {
+            CompressionCodec.LZ4.decompress(compressed, ByteBuffer.allocateDirect(input.remaining() + 100));
+            fail();
+        } catch (IOException expected) {}
+
+        compressed.putInt(0, -1);
+        try {
+            CompressionCodec.LZ4.uncompressedLength(compressed);
+            fail();
+        } catch (IOException expected) {}
+    }
+
+    public void testFromName() {
+        assertEquals(CompressionCodec.LZ4HC, CompressionCodec.fromName("lz4-hc", CompressionCodec.SNAPPY));
+        assertEquals(CompressionCodec.LZ4, CompressionCodec.fromName(" LZ4 ", CompressionCodec.SNAPPY));
+        assertEquals(CompressionCodec.NONE, CompressionCodec.fromName("none", CompressionCodec.SNAPPY));
+        assertEquals(CompressionCodec.SNAPPY, CompressionCodec.fromName(null, CompressionCodec.SNAPPY));
+        assertEquals(CompressionCodec.SNAPPY, CompressionCodec.fromName("zstd", CompressionCodec.SNAPPY));
+
+        assertEquals(CompressionCodec.LZ4HC, CompressionCodec.forName("LZ4_HC"));
+        try {
+            CompressionCodec.forName("zstd");
+            fail();
+        } catch (IllegalArgumentException expected) {}
+    }
+}
@@ -32,9 +32,12 @@ import static org.junit.Assert.assertTrue;
 import java.io.File;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Random;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
 
 import junit.framework.Assert;
 
@@ -48,6 +51,8 @@ import org.voltdb.utils.BinaryDeque.BinaryDequeTruncator;
 import org.voltdb.utils.BinaryDeque.TruncatorResponse;
 
 import com.google_voltpatches.common.collect.Sets;
+import com.google_voltpatches.common.util.concurrent.Futures;
+import com.google_voltpatches.common.util.concurrent.ListenableFuture;
 
 public class TestPersistentBinaryDeque {
 
@@ -909,6 +914,177 @@ public class TestPersistentBinaryDeque {
         assert(files[0].getName().equals("pbd_nonce.1.pbd"));
     }
 
+    @Test
+    public void testMMapSegments() throws Exception {
+        System.out.println("Running testMMapSegments");
+        m_pbd.close();
+        final int segmentSize = 8 * 1024 * 1024;
+        m_pbd = new PersistentBinaryDeque(TEST_NONCE, TEST_DIR, logger, true, true, segmentSize);
+
+        for (int ii = 0; ii < 40; ii++) {
+            m_pbd.offer( DBBPool.wrapBB(getFilledBuffer(ii)) );
+        }
+        m_pbd.close();
+
+        // closed segments only keep the data, not the whole mapping
+        assertTrue(TEST_DIR.listFiles().length > 1);
+        for (File f : TEST_DIR.listFiles()) {
+            assertTrue(f.length() <= segmentSize);
+        }
+
+        m_pbd = new PersistentBinaryDeque(TEST_NONCE, TEST_DIR, logger, true, true, segmentSize);
+        assertEquals(40, m_pbd.getNumObjects());
+        m_pbd.parseAndTruncate(new BinaryDequeTruncator() {
+            @Override
+            public TruncatorResponse parse(BBContainer bbc) {
+                ByteBuffer b = bbc.b();
+                if (b.getLong(0) == 25) {
+                    b.limit(b.remaining() / 2);
+                    return new PersistentBinaryDeque.ByteBufferTruncatorResponse(b.slice());
+                }
+                return null;
+            }
+        });
+        assertEquals(26, m_pbd.getNumObjects());
+
+        for (int ii = 26; ii < 40; ii++) {
+            m_pbd.offer( DBBPool.wrapBB(getFilledBuffer(ii)) );
+        }
+
+        long blocksFound = 0;
+        BBContainer cont = null;
+        while ((cont = m_pbd.poll(PersistentBinaryDeque.UNSAFE_CONTAINER_FACTORY)) != null) {
+            try {
+                ByteBuffer buffer = cont.b();
+                assertEquals(blocksFound == 25 ? 1024 * 1024 : 1024 * 1024 * 2, buffer.remaining());
+                while (buffer.remaining() > 15) {
+                    assertEquals(buffer.getLong(), blocksFound);
+                    buffer.getLong();
+                }
+            } finally {
+                blocksFound++;
+                cont.discard();
+            }
+        }
+        assertEquals(40, blocksFound);
+    }
+
+    @Test
+    public void testMMapReopenWithSmallerSegmentSize() throws Exception {
+        System.out.println("Running testMMapReopenWithSmallerSegmentSize");
+        for (boolean writtenWithMMap : new boolean[] { false, true }) {
+            m_pbd.closeAndDelete();
+            m_pbd = new PersistentBinaryDeque(TEST_NONCE, TEST_DIR, logger, true, writtenWithMMap, 8 * 1024 * 1024);
+            for (int ii = 0; ii < 10; ii++) {
+                m_pbd.offer( DBBPool.wrapBB(getFilledBuffer(ii)) );
+            }
+            m_pbd.close();
+
+            // the existing segments are larger than the new segment size
+            m_pbd = new PersistentBinaryDeque(TEST_NONCE, TEST_DIR, logger, true, true, 1024 * 1024);
+            m_pbd.parseAndTruncate(new BinaryDequeTruncator() {
+                @Override
+                public TruncatorResponse parse(BBContainer bbc) {
+                    return null;
+                }
+            });
+            assertEquals(10, m_pbd.getNumObjects());
+
+            m_pbd.offer( DBBPool.wrapBB(getFilledSmallBuffer(10)), false );
+            for (long ii = 0; ii <= 10; ii++) {
+                BBContainer cont = m_pbd.poll(PersistentBinaryDeque.UNSAFE_CONTAINER_FACTORY);
+                try {
+                    assertEquals(ii < 10 ? 1024 * 1024 * 2 : 1024, cont.b().remaining());
+                    assertEquals(ii, cont.b().getLong(0));
+                } finally {
+                    cont.discard();
+                }
+            }
+            assertNull(m_pbd.poll(PersistentBinaryDeque.UNSAFE_CONTAINER_FACTORY));
+        }
+    }
+
+    @Test
+    public void testTruncateWithSegmentIndex() throws Exception {
+        System.out.println("Running testTruncateWithSegmentIndex");
+        for (boolean useMMap : new boolean[] { false, true }) {
+            m_pbd.closeAndDelete();
+            m_pbd = new PersistentBinaryDeque(TEST_NONCE, TEST_DIR, logger, true, useMMap, 1024 * 1024);
+
+            // many more small objects than the index interval, several segments
+            for (int ii = 0; ii < 3000; ii++) {
+                m_pbd.offer( DBBPool.wrapBB(getFilledSmallBuffer(ii)), false );
+            }
+            m_pbd.close();
+
+            m_pbd = new PersistentBinaryDeque(TEST_NONCE, TEST_DIR, logger, true, useMMap, 1024 * 1024);
+            m_pbd.parseAndTruncate(new BinaryDequeTruncator() {
+                @Override
+                public TruncatorResponse parse(BBContainer bbc) {
+                    if (bbc.b().getLong(0) == 2222) {
+                        return PersistentBinaryDeque.fullTruncateResponse();
+                    }
+                    return null;
+                }
+            });
+            assertEquals(2222, m_pbd.getNumObjects());
+
+            m_pbd.offer( DBBPool.wrapBB(getFilledSmallBuffer(2222)), false );
+            for (long ii = 0; ii <= 2222; ii++) {
+                BBContainer cont = m_pbd.poll(PersistentBinaryDeque.UNSAFE_CONTAINER_FACTORY);
+                try {
+                    assertEquals(1024, cont.b().remaining());
+                    assertEquals(ii, cont.b().getLong(0));
+                } finally {
+                    cont.discard();
+                }
+            }
+            assertNull(m_pbd.poll(PersistentBinaryDeque.UNSAFE_CONTAINER_FACTORY));
+        }
+    }
+
+    @Test
+    public void testSyncAsync() throws Exception {
+        System.out.println("Running testSyncAsync");
+        List<PersistentBinaryDeque> deques = new ArrayList<PersistentBinaryDeque>();
+        List<ListenableFuture<?>> futures = new ArrayList<ListenableFuture<?>>();
+        deques.add(m_pbd);
+        for (int ii = 0; ii < 4; ii++) {
+            deques.add(new PersistentBinaryDeque(TEST_NONCE + ii, TEST_DIR, logger));
+        }
+        try {
+            for (int ii = 0; ii < 10; ii++) {
+                for (PersistentBinaryDeque pbd : deques) {
+                    pbd.offer( DBBPool.wrapBB(getFilledSmallBuffer(ii)) );
+                    futures.add(pbd.syncAsync());
+                }
+            }
+            Futures.allAsList(futures).get();
+        } finally {
+            for (PersistentBinaryDeque pbd : deques.subList(1, deques.size())) {
+                pbd.closeAndDelete();
+            }
+        }
+
+        // a deque closed before its sync ran reports it
+        m_pbd.close();
+        try {
+            m_pbd.syncAsync().get();
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IOException);
+        }
+    }
+
+    @Test
+    public void testSegmentSizeTooSmall() throws Exception {
+        System.out.println("Running testSegmentSizeTooSmall");
+        try {
+            new PersistentBinaryDeque(TEST_NONCE, TEST_DIR, logger, true, true, 1024);
+            fail();
+        } catch (IllegalArgumentException expected) {}
+    }
+
     @Before
     public void setUp() throws Exception {
         if (TEST_DIR.exists()) {
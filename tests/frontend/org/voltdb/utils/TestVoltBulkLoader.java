@@ -78,6 +78,8 @@ public class TestVoltBulkLoader extends TestCase {
     protected VoltDB.Configuration config;
     protected VoltProjectBuilder builder;
     protected Client client1;
+    // Batches per partition allowed in flight, 0 leaves the loader's default
+    protected int pipelineDepth = 0;
     protected Client client2;
     protected static final VoltLogger m_log = new VoltLogger("CONSOLE");
 
@@ -226,6 +228,12 @@ public class TestVoltBulkLoader extends TestCase {
         test_Interface(mySchema, myData, myBatchSize, expectedFailures, 0);
     }
 
+    //Test batch option that splits with a single batch in flight per partition
+    public void testBatchOptionThatSplitsWithSerialPipeline() throws Exception {
+        pipelineDepth = 1;
+        testBatchOptionThatSplits();
+    }
+
     //Test flush with good and bad rows in < maxBatch
     public void testBatchOptionCommitByFlush() throws Exception {
         String mySchema
@@ -1079,6 +1087,9 @@ public class TestVoltBulkLoader extends TestCase {
             prepare();
             TestFailureCallback testCallback = new TestFailureCallback();
             VoltBulkLoader bulkLoader = client1.getNewBulkLoader("BLAH", my_batchSize, upsert, testCallback);
+            if (pipelineDepth > 0) {
+                bulkLoader.setPipelineDepth(pipelineDepth);
+            }
             if (flushInterval > 0) {
                 bulkLoader.setFlushInterval(0, flushInterval);
             }